@@ -0,0 +1,110 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+/**
+ * A Benchmark measures the cost of one operation (e.g., a single
+ * ThreadsafeInterpolatingTimeHistory.get()), which is repeatedly invoked by
+ * the BenchmarkRunner.
+ * <p>
+ * Benchmarks which simulate contention may start background threads in
+ * setup(), which must then be stopped in teardown(); only the operations
+ * performed by the invoking thread within run() are measured.
+ */
+public abstract class Benchmark {
+	String suite;
+	String name;
+	String parameters;
+
+	/**
+	 * @param suite
+	 *            - the group of related benchmarks this benchmark belongs to.
+	 * @param name
+	 *            - the name of the measured operation.
+	 * @param parameters
+	 *            - a description of the parameters (e.g., "fill=1000"), or an
+	 *            empty string.
+	 */
+	protected Benchmark(String suite, String name, String parameters) {
+		this.suite = suite;
+		this.name = name;
+		this.parameters = parameters;
+	}
+
+	public String getSuite() {
+		return suite;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the name which uniquely identifies this benchmark within the
+	 * results, e.g. "history.get[fill=1000]".
+	 */
+	public String getQualifiedName() {
+		String qualified_name = suite + "." + name;
+		if (parameters.length() > 0) {
+			qualified_name += "[" + parameters + "]";
+		}
+		return qualified_name;
+	}
+
+	/**
+	 * Returns the number of threads (including the measuring thread) which
+	 * are active while this benchmark runs.
+	 */
+	public int getThreadCount() {
+		return 1;
+	}
+
+	/**
+	 * Prepares the state used by run(); invoked once before the warmup
+	 * iterations.
+	 */
+	public void setup() {
+	}
+
+	/**
+	 * Performs the measured operation the provided number of times.
+	 * 
+	 * @return a value derived from the results of the operations, which is
+	 *         consumed by the BenchmarkRunner so that the operations cannot be
+	 *         eliminated by the JIT compiler.
+	 */
+	public abstract long run(int operations);
+
+	/**
+	 * Releases the state used by run(); invoked once after the last
+	 * measurement iteration.
+	 */
+	public void teardown() {
+	}
+}
@@ -0,0 +1,141 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * The BenchmarkResult class holds the measurements of one Benchmark, and
+ * converts them to and from a row of the CSV results file written by the
+ * BenchmarkRunner.
+ */
+public class BenchmarkResult {
+	String benchmark;
+	int threads;
+	int iterations;
+	long operations_per_iteration;
+	double ns_per_op;
+	double ns_per_op_stddev;
+	double ns_per_op_min;
+	double alloc_bytes_per_op;
+	long gc_count;
+	long gc_time_ms;
+
+	static final String CSV_HEADER = "Benchmark,Threads,Iterations,OpsPerIteration,NsPerOp,NsPerOpStdDev,NsPerOpMin,"
+			+ "OpsPerSec,AllocBytesPerOp,GCCount,GCTimeMs";
+
+	BenchmarkResult(String benchmark, int threads) {
+		this.benchmark = benchmark;
+		this.threads = threads;
+	}
+
+	public String getBenchmark() {
+		return benchmark;
+	}
+
+	public int getThreadCount() {
+		return threads;
+	}
+
+	public double getNanosecondsPerOperation() {
+		return ns_per_op;
+	}
+
+	public double getNanosecondsPerOperationStdDev() {
+		return ns_per_op_stddev;
+	}
+
+	public double getNanosecondsPerOperationMin() {
+		return ns_per_op_min;
+	}
+
+	public double getOperationsPerSecond() {
+		return (ns_per_op > 0) ? 1.0e9 / ns_per_op : 0;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the measuring thread per
+	 * operation, or -1 if allocation could not be measured on this JVM.
+	 */
+	public double getAllocatedBytesPerOperation() {
+		return alloc_bytes_per_op;
+	}
+
+	/**
+	 * Returns the number of garbage collections which occurred during the
+	 * measurement iterations.
+	 */
+	public long getGCCount() {
+		return gc_count;
+	}
+
+	public long getGCTimeMilliseconds() {
+		return gc_time_ms;
+	}
+
+	public static void writeCSVHeader(PrintWriter out) {
+		out.println(CSV_HEADER);
+	}
+
+	public void writeCSVRow(PrintWriter out) {
+		out.printf(Locale.ROOT, "\"%s\",%d,%d,%d,%.3f,%.3f,%.3f,%.1f,%.2f,%d,%d%n", benchmark, threads, iterations,
+				operations_per_iteration, ns_per_op, ns_per_op_stddev, ns_per_op_min, getOperationsPerSecond(),
+				alloc_bytes_per_op, gc_count, gc_time_ms);
+	}
+
+	/**
+	 * Parses a row previously written by writeCSVRow().
+	 * 
+	 * @return the result, or null if the row is the header or is malformed.
+	 */
+	public static BenchmarkResult parseCSVRow(String row) {
+		if (!row.startsWith("\"")) {
+			return null;
+		}
+		int name_end = row.indexOf('"', 1);
+		if (name_end < 0) {
+			return null;
+		}
+		String[] fields = row.substring(name_end + 2).split(",");
+		if (fields.length != 10) {
+			return null;
+		}
+		try {
+			BenchmarkResult result = new BenchmarkResult(row.substring(1, name_end), Integer.parseInt(fields[0]));
+			result.iterations = Integer.parseInt(fields[1]);
+			result.operations_per_iteration = Long.parseLong(fields[2]);
+			result.ns_per_op = Double.parseDouble(fields[3]);
+			result.ns_per_op_stddev = Double.parseDouble(fields[4]);
+			result.ns_per_op_min = Double.parseDouble(fields[5]);
+			result.alloc_bytes_per_op = Double.parseDouble(fields[7]);
+			result.gc_count = Long.parseLong(fields[8]);
+			result.gc_time_ms = Long.parseLong(fields[9]);
+			return result;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
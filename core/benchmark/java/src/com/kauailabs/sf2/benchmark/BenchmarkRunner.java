@@ -0,0 +1,309 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The BenchmarkRunner runs the sf2 core benchmarks, printing a summary of the
+ * results and optionally writing them to a CSV file. Results of a previous
+ * run (e.g., of the prior release) may be provided as a baseline, in which
+ * case the change relative to the baseline is included in the summary.
+ * <p>
+ * The benchmarks have no dependencies other than sf2-core; to compile sf2-core
+ * and the benchmarks, and run them:
+ * 
+ * <pre>
+ * ant run -Dbenchmark.args="[options]"
+ * </pre>
+ * 
+ * Options:
+ * <p>
+ * -filter [text] - only run benchmarks whose qualified name contains the text.
+ * <p>
+ * -warmup [n] - the number of warmup iterations (default 5).
+ * <p>
+ * -iterations [n] - the number of measurement iterations (default 10).
+ * <p>
+ * -time [ms] - the approximate duration of each iteration (default 200).
+ * <p>
+ * -csv [file] - writes the results to the CSV file.
+ * <p>
+ * -baseline [file] - compares the results to those in a CSV file written by a
+ * previous run.
+ * <p>
+ * -list - lists the benchmarks without running them.
+ * <p>
+ * The JVM should be given a fixed heap size (e.g., -Xms512m -Xmx512m) so that
+ * results (in particular garbage collection counts) are comparable between
+ * runs.
+ */
+public class BenchmarkRunner {
+	int warmup_iterations = 5;
+	int measurement_iterations = 10;
+	long iteration_ns = 200 * 1000000L;
+	ThreadMXBean thread_bean;
+	List<GarbageCollectorMXBean> gc_beans;
+	/* Consumes the values returned by the benchmarks. */
+	long sink;
+
+	public BenchmarkRunner() {
+		thread_bean = ManagementFactory.getThreadMXBean();
+		gc_beans = ManagementFactory.getGarbageCollectorMXBeans();
+	}
+
+	public void setWarmupIterations(int iterations) {
+		warmup_iterations = iterations;
+	}
+
+	public void setMeasurementIterations(int iterations) {
+		measurement_iterations = Math.max(1, iterations);
+	}
+
+	public void setIterationTimeMilliseconds(long iteration_ms) {
+		iteration_ns = Math.max(1, iteration_ms) * 1000000L;
+	}
+
+	/**
+	 * Returns all of the sf2 core benchmarks.
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		HistoryBenchmarks.addTo(benchmarks);
+		QuaternionBenchmarks.addTo(benchmarks);
+		OrientationHistoryBenchmarks.addTo(benchmarks);
+		KinematicsBenchmarks.addTo(benchmarks);
+		return benchmarks;
+	}
+
+	/**
+	 * Runs the provided benchmark: the number of operations per iteration is
+	 * first calibrated to approximately the configured iteration time, after
+	 * which the warmup and then the measurement iterations are run.
+	 */
+	public BenchmarkResult run(Benchmark benchmark) {
+		benchmark.setup();
+		try {
+			int operations = calibrate(benchmark);
+			for (int i = 0; i < warmup_iterations; i++) {
+				sink += benchmark.run(operations);
+			}
+			System.gc();
+			double[] ns_per_op = new double[measurement_iterations];
+			long allocated_bytes = 0;
+			long gc_count_start = getGCCount();
+			long gc_time_start = getGCTimeMilliseconds();
+			for (int i = 0; i < measurement_iterations; i++) {
+				long allocated_start = getAllocatedBytes();
+				long start = System.nanoTime();
+				sink += benchmark.run(operations);
+				long elapsed = System.nanoTime() - start;
+				long allocated_end = getAllocatedBytes();
+				ns_per_op[i] = (double) elapsed / operations;
+				if ((allocated_start >= 0) && (allocated_end >= 0)) {
+					allocated_bytes += allocated_end - allocated_start;
+				} else {
+					allocated_bytes = -1;
+				}
+			}
+			BenchmarkResult result = new BenchmarkResult(benchmark.getQualifiedName(), benchmark.getThreadCount());
+			result.iterations = measurement_iterations;
+			result.operations_per_iteration = operations;
+			result.gc_count = getGCCount() - gc_count_start;
+			result.gc_time_ms = getGCTimeMilliseconds() - gc_time_start;
+			result.alloc_bytes_per_op = (allocated_bytes < 0) ? -1
+					: (double) allocated_bytes / ((long) operations * measurement_iterations);
+			double sum = 0;
+			double min = Double.MAX_VALUE;
+			for (double value : ns_per_op) {
+				sum += value;
+				min = Math.min(min, value);
+			}
+			double mean = sum / measurement_iterations;
+			double sum_squared_deviations = 0;
+			for (double value : ns_per_op) {
+				sum_squared_deviations += (value - mean) * (value - mean);
+			}
+			result.ns_per_op = mean;
+			result.ns_per_op_min = min;
+			result.ns_per_op_stddev = (measurement_iterations > 1)
+					? Math.sqrt(sum_squared_deviations / (measurement_iterations - 1)) : 0;
+			return result;
+		} finally {
+			benchmark.teardown();
+		}
+	}
+
+	int calibrate(Benchmark benchmark) {
+		int operations = 1;
+		for (;;) {
+			long start = System.nanoTime();
+			sink += benchmark.run(operations);
+			long elapsed = System.nanoTime() - start;
+			if (elapsed >= iteration_ns / 10) {
+				long scaled = (long) ((double) operations * iteration_ns / elapsed);
+				return (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, scaled));
+			}
+			if (operations >= Integer.MAX_VALUE / 4) {
+				return operations;
+			}
+			operations *= 2;
+		}
+	}
+
+	long getAllocatedBytes() {
+		if (thread_bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) thread_bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	long getGCCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc_bean : gc_beans) {
+			count += Math.max(0, gc_bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	long getGCTimeMilliseconds() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc_bean : gc_beans) {
+			time += Math.max(0, gc_bean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * Reads the results from a CSV file written by a previous run, indexed by
+	 * benchmark name.
+	 */
+	public static HashMap<String, BenchmarkResult> readCSV(String file_path) throws IOException {
+		HashMap<String, BenchmarkResult> results = new HashMap<String, BenchmarkResult>();
+		BufferedReader in = new BufferedReader(new FileReader(file_path));
+		try {
+			String row;
+			while ((row = in.readLine()) != null) {
+				BenchmarkResult result = BenchmarkResult.parseCSVRow(row);
+				if (result != null) {
+					results.put(result.getBenchmark(), result);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	static void printSummary(BenchmarkResult result, BenchmarkResult baseline) {
+		String change = "";
+		if ((baseline != null) && (baseline.getNanosecondsPerOperation() > 0)) {
+			change = String.format(Locale.ROOT, "%+7.1f%%",
+					100.0 * (result.getNanosecondsPerOperation() - baseline.getNanosecondsPerOperation())
+							/ baseline.getNanosecondsPerOperation());
+		}
+		System.out.println(String.format(Locale.ROOT, "%-72s %12.1f ns/op +- %8.1f %10.1f B/op %4d GCs %s",
+				result.getBenchmark(), result.getNanosecondsPerOperation(),
+				result.getNanosecondsPerOperationStdDev(), result.getAllocatedBytesPerOperation(),
+				result.getGCCount(), change));
+	}
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		String filter = null;
+		String csv_file_path = null;
+		String baseline_file_path = null;
+		boolean list_only = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			boolean has_value = (i + 1) < args.length;
+			if (arg.equals("-list")) {
+				list_only = true;
+			} else if (arg.equals("-filter") && has_value) {
+				filter = args[++i];
+			} else if (arg.equals("-warmup") && has_value) {
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-iterations") && has_value) {
+				runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-time") && has_value) {
+				runner.setIterationTimeMilliseconds(Long.parseLong(args[++i]));
+			} else if (arg.equals("-csv") && has_value) {
+				csv_file_path = args[++i];
+			} else if (arg.equals("-baseline") && has_value) {
+				baseline_file_path = args[++i];
+			} else {
+				System.out.println("Unrecognized option '" + arg + "'.");
+				System.out.println("Usage: BenchmarkRunner [-list] [-filter text] [-warmup n] [-iterations n] "
+						+ "[-time ms] [-csv file] [-baseline file]");
+				return;
+			}
+		}
+
+		HashMap<String, BenchmarkResult> baseline = (baseline_file_path != null) ? readCSV(baseline_file_path)
+				: new HashMap<String, BenchmarkResult>();
+
+		PrintWriter csv_out = null;
+		if (csv_file_path != null) {
+			csv_out = new PrintWriter(csv_file_path);
+			BenchmarkResult.writeCSVHeader(csv_out);
+		}
+		try {
+			for (Benchmark benchmark : getBenchmarks()) {
+				String name = benchmark.getQualifiedName();
+				if ((filter != null) && !name.contains(filter)) {
+					continue;
+				}
+				if (list_only) {
+					System.out.println(name);
+					continue;
+				}
+				BenchmarkResult result = runner.run(benchmark);
+				printSummary(result, baseline.get(name));
+				if (csv_out != null) {
+					result.writeCSVRow(csv_out);
+					csv_out.flush();
+				}
+			}
+		} finally {
+			if (csv_out != null) {
+				csv_out.close();
+			}
+		}
+		if (runner.sink == 42) {
+			System.out.println();
+		}
+	}
+}
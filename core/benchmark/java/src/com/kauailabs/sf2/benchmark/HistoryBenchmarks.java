@@ -0,0 +1,588 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.time.ColumnarInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.DirectBufferInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.HistoryListenerDispatcher;
+import com.kauailabs.sf2.time.HistoryListenerDispatcher.DispatchMode;
+import com.kauailabs.sf2.time.ITimeHistoryListener;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+/**
+ * Benchmarks of the ThreadsafeInterpolatingTimeHistory operations, at various
+ * fill levels, in both concurrency modes, and with concurrent readers and
+ * writers; also compares the garbage collection cost of the object, columnar
+ * and direct buffer history storage.
+ */
+public class HistoryBenchmarks {
+	static final int[] FILL_LEVELS = { 100, 1000, 10000 };
+	static final int[] CONTENDING_THREAD_COUNTS = { 1, 3 };
+	static final int LARGE_HISTORY_CAPACITY = 100000;
+	/* Timestamps are spaced as if the sensor updates at 100Hz. */
+	static final long SAMPLE_PERIOD_MS = 10;
+	static final int NUM_LOOKUP_TIMESTAMPS = 1024;
+	static final int LISTENER_FILL_LEVEL = 1000;
+	static final int LISTENER_QUEUE_CAPACITY = 1024;
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			for (int fill : FILL_LEVELS) {
+				benchmarks.add(new AddBenchmark(mode, fill));
+				benchmarks.add(new GetBenchmark(mode, fill));
+				benchmarks.add(new GetMostRecentBenchmark(mode, fill));
+				benchmarks.add(new CreateSnapshotBenchmark(mode, fill));
+				benchmarks.add(new WriteCSVBenchmark(mode, fill));
+			}
+			for (DispatchMode dispatch_mode : DispatchMode.values()) {
+				benchmarks.add(new AddWithListenerBenchmark(mode, LISTENER_FILL_LEVEL, dispatch_mode));
+			}
+			for (int threads : CONTENDING_THREAD_COUNTS) {
+				benchmarks.add(new ContendedGetBenchmark(mode, threads));
+				benchmarks.add(new ContendedAddBenchmark(mode, threads));
+			}
+		}
+		for (Storage storage : Storage.values()) {
+			benchmarks.add(new StorageAddGetBenchmark(storage));
+			benchmarks.add(new StorageFullGCBenchmark(storage));
+		}
+	}
+
+	static TimestampedValue<Quaternion> createSample() {
+		return new TimestampedValue<Quaternion>(new Quaternion());
+	}
+
+	/**
+	 * Initializes the provided sample with the n-th value of a sequence which
+	 * rotates slowly about the z axis.
+	 */
+	static void setSample(TimestampedValue<Quaternion> sample, long n) {
+		double half_angle = (n % 10000) * 0.0005;
+		sample.getValue().set((float) Math.cos(half_angle), 0, 0, (float) Math.sin(half_angle));
+		sample.setTimestamp(n * SAMPLE_PERIOD_MS);
+		sample.setValid(true);
+	}
+
+	/**
+	 * Returns timestamps randomly distributed over the provided number of
+	 * samples, which include both exact matches and timestamps which require
+	 * interpolation.
+	 */
+	static long[] createLookupTimestamps(long first_sample, int num_samples, long seed) {
+		Random random = new Random(seed);
+		long[] timestamps = new long[NUM_LOOKUP_TIMESTAMPS];
+		for (int i = 0; i < timestamps.length; i++) {
+			long sample = first_sample + random.nextInt(num_samples);
+			long offset = random.nextBoolean() ? 0 : random.nextInt((int) SAMPLE_PERIOD_MS);
+			timestamps[i] = (sample * SAMPLE_PERIOD_MS) + offset;
+		}
+		return timestamps;
+	}
+
+	/* A Writer which discards all output. */
+	static class NullWriter extends Writer {
+		long count;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Base class of the benchmarks which operate upon a history containing
+	 * the provided number of samples.
+	 */
+	static abstract class HistoryBenchmark extends Benchmark {
+		ConcurrencyMode mode;
+		int capacity;
+		int fill;
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history;
+		TimestampedValue<Quaternion> sample;
+		TimestampedValue<Quaternion> out;
+		long next_sample;
+
+		HistoryBenchmark(String name, ConcurrencyMode mode, int capacity, int fill) {
+			this(name, mode, capacity, fill, "");
+		}
+
+		HistoryBenchmark(String name, ConcurrencyMode mode, int capacity, int fill, String parameters) {
+			super("history", name, "mode=" + mode + ",fill=" + fill + parameters);
+			this.mode = mode;
+			this.capacity = capacity;
+			this.fill = fill;
+		}
+
+		@Override
+		public void setup() {
+			history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(createSample(),
+					capacity, null, "Quaternion", Quaternion.getUnits(), mode);
+			sample = createSample();
+			out = createSample();
+			for (next_sample = 0; next_sample < fill; next_sample++) {
+				setSample(sample, next_sample);
+				history.add(sample);
+			}
+		}
+
+		@Override
+		public void teardown() {
+			history = null;
+		}
+	}
+
+	/* Adds samples to a full history, each of which evicts the oldest. */
+	static class AddBenchmark extends HistoryBenchmark {
+		AddBenchmark(ConcurrencyMode mode, int fill) {
+			super("add", mode, fill, fill);
+		}
+
+		@Override
+		public long run(int operations) {
+			for (int i = 0; i < operations; i++) {
+				setSample(sample, next_sample++);
+				history.add(sample);
+			}
+			return next_sample;
+		}
+	}
+
+	/*
+	 * Adds samples to a full history which has one listener; an Async
+	 * listener which cannot keep up causes overflows, rather than delaying
+	 * add().
+	 */
+	static class AddWithListenerBenchmark extends HistoryBenchmark {
+		DispatchMode dispatch_mode;
+		HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher;
+		volatile long received_sequence;
+
+		AddWithListenerBenchmark(ConcurrencyMode mode, int fill, DispatchMode dispatch_mode) {
+			super("add", mode, fill, fill, ",listener=" + dispatch_mode);
+			this.dispatch_mode = dispatch_mode;
+		}
+
+		@Override
+		public void setup() {
+			super.setup();
+			dispatcher = history.addListener(new ITimeHistoryListener<TimestampedValue<Quaternion>>() {
+				public void sampleAdded(TimestampedValue<Quaternion> t, long sequence) {
+					received_sequence = sequence;
+				}
+			}, dispatch_mode, LISTENER_QUEUE_CAPACITY);
+		}
+
+		@Override
+		public long run(int operations) {
+			for (int i = 0; i < operations; i++) {
+				setSample(sample, next_sample++);
+				history.add(sample);
+			}
+			return next_sample;
+		}
+
+		@Override
+		public void teardown() {
+			history.removeListener(dispatcher.getListener());
+			super.teardown();
+		}
+	}
+
+	static class GetBenchmark extends HistoryBenchmark {
+		long[] timestamps;
+
+		GetBenchmark(ConcurrencyMode mode, int fill) {
+			super("get", mode, FILL_LEVELS[FILL_LEVELS.length - 1], fill);
+		}
+
+		@Override
+		public void setup() {
+			super.setup();
+			timestamps = createLookupTimestamps(1, fill - 2, fill);
+		}
+
+		@Override
+		public long run(int operations) {
+			long found = 0;
+			for (int i = 0; i < operations; i++) {
+				if (history.get(timestamps[i & (NUM_LOOKUP_TIMESTAMPS - 1)], out)) {
+					found++;
+				}
+			}
+			return found;
+		}
+	}
+
+	static class GetMostRecentBenchmark extends HistoryBenchmark {
+		GetMostRecentBenchmark(ConcurrencyMode mode, int fill) {
+			super("getMostRecent", mode, FILL_LEVELS[FILL_LEVELS.length - 1], fill);
+		}
+
+		@Override
+		public long run(int operations) {
+			long sum = 0;
+			for (int i = 0; i < operations; i++) {
+				if (history.getMostRecent(out)) {
+					sum += out.getTimestamp();
+				}
+			}
+			return sum;
+		}
+	}
+
+	static class CreateSnapshotBenchmark extends HistoryBenchmark {
+		CreateSnapshotBenchmark(ConcurrencyMode mode, int fill) {
+			super("create_snapshot", mode, FILL_LEVELS[FILL_LEVELS.length - 1], fill);
+		}
+
+		@Override
+		public long run(int operations) {
+			long count = 0;
+			for (int i = 0; i < operations; i++) {
+				count += history.create_snapshot().getValidSampleCount();
+			}
+			return count;
+		}
+	}
+
+	static class WriteCSVBenchmark extends HistoryBenchmark {
+		NullWriter null_writer;
+		PrintWriter print_writer;
+
+		WriteCSVBenchmark(ConcurrencyMode mode, int fill) {
+			super("writeCSV", mode, FILL_LEVELS[FILL_LEVELS.length - 1], fill);
+		}
+
+		@Override
+		public void setup() {
+			super.setup();
+			null_writer = new NullWriter();
+			print_writer = new PrintWriter(null_writer);
+		}
+
+		@Override
+		public long run(int operations) {
+			for (int i = 0; i < operations; i++) {
+				history.writeCSV(print_writer);
+			}
+			print_writer.flush();
+			return null_writer.count;
+		}
+	}
+
+	/**
+	 * Base class of the benchmarks which measure one thread's operations upon
+	 * a history while the provided number of other threads concurrently
+	 * access it.
+	 */
+	static abstract class ContendedBenchmark extends HistoryBenchmark {
+		static final int CAPACITY = 1000;
+		/*
+		 * Minimum period between samples added by a contending writer; an
+		 * unpaced writer could starve the readers of the Synchronized history.
+		 */
+		static final long WRITER_PERIOD_NS = 20000;
+		int contending_threads;
+		Thread[] threads;
+		volatile boolean running;
+		/* Sequence number of the most recent sample added. */
+		volatile long head_sample;
+
+		ContendedBenchmark(String name, ConcurrencyMode mode, int contending_threads) {
+			super(name, mode, CAPACITY, CAPACITY);
+			this.contending_threads = contending_threads;
+			this.parameters = "mode=" + mode + ",contending_threads=" + contending_threads;
+		}
+
+		@Override
+		public int getThreadCount() {
+			return contending_threads + 1;
+		}
+
+		@Override
+		public void setup() {
+			super.setup();
+			head_sample = next_sample - 1;
+			running = true;
+			threads = new Thread[contending_threads];
+			for (int i = 0; i < contending_threads; i++) {
+				final int index = i;
+				threads[i] = new Thread(new Runnable() {
+					public void run() {
+						contend(index);
+					}
+				}, "SF2 Benchmark Contender " + i);
+				threads[i].setDaemon(true);
+				threads[i].start();
+			}
+		}
+
+		@Override
+		public void teardown() {
+			running = false;
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.teardown();
+		}
+
+		/**
+		 * Reads recent samples until the benchmark is torn down.
+		 */
+		void read() {
+			TimestampedValue<Quaternion> read_out = createSample();
+			Random random = new Random();
+			long count = 0;
+			while (running) {
+				long sample = head_sample - random.nextInt(CAPACITY / 2);
+				if (history.get(sample * SAMPLE_PERIOD_MS + random.nextInt((int) SAMPLE_PERIOD_MS), read_out)) {
+					count++;
+				}
+			}
+			if (count == 42) {
+				System.out.println();
+			}
+		}
+
+		/**
+		 * Invoked on each contending thread.
+		 */
+		abstract void contend(int index);
+	}
+
+	/*
+	 * Measures get() while one contending thread adds samples at a high rate,
+	 * and any others continuously get() recent samples.
+	 */
+	static class ContendedGetBenchmark extends ContendedBenchmark {
+		Random random;
+
+		ContendedGetBenchmark(ConcurrencyMode mode, int contending_threads) {
+			super("contended_get", mode, contending_threads);
+		}
+
+		@Override
+		public void setup() {
+			random = new Random(1);
+			super.setup();
+		}
+
+		@Override
+		void contend(int index) {
+			if (index != 0) {
+				read();
+				return;
+			}
+			TimestampedValue<Quaternion> write_sample = createSample();
+			long n = next_sample;
+			while (running) {
+				setSample(write_sample, n);
+				history.add(write_sample);
+				head_sample = n++;
+				LockSupport.parkNanos(WRITER_PERIOD_NS);
+			}
+		}
+
+		@Override
+		public long run(int operations) {
+			long found = 0;
+			for (int i = 0; i < operations; i++) {
+				long requested_sample = head_sample - random.nextInt(CAPACITY / 2);
+				if (history.get(requested_sample * SAMPLE_PERIOD_MS + (i & 7), out)) {
+					found++;
+				}
+			}
+			return found;
+		}
+	}
+
+	/* Measures add() while the contending threads continuously get() recent samples. */
+	static class ContendedAddBenchmark extends ContendedBenchmark {
+		ContendedAddBenchmark(ConcurrencyMode mode, int contending_threads) {
+			super("contended_add", mode, contending_threads);
+		}
+
+		@Override
+		void contend(int index) {
+			read();
+		}
+
+		@Override
+		public long run(int operations) {
+			for (int i = 0; i < operations; i++) {
+				setSample(sample, next_sample);
+				history.add(sample);
+				head_sample = next_sample++;
+			}
+			return next_sample;
+		}
+	}
+
+	enum Storage {
+		Object, Columnar, DirectBuffer
+	};
+
+	/**
+	 * Base class of the benchmarks which compare the history storage
+	 * implementations, each holding a large number of samples.
+	 */
+	static abstract class StorageBenchmark extends Benchmark {
+		Storage storage;
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> object_history;
+		ColumnarInterpolatingTimeHistory<Quaternion> columnar_history;
+		DirectBufferInterpolatingTimeHistory<Quaternion> direct_buffer_history;
+		TimestampedValue<Quaternion> sample;
+		TimestampedValue<Quaternion> out;
+		long next_sample;
+
+		StorageBenchmark(String name, Storage storage) {
+			super("storage", name, "storage=" + storage + ",capacity=" + LARGE_HISTORY_CAPACITY);
+			this.storage = storage;
+		}
+
+		@Override
+		public void setup() {
+			sample = createSample();
+			out = createSample();
+			switch (storage) {
+			case Object:
+				object_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+						createSample(), LARGE_HISTORY_CAPACITY, null, "Quaternion", Quaternion.getUnits());
+				break;
+			case Columnar:
+				columnar_history = new ColumnarInterpolatingTimeHistory<Quaternion>(new Quaternion(),
+						LARGE_HISTORY_CAPACITY, null, "Quaternion", Quaternion.getUnits());
+				break;
+			case DirectBuffer:
+				direct_buffer_history = new DirectBufferInterpolatingTimeHistory<Quaternion>(new Quaternion(),
+						LARGE_HISTORY_CAPACITY, null, "Quaternion", Quaternion.getUnits());
+				break;
+			}
+			for (next_sample = 0; next_sample < LARGE_HISTORY_CAPACITY; next_sample++) {
+				add(next_sample);
+			}
+		}
+
+		@Override
+		public void teardown() {
+			object_history = null;
+			columnar_history = null;
+			direct_buffer_history = null;
+		}
+
+		void add(long n) {
+			setSample(sample, n);
+			switch (storage) {
+			case Object:
+				object_history.add(sample);
+				break;
+			case Columnar:
+				columnar_history.add(sample);
+				break;
+			case DirectBuffer:
+				direct_buffer_history.add(sample);
+				break;
+			}
+		}
+
+		boolean get(long timestamp) {
+			switch (storage) {
+			case Object:
+				return object_history.get(timestamp, out);
+			case Columnar:
+				return columnar_history.get(timestamp, out);
+			case DirectBuffer:
+				return direct_buffer_history.get(timestamp, out);
+			}
+			return false;
+		}
+	}
+
+	/* Adds one sample and retrieves (interpolates) a recent one. */
+	static class StorageAddGetBenchmark extends StorageBenchmark {
+		StorageAddGetBenchmark(Storage storage) {
+			super("add_get", storage);
+		}
+
+		@Override
+		public long run(int operations) {
+			long found = 0;
+			for (int i = 0; i < operations; i++) {
+				add(next_sample);
+				if (get((next_sample - (i & 1023)) * SAMPLE_PERIOD_MS - 5)) {
+					found++;
+				}
+				next_sample++;
+			}
+			return found;
+		}
+	}
+
+	/*
+	 * Measures the duration of a full garbage collection while the history is
+	 * live; the object storage adds two objects per sample to the heap which
+	 * must be traced, whereas the columnar and direct buffer storage add only
+	 * a few arrays or a buffer.
+	 */
+	static class StorageFullGCBenchmark extends StorageBenchmark {
+		StorageFullGCBenchmark(Storage storage) {
+			super("full_gc", storage);
+		}
+
+		@Override
+		public long run(int operations) {
+			for (int i = 0; i < operations; i++) {
+				System.gc();
+			}
+			return get(next_sample * SAMPLE_PERIOD_MS - SAMPLE_PERIOD_MS) ? 1 : 0;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.pose.Pose;
+import com.kauailabs.sf2.pose.drivetrain.DriveTrainParameters;
+import com.kauailabs.sf2.pose.drivetrain.IDriveTrainKinematics;
+import com.kauailabs.sf2.pose.drivetrain.Kinematics_Ackerman;
+import com.kauailabs.sf2.pose.drivetrain.Kinematics_Differential;
+import com.kauailabs.sf2.pose.drivetrain.Kinematics_HSlide;
+import com.kauailabs.sf2.pose.drivetrain.Kinematics_Mecanum;
+import com.kauailabs.sf2.pose.drivetrain.Kinematics_Omniwheel;
+import com.kauailabs.sf2.quantity.Scalar;
+import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+/**
+ * Benchmarks of the step() method of each IDriveTrainKinematics
+ * implementation.
+ */
+public class KinematicsBenchmarks {
+
+	enum DriveTrain {
+		Ackerman(2, 2), Differential(2, 0), HSlide(5, 0), Mecanum(4, 0), Omniwheel(3, 0);
+
+		int num_drive_wheels;
+		int num_steer_wheels;
+
+		DriveTrain(int num_drive_wheels, int num_steer_wheels) {
+			this.num_drive_wheels = num_drive_wheels;
+			this.num_steer_wheels = num_steer_wheels;
+		}
+
+		IDriveTrainKinematics createKinematics() {
+			DriveTrainParameters drive_params = new DriveTrainParameters();
+			drive_params.setNumDriveWheels(num_drive_wheels);
+			drive_params.setNumSteerWheels(num_steer_wheels);
+			switch (this) {
+			case Ackerman:
+				return new Kinematics_Ackerman(drive_params);
+			case Differential:
+				return new Kinematics_Differential(drive_params);
+			case HSlide:
+				return new Kinematics_HSlide(drive_params);
+			case Mecanum:
+				return new Kinematics_Mecanum(drive_params);
+			default:
+				return new Kinematics_Omniwheel(drive_params, 0);
+			}
+		}
+	};
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		for (DriveTrain drive_train : DriveTrain.values()) {
+			benchmarks.add(new KinematicsBenchmark(drive_train));
+		}
+	}
+
+	static List<TimestampedValue<Scalar>> createWheelValues(int num_wheels, float value) {
+		List<TimestampedValue<Scalar>> values = new ArrayList<TimestampedValue<Scalar>>();
+		for (int i = 0; i < num_wheels; i++) {
+			values.add(new TimestampedValue<Scalar>(new Scalar(value + i * 0.01f), 0));
+		}
+		return values;
+	}
+
+	static class KinematicsBenchmark extends Benchmark {
+		DriveTrain drive_train;
+		IDriveTrainKinematics kinematics;
+		Timestamp system_timestamp;
+		TimestampedValue<Pose> pose_last;
+		TimestampedValue<Pose> pose_curr;
+		TimestampedValue<Quaternion> quat_curr;
+		List<TimestampedValue<Scalar>> drive_wheel_distance_deltas;
+		List<TimestampedValue<Scalar>> steer_wheel_angles;
+		List<TimestampedValue<Scalar>> drive_motor_currents;
+
+		KinematicsBenchmark(DriveTrain drive_train) {
+			super("kinematics", "step", "drivetrain=" + drive_train);
+			this.drive_train = drive_train;
+		}
+
+		@Override
+		public void setup() {
+			kinematics = drive_train.createKinematics();
+			system_timestamp = new Timestamp(0, Timestamp.TimestampResolution.Millisecond);
+			pose_last = new TimestampedValue<Pose>(new Pose(new Quaternion()), 0);
+			pose_curr = new TimestampedValue<Pose>(new Pose(new Quaternion()), 0);
+			quat_curr = new TimestampedValue<Quaternion>(new Quaternion(0.9998477f, 0, 0, 0.0174524f),
+					HistoryBenchmarks.SAMPLE_PERIOD_MS);
+			drive_wheel_distance_deltas = createWheelValues(drive_train.num_drive_wheels, 0.5f);
+			steer_wheel_angles = (drive_train.num_steer_wheels > 0)
+					? createWheelValues(drive_train.num_steer_wheels, 5.0f) : null;
+			drive_motor_currents = createWheelValues(drive_train.num_drive_wheels, 10.0f);
+		}
+
+		@Override
+		public long run(int operations) {
+			long updated = 0;
+			for (int i = 0; i < operations; i++) {
+				if (kinematics.step(system_timestamp, pose_last, quat_curr, drive_wheel_distance_deltas,
+						steer_wheel_angles, drive_motor_currents, pose_curr)) {
+					updated++;
+				}
+				pose_last.copy(pose_curr);
+			}
+			return updated + Double.doubleToLongBits(pose_curr.getValue().getOffsetInchesX());
+		}
+	}
+}
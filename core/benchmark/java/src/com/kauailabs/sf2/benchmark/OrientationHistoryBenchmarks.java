@@ -0,0 +1,236 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.orientation.OrientationHistory;
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.sensor.IProcessorInfo;
+import com.kauailabs.sf2.sensor.ISensorDataSource;
+import com.kauailabs.sf2.sensor.ISensorDataSubscriber;
+import com.kauailabs.sf2.sensor.ISensorInfo;
+import com.kauailabs.sf2.sensor.SensorDataSourceInfo;
+import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampInfo;
+import com.kauailabs.sf2.units.Unit;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * Benchmarks of the OrientationHistory, which is fed by a synthetic
+ * quaternion sensor.
+ */
+public class OrientationHistoryBenchmarks {
+	static final int[] FILL_LEVELS = { 100, 1000 };
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		for (int fill : FILL_LEVELS) {
+			for (boolean incremental : new boolean[] { false, true }) {
+				addCovarianceBenchmarks(benchmarks, fill, incremental);
+			}
+			benchmarks.add(new OrientationHistoryBenchmark("getYawDegreesAtTime", fill, false) {
+				@Override
+				public long run(int operations) {
+					double sum = 0;
+					long newest_timestamp = (next_sample - 1) * HistoryBenchmarks.SAMPLE_PERIOD_MS;
+					for (int i = 0; i < operations; i++) {
+						sum += history.getYawDegreesAtTime(newest_timestamp - (i & 255));
+					}
+					return Double.doubleToLongBits(sum);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Adds the calculate_covariance and publish benchmarks, which depend upon
+	 * whether the covariance is maintained incrementally.
+	 */
+	static void addCovarianceBenchmarks(List<Benchmark> benchmarks, int fill, boolean incremental) {
+		benchmarks.add(new OrientationHistoryBenchmark("calculate_covariance", fill, incremental) {
+			@Override
+			public long run(int operations) {
+				long calculated = 0;
+				for (int i = 0; i < operations; i++) {
+					if (history.calculate_covariance(orientation_matrix, angular_velocity_matrix)) {
+						calculated++;
+					}
+				}
+				return calculated;
+			}
+		});
+		benchmarks.add(new OrientationHistoryBenchmark("publish", fill, incremental) {
+			@Override
+			public long run(int operations) {
+				for (int i = 0; i < operations; i++) {
+					sensor.publish(next_sample++);
+				}
+				return next_sample;
+			}
+		});
+	}
+
+	static abstract class OrientationHistoryBenchmark extends Benchmark {
+		int fill;
+		boolean incremental;
+		SyntheticQuaternionSensor sensor;
+		OrientationHistory history;
+		Matrix orientation_matrix;
+		Matrix angular_velocity_matrix;
+		long next_sample;
+
+		OrientationHistoryBenchmark(String name, int fill, boolean incremental) {
+			super("orientation_history", name, "fill=" + fill + (incremental ? ",covariance=incremental" : ""));
+			this.fill = fill;
+			this.incremental = incremental;
+		}
+
+		@Override
+		public void setup() {
+			sensor = new SyntheticQuaternionSensor();
+			history = new OrientationHistory(sensor, fill);
+			if (incremental) {
+				history.enableIncrementalCovariance();
+			}
+			String[] dimension_names = { "Yaw", "Pitch", "Roll" };
+			orientation_matrix = new Matrix("Orientation", 3, dimension_names);
+			angular_velocity_matrix = new Matrix("AngularVelocity", 3, dimension_names);
+			for (next_sample = 0; next_sample < fill; next_sample++) {
+				sensor.publish(next_sample);
+			}
+		}
+
+		@Override
+		public void teardown() {
+			sensor.unsubscribe(history);
+			history = null;
+		}
+	}
+
+	/**
+	 * A sensor which publishes a slowly rotating quaternion to its
+	 * subscribers whenever publish() is invoked.
+	 */
+	static class SyntheticQuaternionSensor implements ISensorInfo, ISensorDataSource {
+		ArrayList<ISensorDataSubscriber> subscribers;
+		ArrayList<SensorDataSourceInfo> sensor_data_source_infos;
+		IQuantity[] quantities;
+		TimestampInfo ts_info;
+		Timestamp system_timestamp;
+
+		SyntheticQuaternionSensor() {
+			subscribers = new ArrayList<ISensorDataSubscriber>();
+			Timestamp ts = new Timestamp(0, Timestamp.TimestampResolution.Millisecond);
+			ts_info = new TimestampInfo(TimestampInfo.Scope.Sensor, TimestampInfo.Basis.SinceLastReboot,
+					1.0 / Timestamp.MILLISECONDS_PER_SECOND, 1.0 / Timestamp.MILLISECONDS_PER_SECOND, 0, 0, ts);
+			sensor_data_source_infos = new ArrayList<SensorDataSourceInfo>();
+			sensor_data_source_infos.add(
+					new SensorDataSourceInfo("Timestamp", ts, new IUnit[] { new Unit().new Time().new Milliseconds() }));
+			sensor_data_source_infos.add(new SensorDataSourceInfo("Quaternion", new Quaternion(), Quaternion.getUnits()));
+			quantities = new IQuantity[] { new Timestamp(0, Timestamp.TimestampResolution.Millisecond),
+					new Quaternion() };
+			system_timestamp = new Timestamp(0, Timestamp.TimestampResolution.Millisecond);
+		}
+
+		/**
+		 * Publishes the n-th sample, which is timestamped as if the sensor
+		 * updates at 100Hz, to all subscribers.
+		 */
+		void publish(long n) {
+			double yaw = (n % 10000) * 0.001;
+			double pitch = Math.sin(n * 0.01) * 0.05;
+			Quaternion q = (Quaternion) quantities[1];
+			q.set((float) Math.cos(yaw / 2), (float) (Math.sin(pitch / 2) * Math.cos(yaw / 2)), 0,
+					(float) Math.sin(yaw / 2));
+			((Timestamp) quantities[0]).setTimestamp(n * HistoryBenchmarks.SAMPLE_PERIOD_MS);
+			system_timestamp.setTimestamp(n * HistoryBenchmarks.SAMPLE_PERIOD_MS);
+			for (int i = 0; i < subscribers.size(); i++) {
+				subscribers.get(i).publish(quantities, system_timestamp);
+			}
+		}
+
+		@Override
+		public boolean subscribe(ISensorDataSubscriber subscriber) {
+			if (subscribers.contains(subscriber)) {
+				return false;
+			}
+			subscribers.add(subscriber);
+			return true;
+		}
+
+		@Override
+		public boolean unsubscribe(ISensorDataSubscriber subscriber) {
+			return subscribers.remove(subscriber);
+		}
+
+		@Override
+		public boolean getCurrent(IQuantity[] quantities, Timestamp curr_ts) {
+			return false;
+		}
+
+		@Override
+		public boolean reset(int quantity_index) {
+			return false;
+		}
+
+		@Override
+		public void getSensorDataSourceInfos(ArrayList<SensorDataSourceInfo> out) {
+			out.addAll(sensor_data_source_infos);
+		}
+
+		@Override
+		public String getMake() {
+			return "Kauai Labs";
+		}
+
+		@Override
+		public String getModel() {
+			return "Synthetic Quaternion Sensor";
+		}
+
+		@Override
+		public String getName() {
+			return "SyntheticQuaternionSensor";
+		}
+
+		@Override
+		public ISensorDataSource getSensorDataSource() {
+			return this;
+		}
+
+		@Override
+		public TimestampInfo getSensorTimestampInfo() {
+			return ts_info;
+		}
+
+		@Override
+		public IProcessorInfo getHostProcessorInfo() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.Scalar;
+
+/**
+ * Benchmarks of the Quaternion operations used when interpolating orientation
+ * histories and estimating pose.
+ */
+public class QuaternionBenchmarks {
+	static final int NUM_QUATERNIONS = 256;
+
+	public static void addTo(List<Benchmark> benchmarks) {
+		benchmarks.add(new QuaternionBenchmark("slerp") {
+			@Override
+			public long run(int operations) {
+				for (int i = 0; i < operations; i++) {
+					Quaternion.slerp(quaternions[i & (NUM_QUATERNIONS - 1)],
+							quaternions[(i + 1) & (NUM_QUATERNIONS - 1)], 0.25, out);
+				}
+				return Float.floatToIntBits(out.getW());
+			}
+		});
+		benchmarks.add(new QuaternionBenchmark("getYawRadians") {
+			@Override
+			public long run(int operations) {
+				double sum = 0;
+				for (int i = 0; i < operations; i++) {
+					quaternions[i & (NUM_QUATERNIONS - 1)].getYawRadians(yaw);
+					sum += yaw.get();
+				}
+				return Double.doubleToLongBits(sum);
+			}
+		});
+		benchmarks.add(new QuaternionBenchmark("difference") {
+			@Override
+			public long run(int operations) {
+				for (int i = 0; i < operations; i++) {
+					Quaternion.difference(quaternions[i & (NUM_QUATERNIONS - 1)],
+							quaternions[(i + 1) & (NUM_QUATERNIONS - 1)], out);
+				}
+				return Float.floatToIntBits(out.getW());
+			}
+		});
+	}
+
+	static abstract class QuaternionBenchmark extends Benchmark {
+		Quaternion[] quaternions;
+		Quaternion out;
+		Scalar yaw;
+
+		QuaternionBenchmark(String name) {
+			super("quaternion", name, "");
+		}
+
+		@Override
+		public void setup() {
+			Random random = new Random(NUM_QUATERNIONS);
+			quaternions = new Quaternion[NUM_QUATERNIONS];
+			for (int i = 0; i < NUM_QUATERNIONS; i++) {
+				float w = (float) random.nextGaussian();
+				float x = (float) random.nextGaussian();
+				float y = (float) random.nextGaussian();
+				float z = (float) random.nextGaussian();
+				float norm = (float) Math.sqrt(w * w + x * x + y * y + z * z);
+				quaternions[i] = new Quaternion(w / norm, x / norm, y / norm, z / norm);
+			}
+			out = new Quaternion();
+			yaw = new Scalar();
+		}
+	}
+}
@@ -65,24 +65,25 @@ public class Matrix extends CSVFileWriter implements ICSVFileWriter {
 		if (num_dimensions > 0) {
 			success = true;
 			/* Write Header */
-			String header = ",";
+			StringBuilder line = new StringBuilder(",");
 			for ( int i = 0; i < num_dimensions; i++) {
-				header += dimension_names[i];
+				line.append(dimension_names[i]);
 				if(i < (num_dimensions -1)){
-					header += ",";
+					line.append(',');
 				}
 			}
-			out.println(header);
+			out.println(line);
 
 			for (int x = 0; x < num_dimensions; x++) {
-				String row = ",";
+				line.setLength(0);
+				line.append(',');
 				for (int y = 0; y < num_dimensions; y++) {
-					row += matrix[x][y];
+					line.append(matrix[x][y]);
 					if( y < (num_dimensions -1)){
-						row += ",";
+						line.append(',');
 					}
 				}
-				out.println(row);
+				out.println(line);
 			}
 		}
 		return success;
@@ -0,0 +1,109 @@
+package com.kauailabs.sf2.math;
+
+/**
+ * Maintains the mean and covariance of a set of samples as samples are added
+ * to and removed from the set, using Welford's algorithm. Each update costs
+ * O(d^2) for d dimensions, and no update allocates. The sums are accumulated
+ * in double precision, so that removing samples does not accumulate
+ * significant error.
+ * <p>
+ * A RunningCovariance is not threadsafe.
+ */
+public class RunningCovariance {
+	int num_dimensions;
+	long count;
+	double mean[];
+	/* Sum of products of deviations from the mean (the co-moment). */
+	double comoment[][];
+	double delta[];
+
+	public RunningCovariance(int num_dimensions) {
+		this.num_dimensions = num_dimensions;
+		mean = new double[num_dimensions];
+		comoment = new double[num_dimensions][num_dimensions];
+		delta = new double[num_dimensions];
+	}
+
+	public int getNumDimensions() {
+		return num_dimensions;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean(int dimension) {
+		return mean[dimension];
+	}
+
+	public void reset() {
+		count = 0;
+		for (int x = 0; x < num_dimensions; x++) {
+			mean[x] = 0;
+			for (int y = 0; y < num_dimensions; y++) {
+				comoment[x][y] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Adds a sample to the set.
+	 * 
+	 * @param sample
+	 *            - the sample's values; the first num_dimensions elements are
+	 *            used, beginning at the provided offset.
+	 */
+	public void add(float[] sample, int offset) {
+		count++;
+		for (int x = 0; x < num_dimensions; x++) {
+			delta[x] = sample[offset + x] - mean[x];
+			mean[x] += delta[x] / count;
+		}
+		for (int x = 0; x < num_dimensions; x++) {
+			double deviation = sample[offset + x] - mean[x];
+			for (int y = 0; y < num_dimensions; y++) {
+				comoment[x][y] += delta[y] * deviation;
+			}
+		}
+	}
+
+	/**
+	 * Removes a sample, which must previously have been added, from the set.
+	 */
+	public void remove(float[] sample, int offset) {
+		if (count <= 1) {
+			reset();
+			return;
+		}
+		for (int x = 0; x < num_dimensions; x++) {
+			delta[x] = sample[offset + x] - mean[x];
+			mean[x] -= delta[x] / (count - 1);
+		}
+		for (int x = 0; x < num_dimensions; x++) {
+			double deviation = sample[offset + x] - mean[x];
+			for (int y = 0; y < num_dimensions; y++) {
+				comoment[x][y] -= delta[y] * deviation;
+			}
+		}
+		count--;
+	}
+
+	/**
+	 * Writes the (sample) covariance of the current set into the provided
+	 * matrix, which must have the same dimensionality.
+	 * 
+	 * @return false if the set contains fewer than two samples.
+	 */
+	public boolean getCovariance(Matrix out) {
+		if ((count < 2) || (out.get_num_dimensions() != num_dimensions)) {
+			return false;
+		}
+		float[][] matrix = out.get_matrix();
+		for (int x = 0; x < num_dimensions; x++) {
+			for (int y = 0; y < num_dimensions; y++) {
+				matrix[x][y] = (float) (comoment[x][y] / (count - 1));
+			}
+		}
+		return true;
+	}
+}
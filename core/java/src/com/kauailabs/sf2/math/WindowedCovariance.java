@@ -0,0 +1,133 @@
+package com.kauailabs.sf2.math;
+
+/**
+ * Maintains the covariance of the samples within a sliding window, and
+ * optionally of the differences between consecutive samples. Samples are
+ * added at the newest end of the window, and removed from the oldest end
+ * (e.g., as they are evicted from a history), so that the covariances are
+ * always available in O(d^2) time. The window grows as needed; once it has
+ * reached its steady-state size, adding and removing samples does not
+ * allocate.
+ * <p>
+ * A WindowedCovariance is not threadsafe.
+ */
+public class WindowedCovariance {
+	int num_dimensions;
+	RunningCovariance values;
+	RunningCovariance deltas;
+	/* Ring of the samples within the window; num_dimensions floats each. */
+	float window[];
+	int oldest;
+	int count;
+	float delta[];
+
+	/**
+	 * @param num_dimensions
+	 *            - the number of values in each sample.
+	 * @param initial_window_size
+	 *            - the number of samples for which storage is initially
+	 *            allocated.
+	 * @param track_deltas
+	 *            - if true, the covariance of the differences between
+	 *            consecutive samples is also maintained.
+	 */
+	public WindowedCovariance(int num_dimensions, int initial_window_size, boolean track_deltas) {
+		this.num_dimensions = num_dimensions;
+		values = new RunningCovariance(num_dimensions);
+		if (track_deltas) {
+			deltas = new RunningCovariance(num_dimensions);
+		}
+		window = new float[Math.max(2, initial_window_size) * num_dimensions];
+		delta = new float[num_dimensions];
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void reset() {
+		oldest = 0;
+		count = 0;
+		values.reset();
+		if (deltas != null) {
+			deltas.reset();
+		}
+	}
+
+	/**
+	 * Adds a sample at the newest end of the window.
+	 */
+	public void add(float[] sample) {
+		if (count * num_dimensions == window.length) {
+			grow();
+		}
+		int newest_offset = getOffset(count);
+		if ((deltas != null) && (count > 0)) {
+			int previous_offset = getOffset(count - 1);
+			for (int x = 0; x < num_dimensions; x++) {
+				delta[x] = sample[x] - window[previous_offset + x];
+			}
+			deltas.add(delta, 0);
+		}
+		System.arraycopy(sample, 0, window, newest_offset, num_dimensions);
+		values.add(window, newest_offset);
+		count++;
+	}
+
+	/**
+	 * Removes samples from the oldest end of the window until it contains at
+	 * most the provided number of samples.
+	 */
+	public void trim(int max_count) {
+		while (count > max_count) {
+			int oldest_offset = getOffset(0);
+			values.remove(window, oldest_offset);
+			if ((deltas != null) && (count > 1)) {
+				int next_offset = getOffset(1);
+				for (int x = 0; x < num_dimensions; x++) {
+					delta[x] = window[next_offset + x] - window[oldest_offset + x];
+				}
+				deltas.remove(delta, 0);
+			}
+			oldest = (oldest + 1) % (window.length / num_dimensions);
+			count--;
+		}
+		if (count == 0) {
+			reset();
+		}
+	}
+
+	/**
+	 * Writes the covariance of the samples within the window into the
+	 * provided matrix.
+	 * 
+	 * @return false if the window contains fewer than two samples.
+	 */
+	public boolean getCovariance(Matrix out) {
+		return values.getCovariance(out);
+	}
+
+	/**
+	 * Writes the covariance of the differences between consecutive samples
+	 * within the window into the provided matrix.
+	 * 
+	 * @return false if the window contains fewer than three samples, or if
+	 *         deltas are not tracked.
+	 */
+	public boolean getDeltaCovariance(Matrix out) {
+		return (deltas != null) && deltas.getCovariance(out);
+	}
+
+	int getOffset(int index) {
+		return ((oldest + index) % (window.length / num_dimensions)) * num_dimensions;
+	}
+
+	void grow() {
+		float[] grown = new float[window.length * 2];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(window, getOffset(i), grown, i * num_dimensions, num_dimensions);
+		}
+		window = grown;
+		oldest = 0;
+	}
+}
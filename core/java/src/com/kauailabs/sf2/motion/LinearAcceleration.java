@@ -5,10 +5,13 @@ import java.util.ArrayList;
 import com.kauailabs.sf2.interpolation.IInterpolate;
 import com.kauailabs.sf2.orientation.Quaternion;
 import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
+import com.kauailabs.sf2.quantity.IFieldSource;
 import com.kauailabs.sf2.quantity.IQuantity;
 import com.kauailabs.sf2.quantity.Scalar;
 
-public class LinearAcceleration  implements IInterpolate<LinearAcceleration>, ICopy<LinearAcceleration>, IQuantity {
+public class LinearAcceleration  implements IInterpolate<LinearAcceleration>, ICopy<LinearAcceleration>, IQuantity, IFieldCodec {
 	
 	float x;
 	float y;
@@ -156,4 +159,35 @@ public class LinearAcceleration  implements IInterpolate<LinearAcceleration>, IC
 		
 		out.set(new_x, new_y, new_z);
 	}
-}
\ No newline at end of file
+
+	static final String[] FIELD_NAMES = { "X", "Y", "Z" };
+
+	@Override
+	public int getFieldCount() {
+		return FIELD_NAMES.length;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return FIELD_NAMES[index];
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Float;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putFloat(x);
+		sink.putFloat(y);
+		sink.putFloat(z);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		x = source.getFloat();
+		y = source.getFloat();
+		z = source.getFloat();
+	}
+}
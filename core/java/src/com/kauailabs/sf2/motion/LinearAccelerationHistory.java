@@ -25,8 +25,13 @@ THE SOFTWARE.
 package com.kauailabs.sf2.motion;
 
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.StampedLock;
 
 import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.math.WindowedCovariance;
+import com.kauailabs.sf2.persistence.AsyncFileWriter;
+import com.kauailabs.sf2.persistence.CSVLogWriter;
 import com.kauailabs.sf2.quantity.IQuantity;
 import com.kauailabs.sf2.quantity.Scalar;
 import com.kauailabs.sf2.quantity.Topic;
@@ -34,8 +39,15 @@ import com.kauailabs.sf2.sensor.ISensorDataSource;
 import com.kauailabs.sf2.sensor.ISensorDataSubscriber;
 import com.kauailabs.sf2.sensor.ISensorInfo;
 import com.kauailabs.sf2.sensor.SensorDataSourceInfo;
+import com.kauailabs.sf2.time.CompressedHistoryArchive;
+import com.kauailabs.sf2.time.HistoryListenerDispatcher;
+import com.kauailabs.sf2.time.ITimeHistoryListener;
+import com.kauailabs.sf2.time.ITimestampedValueVisitor;
 import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.TimeHistoryView;
 import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampConvertingVisitor;
+import com.kauailabs.sf2.time.TimestampInfo;
 import com.kauailabs.sf2.time.TimestampedValue;
 
 /**
@@ -64,7 +76,28 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 	int timestamp_quantity_index;
 	TimestampedValue<LinearAcceleration> temp_tsq;
 	Timestamp system_timestamp;
+	/* Resolution of the timestamps within the linear acceleration history. */
+	Timestamp.TimestampResolution timestamp_resolution;
+	CSVLogWriter log_writer;
+	/* Reusable state used when calculating covariance. */
+	TimeHistoryView<TimestampedValue<LinearAcceleration>> covariance_view;
+	TimestampedValue<LinearAcceleration> covariance_sample;
+	float[][] covariance_accel;
+	float[] covariance_accel_avg;
+	/* Maintained as each value is added; null unless enabled. */
+	volatile IncrementalCovariance incremental_covariance;
 	
+	/**
+	 * The highest sensor update rate for which a duration-based
+	 * LinearAccelerationHistory will allocate storage.
+	 */
+	public static final int MAX_SENSOR_UPDATE_RATE_HZ = 1000;
+
+	/**
+	 * @deprecated The length of a LinearAccelerationHistory is no longer
+	 *             limited; this value is no longer enforced.
+	 */
+	@Deprecated
 	public final int MAX_HISTORY_LENGTH_NUM_SAMPLES = 1000;
 
 	/**
@@ -72,24 +105,41 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 	 * LinearAccelerationHistory registers for incoming data using the provided
 	 * ISensorInfo object.
 	 * 
-	 * @param quat_sensor
-	 *            - the sensor to acquire TimestampedLinearAcceleration objects from.
-	 * @param history_length_seconds
-	 *            - the length of the history, in seconds. The actual length of
-	 *            the history in number of objects is calculated internally by 
-	 *            accessing the sensor's current update rate. <i>Note: if the 
-	 *            sensor update rate is changed, after this constructor is invoked, 
-	 *            the length of the history may no longer accurately reflect the 
-	 *            originally-configured length.</i>
 	 * @param linear_accel_sensor
 	 *            - the sensor to use as the source of TimestampedLinearAccelerations
 	 *            contained in the History
-	 * @param history_length_seconds
-	 *            - the number of seconds the history will represent. This value
-	 *            may not be larger than @value
-	 *            #MAX_HISTORY_LENGTH_NUM_SAMPLES seconds.
+	 * @param history_length_num_samples
+	 *            - the number of TimestampedLinearAccelerations the history
+	 *            will contain.
 	 */
 	public LinearAccelerationHistory(ISensorInfo linear_accel_sensor, int history_length_num_samples) {
+		this(linear_accel_sensor, history_length_num_samples, 0);
+	}
+
+	/**
+	 * Creates a LinearAccelerationHistory object which retains the data
+	 * received over a specified period of time. The LinearAccelerationHistory
+	 * registers for incoming data using the provided ISensorInfo object.
+	 * <p>
+	 * The length of the history in number of objects is adjusted
+	 * automatically, based upon the update rate measured from the sensor's
+	 * timestamps; it remains accurate if the sensor update rate is changed.
+	 * 
+	 * @param linear_accel_sensor
+	 *            - the sensor to use as the source of TimestampedLinearAccelerations
+	 *            contained in the History
+	 * @param history_length_seconds
+	 *            - the number of seconds the history will represent.
+	 */
+	public static LinearAccelerationHistory forDuration(ISensorInfo linear_accel_sensor,
+			double history_length_seconds) {
+		return new LinearAccelerationHistory(linear_accel_sensor,
+				(int) Math.ceil(history_length_seconds * MAX_SENSOR_UPDATE_RATE_HZ),
+				(long) Math.ceil(history_length_seconds * Timestamp.MILLISECONDS_PER_SECOND));
+	}
+
+	LinearAccelerationHistory(ISensorInfo linear_accel_sensor, int history_length_num_samples,
+			long retention_duration_ms) {
 
 		this.linear_accel_sensor = linear_accel_sensor.getSensorDataSource();
 
@@ -118,16 +168,24 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 					+ "must contain a SensorDataSourceInfo object named '" + Topic.TIMESTAMP + "'.");
 		}
 
-		if (history_length_num_samples > MAX_HISTORY_LENGTH_NUM_SAMPLES) {
-			history_length_num_samples = MAX_HISTORY_LENGTH_NUM_SAMPLES;
-		}
+		timestamp_resolution = TimestampInfo.getHistoryResolution(linear_accel_sensor.getSensorTimestampInfo());
+
 		LinearAcceleration default_linear_accel = new LinearAcceleration();
 		TimestampedValue<LinearAcceleration> default_ts_linear_accel = 
 				new TimestampedValue<LinearAcceleration>(default_linear_accel);
-		this.history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<LinearAcceleration>>(default_ts_linear_accel,
-				history_length_num_samples, linear_accel_sensor.getSensorTimestampInfo(),
-				sensor_data_source_infos.get(linear_acceleration_quantity_index).getName(),
-				sensor_data_source_infos.get(linear_acceleration_quantity_index).getQuantityUnits());
+		if (retention_duration_ms > 0) {
+			this.history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<LinearAcceleration>>(
+					default_ts_linear_accel, toHistoryTimestamp(retention_duration_ms), history_length_num_samples,
+					linear_accel_sensor.getSensorTimestampInfo(),
+					sensor_data_source_infos.get(linear_acceleration_quantity_index).getName(),
+					sensor_data_source_infos.get(linear_acceleration_quantity_index).getQuantityUnits(),
+					ThreadsafeInterpolatingTimeHistory.ConcurrencyMode.Synchronized);
+		} else {
+			this.history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<LinearAcceleration>>(
+					default_ts_linear_accel, history_length_num_samples, linear_accel_sensor.getSensorTimestampInfo(),
+					sensor_data_source_infos.get(linear_acceleration_quantity_index).getName(),
+					sensor_data_source_infos.get(linear_acceleration_quantity_index).getQuantityUnits());
+		}
 
 		this.linear_accel_sensor.subscribe(this);
 
@@ -136,6 +194,12 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 		temp_tsq = new TimestampedValue<LinearAcceleration>(new LinearAcceleration());
 		
 		system_timestamp = new Timestamp();
+
+		log_writer = history.createLogWriter();
+
+		covariance_view = history.createView();
+		covariance_sample = new TimestampedValue<LinearAcceleration>(new LinearAcceleration());
+		covariance_accel_avg = new float[3];
 	}
 
 	/**
@@ -148,7 +212,8 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 	}
 
 	/**
-	 * Retrieves the most recently added Quaternion.
+	 * Retrieves the most recently added Quaternion. Its timestamp is at the
+	 * resolution of this history (see getTimestampResolution()).
 	 * 
 	 * @return
 	 */
@@ -156,6 +221,31 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 		return history.getMostRecent(out);
 	}
 
+	/**
+	 * Returns the resolution of the timestamps of the
+	 * TimestampedLinearAccelerations within this history: that of the sensor's
+	 * timestamps, but no coarser than milliseconds.
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return timestamp_resolution;
+	}
+
+	long toHistoryTimestamp(long timestamp_ms) {
+		return Timestamp.convert(timestamp_ms, Timestamp.TimestampResolution.Millisecond, timestamp_resolution);
+	}
+
+	/**
+	 * Converts the timestamp of a TimestampedLinearAcceleration retrieved by
+	 * one of the millisecond lookups to milliseconds, as it was before the
+	 * history stored timestamps at the sensor's resolution.
+	 */
+	boolean toMilliseconds(boolean found, TimestampedValue<LinearAcceleration> out) {
+		if (found) {
+			Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		}
+		return found;
+	}
+
 	/**
 	 * Retrieves the TimestampedLinearAcceleration at the specified sensor timestamp. If
 	 * an exact timestamp match occurs, a TimestampedLinearAcceleration representing the
@@ -166,11 +256,66 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 	 * or interpolated value estimated, null is returned.
 	 * 
 	 * @param requested_timestamp
-	 *            - sensor timestamp to retrieve
+	 *            - sensor timestamp to retrieve, in milliseconds; the
+	 *            timestamp of the retrieved TimestampedLinearAcceleration is
+	 *            also in milliseconds.
 	 * @return TimestampedLinearAcceleration at requested timestamp, or null.
 	 */
 	public boolean getLinearAccelerationAtTime(long requested_timestamp, TimestampedValue<LinearAcceleration> out) {
-		return history.get(requested_timestamp, out);
+		return toMilliseconds(history.get(toHistoryTimestamp(requested_timestamp), out), out);
+	}
+
+	/**
+	 * Retrieves the TimestampedLinearAcceleration at the specified sensor
+	 * timestamp, as getLinearAccelerationAtTime(long) does, but without
+	 * truncating the timestamp to milliseconds. The timestamp of the
+	 * retrieved TimestampedLinearAcceleration is at the resolution of this
+	 * history (see getTimestampResolution()).
+	 */
+	public boolean getLinearAccelerationAtTime(Timestamp requested_timestamp,
+			TimestampedValue<LinearAcceleration> out) {
+		return history.get(requested_timestamp.getTimestamp(timestamp_resolution), out);
+	}
+
+	/**
+	 * Retrieves the TimestampedLinearAccelerations at each of the specified
+	 * sensor timestamps, resolving all requests in a single pass through the
+	 * history.
+	 * 
+	 * @param requested_timestamps
+	 *            - sensor timestamps to retrieve, in milliseconds
+	 * @param out
+	 *            - receives the TimestampedLinearAccelerations (with
+	 *            timestamps in milliseconds); out[i] corresponds to
+	 *            requested_timestamps[i], and is marked invalid if it could
+	 *            not be found or interpolated.
+	 * @return the number of TimestampedLinearAccelerations found or
+	 *         interpolated.
+	 */
+	public int getLinearAccelerationsAtTimes(long[] requested_timestamps,
+			TimestampedValue<LinearAcceleration>[] out) {
+		int num_found = history.get(Timestamp.convert(requested_timestamps,
+				Timestamp.TimestampResolution.Millisecond, timestamp_resolution), out);
+		Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		return num_found;
+	}
+
+	/**
+	 * Resamples the linear acceleration history onto a uniform time grid. See
+	 * ThreadsafeInterpolatingTimeHistory.resample(). The start and end
+	 * timestamps and the period are in milliseconds, as are the timestamps of
+	 * the visited TimestampedLinearAccelerations.
+	 * 
+	 * @return the number of grid points provided to the visitor.
+	 */
+	public int resampleLinearAccelerations(long start_timestamp, long end_timestamp, long period,
+			ITimestampedValueVisitor<TimestampedValue<LinearAcceleration>> visitor) {
+		if (timestamp_resolution != Timestamp.TimestampResolution.Millisecond) {
+			visitor = new TimestampConvertingVisitor<TimestampedValue<LinearAcceleration>>(visitor,
+					timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		}
+		return history.resample(toHistoryTimestamp(start_timestamp), toHistoryTimestamp(end_timestamp),
+				toHistoryTimestamp(period), visitor);
 	}
 
 	@Override
@@ -182,21 +327,213 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 			sensor_timestamp = sys_timestamp;
 		}
 		LinearAcceleration value = ((LinearAcceleration) curr_values[linear_acceleration_quantity_index]);
-		temp_tsq.set(value,  sensor_timestamp.getMilliseconds());
+		temp_tsq.set(value,  sensor_timestamp.getTimestamp(timestamp_resolution));
 		history.add(temp_tsq);
+		IncrementalCovariance covariance = incremental_covariance;
+		if (covariance != null) {
+			covariance.update();
+		}
+	}
+
+	/**
+	 * Enables incremental calculation of the covariances returned by
+	 * calculate_covariance(). The covariances are then updated as each value
+	 * is added to (or evicted from) the history, rather than recalculated
+	 * from the entire history, so that calculate_covariance() takes constant
+	 * time and does not allocate.
+	 * <p>
+	 * Values are assumed to be added in timestamp order. The covariances are
+	 * initialized from the current contents of the history by the calling
+	 * thread, rather than by the thread which publishes values.
+	 */
+	public synchronized void enableIncrementalCovariance() {
+		if (incremental_covariance != null) {
+			return;
+		}
+		incremental_covariance = new IncrementalCovariance();
+	}
+
+	public synchronized void disableIncrementalCovariance() {
+		incremental_covariance = null;
+	}
+
+	/**
+	 * Maintains the covariance of the history's values as they are added to
+	 * and evicted from it. The window is only modified by the thread which
+	 * publishes values (after it has been initialized); the resulting
+	 * covariance is copied to readers via optimistic reads, so that
+	 * publishing never waits for a reader.
+	 */
+	class IncrementalCovariance {
+		WindowedCovariance covariance;
+		TimeHistoryView<TimestampedValue<LinearAcceleration>> view;
+		TimestampedValue<LinearAcceleration> sample;
+		float[] accel;
+		/* Guards the results below; readers only use optimistic reads. */
+		StampedLock results_lock;
+		int result_count;
+		Matrix result;
+
+		IncrementalCovariance() {
+			covariance = new WindowedCovariance(3, history.getCapacity(), false);
+			view = history.createView();
+			sample = new TimestampedValue<LinearAcceleration>(new LinearAcceleration());
+			accel = new float[3];
+			results_lock = new StampedLock();
+			result = new Matrix("LinearAcceleration", 3, null);
+			view.refresh();
+			addViewedValues();
+		}
+
+		/**
+		 * Adds the values added to the history since the last update, removes
+		 * those evicted (or discarded by a reset) from it, and publishes the
+		 * resulting covariance.
+		 */
+		void update() {
+			view.advance();
+			addViewedValues();
+		}
+
+		void addViewedValues() {
+			while (view.next(sample)) {
+				LinearAcceleration value = sample.getValue();
+				accel[0] = value.x;
+				accel[1] = value.y;
+				accel[2] = value.z;
+				covariance.add(accel);
+			}
+			covariance.trim(history.getValidSampleCount());
+			long stamp = results_lock.writeLock();
+			try {
+				result_count = covariance.getCount();
+				covariance.getCovariance(result);
+			} finally {
+				results_lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Copies the most recently published covariance into the provided
+		 * matrix.
+		 * 
+		 * @return false if fewer than two values were in the window.
+		 */
+		boolean getCovariance(Matrix linear_acceleration_matrix) {
+			float[][] from_matrix = result.get_matrix();
+			float[][] to_matrix = linear_acceleration_matrix.get_matrix();
+			while (true) {
+				long stamp = results_lock.tryOptimisticRead();
+				if (stamp == 0) {
+					Thread.yield();
+					continue;
+				}
+				if (result_count < 2) {
+					if (results_lock.validate(stamp)) {
+						return false;
+					}
+					continue;
+				}
+				for (int x = 0; x < from_matrix.length; x++) {
+					System.arraycopy(from_matrix[x], 0, to_matrix[x], 0, from_matrix[x].length);
+				}
+				if (results_lock.validate(stamp)) {
+					return true;
+				}
+			}
+		}
 	}
 
 	public boolean writeToDirectory(String directory_path) {
 		return history.writeToDirectory(directory_path);
 	}
+
+	/**
+	 * Adds a listener which is notified of each subsequent linear acceleration sample
+	 * committed to the history. See
+	 * ThreadsafeInterpolatingTimeHistory.addListener().
+	 */
+	public HistoryListenerDispatcher<TimestampedValue<LinearAcceleration>> addListener(
+			ITimeHistoryListener<TimestampedValue<LinearAcceleration>> listener, HistoryListenerDispatcher.DispatchMode mode,
+			int queue_capacity) {
+		return history.addListener(listener, mode, queue_capacity);
+	}
+
+	public boolean removeListener(ITimeHistoryListener<TimestampedValue<LinearAcceleration>> listener) {
+		return history.removeListener(listener);
+	}
+
+	/**
+	 * Enables a compressed archive of subsequent samples, so that lookups
+	 * remain available long after the samples are evicted from the history.
+	 * 
+	 * @param max_size_bytes
+	 *            - the maximum (approximate) amount of memory occupied by the
+	 *            archive; the oldest samples are discarded once exceeded.
+	 */
+	public void enableArchive(long max_size_bytes) {
+		history.enableArchive(CompressedHistoryArchive.DEFAULT_SEGMENT_SIZE, max_size_bytes);
+	}
+
+	/**
+	 * Writes the current history to a compact binary journal file, which may
+	 * be converted to CSV using HistoryJournalReader.
+	 */
+	public boolean writeJournal(String file_path) {
+		return history.writeJournal(file_path);
+	}
+
+	/**
+	 * Writes the current contents of the history to a new file within the
+	 * provided directory, using the provided AsyncFileWriter's background
+	 * thread (see ThreadsafeInterpolatingTimeHistory.writeToDirectoryAsync()).
+	 */
+	public Future<Boolean> writeToDirectoryAsync(AsyncFileWriter async_writer, String directory_path) {
+		return history.writeToDirectoryAsync(async_writer, directory_path);
+	}
 	
 	public boolean writeToFile(String file_path){
 		return history.writeToFile(file_path);
 	}
+
+	/**
+	 * Begins continuously logging the history to a new CSV file within the
+	 * provided directory. Subsequent invocations of flushLog() append the
+	 * data received since the previous flush, so the log contains no gaps or
+	 * duplicates as long as it is flushed at least once per history length.
+	 */
+	public boolean startLogging(String directory_path) {
+		return log_writer.openInDirectory(directory_path);
+	}
+
+	/**
+	 * Appends the data received since the previous flush to the log file.
+	 */
+	public boolean flushLog() {
+		return log_writer.flush();
+	}
+
+	/**
+	 * Flushes and closes the log file.
+	 */
+	public boolean stopLogging() {
+		return log_writer.close();
+	}
+
+	/**
+	 * Returns the number of samples missing from the log file because they
+	 * were overwritten before being flushed (see
+	 * CSVLogWriter.getDroppedRowCount()).
+	 */
+	public long getLogDroppedRowCount() {
+		return log_writer.getDroppedRowCount();
+	}
 	
 	/**
 	 * Calculates the linear acceleration covariances (in units of m/s^2), based
-	 * the contents of the LinearAccelerationHistory.
+	 * the contents of the LinearAccelerationHistory. If enabled (see
+	 * enableIncrementalCovariance()), the incrementally-maintained covariances
+	 * are returned.
 	 * <p>
 	 * 
 	 * @param linear_acceleration_matrix: Must have a dimensionality of 3.
@@ -208,35 +545,39 @@ public class LinearAccelerationHistory implements ISensorDataSubscriber {
 		
 		if(linear_acceleration_matrix.get_num_dimensions() != NUM_DIMENSIONS) return false;
 
-		ThreadsafeInterpolatingTimeHistory<TimestampedValue<LinearAcceleration>> snapshot = history.create_snapshot();
+		IncrementalCovariance covariance = incremental_covariance;
+		if (covariance != null) {
+			/* The covariance is only published when a value is added. */
+			if (history.getValidSampleCount() < 2) return false;
+			return covariance.getCovariance(linear_acceleration_matrix);
+		}
 
-		int num_samples = snapshot.getValidSampleCount();
-		if(num_samples < 1) return false;		
+		synchronized (covariance_view) {
+			int num_samples = covariance_view.refresh();
+			if (num_samples < 2) return false;
+			if ((covariance_accel == null) || (covariance_accel[0].length < num_samples)) {
+				covariance_accel = new float[NUM_DIMENSIONS][num_samples];
+			}
+			/* Samples overwritten before being visited are skipped. */
+			num_samples = 0;
+			while (covariance_view.next(covariance_sample)) {
+				covariance_accel[0][num_samples] = covariance_sample.getValue().x;
+				covariance_accel[1][num_samples] = covariance_sample.getValue().y;
+				covariance_accel[2][num_samples] = covariance_sample.getValue().z;
+				num_samples++;
+			}
+			if (!covariance_view.isValid() || (num_samples < 2)) return false;
 
-		float accel_total[] = new float[NUM_DIMENSIONS];
-		float accel_last[] = new float[NUM_DIMENSIONS];
-		float accel_avg[] = new float[NUM_DIMENSIONS];		
-		float accel[][] = new float[NUM_DIMENSIONS][num_samples];
-		
-		Object pos = snapshot.getFirstPosition();
-		TimestampedValue<LinearAcceleration> la = snapshot.getNext(pos);
-		int i = 0;
-		while ( la != null) {
-			accel[0][i] = la.getValue().x;
-			accel[1][i] = la.getValue().y;
-			accel[2][i] = la.getValue().z;
+			/* Calculate Averages */
 			for ( int x = 0; x < NUM_DIMENSIONS; x++) {
-				accel_last[x] = accel[x][i];
-				accel_total[x] += accel_last[x];
+				float accel_total = 0;
+				for ( int i = 0; i < num_samples; i++) {
+					accel_total += covariance_accel[x][i];
+				}
+				covariance_accel_avg[x] = accel_total / num_samples;
 			}
-			i++;
-			la = snapshot.getNext(pos);
-		}
-		/* Calculate Averages */
-		for ( int x = 0; x < NUM_DIMENSIONS; x++) {
-			accel_avg[x] = accel_total[x] / num_samples;
+			linear_acceleration_matrix.calculate_covariance(covariance_accel, covariance_accel_avg, num_samples);
 		}
-		linear_acceleration_matrix.calculate_covariance(accel, accel_avg, num_samples);
 		return true;
 	}	
 }
@@ -0,0 +1,88 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.motion;
+
+import com.kauailabs.sf2.time.IQuantityReducer;
+
+/**
+ * Reduces LinearAcceleration values to the mean, minimum or maximum of each
+ * of their (X, Y and Z) components.
+ */
+public class LinearAccelerationReducer implements IQuantityReducer<LinearAcceleration> {
+	Statistic statistic;
+	double sum_x, sum_y, sum_z;
+	float min_x, min_y, min_z;
+	float max_x, max_y, max_z;
+	int count;
+
+	public LinearAccelerationReducer(Statistic statistic) {
+		this.statistic = statistic;
+	}
+
+	@Override
+	public void reset() {
+		count = 0;
+		sum_x = sum_y = sum_z = 0;
+	}
+
+	@Override
+	public void accumulate(LinearAcceleration value) {
+		if (count++ == 0) {
+			min_x = max_x = value.x;
+			min_y = max_y = value.y;
+			min_z = max_z = value.z;
+		} else {
+			min_x = Math.min(min_x, value.x);
+			min_y = Math.min(min_y, value.y);
+			min_z = Math.min(min_z, value.z);
+			max_x = Math.max(max_x, value.x);
+			max_y = Math.max(max_y, value.y);
+			max_z = Math.max(max_z, value.z);
+		}
+		sum_x += value.x;
+		sum_y += value.y;
+		sum_z += value.z;
+	}
+
+	@Override
+	public void getResult(LinearAcceleration out) {
+		switch (statistic) {
+		case Minimum:
+			out.set(min_x, min_y, min_z);
+			break;
+		case Maximum:
+			out.set(max_x, max_y, max_z);
+			break;
+		default:
+			out.set((float) (sum_x / count), (float) (sum_y / count), (float) (sum_z / count));
+			break;
+		}
+	}
+
+	@Override
+	public IQuantityReducer<LinearAcceleration> instantiate() {
+		return new LinearAccelerationReducer(statistic);
+	}
+}
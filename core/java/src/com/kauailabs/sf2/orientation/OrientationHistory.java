@@ -25,16 +25,28 @@ THE SOFTWARE.
 package com.kauailabs.sf2.orientation;
 
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.StampedLock;
 
 import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.math.WindowedCovariance;
+import com.kauailabs.sf2.persistence.AsyncFileWriter;
+import com.kauailabs.sf2.persistence.CSVLogWriter;
 import com.kauailabs.sf2.quantity.IQuantity;
-import com.kauailabs.sf2.quantity.Scalar;
 import com.kauailabs.sf2.sensor.ISensorDataSource;
 import com.kauailabs.sf2.sensor.ISensorDataSubscriber;
 import com.kauailabs.sf2.sensor.ISensorInfo;
 import com.kauailabs.sf2.sensor.SensorDataSourceInfo;
+import com.kauailabs.sf2.time.CompressedHistoryArchive;
+import com.kauailabs.sf2.time.ConstantVelocityExtrapolator;
+import com.kauailabs.sf2.time.HistoryListenerDispatcher;
+import com.kauailabs.sf2.time.ITimeHistoryListener;
+import com.kauailabs.sf2.time.ITimestampedValueVisitor;
 import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.TimeHistoryView;
 import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampConvertingVisitor;
+import com.kauailabs.sf2.time.TimestampInfo;
 import com.kauailabs.sf2.time.TimestampedValue;
 import com.kauailabs.sf2.units.Unit;
 
@@ -58,12 +70,38 @@ public class OrientationHistory implements ISensorDataSubscriber {
 
 	ISensorDataSource quat_sensor;
 	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> orientation_history;
-	Scalar temp_s;
 	int quaternion_quantity_index;
 	int timestamp_quantity_index;
+	/* Resolution of the timestamps within the orientation history. */
+	Timestamp.TimestampResolution timestamp_resolution;
 	TimestampedValue<Quaternion> temp_tsq;
+	/* Used by the get*DegreesAtTime() methods; one per thread. */
+	ThreadLocal<TimestampedValue<Quaternion>> query_scratch;
 	Timestamp system_timestamp;
+	CSVLogWriter log_writer;
+	/* Reusable state used when calculating covariance. */
+	TimeHistoryView<TimestampedValue<Quaternion>> covariance_view;
+	TimestampedValue<Quaternion> covariance_sample;
+	Quaternion.FloatVectorStruct covariance_ypr_struct;
+	float[][] covariance_ypr;
+	float[][] covariance_ypr_delta;
+	float[] covariance_ypr_avg;
+	float[] covariance_ypr_delta_avg;
+	/* Maintained as each quaternion is added; null unless enabled. */
+	volatile IncrementalCovariance incremental_covariance;
 	
+	/**
+	 * The highest sensor update rate for which a duration-based
+	 * OrientationHistory will allocate storage.
+	 */
+	public static final int MAX_SENSOR_UPDATE_RATE_HZ = 1000;
+
+	/**
+	 * @deprecated The length of an OrientationHistory is no longer limited;
+	 *             this value is no longer enforced. (The C++ OrientationHistory
+	 *             still limits its length to this number of samples.)
+	 */
+	@Deprecated
 	public final int MAX_ORIENTATION_HISTORY_LENGTH_NUM_SAMPLES = 1000;
 
 	/**
@@ -72,24 +110,39 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	 * ITimestampedQuaternionSensor object.
 	 * 
 	 * @param quat_sensor
-	 *            - the sensor to acquire TimestampedQuaternion objects from.
-	 * @param history_length_seconds
-	 *            - the length of the OrientationHistory, in seconds. The actual
-	 *            length of the OrientationHistory in number of objects is
-	 *            calculated internally by accessing the sensor's current update
-	 *            rate. <i>Note: if the sensor update rate is changed, after
-	 *            this constructor is invoked, the length of the history may no
-	 *            longer accurately reflect the originally-configured
-	 *            length.</i>
+	 *            - the sensor to use as the source of TimestampedQuaternions
+	 *            contained in the Orientation History
+	 * @param history_length_num_samples
+	 *            - the number of TimestampedQuaternions the history will
+	 *            contain.
+	 */
+	public OrientationHistory(ISensorInfo quat_sensor, int history_length_num_samples) {
+		this(quat_sensor, history_length_num_samples, 0);
+	}
+
+	/**
+	 * Creates an OrientationHistory object which retains the orientation
+	 * data received over a specified period of time. The OrientationHistory
+	 * registers for incoming data using the provided
+	 * ITimestampedQuaternionSensor object.
+	 * <p>
+	 * The length of the OrientationHistory in number of objects is adjusted
+	 * automatically, based upon the update rate measured from the sensor's
+	 * timestamps; it remains accurate if the sensor update rate is changed.
+	 * 
 	 * @param quat_sensor
 	 *            - the sensor to use as the source of TimestampedQuaternions
 	 *            contained in the Orientation History
 	 * @param history_length_seconds
-	 *            - the number of seconds the history will represent. This value
-	 *            may not be larger than @value
-	 *            #MAX_ORIENTATION_HISTORY_IN_SECONDS seconds.
+	 *            - the number of seconds the history will represent.
 	 */
-	public OrientationHistory(ISensorInfo quat_sensor, int history_length_num_samples) {
+	public static OrientationHistory forDuration(ISensorInfo quat_sensor, double history_length_seconds) {
+		return new OrientationHistory(quat_sensor,
+				(int) Math.ceil(history_length_seconds * MAX_SENSOR_UPDATE_RATE_HZ),
+				(long) Math.ceil(history_length_seconds * Timestamp.MILLISECONDS_PER_SECOND));
+	}
+
+	OrientationHistory(ISensorInfo quat_sensor, int history_length_num_samples, long retention_duration_ms) {
 
 		this.quat_sensor = quat_sensor.getSensorDataSource();
 
@@ -113,23 +166,39 @@ public class OrientationHistory implements ISensorDataSubscriber {
 					+ "must contain a SensorDataSourceInfo object named 'Quaternion'.");
 		}
 
-		if (history_length_num_samples > MAX_ORIENTATION_HISTORY_LENGTH_NUM_SAMPLES) {
-			history_length_num_samples = MAX_ORIENTATION_HISTORY_LENGTH_NUM_SAMPLES;
-		}
+		timestamp_resolution = TimestampInfo.getHistoryResolution(quat_sensor.getSensorTimestampInfo());
+
 		Quaternion default_quat = new Quaternion();
 		TimestampedValue<Quaternion> default_ts_quat = new TimestampedValue<Quaternion>(default_quat);
-		this.orientation_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(default_ts_quat,
-				history_length_num_samples, quat_sensor.getSensorTimestampInfo(),
-				sensor_data_source_infos.get(quaternion_quantity_index).getName(),
-				sensor_data_source_infos.get(quaternion_quantity_index).getQuantityUnits());
+		if (retention_duration_ms > 0) {
+			this.orientation_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+					default_ts_quat, toHistoryTimestamp(retention_duration_ms), history_length_num_samples,
+					quat_sensor.getSensorTimestampInfo(),
+					sensor_data_source_infos.get(quaternion_quantity_index).getName(),
+					sensor_data_source_infos.get(quaternion_quantity_index).getQuantityUnits(),
+					ThreadsafeInterpolatingTimeHistory.ConcurrencyMode.Synchronized);
+		} else {
+			this.orientation_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+					default_ts_quat, history_length_num_samples, quat_sensor.getSensorTimestampInfo(),
+					sensor_data_source_infos.get(quaternion_quantity_index).getName(),
+					sensor_data_source_infos.get(quaternion_quantity_index).getQuantityUnits());
+		}
 
 		this.quat_sensor.subscribe(this);
 
-		temp_s = new Scalar();
 		
 		temp_tsq = new TimestampedValue<Quaternion>(new Quaternion());
+		query_scratch = new ThreadLocal<TimestampedValue<Quaternion>>();
 		
 		system_timestamp = new Timestamp();
+
+		log_writer = orientation_history.createLogWriter();
+
+		covariance_view = orientation_history.createView();
+		covariance_sample = new TimestampedValue<Quaternion>(new Quaternion());
+		covariance_ypr_struct = new Quaternion().new FloatVectorStruct();
+		covariance_ypr_avg = new float[3];
+		covariance_ypr_delta_avg = new float[3];
 	}
 
 	/**
@@ -142,7 +211,8 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	}
 
 	/**
-	 * Retrieves the most recently added Quaternion.
+	 * Retrieves the most recently added Quaternion. Its timestamp is at the
+	 * resolution of this history (see getTimestampResolution()).
 	 * 
 	 * @return
 	 */
@@ -150,6 +220,31 @@ public class OrientationHistory implements ISensorDataSubscriber {
 		return orientation_history.getMostRecent(out);
 	}
 
+	/**
+	 * Returns the resolution of the timestamps of the TimestampedQuaternions
+	 * within this history: that of the sensor's timestamps, but no coarser
+	 * than milliseconds.
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return timestamp_resolution;
+	}
+
+	long toHistoryTimestamp(long timestamp_ms) {
+		return Timestamp.convert(timestamp_ms, Timestamp.TimestampResolution.Millisecond, timestamp_resolution);
+	}
+
+	/**
+	 * Converts the timestamp of a TimestampedQuaternion retrieved by one of
+	 * the millisecond lookups to milliseconds, as it was before the history
+	 * stored timestamps at the sensor's resolution.
+	 */
+	boolean toMilliseconds(boolean found, TimestampedValue<Quaternion> out) {
+		if (found) {
+			Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		}
+		return found;
+	}
+
 	/**
 	 * Retrieves the TimestampedQuaterion at the specified sensor timestamp. If
 	 * an exact timestamp match occurs, a TimestampedQuaternion representing the
@@ -160,11 +255,106 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	 * or interpolated value estimated, null is returned.
 	 * 
 	 * @param requested_timestamp
-	 *            - sensor timestamp to retrieve
+	 *            - sensor timestamp to retrieve, in milliseconds; the
+	 *            timestamp of the retrieved TimestampedQuaternion is also in
+	 *            milliseconds.
 	 * @return TimestampedQuaternion at requested timestamp, or null.
 	 */
 	public boolean getQuaternionAtTime(long requested_timestamp, TimestampedValue<Quaternion> out) {
-		return orientation_history.get(requested_timestamp, out);
+		return toMilliseconds(orientation_history.get(toHistoryTimestamp(requested_timestamp), out), out);
+	}
+
+	/**
+	 * Retrieves the TimestampedQuaternion at the specified sensor timestamp,
+	 * as getQuaternionAtTime(long) does, but without truncating the timestamp
+	 * to milliseconds. The timestamp of the retrieved TimestampedQuaternion
+	 * is at the resolution of this history (see getTimestampResolution()).
+	 */
+	public boolean getQuaternionAtTime(Timestamp requested_timestamp, TimestampedValue<Quaternion> out) {
+		return orientation_history.get(requested_timestamp.getTimestamp(timestamp_resolution), out);
+	}
+
+	/**
+	 * Enables predictQuaternionAtTime() to extrapolate beyond the most recent
+	 * sample, assuming the angular velocity between the two most recent
+	 * samples remains constant.
+	 * 
+	 * @param max_horizon_ms
+	 *            - the maximum time (in milliseconds) beyond the most recent
+	 *            sample which may be extrapolated; typically on the order of
+	 *            the sensor update period plus its average latency.
+	 */
+	public void enablePrediction(long max_horizon_ms) {
+		orientation_history.setExtrapolator(new ConstantVelocityExtrapolator<TimestampedValue<Quaternion>>(),
+				toHistoryTimestamp(max_horizon_ms));
+	}
+
+	/**
+	 * Retrieves the TimestampedQuaternion at the specified sensor timestamp as
+	 * getQuaternionAtTime() does; if prediction is enabled and the timestamp
+	 * is shortly after the most recent sample (e.g., the current time, given
+	 * the sensor's latency), the orientation is extrapolated instead.
+	 * 
+	 * @param requested_timestamp
+	 *            - sensor timestamp to retrieve, in milliseconds; the
+	 *            timestamp of the retrieved TimestampedQuaternion is also in
+	 *            milliseconds.
+	 * @return true if the TimestampedQuaternion was found, interpolated or
+	 *         extrapolated.
+	 */
+	public boolean predictQuaternionAtTime(long requested_timestamp, TimestampedValue<Quaternion> out) {
+		return toMilliseconds(orientation_history.predict(toHistoryTimestamp(requested_timestamp), out), out);
+	}
+
+	/**
+	 * Retrieves (or predicts) the TimestampedQuaternion at the specified
+	 * sensor timestamp, as predictQuaternionAtTime(long) does, but without
+	 * truncating the timestamp to milliseconds. The timestamp of the
+	 * retrieved TimestampedQuaternion is at the resolution of this history.
+	 */
+	public boolean predictQuaternionAtTime(Timestamp requested_timestamp, TimestampedValue<Quaternion> out) {
+		return orientation_history.predict(requested_timestamp.getTimestamp(timestamp_resolution), out);
+	}
+
+	/**
+	 * Retrieves the TimestampedQuaternions at each of the specified sensor
+	 * timestamps (e.g., the capture timestamps of a batch of video
+	 * detections). This is equivalent to calling getQuaternionAtTime() once
+	 * per timestamp, but all requests are resolved in a single pass through
+	 * the history.
+	 * 
+	 * @param requested_timestamps
+	 *            - sensor timestamps to retrieve, in milliseconds
+	 * @param out
+	 *            - receives the TimestampedQuaternions (with timestamps in
+	 *            milliseconds); out[i] corresponds to
+	 *            requested_timestamps[i], and is marked invalid if it could
+	 *            not be found or interpolated.
+	 * @return the number of TimestampedQuaternions found or interpolated.
+	 */
+	public int getQuaternionsAtTimes(long[] requested_timestamps, TimestampedValue<Quaternion>[] out) {
+		int num_found = orientation_history.get(Timestamp.convert(requested_timestamps,
+				Timestamp.TimestampResolution.Millisecond, timestamp_resolution), out);
+		Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		return num_found;
+	}
+
+	/**
+	 * Resamples the orientation history onto a uniform time grid (e.g., for
+	 * plotting or export). See ThreadsafeInterpolatingTimeHistory.resample().
+	 * The start and end timestamps and the period are in milliseconds, as are
+	 * the timestamps of the visited TimestampedQuaternions.
+	 * 
+	 * @return the number of grid points provided to the visitor.
+	 */
+	public int resampleQuaternions(long start_timestamp, long end_timestamp, long period,
+			ITimestampedValueVisitor<TimestampedValue<Quaternion>> visitor) {
+		if (timestamp_resolution != Timestamp.TimestampResolution.Millisecond) {
+			visitor = new TimestampConvertingVisitor<TimestampedValue<Quaternion>>(visitor, timestamp_resolution,
+					Timestamp.TimestampResolution.Millisecond);
+		}
+		return orientation_history.resample(toHistoryTimestamp(start_timestamp), toHistoryTimestamp(end_timestamp),
+				toHistoryTimestamp(period), visitor);
 	}
 
 	/**
@@ -174,16 +364,24 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	 * time is not available.
 	 * 
 	 * @param requested_timestamp
+	 *            - sensor timestamp, in milliseconds
 	 * @return Yaw angle (in degrees, range -180 to 180) at the requested
 	 *         timestamp. If a yaw angle at the specified timestamp could not be
 	 *         found/interpolated, the value INVALID_ANGLE (NaN) will be
 	 *         returned.
 	 */
 	public float getYawDegreesAtTime(long requested_timestamp) {
-		TimestampedValue<Quaternion> match = new TimestampedValue<Quaternion>(new Quaternion());
-		if (getQuaternionAtTime(requested_timestamp, match)) {
-			match.getValue().getYawRadians(temp_s);
-			return temp_s.get() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
+		return getYawDegrees(toHistoryTimestamp(requested_timestamp));
+	}
+
+	public float getYawDegreesAtTime(Timestamp requested_timestamp) {
+		return getYawDegrees(requested_timestamp.getTimestamp(timestamp_resolution));
+	}
+
+	float getYawDegrees(long history_timestamp) {
+		TimestampedValue<Quaternion> match = getQueryScratch();
+		if (orientation_history.get(history_timestamp, match)) {
+			return match.getValue().calculateYawRadians() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
 		} else {
 			return Float.NaN;
 		}
@@ -196,16 +394,24 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	 * time is not available.
 	 * 
 	 * @param requested_timestamp
+	 *            - sensor timestamp, in milliseconds
 	 * @return Pitch angle (in degrees, range -180 to 180) at the requested
 	 *         timestamp. If a pitch angle at the specified timestamp could not
 	 *         be found/interpolated, the value INVALID_ANGLE (NaN) will be
 	 *         returned.
 	 */
 	public float getPitchDegreesAtTime(long requested_timestamp) {
-		TimestampedValue<Quaternion> match = new TimestampedValue<Quaternion>(new Quaternion());
-		if (getQuaternionAtTime(requested_timestamp, match)) {
-			match.getValue().getPitch(temp_s);
-			return temp_s.get() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
+		return getPitchDegrees(toHistoryTimestamp(requested_timestamp));
+	}
+
+	public float getPitchDegreesAtTime(Timestamp requested_timestamp) {
+		return getPitchDegrees(requested_timestamp.getTimestamp(timestamp_resolution));
+	}
+
+	float getPitchDegrees(long history_timestamp) {
+		TimestampedValue<Quaternion> match = getQueryScratch();
+		if (orientation_history.get(history_timestamp, match)) {
+			return match.getValue().calculatePitchRadians() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
 		} else {
 			return Float.NaN;
 		}
@@ -218,21 +424,38 @@ public class OrientationHistory implements ISensorDataSubscriber {
 	 * time is not available.
 	 * 
 	 * @param requested_timestamp
+	 *            - sensor timestamp, in milliseconds
 	 * @return Roll angle (in degrees, range -180 to 180) at the requested
 	 *         timestamp. If a roll angle at the specified timestamp could not
 	 *         be found/interpolated, the value INVALID_ANGLE (NaN) will be
 	 *         returned.
 	 */
 	public float getRollDegreesAtTime(long requested_timestamp) {
-		TimestampedValue<Quaternion> match = new TimestampedValue<Quaternion>(new Quaternion());
-		if (getQuaternionAtTime(requested_timestamp, match)) {
-			match.getValue().getRoll(temp_s);
-			return temp_s.get() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
+		return getRollDegrees(toHistoryTimestamp(requested_timestamp));
+	}
+
+	public float getRollDegreesAtTime(Timestamp requested_timestamp) {
+		return getRollDegrees(requested_timestamp.getTimestamp(timestamp_resolution));
+	}
+
+	float getRollDegrees(long history_timestamp) {
+		TimestampedValue<Quaternion> match = getQueryScratch();
+		if (orientation_history.get(history_timestamp, match)) {
+			return match.getValue().calculateRollRadians() * Unit.Angle.Degrees.RADIANS_TO_DEGREES;
 		} else {
 			return Float.NaN;
 		}
 	}
 
+	TimestampedValue<Quaternion> getQueryScratch() {
+		TimestampedValue<Quaternion> scratch = query_scratch.get();
+		if (scratch == null) {
+			scratch = new TimestampedValue<Quaternion>(new Quaternion());
+			query_scratch.set(scratch);
+		}
+		return scratch;
+	}
+
 	@Override
 	public void publish(IQuantity[] curr_values, Timestamp sys_timestamp) {
 		Timestamp sensor_timestamp;
@@ -242,21 +465,222 @@ public class OrientationHistory implements ISensorDataSubscriber {
 			sensor_timestamp = sys_timestamp;
 		}
 		Quaternion q = ((Quaternion) curr_values[quaternion_quantity_index]);
-		temp_tsq.set(q,  sensor_timestamp.getMilliseconds());
+		temp_tsq.set(q,  sensor_timestamp.getTimestamp(timestamp_resolution));
 		orientation_history.add(temp_tsq);
+		IncrementalCovariance covariance = incremental_covariance;
+		if (covariance != null) {
+			covariance.update();
+		}
+	}
+
+	/**
+	 * Enables incremental calculation of the covariances returned by
+	 * calculate_covariance(). The covariances are then updated as each
+	 * quaternion is added to (or evicted from) the history, rather than
+	 * recalculated from the entire history, so that calculate_covariance()
+	 * takes constant time and does not allocate.
+	 * <p>
+	 * Quaternions are assumed to be added in timestamp order. The
+	 * covariances are initialized from the current contents of the history
+	 * by the calling thread, rather than by the thread which publishes
+	 * quaternions.
+	 */
+	public synchronized void enableIncrementalCovariance() {
+		if (incremental_covariance != null) {
+			return;
+		}
+		incremental_covariance = new IncrementalCovariance();
+	}
+
+	public synchronized void disableIncrementalCovariance() {
+		incremental_covariance = null;
+	}
+
+	/**
+	 * Maintains the yaw, pitch and roll covariances of the orientation
+	 * history as quaternions are added to and evicted from it. The window is
+	 * only modified by the thread which publishes quaternions (after it has
+	 * been initialized); the resulting covariances are copied to readers via
+	 * optimistic reads, so that publishing never waits for a reader.
+	 */
+	class IncrementalCovariance {
+		WindowedCovariance covariance;
+		TimeHistoryView<TimestampedValue<Quaternion>> view;
+		TimestampedValue<Quaternion> sample;
+		float[] ypr;
+		/* Guards the results below; readers only use optimistic reads. */
+		StampedLock results_lock;
+		int result_count;
+		Matrix orientation_result;
+		Matrix angular_velocity_result;
+
+		IncrementalCovariance() {
+			covariance = new WindowedCovariance(3, orientation_history.getCapacity(), true);
+			view = orientation_history.createView();
+			sample = new TimestampedValue<Quaternion>(new Quaternion());
+			ypr = new float[3];
+			results_lock = new StampedLock();
+			orientation_result = new Matrix("Orientation", 3, null);
+			angular_velocity_result = new Matrix("AngularVelocity", 3, null);
+			view.refresh();
+			addViewedQuaternions();
+		}
+
+		/**
+		 * Adds the quaternions added to the history since the last update,
+		 * removes those evicted (or discarded by a reset) from it, and
+		 * publishes the resulting covariances.
+		 */
+		void update() {
+			view.advance();
+			addViewedQuaternions();
+		}
+
+		void addViewedQuaternions() {
+			while (view.next(sample)) {
+				Quaternion q = sample.getValue();
+				ypr[0] = q.calculateYawRadians();
+				ypr[1] = q.calculatePitchRadians();
+				ypr[2] = q.calculateRollRadians();
+				covariance.add(ypr);
+			}
+			covariance.trim(orientation_history.getValidSampleCount());
+			long stamp = results_lock.writeLock();
+			try {
+				result_count = covariance.getCount();
+				covariance.getCovariance(orientation_result);
+				covariance.getDeltaCovariance(angular_velocity_result);
+			} finally {
+				results_lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Copies the most recently published covariances into the provided
+		 * matrices.
+		 * 
+		 * @return false if fewer than three quaternions were in the window.
+		 */
+		boolean getCovariance(Matrix orientation_matrix, Matrix angular_velocity_matrix) {
+			while (true) {
+				long stamp = results_lock.tryOptimisticRead();
+				if (stamp == 0) {
+					Thread.yield();
+					continue;
+				}
+				if (result_count < 3) {
+					if (results_lock.validate(stamp)) {
+						return false;
+					}
+					continue;
+				}
+				copy(orientation_result, orientation_matrix);
+				copy(angular_velocity_result, angular_velocity_matrix);
+				if (results_lock.validate(stamp)) {
+					return true;
+				}
+			}
+		}
+
+		void copy(Matrix from, Matrix to) {
+			float[][] from_matrix = from.get_matrix();
+			float[][] to_matrix = to.get_matrix();
+			for (int x = 0; x < from_matrix.length; x++) {
+				System.arraycopy(from_matrix[x], 0, to_matrix[x], 0, from_matrix[x].length);
+			}
+		}
 	}
 
 	public boolean writeToDirectory(String directory_path) {
 		return orientation_history.writeToDirectory(directory_path);
 	}
+
+	/**
+	 * Adds a listener which is notified of each subsequent quaternion sample
+	 * committed to the history. See
+	 * ThreadsafeInterpolatingTimeHistory.addListener().
+	 */
+	public HistoryListenerDispatcher<TimestampedValue<Quaternion>> addListener(
+			ITimeHistoryListener<TimestampedValue<Quaternion>> listener, HistoryListenerDispatcher.DispatchMode mode,
+			int queue_capacity) {
+		return orientation_history.addListener(listener, mode, queue_capacity);
+	}
+
+	public boolean removeListener(ITimeHistoryListener<TimestampedValue<Quaternion>> listener) {
+		return orientation_history.removeListener(listener);
+	}
+
+	/**
+	 * Enables a compressed archive of subsequent samples, so that lookups
+	 * remain available long after the samples are evicted from the history.
+	 * 
+	 * @param max_size_bytes
+	 *            - the maximum (approximate) amount of memory occupied by the
+	 *            archive; the oldest samples are discarded once exceeded.
+	 */
+	public void enableArchive(long max_size_bytes) {
+		orientation_history.enableArchive(CompressedHistoryArchive.DEFAULT_SEGMENT_SIZE, max_size_bytes);
+	}
+
+	/**
+	 * Writes the current history to a compact binary journal file, which may
+	 * be converted to CSV using HistoryJournalReader.
+	 */
+	public boolean writeJournal(String file_path) {
+		return orientation_history.writeJournal(file_path);
+	}
+
+	/**
+	 * Writes the current contents of the history to a new file within the
+	 * provided directory, using the provided AsyncFileWriter's background
+	 * thread (see ThreadsafeInterpolatingTimeHistory.writeToDirectoryAsync()).
+	 */
+	public Future<Boolean> writeToDirectoryAsync(AsyncFileWriter async_writer, String directory_path) {
+		return orientation_history.writeToDirectoryAsync(async_writer, directory_path);
+	}
 	
 	public boolean writeToFile(String file_path){
 		return orientation_history.writeToFile(file_path);
 	}
+
+	/**
+	 * Begins continuously logging the history to a new CSV file within the
+	 * provided directory. Subsequent invocations of flushLog() append the
+	 * data received since the previous flush, so the log contains no gaps or
+	 * duplicates as long as it is flushed at least once per history length.
+	 */
+	public boolean startLogging(String directory_path) {
+		return log_writer.openInDirectory(directory_path);
+	}
+
+	/**
+	 * Appends the data received since the previous flush to the log file.
+	 */
+	public boolean flushLog() {
+		return log_writer.flush();
+	}
+
+	/**
+	 * Flushes and closes the log file.
+	 */
+	public boolean stopLogging() {
+		return log_writer.close();
+	}
+
+	/**
+	 * Returns the number of samples missing from the log file because they
+	 * were overwritten before being flushed (see
+	 * CSVLogWriter.getDroppedRowCount()).
+	 */
+	public long getLogDroppedRowCount() {
+		return log_writer.getDroppedRowCount();
+	}
 		
 	/**
 	 * Calculates the orientation and angular velocity covariances, based upon
-	 * the contents of the orientation history..
+	 * the contents of the orientation history.. If enabled (see
+	 * enableIncrementalCovariance()), the incrementally-maintained covariances
+	 * are returned.
 	 * <p>
 	 * Note that this value may be interpolated if a sample at the requested
 	 * time is not available.
@@ -272,49 +696,57 @@ public class OrientationHistory implements ISensorDataSubscriber {
 		if(orientation_matrix.get_num_dimensions() != NUM_DIMENSIONS) return false;
 		if(angular_velocity_matrix.get_num_dimensions() != NUM_DIMENSIONS) return false;
 
-		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> snapshot = orientation_history.create_snapshot();
-
-		int num_samples = snapshot.getValidSampleCount();
-		if(num_samples < 1) return false;		
+		IncrementalCovariance covariance = incremental_covariance;
+		if (covariance != null) {
+			/* The covariances are only published when a quaternion is added. */
+			if (orientation_history.getValidSampleCount() < 3) return false;
+			return covariance.getCovariance(orientation_matrix, angular_velocity_matrix);
+		}
 
-		float ypr_total[] = new float[NUM_DIMENSIONS];
-		float ypr_last[] = new float[NUM_DIMENSIONS];
-		float ypr_avg[] = new float[NUM_DIMENSIONS];		
-		float ypr[][] = new float[NUM_DIMENSIONS][num_samples];
-		
-		float ypr_delta_total[] = new float[NUM_DIMENSIONS];
-		float ypr_delta_avg[] = new float[NUM_DIMENSIONS];
-		float ypr_delta[][] = new float[NUM_DIMENSIONS][num_samples-1];
-		
-		Object pos = snapshot.getFirstPosition();
-		TimestampedValue<Quaternion> q = snapshot.getNext(pos);
-		int i = 0;
-		Quaternion.FloatVectorStruct ypr_struct = new Quaternion().new FloatVectorStruct();
-		while ( q != null) {
-			q.getValue().getYawPitchRollRadians(ypr_struct);
-			ypr[0][i] = ypr_struct.x;
-			ypr[1][i] = ypr_struct.y;
-			ypr[2][i] = ypr_struct.z;
-			if(i > 0) {
-				for ( int x = 0; x < NUM_DIMENSIONS; x++) {
-					ypr_delta[x][i] = ypr[x][i] - ypr_last[x];
-					ypr_delta_total[x] += ypr_delta[x][i];
+		synchronized (covariance_view) {
+			int num_samples = covariance_view.refresh();
+			if (num_samples < 3) return false;
+			if ((covariance_ypr == null) || (covariance_ypr[0].length < num_samples)) {
+				covariance_ypr = new float[NUM_DIMENSIONS][num_samples];
+				covariance_ypr_delta = new float[NUM_DIMENSIONS][num_samples - 1];
+			}
+			num_samples = 0;
+			long skipped = 0;
+			while (covariance_view.next(covariance_sample)) {
+				/*
+				 * Samples overwritten before being visited are skipped; only
+				 * the contiguous samples visited since the last skip are used.
+				 */
+				if (covariance_view.getSkippedCount() != skipped) {
+					skipped = covariance_view.getSkippedCount();
+					num_samples = 0;
 				}
+				covariance_sample.getValue().getYawPitchRollRadians(covariance_ypr_struct);
+				covariance_ypr[0][num_samples] = covariance_ypr_struct.x;
+				covariance_ypr[1][num_samples] = covariance_ypr_struct.y;
+				covariance_ypr[2][num_samples] = covariance_ypr_struct.z;
+				num_samples++;
 			}
+			if (!covariance_view.isValid() || (num_samples < 3)) return false;
+
+			float ypr[][] = covariance_ypr;
+			float ypr_delta[][] = covariance_ypr_delta;
 			for ( int x = 0; x < NUM_DIMENSIONS; x++) {
-				ypr_last[x] = ypr[x][i];
-				ypr_total[x] += ypr_last[x];
+				float ypr_total = 0;
+				float ypr_delta_total = 0;
+				for ( int i = 0; i < num_samples; i++) {
+					ypr_total += ypr[x][i];
+					if (i > 0) {
+						ypr_delta[x][i - 1] = ypr[x][i] - ypr[x][i - 1];
+						ypr_delta_total += ypr_delta[x][i - 1];
+					}
+				}
+				covariance_ypr_avg[x] = ypr_total / num_samples;
+				covariance_ypr_delta_avg[x] = ypr_delta_total / (num_samples - 1);
 			}
-			i++;
-			q = snapshot.getNext(pos);
-		}
-		/* Calculate Averages */
-		for ( int x = 0; x < NUM_DIMENSIONS; x++) {
-			ypr_avg[x] = ypr_total[x] / num_samples;
-			ypr_delta_avg[x] = ypr_delta_total[x] / (num_samples - 1);
+			orientation_matrix.calculate_covariance(ypr, covariance_ypr_avg, num_samples);
+			angular_velocity_matrix.calculate_covariance(ypr_delta, covariance_ypr_delta_avg, num_samples - 1);
 		}
-		orientation_matrix.calculate_covariance(ypr, ypr_avg, num_samples);
-		angular_velocity_matrix.calculate_covariance(ypr_delta, ypr_delta_avg, num_samples - 1);
 		return true;
 	}
 }
@@ -29,6 +29,9 @@ import java.util.ArrayList;
 
 import com.kauailabs.sf2.interpolation.IInterpolate;
 import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
+import com.kauailabs.sf2.quantity.IFieldSource;
 import com.kauailabs.sf2.quantity.IQuantity;
 import com.kauailabs.sf2.quantity.Scalar;
 import com.kauailabs.sf2.units.Unit;
@@ -65,7 +68,7 @@ import com.kauailabs.sf2.units.Unit.IUnit;
  * @author Scott
  */
 
-public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>, IQuantity {
+public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>, IQuantity, IFieldCodec {
 
 	private float w;
 	private float x;
@@ -184,9 +187,32 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 	 * values are in units of Radians.
 	 */
 	void getYawPitchRollRadians(FloatVectorStruct ypr) {
-		FloatVectorStruct gravity = new FloatVectorStruct();
-		getGravity(gravity, this);
-		getYawPitchRoll(this, gravity, ypr);
+		ypr.x = calculateYawRadians();
+		ypr.y = calculatePitchRadians();
+		ypr.z = calculateRollRadians();
+	}
+
+	/*
+	 * The following are equivalent to getGravity() followed by
+	 * getYawPitchRoll(), but do not require (allocating) intermediate
+	 * FloatVectorStructs.
+	 */
+	float calculateYawRadians() {
+		return (float) Math.atan2((2 * (x * y)) - (2 * (w * z)), (2 * (w * w)) + (2 * (x * x)) - 1);
+	}
+
+	float calculatePitchRadians() {
+		float gravity_x = 2 * ((x * z) - (w * y));
+		float gravity_y = 2 * ((w * x) + (y * z));
+		float gravity_z = (w * w) - (x * x) - (y * y) + (z * z);
+		return (float) Math.atan(gravity_y / Math.sqrt((gravity_x * gravity_x) + (gravity_z * gravity_z)));
+	}
+
+	float calculateRollRadians() {
+		float gravity_x = 2 * ((x * z) - (w * y));
+		float gravity_y = 2 * ((w * x) + (y * z));
+		float gravity_z = (w * w) - (x * x) - (y * y) + (z * z);
+		return (float) Math.atan(gravity_x / Math.sqrt((gravity_y * gravity_y) + (gravity_z * gravity_z)));
 	}
 
 	/**
@@ -194,9 +220,7 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 	 * units of Radians.
 	 */
 	public void getYawRadians(Scalar yaw) {
-		FloatVectorStruct ypr = new FloatVectorStruct();
-		getYawPitchRollRadians(ypr);
-		yaw.set(ypr.x);
+		yaw.set(calculateYawRadians());
 	}
 
 	/**
@@ -204,9 +228,7 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 	 * in units of Radians.
 	 */
 	public void getPitch(Scalar pitch) {
-		FloatVectorStruct ypr = new FloatVectorStruct();
-		getYawPitchRollRadians(ypr);
-		pitch.set(ypr.y);
+		pitch.set(calculatePitchRadians());
 	}
 
 	/**
@@ -214,9 +236,7 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 	 * units of Radians.
 	 */
 	public void getRoll(Scalar roll) {
-		FloatVectorStruct ypr = new FloatVectorStruct();
-		getYawPitchRollRadians(ypr);
-		roll.set(ypr.z);
+		roll.set(calculateRollRadians());
 	}
 
 	/**
@@ -237,7 +257,18 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 	public static void slerp(final Quaternion qa, final Quaternion qb, double t, Quaternion out) {
 		// Calculate angle between them.
 		double cosHalfTheta = qa.w * qb.w + qa.x * qb.x + qa.y * qb.y + qa.z * qb.z;
-		// if qa=qb or qa=-qb then theta = 0 and we can return qa
+		// if qa and qb are (nearly) equal then theta = 0; interpolate linearly,
+		// which is exact to within float precision
+		if (cosHalfTheta >= 0.9999995) {
+			float ratioA = (float) (1.0 - t);
+			float ratioB = (float) t;
+			out.w = (qa.w * ratioA + qb.w * ratioB);
+			out.x = (qa.x * ratioA + qb.x * ratioB);
+			out.y = (qa.y * ratioA + qb.y * ratioB);
+			out.z = (qa.z * ratioA + qb.z * ratioB);
+			return;
+		}
+		// if qa=-qb then theta = 0 and we can return qa
 		if (Math.abs(cosHalfTheta) >= 1.0) {
 			out.w = qa.w;
 			out.x = qa.x;
@@ -442,4 +473,37 @@ public class Quaternion implements IInterpolate<Quaternion>, ICopy<Quaternion>,
 		quantity_names.add("Z");
 		return true;
 	}
+
+	static final String[] FIELD_NAMES = { "W", "X", "Y", "Z" };
+
+	@Override
+	public int getFieldCount() {
+		return FIELD_NAMES.length;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return FIELD_NAMES[index];
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Float;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putFloat(w);
+		sink.putFloat(x);
+		sink.putFloat(y);
+		sink.putFloat(z);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		w = source.getFloat();
+		x = source.getFloat();
+		y = source.getFloat();
+		z = source.getFloat();
+	}
 }
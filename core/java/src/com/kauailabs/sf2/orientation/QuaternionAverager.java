@@ -0,0 +1,79 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.orientation;
+
+import com.kauailabs.sf2.time.IQuantityReducer;
+
+/**
+ * Reduces (unit) Quaternions to their average orientation. The average is the
+ * normalized sum of the quaternions (each first aligned to the same
+ * hemisphere as the first, since q and -q represent the same orientation).
+ * For the closely-spaced orientations within a decimation interval this is
+ * equivalent to iterative SLERP averaging, but remains accurate when
+ * consecutive orientations differ by less than slerp() can resolve.
+ */
+public class QuaternionAverager implements IQuantityReducer<Quaternion> {
+	double sum_w, sum_x, sum_y, sum_z;
+	float first_w, first_x, first_y, first_z;
+	int count;
+
+	@Override
+	public void reset() {
+		count = 0;
+		sum_w = sum_x = sum_y = sum_z = 0;
+	}
+
+	@Override
+	public void accumulate(Quaternion value) {
+		if (count++ == 0) {
+			first_w = value.getW();
+			first_x = value.getX();
+			first_y = value.getY();
+			first_z = value.getZ();
+		}
+		double dot = first_w * value.getW() + first_x * value.getX() + first_y * value.getY()
+				+ first_z * value.getZ();
+		double sign = (dot < 0) ? -1.0 : 1.0;
+		sum_w += sign * value.getW();
+		sum_x += sign * value.getX();
+		sum_y += sign * value.getY();
+		sum_z += sign * value.getZ();
+	}
+
+	@Override
+	public void getResult(Quaternion out) {
+		double norm = Math.sqrt(sum_w * sum_w + sum_x * sum_x + sum_y * sum_y + sum_z * sum_z);
+		if (norm == 0) {
+			out.set(first_w, first_x, first_y, first_z);
+			return;
+		}
+		out.set((float) (sum_w / norm), (float) (sum_x / norm), (float) (sum_y / norm), (float) (sum_z / norm));
+	}
+
+	@Override
+	public IQuantityReducer<Quaternion> instantiate() {
+		return new QuaternionAverager();
+	}
+}
@@ -0,0 +1,211 @@
+package com.kauailabs.sf2.persistence;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performs file writes on a dedicated, low-priority background thread, so
+ * that the thread requesting the write (e.g., a robot control loop) only
+ * pays for handing off the request. Requests are queued in a bounded queue;
+ * the OverflowPolicy determines what happens when the queue is full.
+ * <p>
+ * The IFileWriter provided must not be modified after it is submitted; to
+ * write a history which is still being updated, use
+ * ThreadsafeInterpolatingTimeHistory.writeToDirectoryAsync(), which submits
+ * a copy of the history's contents.
+ */
+public class AsyncFileWriter {
+
+	public enum OverflowPolicy {
+		Block, /* The requesting thread waits until the queue has room. */
+		DropNewest, /* The new request is discarded. */
+		DropOldest /* The oldest queued request is discarded. */
+	};
+
+	/**
+	 * Notified (on the background thread) when a write request completes.
+	 */
+	public interface ICompletionListener {
+		void writeComplete(IFileWriter writer, boolean success);
+	}
+
+	ArrayBlockingQueue<FutureTask<Boolean>> queue;
+	OverflowPolicy overflow_policy;
+	AtomicLong dropped_count;
+	Thread writer_thread;
+	volatile boolean running;
+	static final FutureTask<Boolean> SHUTDOWN_REQUEST = new FutureTask<Boolean>(new Callable<Boolean>() {
+		public Boolean call() {
+			return true;
+		}
+	});
+
+	public AsyncFileWriter(int queue_capacity, OverflowPolicy overflow_policy) {
+		queue = new ArrayBlockingQueue<FutureTask<Boolean>>(queue_capacity);
+		this.overflow_policy = overflow_policy;
+		dropped_count = new AtomicLong();
+		running = true;
+		writer_thread = new Thread(new Runnable() {
+			public void run() {
+				processRequests();
+			}
+		}, "SF2 Async File Writer");
+		writer_thread.setDaemon(true);
+		writer_thread.setPriority(Thread.MIN_PRIORITY);
+		writer_thread.start();
+	}
+
+	void processRequests() {
+		for (;;) {
+			FutureTask<Boolean> request;
+			try {
+				request = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (request == SHUTDOWN_REQUEST) {
+				/* Requests queued after the shutdown request are not run. */
+				while ((request = queue.poll()) != null) {
+					request.cancel(false);
+				}
+				return;
+			}
+			request.run();
+		}
+	}
+
+	/**
+	 * Requests that the provided writer write to a new file within the
+	 * provided directory.
+	 * 
+	 * @return a Future which completes with the result of the write; if the
+	 *         request was dropped, the Future is cancelled.
+	 */
+	public Future<Boolean> writeToDirectory(IFileWriter writer, String directory, ICompletionListener listener) {
+		return submit(writer, directory, true, listener);
+	}
+
+	public Future<Boolean> writeToDirectory(IFileWriter writer, String directory) {
+		return submit(writer, directory, true, null);
+	}
+
+	/**
+	 * Requests that the provided writer write to the file at the provided
+	 * path.
+	 * 
+	 * @return a Future which completes with the result of the write; if the
+	 *         request was dropped, the Future is cancelled.
+	 */
+	public Future<Boolean> writeToFile(IFileWriter writer, String file_path, ICompletionListener listener) {
+		return submit(writer, file_path, false, listener);
+	}
+
+	public Future<Boolean> writeToFile(IFileWriter writer, String file_path) {
+		return submit(writer, file_path, false, null);
+	}
+
+	Future<Boolean> submit(final IFileWriter writer, final String path, final boolean is_directory,
+			final ICompletionListener listener) {
+		FutureTask<Boolean> request = new FutureTask<Boolean>(new Callable<Boolean>() {
+			public Boolean call() {
+				boolean success = is_directory ? writer.writeToDirectory(path) : writer.writeToFile(path);
+				if (listener != null) {
+					listener.writeComplete(writer, success);
+				}
+				return success;
+			}
+		});
+		if (!running) {
+			request.cancel(false);
+			return request;
+		}
+		enqueue(request);
+		return request;
+	}
+
+	/**
+	 * Queues the provided request according to the overflow policy. If
+	 * shutdown() is invoked concurrently, the request is either run (if it was
+	 * queued before the shutdown request) or cancelled.
+	 */
+	void enqueue(FutureTask<Boolean> request) {
+		switch (overflow_policy) {
+		case Block:
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					queue.put(request);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			break;
+		case DropNewest:
+			if (!queue.offer(request)) {
+				dropped_count.incrementAndGet();
+				request.cancel(false);
+			}
+			break;
+		case DropOldest:
+			while (!queue.offer(request)) {
+				FutureTask<Boolean> oldest = queue.peek();
+				if (oldest == SHUTDOWN_REQUEST) {
+					/* Everything queued after the shutdown request is cancelled. */
+					request.cancel(false);
+					return;
+				}
+				/* Removes that request only; it may have been taken meanwhile. */
+				if ((oldest != null) && queue.remove(oldest)) {
+					dropped_count.incrementAndGet();
+					oldest.cancel(false);
+				}
+			}
+			break;
+		}
+		/*
+		 * If shutdown() was invoked after the check in submit(), the background
+		 * thread may already have stopped; a request it will not run is
+		 * cancelled here.
+		 */
+		if (!running && queue.remove(request)) {
+			request.cancel(false);
+		}
+	}
+
+	/**
+	 * Returns the number of requests discarded due to a full queue.
+	 */
+	public long getDroppedCount() {
+		return dropped_count.get();
+	}
+
+	/**
+	 * Completes the requests already queued, and then stops the background
+	 * thread; subsequent requests are cancelled.
+	 */
+	public synchronized void shutdown() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				queue.put(SHUTDOWN_REQUEST);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
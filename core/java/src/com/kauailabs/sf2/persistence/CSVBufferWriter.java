@@ -0,0 +1,289 @@
+package com.kauailabs.sf2.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
+
+/**
+ * Formats CSV rows directly into a reusable direct ByteBuffer, which is
+ * written to a FileChannel whenever it fills. Once open, appending fields and
+ * rows does not allocate, so that writing a history to a file produces no
+ * garbage regardless of its length.
+ * <p>
+ * The output is identical to that of a PrintWriter which prints the same
+ * values: floats are formatted as by Float.toString(), and rows are
+ * terminated with the platform line separator.
+ * <p>
+ * A CSVBufferWriter may be re-opened any number of times, but must only be
+ * used by one thread at a time.
+ */
+public class CSVBufferWriter implements Closeable {
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+	/* Length of the longest formatted long or float, e.g. "-9223372036854775808". */
+	static final int MAX_NUMBER_LENGTH = 24;
+	/* Reused by writeToFile(); one per thread. */
+	static final ThreadLocal<CSVBufferWriter> thread_writers = new ThreadLocal<CSVBufferWriter>();
+
+	ByteBuffer buffer;
+	FileChannel channel;
+	byte[] digits;
+	StringBuilder float_scratch;
+	FieldAppender field_appender;
+	long row_count;
+
+	public CSVBufferWriter(int buffer_size) {
+		buffer = ByteBuffer.allocateDirect(Math.max(buffer_size, 4 * MAX_NUMBER_LENGTH));
+		digits = new byte[MAX_NUMBER_LENGTH];
+		float_scratch = new StringBuilder(MAX_NUMBER_LENGTH);
+		field_appender = new FieldAppender();
+	}
+
+	public CSVBufferWriter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes the header and all rows of the provided source to a new file at
+	 * the provided path. The buffer used is retained by the calling thread, so
+	 * that writing periodically does not allocate.
+	 * 
+	 * @return false if the file could not be written.
+	 */
+	public static boolean writeToFile(String file_path, ICSVLogSource source) {
+		CSVBufferWriter out = thread_writers.get();
+		if (out == null) {
+			out = new CSVBufferWriter();
+			thread_writers.set(out);
+		} else if (out.isOpen()) {
+			/* Already in use by this thread. */
+			out = new CSVBufferWriter();
+		}
+		try {
+			out.open(file_path);
+			try {
+				source.writeCSVHeader(out);
+				source.writeCSVRows(out, 0);
+			} finally {
+				out.close();
+			}
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the header and all rows of the provided source to the next
+	 * unused "[prefix]HistoryN.csv" file within the provided directory (see
+	 * CSVFileWriter.getNextFilePath()).
+	 * 
+	 * @return false if the file could not be written.
+	 */
+	public static boolean writeToDirectory(String directory, String file_name_prefix, ICSVLogSource source) {
+		String file_path = CSVFileWriter.getNextFilePath(directory, file_name_prefix);
+		if (file_path == null) {
+			return false;
+		}
+		return writeToFile(file_path, source);
+	}
+
+	/**
+	 * Creates (or truncates) the file at the provided path, to which
+	 * subsequently-appended rows are written. Any previously-opened file is
+	 * closed.
+	 */
+	public void open(String file_path) throws IOException {
+		close();
+		channel = FileChannel.open(Paths.get(file_path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.clear();
+	}
+
+	public boolean isOpen() {
+		return (channel != null);
+	}
+
+	public CSVBufferWriter append(char c) throws IOException {
+		ensureRemaining(3);
+		if (c < 0x80) {
+			buffer.put((byte) c);
+		} else if (c < 0x800) {
+			buffer.put((byte) (0xC0 | (c >> 6)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		} else {
+			buffer.put((byte) (0xE0 | (c >> 12)));
+			buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the provided text, encoded as UTF-8.
+	 */
+	public CSVBufferWriter append(CharSequence s) throws IOException {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (Character.isHighSurrogate(c) && ((i + 1) < length) && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int code_point = Character.toCodePoint(c, s.charAt(++i));
+				ensureRemaining(4);
+				buffer.put((byte) (0xF0 | (code_point >> 18)));
+				buffer.put((byte) (0x80 | ((code_point >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((code_point >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (code_point & 0x3F)));
+			} else {
+				append(c);
+			}
+		}
+		return this;
+	}
+
+	public CSVBufferWriter append(long value) throws IOException {
+		ensureRemaining(MAX_NUMBER_LENGTH);
+		if (value == Long.MIN_VALUE) {
+			for (int i = 0; i < 20; i++) {
+				buffer.put((byte) "-9223372036854775808".charAt(i));
+			}
+			return this;
+		}
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		while (count > 0) {
+			buffer.put(digits[--count]);
+		}
+		return this;
+	}
+
+	public CSVBufferWriter append(float value) throws IOException {
+		float_scratch.setLength(0);
+		float_scratch.append(value);
+		ensureRemaining(MAX_NUMBER_LENGTH);
+		for (int i = 0; i < float_scratch.length(); i++) {
+			buffer.put((byte) float_scratch.charAt(i));
+		}
+		return this;
+	}
+
+	public CSVBufferWriter append(boolean value) throws IOException {
+		return append(value ? "true" : "false");
+	}
+
+	/**
+	 * Terminates the current row.
+	 */
+	public CSVBufferWriter endRow() throws IOException {
+		ensureRemaining(LINE_SEPARATOR.length);
+		buffer.put(LINE_SEPARATOR);
+		row_count++;
+		return this;
+	}
+
+	/**
+	 * Returns the number of rows terminated by endRow() since this writer was
+	 * constructed.
+	 */
+	public long getRowCount() {
+		return row_count;
+	}
+
+	/**
+	 * Appends each field of the provided value (see IFieldCodec), each
+	 * preceded by a comma.
+	 */
+	public CSVBufferWriter appendFields(IFieldCodec value) throws IOException {
+		field_appender.exception = null;
+		value.writeFields(field_appender);
+		if (field_appender.exception != null) {
+			throw field_appender.exception;
+		}
+		return this;
+	}
+
+	/* Appends the fields written by an IFieldCodec; the first failure is retained. */
+	class FieldAppender implements IFieldSink {
+		IOException exception;
+
+		@Override
+		public void putFloat(float value) {
+			try {
+				append(',').append(value);
+			} catch (IOException e) {
+				exception = (exception == null) ? e : exception;
+			}
+		}
+
+		@Override
+		public void putLong(long value) {
+			try {
+				append(',').append(value);
+			} catch (IOException e) {
+				exception = (exception == null) ? e : exception;
+			}
+		}
+
+		@Override
+		public void putBoolean(boolean value) {
+			try {
+				append(',').append(value);
+			} catch (IOException e) {
+				exception = (exception == null) ? e : exception;
+			}
+		}
+	}
+
+	void ensureRemaining(int length) throws IOException {
+		if (buffer.remaining() < length) {
+			drain();
+		}
+	}
+
+	void drain() throws IOException {
+		buffer.flip();
+		if (channel != null) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes all appended rows to the file.
+	 */
+	public void flush() throws IOException {
+		drain();
+	}
+
+	/**
+	 * Flushes and closes the file, if open.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			drain();
+		} finally {
+			channel.close();
+			channel = null;
+		}
+	}
+}
@@ -19,12 +19,25 @@ public class CSVFileWriter implements IFileWriter {
 		this.csv_writer = csv_writer;
 	}	
 	public boolean writeToDirectory(String directory) {
+		String file_path = getNextFilePath(directory, this.file_name_prefix);
+		if (file_path == null) {
+			return false;
+		}
+		return writeToFile(file_path);
+	}
+
+	/**
+	 * Returns the path of the next unused "[prefix]HistoryN.csv" file within
+	 * the provided directory (which is created if necessary), or null if the
+	 * directory is not writable.
+	 */
+	public static String getNextFilePath(String directory, String file_name_prefix) {
 
 		File dir = new File(directory);
 		if (!dir.isDirectory() || !dir.canWrite()) {
 			if (!dir.mkdirs()) {
 				System.out.println("Directory parameter '" + directory + "' must be a writable directory.");
-				return false;
+				return null;
 			}
 		}
 
@@ -32,7 +45,7 @@ public class CSVFileWriter implements IFileWriter {
 			directory += File.separatorChar;
 		}
 
-		String filename_prefix = this.file_name_prefix + "History";
+		String filename_prefix = file_name_prefix + "History";
 		String filename_suffix = "csv";
 
 		File f = new File(directory);
@@ -46,8 +59,8 @@ public class CSVFileWriter implements IFileWriter {
 
 		for (File matching_file : matching_files) {
 			String file_name = matching_file.getName();
-			String file_name_prefix = file_name.replaceFirst("[.][^.]+$", "");
-			String file_counter = file_name_prefix.substring(filename_prefix.length());
+			String file_name_prefix_only = file_name.replaceFirst("[.][^.]+$", "");
+			String file_counter = file_name_prefix_only.substring(filename_prefix.length());
 			Integer counter = Integer.decode(file_counter);
 			if (counter.intValue() > next_available_index) {
 				next_available_index = counter.intValue();
@@ -57,7 +70,7 @@ public class CSVFileWriter implements IFileWriter {
 		next_available_index++;
 
 		String new_filename = filename_prefix + Integer.toString(next_available_index);
-		return writeToFile(directory + new_filename + "." + filename_suffix);
+		return directory + new_filename + "." + filename_suffix;
 	}
 
 	public boolean writeToFile(String file_path) {
@@ -0,0 +1,128 @@
+package com.kauailabs.sf2.persistence;
+
+import java.io.IOException;
+
+/**
+ * Appends the rows of an ICSVLogSource to a single open CSV file. Each
+ * flush() writes only the rows added since the previous flush, so continuous
+ * logging costs time proportional to the number of new rows, and the log
+ * contains no duplicate rows. Rows are formatted into a reusable buffer (see
+ * CSVBufferWriter), so flushing does not allocate.
+ * <p>
+ * Rows which the source discards before they are flushed are missing from
+ * the log; they are counted (see getDroppedRowCount()), so that a log which
+ * is not flushed often enough can be detected.
+ */
+public class CSVLogWriter {
+	String file_name_prefix;
+	ICSVLogSource log_source;
+	/* Allocated when first opened. */
+	CSVBufferWriter out;
+	long next_sequence;
+	long written_row_count;
+	long dropped_row_count;
+
+	public CSVLogWriter(String file_name_prefix, ICSVLogSource log_source) {
+		this.file_name_prefix = file_name_prefix;
+		this.log_source = log_source;
+	}
+
+	/**
+	 * Opens a new "[prefix]HistoryN.csv" log file within the provided
+	 * directory. Any previously-opened log file is closed.
+	 */
+	public synchronized boolean openInDirectory(String directory) {
+		String file_path = CSVFileWriter.getNextFilePath(directory, file_name_prefix);
+		if (file_path == null) {
+			return false;
+		}
+		return open(file_path);
+	}
+
+	/**
+	 * Opens the log file at the provided path, and writes the header. Rows
+	 * currently held by the log source are written by the first flush().
+	 * Any previously-opened log file is closed, and the row counts are reset.
+	 */
+	public synchronized boolean open(String file_path) {
+		close();
+		if (out == null) {
+			out = new CSVBufferWriter();
+		}
+		try {
+			out.open(file_path);
+			log_source.writeCSVHeader(out);
+		} catch (IOException e) {
+			e.printStackTrace();
+			close();
+			return false;
+		}
+		next_sequence = log_source.getOldestCSVRowSequence();
+		written_row_count = 0;
+		dropped_row_count = 0;
+		return true;
+	}
+
+	public synchronized boolean isOpen() {
+		return (out != null) && out.isOpen();
+	}
+
+	/**
+	 * Appends the rows added since the previous flush to the log file.
+	 * 
+	 * @return false if the log file is not open, or could not be written.
+	 */
+	public synchronized boolean flush() {
+		if (!isOpen()) {
+			return false;
+		}
+		try {
+			long from_sequence = next_sequence;
+			long row_count = out.getRowCount();
+			next_sequence = log_source.writeCSVRows(out, from_sequence);
+			long written = out.getRowCount() - row_count;
+			written_row_count += written;
+			dropped_row_count += (next_sequence - from_sequence) - written;
+			out.flush();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the number of rows written to the current (or most recent) log
+	 * file.
+	 */
+	public synchronized long getWrittenRowCount() {
+		return written_row_count;
+	}
+
+	/**
+	 * Returns the number of rows which were discarded by the log source
+	 * before they could be written to the current (or most recent) log file,
+	 * since it was opened. A non-zero count indicates the log file has gaps;
+	 * it must be flushed more often.
+	 */
+	public synchronized long getDroppedRowCount() {
+		return dropped_row_count;
+	}
+
+	/**
+	 * Flushes and closes the log file, if open.
+	 */
+	public synchronized boolean close() {
+		if (!isOpen()) {
+			return true;
+		}
+		boolean success = flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			success = false;
+		}
+		return success;
+	}
+}
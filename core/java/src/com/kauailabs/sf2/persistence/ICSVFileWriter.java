@@ -0,0 +1,7 @@
+package com.kauailabs.sf2.persistence;
+
+import java.io.PrintWriter;
+
+public interface ICSVFileWriter {
+	boolean writeCSV(PrintWriter out);
+}
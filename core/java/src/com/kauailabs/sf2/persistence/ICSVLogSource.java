@@ -0,0 +1,32 @@
+package com.kauailabs.sf2.persistence;
+
+import java.io.IOException;
+
+/**
+ * Implemented by sources of CSV rows which are appended to a log over time,
+ * each row identified by an ascending sequence number. A source holds a
+ * bounded range of rows; rows are discarded (oldest first) as new rows are
+ * added, so a log which is not written often enough misses rows (see
+ * CSVLogWriter.getDroppedRowCount()).
+ */
+public interface ICSVLogSource {
+	/**
+	 * Writes the header row.
+	 */
+	void writeCSVHeader(CSVBufferWriter out) throws IOException;
+
+	/**
+	 * Returns the sequence number of the oldest row currently held; rows with
+	 * lower sequence numbers can no longer be written.
+	 */
+	long getOldestCSVRowSequence();
+
+	/**
+	 * Writes exactly one row (terminated by CSVBufferWriter.endRow()) for each
+	 * row currently held whose sequence number is >= from_sequence, in
+	 * ascending sequence order, and returns the sequence number of the next
+	 * row to be written. Each row in the range [from_sequence, returned) which
+	 * was not written had already been discarded.
+	 */
+	long writeCSVRows(CSVBufferWriter out, long from_sequence) throws IOException;
+}
@@ -0,0 +1,40 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.pose;
+
+import com.kauailabs.sf2.time.ColumnarInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.TimestampInfo;
+
+/**
+ * The ColumnarPoseHistory class is a ColumnarInterpolatingTimeHistory of
+ * Poses, stored as six float columns (OffsetX, OffsetY, and the orientation
+ * Quaternion's W, X, Y and Z).
+ */
+public class ColumnarPoseHistory extends ColumnarInterpolatingTimeHistory<Pose> {
+
+	public ColumnarPoseHistory(int num_samples, TimestampInfo ts_info, String name) {
+		super(new Pose(), num_samples, ts_info, name, Pose.getUnits());
+	}
+}
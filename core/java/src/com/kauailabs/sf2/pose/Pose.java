@@ -29,6 +29,9 @@ import java.util.ArrayList;
 import com.kauailabs.sf2.interpolation.IInterpolate;
 import com.kauailabs.sf2.orientation.Quaternion;
 import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
+import com.kauailabs.sf2.quantity.IFieldSource;
 import com.kauailabs.sf2.quantity.IQuantity;
 import com.kauailabs.sf2.quantity.Scalar;
 import com.kauailabs.sf2.units.Unit;
@@ -48,18 +51,18 @@ import com.kauailabs.sf2.units.Unit.IUnit;
  * @author Scott
  */
 
-public class Pose implements IInterpolate<Pose>, ICopy<Pose>, IQuantity {
+public class Pose implements IInterpolate<Pose>, ICopy<Pose>, IQuantity, IFieldCodec {
 
 	float x_offset_inches;
 	float y_offset_inches;
-	Quaternion quat;
+	Quaternion quat = new Quaternion();
 
 	public Pose() {
 		set(new Quaternion(), 0, 0);
 	}
 
 	public void set(Quaternion quat, float x_offset_inches, float y_offset_inches) {
-		quat.set(quat);
+		this.quat.set(quat);
 		this.x_offset_inches = x_offset_inches;
 		this.y_offset_inches = y_offset_inches;
 	}
@@ -154,4 +157,35 @@ public class Pose implements IInterpolate<Pose>, ICopy<Pose>, IQuantity {
 	public boolean getPrintableString(StringBuilder printable_string) {
 		return false;
 	}
+
+	static final String[] FIELD_NAMES = { "OffsetX", "OffsetY", "W", "X", "Y", "Z" };
+
+	@Override
+	public int getFieldCount() {
+		return FIELD_NAMES.length;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return FIELD_NAMES[index];
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Float;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putFloat(x_offset_inches);
+		sink.putFloat(y_offset_inches);
+		quat.writeFields(sink);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		x_offset_inches = source.getFloat();
+		y_offset_inches = source.getFloat();
+		quat.readFields(source);
+	}
 }
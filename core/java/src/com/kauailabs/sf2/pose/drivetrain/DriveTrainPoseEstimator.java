@@ -35,13 +35,26 @@ import com.kauailabs.sf2.sensor.ISensorDataSource;
 import com.kauailabs.sf2.sensor.ISensorDataSubscriber;
 import com.kauailabs.sf2.sensor.ISensorInfo;
 import com.kauailabs.sf2.sensor.SensorDataSourceInfo;
+import com.kauailabs.sf2.time.ITimestampedValueVisitor;
 import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
 import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampConvertingVisitor;
 import com.kauailabs.sf2.time.TimestampInfo;
 import com.kauailabs.sf2.time.TimestampedValue;
 
 public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 
+	/**
+	 * The highest quaternion sensor update rate for which a duration-based
+	 * pose history will allocate storage.
+	 */
+	public static final int MAX_SENSOR_UPDATE_RATE_HZ = 1000;
+
+	/**
+	 * @deprecated The length of the pose history is no longer limited; this
+	 *             value is no longer enforced.
+	 */
+	@Deprecated
 	public final int MAX_POSE_HISTORY_LENGTH_NUM_SAMPLES = 1000;
 
 	ISensorDataSource quat_sensor;
@@ -70,13 +83,56 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 	volatile ArrayList<TimestampedValue<Scalar>> curr_steer_wheel_angle_degrees;
 	volatile TimestampedValue<Pose> curr_pose;
 	IProcessorInfo processor_info;
-
+	/* Resolution of the timestamps within the pose history. */
+	Timestamp.TimestampResolution timestamp_resolution;
+
+	/**
+	 * Constructs a DriveTrainPoseEstimator whose pose history contains a
+	 * specified number of poses.
+	 * 
+	 * @param history_length_num_samples
+	 *            - the number of poses the pose history will contain.
+	 */
 	public DriveTrainPoseEstimator(IProcessorInfo processor_info, TimestampInfo quat_sensor_ts_info,
 			IDriveTrainKinematics drive_model, ISensorInfo quat_sensor_info, int quaternion_quantity_index,
 			ISensorInfo[] drive_wheel_distance_sensor_infos, int drive_wheel_distance_quantity_index,
 			ISensorInfo[] steer_wheel_angle_sensor_infos, int steer_wheel_angle_quantity_index,
 			ISensorInfo[] drive_motor_current_sensor_infos, int drive_motor_current_quantity_index,
 			int history_length_num_samples) {
+		this(processor_info, quat_sensor_ts_info, drive_model, quat_sensor_info, quaternion_quantity_index,
+				drive_wheel_distance_sensor_infos, drive_wheel_distance_quantity_index,
+				steer_wheel_angle_sensor_infos, steer_wheel_angle_quantity_index, drive_motor_current_sensor_infos,
+				drive_motor_current_quantity_index, history_length_num_samples, 0);
+	}
+
+	/**
+	 * Creates a DriveTrainPoseEstimator whose pose history retains the
+	 * poses estimated over a specified period of time. The number of poses
+	 * contained is adjusted automatically, based upon the update rate
+	 * measured from the quaternion sensor's timestamps.
+	 * 
+	 * @param history_length_seconds
+	 *            - the number of seconds the pose history will represent.
+	 */
+	public static DriveTrainPoseEstimator forDuration(IProcessorInfo processor_info,
+			TimestampInfo quat_sensor_ts_info, IDriveTrainKinematics drive_model, ISensorInfo quat_sensor_info,
+			int quaternion_quantity_index, ISensorInfo[] drive_wheel_distance_sensor_infos,
+			int drive_wheel_distance_quantity_index, ISensorInfo[] steer_wheel_angle_sensor_infos,
+			int steer_wheel_angle_quantity_index, ISensorInfo[] drive_motor_current_sensor_infos,
+			int drive_motor_current_quantity_index, double history_length_seconds) {
+		return new DriveTrainPoseEstimator(processor_info, quat_sensor_ts_info, drive_model, quat_sensor_info,
+				quaternion_quantity_index, drive_wheel_distance_sensor_infos, drive_wheel_distance_quantity_index,
+				steer_wheel_angle_sensor_infos, steer_wheel_angle_quantity_index, drive_motor_current_sensor_infos,
+				drive_motor_current_quantity_index, (int) Math.ceil(history_length_seconds * MAX_SENSOR_UPDATE_RATE_HZ),
+				(long) Math.ceil(history_length_seconds * Timestamp.MILLISECONDS_PER_SECOND));
+	}
+
+	DriveTrainPoseEstimator(IProcessorInfo processor_info, TimestampInfo quat_sensor_ts_info,
+			IDriveTrainKinematics drive_model, ISensorInfo quat_sensor_info, int quaternion_quantity_index,
+			ISensorInfo[] drive_wheel_distance_sensor_infos, int drive_wheel_distance_quantity_index,
+			ISensorInfo[] steer_wheel_angle_sensor_infos, int steer_wheel_angle_quantity_index,
+			ISensorInfo[] drive_motor_current_sensor_infos, int drive_motor_current_quantity_index,
+			int history_length_num_samples, long retention_duration_ms) {
 		if ((drive_model == null) || (quat_sensor == null) || (driveWheelDistanceSensors == null)
 				|| (history_length_num_samples <= 0)) {
 			throw new IllegalArgumentException("Invalid input parameter.");
@@ -187,13 +243,18 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 
 		curr_pose = new TimestampedValue<Pose>(new Pose());
 
-		if (history_length_num_samples > MAX_POSE_HISTORY_LENGTH_NUM_SAMPLES) {
-			history_length_num_samples = MAX_POSE_HISTORY_LENGTH_NUM_SAMPLES;
-		}
+		timestamp_resolution = TimestampInfo.getHistoryResolution(quat_sensor_ts_info);
+
 		Pose default_pose = new Pose();
 		TimestampedValue<Pose> default_ts_pose = new TimestampedValue<Pose>(default_pose);
-		this.pose_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Pose>>(default_ts_pose,
-				history_length_num_samples, quat_sensor_ts_info, "Pose", Pose.getUnits());
+		if (retention_duration_ms > 0) {
+			this.pose_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Pose>>(default_ts_pose,
+					toHistoryTimestamp(retention_duration_ms), history_length_num_samples, quat_sensor_ts_info, "Pose", Pose.getUnits(),
+					ThreadsafeInterpolatingTimeHistory.ConcurrencyMode.Synchronized);
+		} else {
+			this.pose_history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Pose>>(default_ts_pose,
+					history_length_num_samples, quat_sensor_ts_info, "Pose", Pose.getUnits());
+		}
 		this.drive_model = drive_model;
 
 		this.quat_sensor.subscribe(this);
@@ -210,25 +271,102 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 		}
 	}
 
+	/**
+	 * Retrieves the most recent pose. Its timestamp is at the resolution of
+	 * the pose history (see getTimestampResolution()).
+	 */
 	public boolean getCurrentPose(TimestampedValue<Pose> out) {
 		return pose_history.getMostRecent(out);
 	}
 
+	/**
+	 * Returns the resolution of the timestamps of the poses within the pose
+	 * history: that of the quaternion sensor's timestamps, but no coarser
+	 * than milliseconds.
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return timestamp_resolution;
+	}
+
+	long toHistoryTimestamp(long timestamp_ms) {
+		return Timestamp.convert(timestamp_ms, Timestamp.TimestampResolution.Millisecond, timestamp_resolution);
+	}
+
+	/**
+	 * Converts the timestamp of a pose retrieved by one of the millisecond
+	 * lookups to milliseconds, as it was before the pose history stored
+	 * timestamps at the sensor's resolution.
+	 */
+	boolean toMilliseconds(boolean found, TimestampedValue<Pose> out) {
+		if (found) {
+			Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		}
+		return found;
+	}
+
+	/**
+	 * Retrieves the pose at the provided timestamp, in milliseconds; the
+	 * timestamp of the retrieved pose is also in milliseconds.
+	 */
 	public boolean getPoseAtTimestamp(long timestamp, TimestampedValue<Pose> out) {
-		return pose_history.get(timestamp, out);
+		return toMilliseconds(pose_history.get(toHistoryTimestamp(timestamp), out), out);
+	}
+
+	/**
+	 * Retrieves the pose at the provided timestamp, without truncating the
+	 * timestamp to milliseconds. The timestamp of the retrieved pose is at
+	 * the resolution of the pose history (see getTimestampResolution()).
+	 */
+	public boolean getPoseAtTimestamp(Timestamp timestamp, TimestampedValue<Pose> out) {
+		return pose_history.get(timestamp.getTimestamp(timestamp_resolution), out);
+	}
+
+	/**
+	 * Retrieves the poses at each of the provided timestamps (in
+	 * milliseconds), resolving all requests in a single pass through the pose
+	 * history. out[i] corresponds to timestamps[i] (and has a timestamp in
+	 * milliseconds), and is marked invalid if it could not be found or
+	 * interpolated.
+	 * 
+	 * @return the number of poses found or interpolated.
+	 */
+	public int getPosesAtTimestamps(long[] timestamps, TimestampedValue<Pose>[] out) {
+		int num_found = pose_history.get(
+				Timestamp.convert(timestamps, Timestamp.TimestampResolution.Millisecond, timestamp_resolution), out);
+		Timestamp.convert(out, timestamp_resolution, Timestamp.TimestampResolution.Millisecond);
+		return num_found;
+	}
+
+	/**
+	 * Resamples the pose history onto a uniform time grid. See
+	 * ThreadsafeInterpolatingTimeHistory.resample(). The start and end
+	 * timestamps and the period are in milliseconds, as are the timestamps of
+	 * the visited poses.
+	 * 
+	 * @return the number of grid points provided to the visitor.
+	 */
+	public int resamplePoses(long start_timestamp, long end_timestamp, long period,
+			ITimestampedValueVisitor<TimestampedValue<Pose>> visitor) {
+		if (timestamp_resolution != Timestamp.TimestampResolution.Millisecond) {
+			visitor = new TimestampConvertingVisitor<TimestampedValue<Pose>>(visitor, timestamp_resolution,
+					Timestamp.TimestampResolution.Millisecond);
+		}
+		return pose_history.resample(toHistoryTimestamp(start_timestamp), toHistoryTimestamp(end_timestamp),
+				toHistoryTimestamp(period), visitor);
 	}
 
 	@Override
 	public void publish(IQuantity[] quantities, Timestamp timestamp) {
 		Quaternion quat = (Quaternion) quantities[quaternion_quantity_index];
-		TimestampedValue<Quaternion> tq = new TimestampedValue<Quaternion>(quat, timestamp.getMilliseconds());
+		TimestampedValue<Quaternion> tq = new TimestampedValue<Quaternion>(quat,
+				timestamp.getTimestamp(timestamp_resolution));
 
 		for (int i = 0; i < driveWheelDistanceSensors.length; i++) {
 			driveWheelDistanceSensors[i].getCurrent(drive_wheel_distance_sensor_quantities[i],
 					drive_wheel_distance_sensor_timestamp);
 			curr_drive_wheel_distance_inches.get(i).set(
 					(Scalar) (drive_wheel_distance_sensor_quantities[i][drive_wheel_distance_quantity_index]),
-					drive_wheel_distance_sensor_timestamp.getMilliseconds());
+					drive_wheel_distance_sensor_timestamp.getTimestamp(timestamp_resolution));
 			curr_drive_wheel_distance_delta_inches.get(i).getValue()
 					.set(curr_drive_wheel_distance_inches.get(i).getValue().get()
 							- last_drive_wheel_distance_inches.get(i).getValue().get());
@@ -240,7 +378,7 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 						steer_wheel_angle_sensor_timestamp);
 				curr_steer_wheel_angle_degrees.get(i).set(
 						(Scalar) (steer_wheel_angle_sensor_quantities[i][steer_wheel_angle_quantity_index]),
-						steer_wheel_angle_sensor_timestamp.getMilliseconds());
+						steer_wheel_angle_sensor_timestamp.getTimestamp(timestamp_resolution));
 			}
 		}
 
@@ -250,7 +388,7 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 						drive_motor_current_sensor_timestamp);
 				curr_drive_motor_current_amps.get(i).set(
 						(Scalar) (drive_motor_current_sensor_quantities[i][drive_motor_current_quantity_index]),
-						drive_motor_current_sensor_timestamp.getMilliseconds());
+						drive_motor_current_sensor_timestamp.getTimestamp(timestamp_resolution));
 			}
 		}
 
@@ -271,7 +409,7 @@ public class DriveTrainPoseEstimator implements ISensorDataSubscriber {
 			 * Pose history is empty. Add a new pose (using latest quaternion).
 			 */
 			/* The x/y offset values should default to their reset value. */
-			TimestampedValue<Pose> tp = new TimestampedValue<Pose>(new Pose(tq.getValue()));
+			TimestampedValue<Pose> tp = new TimestampedValue<Pose>(new Pose(tq.getValue()), tq.getTimestamp());
 			pose_history.add(tp);
 		}
 
@@ -64,7 +64,10 @@ public interface IDriveTrainKinematics {
 	 * @param quat_curr
 	 *            The current estimated quaternion representing the drivetrain
 	 *            orientation, as well as a timestamp representing the time the
-	 *            quaternion was generated.
+	 *            quaternion was generated. This timestamp, and that of
+	 *            pose_last, are in the resolution of the pose history (see
+	 *            DriveTrainPoseEstimator.getTimestampResolution()), so the
+	 *            time elapsed between them is not truncated to milliseconds.
 	 * @param drive_wheel_distance_delta_inches
 	 *            An array of measured drive wheel distance changes which
 	 *            occurred since the last time this step() method was invoked.
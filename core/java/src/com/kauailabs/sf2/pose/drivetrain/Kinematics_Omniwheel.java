@@ -164,7 +164,7 @@ public class Kinematics_Omniwheel implements IDriveTrainKinematics {
 	void omniwheelForwardKinematics(float wheel_velocities_in[], float body_velocity_out[]) {
 		for (int i = 0; i < 3; i++) {
 			body_velocity_out[i] = 0;
-			for (int wheel = 0; wheel < 4; wheel++) {
+			for (int wheel = 0; wheel < this.num_drive_wheels; wheel++) {
 				body_velocity_out[i] += wheel_velocities_in[wheel] * fwdMatrix[i][wheel];
 			}
 		}
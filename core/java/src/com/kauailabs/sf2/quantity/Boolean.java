@@ -28,7 +28,7 @@ import java.util.ArrayList;
 
 import com.kauailabs.sf2.interpolation.IInterpolate;
 
-public class Boolean implements IInterpolate<Boolean>, ICopy<Boolean>, IQuantity {
+public class Boolean implements IInterpolate<Boolean>, ICopy<Boolean>, IQuantity, IFieldCodec {
 	boolean value;
 
 	public boolean get() {
@@ -77,4 +77,29 @@ public class Boolean implements IInterpolate<Boolean>, ICopy<Boolean>, IQuantity
 	public boolean getContainedQuantityNames(ArrayList<String> quantity_names) {
 		return false;
 	}
+
+	@Override
+	public int getFieldCount() {
+		return 1;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return "Value";
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Boolean;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putBoolean(value);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		value = source.getBoolean();
+	}
 }
@@ -28,7 +28,7 @@ import java.util.ArrayList;
 
 import com.kauailabs.sf2.interpolation.IInterpolate;
 
-public class Count implements IInterpolate<Count>, ICopy<Count>, IQuantity {
+public class Count implements IInterpolate<Count>, ICopy<Count>, IQuantity, IFieldCodec {
 	long count;
 
 	public long get() {
@@ -79,4 +79,29 @@ public class Count implements IInterpolate<Count>, ICopy<Count>, IQuantity {
 	public boolean getContainedQuantityNames(ArrayList<String> quantity_names) {
 		return false;
 	}
+
+	@Override
+	public int getFieldCount() {
+		return 1;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return "Count";
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Long;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putLong(count);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		count = source.getLong();
+	}
 }
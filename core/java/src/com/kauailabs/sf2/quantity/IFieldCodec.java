@@ -0,0 +1,69 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.quantity;
+
+/**
+ * The IFieldCodec interface describes a quantity as a fixed sequence of
+ * primitive fields. Each implementing class declares its field count, names
+ * and types once; values then write (or read) their fields directly to (or
+ * from) a primitive sink (or source), without creating any objects.
+ * <p>
+ * Persistence and export code uses this in preference to
+ * IQuantity.getContainedQuantities(), which allocates a new object for each
+ * field of each value. The field layout of a class must not change, so that
+ * column layouts remain stable.
+ */
+public interface IFieldCodec {
+
+	public enum FieldType {
+		Float, Long, Boolean
+	};
+
+	/**
+	 * Returns the number of fields each value is written as.
+	 */
+	public int getFieldCount();
+
+	/**
+	 * Returns the name of the field at the provided index (e.g., "X").
+	 */
+	public String getFieldName(int index);
+
+	/**
+	 * Returns the type of the field at the provided index.
+	 */
+	public FieldType getFieldType(int index);
+
+	/**
+	 * Writes each field, in field order, to the provided sink.
+	 */
+	public void writeFields(IFieldSink sink);
+
+	/**
+	 * Initializes this value by reading each field, in field order, from the
+	 * provided source.
+	 */
+	public void readFields(IFieldSource source);
+}
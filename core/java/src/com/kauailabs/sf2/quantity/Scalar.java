@@ -28,7 +28,7 @@ import java.util.ArrayList;
 
 import com.kauailabs.sf2.interpolation.IInterpolate;
 
-public class Scalar implements IInterpolate<Scalar>, ICopy<Scalar>, IQuantity {
+public class Scalar implements IInterpolate<Scalar>, ICopy<Scalar>, IQuantity, IFieldCodec {
 	float value;
 
 	public float get() {
@@ -60,7 +60,7 @@ public class Scalar implements IInterpolate<Scalar>, ICopy<Scalar>, IQuantity {
 	/* time_ratio: interpolation ratio from 0.0 to 1.0. */
 	public void interpolate(Scalar to, double time_ratio, Scalar out) {
 		float delta = to.value - this.value;
-		float interpolated_value = this.value + delta;
+		float interpolated_value = this.value + (float) (delta * time_ratio);
 		out.set(interpolated_value);
 	}
 
@@ -79,4 +79,29 @@ public class Scalar implements IInterpolate<Scalar>, ICopy<Scalar>, IQuantity {
 	public boolean getContainedQuantityNames(ArrayList<String> quantity_names) {
 		return false;
 	}
+
+	@Override
+	public int getFieldCount() {
+		return 1;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return "Value";
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Float;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putFloat(value);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		value = source.getFloat();
+	}
 }
@@ -0,0 +1,80 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.quantity;
+
+import com.kauailabs.sf2.time.IQuantityReducer;
+
+/**
+ * Reduces Scalar values to their mean, minimum or maximum.
+ */
+public class ScalarReducer implements IQuantityReducer<Scalar> {
+	Statistic statistic;
+	double sum;
+	float min;
+	float max;
+	int count;
+
+	public ScalarReducer(Statistic statistic) {
+		this.statistic = statistic;
+	}
+
+	@Override
+	public void reset() {
+		count = 0;
+		sum = 0;
+	}
+
+	@Override
+	public void accumulate(Scalar value) {
+		float v = value.get();
+		if (count++ == 0) {
+			min = max = v;
+		} else {
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		sum += v;
+	}
+
+	@Override
+	public void getResult(Scalar out) {
+		switch (statistic) {
+		case Minimum:
+			out.set(min);
+			break;
+		case Maximum:
+			out.set(max);
+			break;
+		default:
+			out.set((float) (sum / count));
+			break;
+		}
+	}
+
+	@Override
+	public IQuantityReducer<Scalar> instantiate() {
+		return new ScalarReducer(statistic);
+	}
+}
@@ -28,11 +28,13 @@ import java.util.ArrayList;
 
 import com.kauailabs.sf2.interpolation.IInterpolate;
 
-public class Vector implements IInterpolate<Vector>, ICopy<Vector>, IQuantity {
+public class Vector implements IInterpolate<Vector>, ICopy<Vector>, IQuantity, IFieldCodec {
 	Scalar direction;
 	Scalar magnitude;
 
 	private Vector() {
+		this.direction = new Scalar();
+		this.magnitude = new Scalar();
 	}
 
 	public Vector(Scalar direction, Scalar magnitude) {
@@ -87,4 +89,33 @@ public class Vector implements IInterpolate<Vector>, ICopy<Vector>, IQuantity {
 		quantity_names.add("Magnitude");
 		return true;
 	}
+
+	static final String[] FIELD_NAMES = { "Direction", "Magnitude" };
+
+	@Override
+	public int getFieldCount() {
+		return FIELD_NAMES.length;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return FIELD_NAMES[index];
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Float;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putFloat(direction.get());
+		sink.putFloat(magnitude.get());
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		direction.set(source.getFloat());
+		magnitude.set(source.getFloat());
+	}
 }
@@ -0,0 +1,126 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.BitSet;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The ColumnarInterpolatingTimeHistory class implements the same timestamped,
+ * interpolating history as the ThreadsafeInterpolatingTimeHistory, but stores
+ * its contents in primitive "struct of arrays" form rather than as one object
+ * per sample:
+ * <p>
+ * - timestamps are stored in a long[] column<br>
+ * - the valid and interpolated flags are stored in a BitSet<br>
+ * - the value is flattened (via its IFieldCodec) into parallel columns, one
+ * per field: a float[] column for each Float field, and a long[] column for
+ * each Long or Boolean field.
+ * <p>
+ * Timestamp lookups therefore only touch the contiguous timestamp column, and
+ * the per-sample footprint is 8 bytes plus 4 bytes per float field and 8 bytes
+ * per long field, which makes this class well suited to long histories.
+ * Lookups, ordering and CSV output are implemented by
+ * RecordInterpolatingTimeHistory.
+ * 
+ * @param <T>
+ *            - the Java class of the contained values.
+ */
+public class ColumnarInterpolatingTimeHistory<T extends ICopy<T> & IInterpolate<T> & IQuantity & IFieldCodec>
+		extends RecordInterpolatingTimeHistory<T> {
+	long[] timestamps;
+	BitSet flags;
+	float[][] float_columns;
+	long[][] long_columns;
+
+	static final int VALID_FLAG_OFFSET = 0;
+	static final int INTERPOLATED_FLAG_OFFSET = 1;
+	static final int NUM_FLAGS = 2;
+
+	/**
+	 * Constructs a ColumnarInterpolatingTimeHistory to hold up to a specified
+	 * number of values.
+	 * 
+	 * @param default_value
+	 *            - value used to initialize scratch objects; also the source
+	 *            of the CSV column names and of the field layout.
+	 * @param num_samples
+	 *            - the maximum number of values to be contained.
+	 */
+	public ColumnarInterpolatingTimeHistory(T default_value, int num_samples, TimestampInfo ts_info, String name,
+			IUnit[] units) {
+		super(default_value, num_samples, ts_info, name, units);
+		timestamps = new long[history_size];
+		flags = new BitSet(history_size * NUM_FLAGS);
+		float_columns = new float[record.floats.length][history_size];
+		long_columns = new long[record.longs.length][history_size];
+	}
+
+	int getPhysicalIndex(long sequence) {
+		return (int) (sequence % history_size);
+	}
+
+	@Override
+	long getTimestamp(long sequence) {
+		return timestamps[getPhysicalIndex(sequence)];
+	}
+
+	@Override
+	int getFlags(long sequence) {
+		int index = getPhysicalIndex(sequence);
+		return (flags.get(index * NUM_FLAGS + VALID_FLAG_OFFSET) ? VALID_FLAG : 0)
+				| (flags.get(index * NUM_FLAGS + INTERPOLATED_FLAG_OFFSET) ? INTERPOLATED_FLAG : 0);
+	}
+
+	@Override
+	void getFields(long sequence, FieldRecord fields) {
+		int index = getPhysicalIndex(sequence);
+		for (int f = 0; f < float_columns.length; f++) {
+			fields.floats[f] = float_columns[f][index];
+		}
+		for (int f = 0; f < long_columns.length; f++) {
+			fields.longs[f] = long_columns[f][index];
+		}
+	}
+
+	@Override
+	void putRecord(long sequence, long timestamp, int flags, FieldRecord fields) {
+		int index = getPhysicalIndex(sequence);
+		timestamps[index] = timestamp;
+		this.flags.set(index * NUM_FLAGS + VALID_FLAG_OFFSET, (flags & VALID_FLAG) != 0);
+		this.flags.set(index * NUM_FLAGS + INTERPOLATED_FLAG_OFFSET, (flags & INTERPOLATED_FLAG) != 0);
+		for (int f = 0; f < float_columns.length; f++) {
+			float_columns[f][index] = fields.floats[f];
+		}
+		for (int f = 0; f < long_columns.length; f++) {
+			long_columns[f][index] = fields.longs[f];
+		}
+	}
+}
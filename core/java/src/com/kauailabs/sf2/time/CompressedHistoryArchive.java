@@ -0,0 +1,291 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+
+/**
+ * The CompressedHistoryArchive class retains a long, compact history of the
+ * objects added to a ThreadsafeInterpolatingTimeHistory, as a sequence of
+ * immutable CompressedHistorySegments. Orientation and acceleration samples
+ * typically compress to a small fraction of their in-memory size, allowing
+ * hours of full-rate history to be retained.
+ * <p>
+ * Each object added to the history is encoded into the archive as it nears
+ * eviction from the history, once fewer than a segment's worth of objects
+ * remain to be added before it is overwritten; once a segment's worth of
+ * objects has been encoded, the segment is sealed and becomes visible to
+ * lookups. The objects not yet sealed are therefore always still present in
+ * the history, and so the history and its archive together cover the full
+ * span of time without gaps. Objects are encoded after the history's lock is
+ * released, so compression never delays the history's readers. When the archive exceeds its maximum
+ * size, its oldest segments are discarded.
+ * <p>
+ * Lookups (via get()) only decode the segment enclosing the requested
+ * timestamp, and may be invoked concurrently with the (single) writer; sealed
+ * segments are never modified. Objects added out of timestamp order are not
+ * archived.
+ * <p>
+ * The quantity contained within each object must implement IFieldCodec, and
+ * all of its fields must be Float fields.
+ * 
+ * @param <T>
+ *            - the Java class of the archived objects.
+ */
+public class CompressedHistoryArchive<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>> {
+
+	/**
+	 * The default number of objects encoded into each segment.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 256;
+
+	final T default_obj;
+	final int segment_size;
+	final long max_size_bytes;
+	/* Sealed segments, oldest first; replaced (never modified) by the writer. */
+	volatile CompressedHistorySegment[] segments;
+	volatile long size_bytes;
+	volatile long dropped_count;
+
+	/* Writer state */
+	final CompressedHistorySegment.Encoder encoder;
+	final FieldRecord fields;
+	/*
+	 * Sequence number of the next object of the history to be encoded, and
+	 * the object it is copied into; maintained by the history while holding
+	 * this archive's lock (see archiveEvicted() in the history).
+	 */
+	long next_sequence;
+	final T feed_scratch;
+
+	/* Scratch objects used by lookups; one set per reader thread. */
+	ThreadLocal<LookupScratch<T>> lookup_scratch;
+
+	static final class LookupScratch<T> {
+		final CompressedHistorySegment.Decoder decoder;
+		final FieldRecord fields;
+		final T preceding;
+		final T following;
+
+		LookupScratch(int field_count, T preceding, T following) {
+			this.decoder = new CompressedHistorySegment.Decoder(field_count);
+			this.fields = new FieldRecord(decoder.fields, new long[0]);
+			this.preceding = preceding;
+			this.following = following;
+		}
+	}
+
+	/**
+	 * Constructs a CompressedHistoryArchive.
+	 * 
+	 * @param default_obj
+	 *            - an object of the archived class.
+	 * @param segment_size
+	 *            - the number of objects encoded into each segment; must be at
+	 *            least 2.
+	 * @param max_size_bytes
+	 *            - the maximum (approximate) amount of memory occupied by the
+	 *            archive; once exceeded, the oldest segments are discarded.
+	 * @throws IllegalArgumentException
+	 *             if the archived quantity does not implement IFieldCodec, or
+	 *             has fields which are not Float fields.
+	 */
+	public CompressedHistoryArchive(T default_obj, int segment_size, long max_size_bytes) {
+		if (segment_size < 2) {
+			throw new IllegalArgumentException("segment_size must be at least 2.");
+		}
+		if (!(default_obj.getQuantity() instanceof IFieldCodec)) {
+			throw new IllegalArgumentException("The archived quantity must implement IFieldCodec.");
+		}
+		IFieldCodec codec = (IFieldCodec) default_obj.getQuantity();
+		if (FieldRecord.getFloatFieldCount(codec) != codec.getFieldCount()) {
+			throw new IllegalArgumentException("The archived quantity must only have Float fields.");
+		}
+		this.default_obj = default_obj.instantiate_copy();
+		this.feed_scratch = default_obj.instantiate_copy();
+		this.segment_size = segment_size;
+		this.max_size_bytes = max_size_bytes;
+		this.segments = new CompressedHistorySegment[0];
+		this.fields = new FieldRecord(codec);
+		int field_count = fields.floats.length;
+		/* Initial estimate: timestamps and fields compressed to ~16 bits. */
+		this.encoder = new CompressedHistorySegment.Encoder(field_count, segment_size * 16 * (field_count + 1));
+		this.lookup_scratch = new ThreadLocal<LookupScratch<T>>();
+	}
+
+	public int getSegmentSize() {
+		return segment_size;
+	}
+
+	/**
+	 * Returns the number of sealed segments.
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the approximate amount of memory occupied by the sealed
+	 * segments.
+	 */
+	public long getSizeInBytes() {
+		return size_bytes;
+	}
+
+	/**
+	 * Returns the number of objects which were not archived because they were
+	 * added out of timestamp order.
+	 */
+	public long getDroppedCount() {
+		return dropped_count;
+	}
+
+	/**
+	 * Returns the timestamp of the oldest sealed object, or
+	 * Long.MIN_VALUE if no segments have been sealed.
+	 */
+	public long getOldestTimestamp() {
+		CompressedHistorySegment[] s = segments;
+		return (s.length == 0) ? Long.MIN_VALUE : s[0].getFirstTimestamp();
+	}
+
+	/**
+	 * Returns the timestamp of the newest sealed object, or Long.MIN_VALUE if
+	 * no segments have been sealed.
+	 */
+	public long getNewestTimestamp() {
+		CompressedHistorySegment[] s = segments;
+		return (s.length == 0) ? Long.MIN_VALUE : s[s.length - 1].getLastTimestamp();
+	}
+
+	/**
+	 * Encodes the provided object; must only be invoked by a single (writer)
+	 * thread at a time.
+	 */
+	void add(T t) {
+		long timestamp = t.getTimestamp();
+		if ((encoder.getCount() > 0) && (timestamp <= encoder.getLastTimestamp())) {
+			dropped_count++;
+			return;
+		}
+		fields.store((IFieldCodec) t.getQuantity());
+		encoder.add(timestamp, fields.floats);
+		if (encoder.getCount() >= segment_size) {
+			publish(encoder.seal());
+			encoder.reset();
+			/*
+			 * Each segment begins with the last object of the previous one, so
+			 * that a lookup between two segments decodes only one of them.
+			 */
+			encoder.add(timestamp, fields.floats);
+		}
+	}
+
+	void publish(CompressedHistorySegment segment) {
+		CompressedHistorySegment[] current = segments;
+		long size = size_bytes + segment.getSizeInBytes();
+		int discard = 0;
+		while ((size > max_size_bytes) && (discard < current.length)) {
+			size -= current[discard++].getSizeInBytes();
+		}
+		CompressedHistorySegment[] updated = new CompressedHistorySegment[current.length - discard + 1];
+		System.arraycopy(current, discard, updated, 0, current.length - discard);
+		updated[updated.length - 1] = segment;
+		segments = updated;
+		size_bytes = size;
+	}
+
+	/**
+	 * Retrieves the archived object matching the provided timestamp, or
+	 * interpolates one from the archived objects preceding and following it.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timestamp for which to return an object.
+	 * @param out
+	 *            - the object to initialize.
+	 * @return true if the requested timestamp lies within the span of the
+	 *         sealed segments.
+	 */
+	public boolean get(long requested_timestamp, T out) {
+		CompressedHistorySegment[] s = segments;
+		if ((s.length == 0) || (requested_timestamp < s[0].getFirstTimestamp())
+				|| (requested_timestamp > s[s.length - 1].getLastTimestamp())) {
+			return false;
+		}
+		/* Locate the first segment whose last timestamp is >= requested. */
+		int low = 0;
+		int high = s.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (s[mid].getLastTimestamp() < requested_timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		LookupScratch<T> scratch = getLookupScratch();
+		CompressedHistorySegment.Decoder decoder = scratch.decoder;
+		decoder.start(s[low]);
+		while (decoder.next()) {
+			if (decoder.timestamp == requested_timestamp) {
+				load(scratch, out);
+				return true;
+			}
+			if (decoder.timestamp > requested_timestamp) {
+				T preceding = scratch.preceding;
+				T following = scratch.following;
+				load(scratch, following);
+				double timestamp_delta = following.getTimestamp() - preceding.getTimestamp();
+				double requested_timestamp_offset = requested_timestamp - preceding.getTimestamp();
+				preceding.interpolate(following, requested_timestamp_offset / timestamp_delta, out);
+				out.setTimestamp(requested_timestamp);
+				out.setValid(true);
+				out.setInterpolated(true);
+				return true;
+			}
+			load(scratch, scratch.preceding);
+		}
+		return false;
+	}
+
+	void load(LookupScratch<T> scratch, T out) {
+		scratch.fields.load((IFieldCodec) out.getQuantity());
+		out.setTimestamp(scratch.decoder.timestamp);
+		out.setValid(true);
+		out.setInterpolated(false);
+	}
+
+	LookupScratch<T> getLookupScratch() {
+		LookupScratch<T> scratch = lookup_scratch.get();
+		if (scratch == null) {
+			scratch = new LookupScratch<T>(fields.floats.length, default_obj.instantiate_copy(),
+					default_obj.instantiate_copy());
+			lookup_scratch.set(scratch);
+		}
+		return scratch;
+	}
+}
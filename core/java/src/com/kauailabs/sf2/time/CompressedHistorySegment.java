@@ -0,0 +1,320 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.Arrays;
+
+/**
+ * The CompressedHistorySegment class is an immutable, compressed run of
+ * consecutive timestamped samples, each flattened into a fixed number of
+ * float fields. Compression follows the approach used by the "Gorilla" time
+ * series database, which exploits the small change between consecutive
+ * sensor samples:
+ * <p>
+ * - Timestamps are stored as the difference between consecutive timestamp
+ * deltas (the "delta of delta"), which is zero for samples arriving at a
+ * regular rate, and so usually requires a single bit.
+ * <p>
+ * - Each float field is stored as the XOR of its bits with those of the
+ * previous sample's field; identical values require a single bit, and
+ * otherwise only the "meaningful" bits between the leading and trailing zeros
+ * of the XOR are stored.
+ * <p>
+ * A segment is decoded sequentially from its first sample; segments are
+ * therefore kept short, so that a lookup only decodes the enclosing segment.
+ */
+public final class CompressedHistorySegment {
+	final long[] words;
+	final int bit_count;
+	final int count;
+	final int field_count;
+	final long first_timestamp;
+	final long last_timestamp;
+
+	/* Approximate per-segment overhead (object header, fields, array header) */
+	static final int OVERHEAD_BYTES = 64;
+
+	CompressedHistorySegment(long[] words, int bit_count, int count, int field_count, long first_timestamp,
+			long last_timestamp) {
+		this.words = words;
+		this.bit_count = bit_count;
+		this.count = count;
+		this.field_count = field_count;
+		this.first_timestamp = first_timestamp;
+		this.last_timestamp = last_timestamp;
+	}
+
+	/**
+	 * Returns the number of samples in this segment.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public int getFieldCount() {
+		return field_count;
+	}
+
+	public long getFirstTimestamp() {
+		return first_timestamp;
+	}
+
+	public long getLastTimestamp() {
+		return last_timestamp;
+	}
+
+	/**
+	 * Returns the approximate amount of memory occupied by this segment.
+	 */
+	public int getSizeInBytes() {
+		return OVERHEAD_BYTES + (words.length * 8);
+	}
+
+	/**
+	 * Compresses samples (which must be added in ascending timestamp order)
+	 * into a growable bit stream, from which a segment may be sealed. Encoders
+	 * are reusable, and allocate only when the bit stream must grow or a
+	 * segment is sealed.
+	 */
+	static final class Encoder {
+		final int field_count;
+		long[] words;
+		int bit_count;
+		int count;
+		long first_timestamp;
+		long prev_timestamp;
+		long prev_delta;
+		final int[] prev_bits;
+		final int[] prev_leading;
+		final int[] prev_trailing;
+
+		Encoder(int field_count, int initial_capacity_bits) {
+			this.field_count = field_count;
+			this.words = new long[Math.max(1, (initial_capacity_bits + 63) / 64)];
+			this.prev_bits = new int[field_count];
+			this.prev_leading = new int[field_count];
+			this.prev_trailing = new int[field_count];
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		long getLastTimestamp() {
+			return prev_timestamp;
+		}
+
+		void reset() {
+			Arrays.fill(words, 0, Math.min(words.length, (bit_count + 63) / 64), 0);
+			bit_count = 0;
+			count = 0;
+		}
+
+		void add(long timestamp, float[] fields) {
+			if (count == 0) {
+				writeBits(timestamp, 64);
+				first_timestamp = timestamp;
+				prev_delta = 0;
+			} else {
+				long delta = timestamp - prev_timestamp;
+				long delta_of_delta = delta - prev_delta;
+				long zigzag = (delta_of_delta << 1) ^ (delta_of_delta >> 63);
+				if (zigzag == 0) {
+					writeBits(0, 1);
+				} else if (zigzag < (1L << 7)) {
+					writeBits(0x2, 2);
+					writeBits(zigzag, 7);
+				} else if (zigzag < (1L << 9)) {
+					writeBits(0x6, 3);
+					writeBits(zigzag, 9);
+				} else if (zigzag < (1L << 12)) {
+					writeBits(0xE, 4);
+					writeBits(zigzag, 12);
+				} else {
+					writeBits(0xF, 4);
+					writeBits(zigzag, 64);
+				}
+				prev_delta = delta;
+			}
+			prev_timestamp = timestamp;
+			for (int i = 0; i < field_count; i++) {
+				int bits = Float.floatToRawIntBits(fields[i]);
+				if (count == 0) {
+					writeBits(bits, 32);
+					prev_leading[i] = -1;
+				} else {
+					int xor = bits ^ prev_bits[i];
+					if (xor == 0) {
+						writeBits(0, 1);
+					} else {
+						int leading = Integer.numberOfLeadingZeros(xor);
+						int trailing = Integer.numberOfTrailingZeros(xor);
+						if ((prev_leading[i] != -1) && (leading >= prev_leading[i])
+								&& (trailing >= prev_trailing[i])) {
+							/* Meaningful bits fit within the previous window. */
+							writeBits(0x2, 2);
+							writeBits(xor >>> prev_trailing[i], 32 - prev_leading[i] - prev_trailing[i]);
+						} else {
+							int meaningful = 32 - leading - trailing;
+							writeBits(0x3, 2);
+							writeBits(leading, 5);
+							writeBits(meaningful - 1, 5);
+							writeBits(xor >>> trailing, meaningful);
+							prev_leading[i] = leading;
+							prev_trailing[i] = trailing;
+						}
+					}
+				}
+				prev_bits[i] = bits;
+			}
+			count++;
+		}
+
+		void writeBits(long value, int num_bits) {
+			if (bit_count + num_bits > words.length * 64) {
+				words = Arrays.copyOf(words, Math.max(words.length * 2, (bit_count + num_bits + 63) / 64));
+			}
+			if (num_bits < 64) {
+				value &= (1L << num_bits) - 1;
+			}
+			int word = bit_count >>> 6;
+			int free = 64 - (bit_count & 63);
+			if (num_bits <= free) {
+				words[word] |= value << (free - num_bits);
+			} else {
+				int remainder = num_bits - free;
+				words[word] |= value >>> remainder;
+				words[word + 1] |= value << (64 - remainder);
+			}
+			bit_count += num_bits;
+		}
+
+		/**
+		 * Returns an immutable segment containing the samples added since the
+		 * last reset.
+		 */
+		CompressedHistorySegment seal() {
+			return new CompressedHistorySegment(Arrays.copyOf(words, (bit_count + 63) / 64), bit_count, count,
+					field_count, first_timestamp, prev_timestamp);
+		}
+	}
+
+	/**
+	 * Sequentially decodes the samples within a segment. Decoders are
+	 * reusable, and do not allocate.
+	 */
+	static final class Decoder {
+		final float[] fields;
+		final int[] prev_bits;
+		final int[] prev_leading;
+		final int[] prev_trailing;
+		CompressedHistorySegment segment;
+		long[] words;
+		int position;
+		int index;
+		long timestamp;
+		long prev_delta;
+
+		Decoder(int field_count) {
+			this.fields = new float[field_count];
+			this.prev_bits = new int[field_count];
+			this.prev_leading = new int[field_count];
+			this.prev_trailing = new int[field_count];
+		}
+
+		void start(CompressedHistorySegment segment) {
+			this.segment = segment;
+			this.words = segment.words;
+			this.position = 0;
+			this.index = 0;
+		}
+
+		/**
+		 * Decodes the next sample into the timestamp and fields members.
+		 * 
+		 * @return false if all samples have been decoded.
+		 */
+		boolean next() {
+			if (index >= segment.count) {
+				return false;
+			}
+			if (index == 0) {
+				timestamp = readBits(64);
+				prev_delta = 0;
+			} else {
+				long zigzag;
+				if (readBits(1) == 0) {
+					zigzag = 0;
+				} else if (readBits(1) == 0) {
+					zigzag = readBits(7);
+				} else if (readBits(1) == 0) {
+					zigzag = readBits(9);
+				} else if (readBits(1) == 0) {
+					zigzag = readBits(12);
+				} else {
+					zigzag = readBits(64);
+				}
+				long delta_of_delta = (zigzag >>> 1) ^ -(zigzag & 1);
+				prev_delta += delta_of_delta;
+				timestamp += prev_delta;
+			}
+			for (int i = 0; i < fields.length; i++) {
+				int bits;
+				if (index == 0) {
+					bits = (int) readBits(32);
+				} else if (readBits(1) == 0) {
+					bits = prev_bits[i];
+				} else {
+					if (readBits(1) != 0) {
+						prev_leading[i] = (int) readBits(5);
+						int meaningful = (int) readBits(5) + 1;
+						prev_trailing[i] = 32 - prev_leading[i] - meaningful;
+					}
+					int meaningful = 32 - prev_leading[i] - prev_trailing[i];
+					bits = prev_bits[i] ^ ((int) readBits(meaningful) << prev_trailing[i]);
+				}
+				prev_bits[i] = bits;
+				fields[i] = Float.intBitsToFloat(bits);
+			}
+			index++;
+			return true;
+		}
+
+		long readBits(int num_bits) {
+			int word = position >>> 6;
+			int offset = position & 63;
+			int free = 64 - offset;
+			long value;
+			if (num_bits <= free) {
+				value = (words[word] << offset) >>> (64 - num_bits);
+			} else {
+				int remainder = num_bits - free;
+				value = ((words[word] << offset) >>> (64 - num_bits)) | (words[word + 1] >>> (64 - remainder));
+			}
+			position += num_bits;
+			return value;
+		}
+	}
+}
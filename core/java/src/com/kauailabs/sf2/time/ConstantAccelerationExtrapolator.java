@@ -0,0 +1,96 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.quantity.ICopy;
+
+/**
+ * Extrapolates assuming a constant second derivative over the three most
+ * recent values, by evaluating the quadratic through them (via Neville's
+ * algorithm, expressed as interpolations between the values): the two
+ * constant-velocity extrapolations from the older and newer pairs of values
+ * are themselves blended according to the requested timestamp. For linear
+ * quantities (e.g., Pose offsets) this is exact constant-acceleration
+ * extrapolation.
+ * <p>
+ * Since higher-order extrapolation amplifies sensor noise, it is best suited
+ * to short horizons and smooth quantities.
+ * 
+ * @param <T>
+ *            - the Java class of the timestamped objects.
+ */
+public class ConstantAccelerationExtrapolator<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>>
+		implements IValueExtrapolator<T> {
+	T default_obj;
+	/* Intermediate extrapolations; one pair per thread. */
+	ThreadLocal<ArrayList<T>> scratch;
+
+	/**
+	 * Constructs a ConstantAccelerationExtrapolator.
+	 * 
+	 * @param default_obj
+	 *            - an object of the extrapolated class, used to create scratch
+	 *            objects.
+	 */
+	public ConstantAccelerationExtrapolator(T default_obj) {
+		this.default_obj = default_obj.instantiate_copy();
+		this.scratch = new ThreadLocal<ArrayList<T>>();
+	}
+
+	@Override
+	public int getSampleCount() {
+		return 3;
+	}
+
+	@Override
+	public void extrapolate(ArrayList<T> recent, long requested_timestamp, T out) {
+		T p0 = recent.get(0);
+		T p1 = recent.get(1);
+		T p2 = recent.get(2);
+		long t0 = p0.getTimestamp();
+		long t1 = p1.getTimestamp();
+		long t2 = p2.getTimestamp();
+		ArrayList<T> intermediate = getScratch();
+		T p01 = intermediate.get(0);
+		T p12 = intermediate.get(1);
+		p0.interpolate(p1, (double) (requested_timestamp - t0) / (double) (t1 - t0), p01);
+		p1.interpolate(p2, (double) (requested_timestamp - t1) / (double) (t2 - t1), p12);
+		p01.interpolate(p12, (double) (requested_timestamp - t0) / (double) (t2 - t0), out);
+	}
+
+	ArrayList<T> getScratch() {
+		ArrayList<T> intermediate = scratch.get();
+		if (intermediate == null) {
+			intermediate = new ArrayList<T>(2);
+			intermediate.add(default_obj.instantiate_copy());
+			intermediate.add(default_obj.instantiate_copy());
+			scratch.set(intermediate);
+		}
+		return intermediate;
+	}
+}
@@ -0,0 +1,58 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.quantity.ICopy;
+
+/**
+ * Extrapolates assuming a constant rate of change since the two most recent
+ * values, by continuing the interpolation between them beyond the most recent
+ * value. For a Quaternion this is a constant angular velocity (the SLERP arc
+ * is extended); for a Pose, the offsets continue at constant velocity and the
+ * orientation at constant angular velocity.
+ * 
+ * @param <T>
+ *            - the Java class of the timestamped objects.
+ */
+public class ConstantVelocityExtrapolator<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>>
+		implements IValueExtrapolator<T> {
+
+	@Override
+	public int getSampleCount() {
+		return 2;
+	}
+
+	@Override
+	public void extrapolate(ArrayList<T> recent, long requested_timestamp, T out) {
+		T previous = recent.get(0);
+		T latest = recent.get(1);
+		double time_ratio = (double) (requested_timestamp - previous.getTimestamp())
+				/ (double) (latest.getTimestamp() - previous.getTimestamp());
+		previous.interpolate(latest, time_ratio, out);
+	}
+}
@@ -0,0 +1,150 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The DirectBufferInterpolatingTimeHistory class implements the same
+ * timestamped, interpolating history as the ColumnarInterpolatingTimeHistory,
+ * but stores its contents outside of the Java heap, in a single direct
+ * ByteBuffer. Regardless of the retention length, the garbage collector only
+ * sees a handful of objects, which makes this class well suited to histories
+ * spanning several minutes.
+ * <p>
+ * Each sample is stored as a fixed-size binary record (in native byte order):
+ * <p>
+ * - offset 0: timestamp (long)<br>
+ * - offset 8: flags (int); bit 0 is the valid flag, bit 1 the interpolated
+ * flag<br>
+ * - offset 12: the value's Float fields (via its IFieldCodec), one float
+ * each, in field order<br>
+ * - then, aligned to 8 bytes: the value's Long and Boolean fields, one long
+ * each, in field order.
+ * <p>
+ * Records are padded to a multiple of 8 bytes, so that timestamps remain
+ * aligned.
+ * <p>
+ * Lookups, ordering and CSV output are implemented by
+ * RecordInterpolatingTimeHistory.
+ * 
+ * @param <T>
+ *            - the Java class of the contained values.
+ */
+public class DirectBufferInterpolatingTimeHistory<T extends ICopy<T> & IInterpolate<T> & IQuantity & IFieldCodec>
+		extends RecordInterpolatingTimeHistory<T> {
+	int record_size;
+	int long_fields_offset;
+	ByteBuffer buffer;
+
+	static final int TIMESTAMP_OFFSET = 0;
+	static final int FLAGS_OFFSET = 8;
+	static final int FIELDS_OFFSET = 12;
+
+	/**
+	 * Constructs a DirectBufferInterpolatingTimeHistory to hold up to a
+	 * specified number of values.
+	 * 
+	 * @param default_value
+	 *            - value used to initialize scratch objects; also the source
+	 *            of the CSV column names and of the field layout.
+	 * @param num_samples
+	 *            - the maximum number of values to be contained.
+	 */
+	public DirectBufferInterpolatingTimeHistory(T default_value, int num_samples, TimestampInfo ts_info,
+			String name, IUnit[] units) {
+		super(default_value, num_samples, ts_info, name, units);
+		long_fields_offset = getLongFieldsOffset(record.floats.length);
+		record_size = getRecordSize(record.floats.length, record.longs.length);
+		if (((long) record_size * history_size) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("num_samples is too large for a single buffer.");
+		}
+		buffer = ByteBuffer.allocateDirect(record_size * history_size).order(ByteOrder.nativeOrder());
+	}
+
+	static int getLongFieldsOffset(int float_field_count) {
+		return (FIELDS_OFFSET + (float_field_count * 4) + 7) & ~7;
+	}
+
+	/**
+	 * Returns the size (in bytes) of the record used to store a value with
+	 * the provided numbers of float and long fields.
+	 */
+	public static int getRecordSize(int float_field_count, int long_field_count) {
+		return getLongFieldsOffset(float_field_count) + (long_field_count * 8);
+	}
+
+	/**
+	 * Returns the size (in bytes) of the off-heap buffer.
+	 */
+	public int getBufferSize() {
+		return buffer.capacity();
+	}
+
+	int getRecordOffset(long sequence) {
+		return (int) (sequence % history_size) * record_size;
+	}
+
+	@Override
+	long getTimestamp(long sequence) {
+		return buffer.getLong(getRecordOffset(sequence) + TIMESTAMP_OFFSET);
+	}
+
+	@Override
+	int getFlags(long sequence) {
+		return buffer.getInt(getRecordOffset(sequence) + FLAGS_OFFSET);
+	}
+
+	@Override
+	void getFields(long sequence, FieldRecord fields) {
+		int offset = getRecordOffset(sequence);
+		for (int f = 0; f < fields.floats.length; f++) {
+			fields.floats[f] = buffer.getFloat(offset + FIELDS_OFFSET + (f * 4));
+		}
+		for (int f = 0; f < fields.longs.length; f++) {
+			fields.longs[f] = buffer.getLong(offset + long_fields_offset + (f * 8));
+		}
+	}
+
+	@Override
+	void putRecord(long sequence, long timestamp, int flags, FieldRecord fields) {
+		int offset = getRecordOffset(sequence);
+		buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+		buffer.putInt(offset + FLAGS_OFFSET, flags);
+		for (int f = 0; f < fields.floats.length; f++) {
+			buffer.putFloat(offset + FIELDS_OFFSET + (f * 4), fields.floats[f]);
+		}
+		for (int f = 0; f < fields.longs.length; f++) {
+			buffer.putLong(offset + long_fields_offset + (f * 8), fields.longs[f]);
+		}
+	}
+}
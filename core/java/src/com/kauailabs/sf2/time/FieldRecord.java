@@ -0,0 +1,121 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldCodec.FieldType;
+import com.kauailabs.sf2.quantity.IFieldSink;
+import com.kauailabs.sf2.quantity.IFieldSource;
+
+/**
+ * Holds the fields of one value, as written by its IFieldCodec, in primitive
+ * form: Float fields in the floats array, and Long and Boolean (0 or 1)
+ * fields in the longs array, each in field order. Histories which store
+ * values as primitive records (and the archive and journal) move values into
+ * and out of their storage through a reused FieldRecord, without allocation.
+ */
+final class FieldRecord implements IFieldSink, IFieldSource {
+	final float[] floats;
+	final long[] longs;
+	int float_index;
+	int long_index;
+
+	/**
+	 * Constructs a FieldRecord able to hold the fields of the provided value.
+	 */
+	FieldRecord(IFieldCodec codec) {
+		this(new float[getFloatFieldCount(codec)], new long[codec.getFieldCount() - getFloatFieldCount(codec)]);
+	}
+
+	/**
+	 * Constructs a FieldRecord over the provided arrays.
+	 */
+	FieldRecord(float[] floats, long[] longs) {
+		this.floats = floats;
+		this.longs = longs;
+	}
+
+	/**
+	 * Returns the number of the provided value's fields which are stored as
+	 * floats; the remaining fields are stored as longs.
+	 */
+	static int getFloatFieldCount(IFieldCodec codec) {
+		int count = 0;
+		for (int f = 0; f < codec.getFieldCount(); f++) {
+			if (codec.getFieldType(f) == FieldType.Float) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the fields of the provided value into this record.
+	 */
+	void store(IFieldCodec value) {
+		float_index = 0;
+		long_index = 0;
+		value.writeFields(this);
+	}
+
+	/**
+	 * Initializes the provided value from the fields in this record.
+	 */
+	void load(IFieldCodec out) {
+		float_index = 0;
+		long_index = 0;
+		out.readFields(this);
+	}
+
+	@Override
+	public void putFloat(float value) {
+		floats[float_index++] = value;
+	}
+
+	@Override
+	public void putLong(long value) {
+		longs[long_index++] = value;
+	}
+
+	@Override
+	public void putBoolean(boolean value) {
+		longs[long_index++] = value ? 1 : 0;
+	}
+
+	@Override
+	public float getFloat() {
+		return floats[float_index++];
+	}
+
+	@Override
+	public long getLong() {
+		return longs[long_index++];
+	}
+
+	@Override
+	public boolean getBoolean() {
+		return longs[long_index++] != 0;
+	}
+}
@@ -0,0 +1,94 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Describes the binary history journal format written by HistoryJournalWriter
+ * and read by HistoryJournalReader. All values are big-endian (as written by
+ * java.io.DataOutput).
+ * <p>
+ * Header:
+ * <p>
+ * - magic number (int), MAGIC<br>
+ * - format version (short), VERSION<br>
+ * - value name (modified UTF-8 string)<br>
+ * - timestamp resolution (byte), the ordinal of a
+ * Timestamp.TimestampResolution<br>
+ * - number of fields per record (short)<br>
+ * - for each field: the field name and the field unit abbreviation (modified
+ * UTF-8 strings), and the field type (byte); the unit abbreviation is empty if
+ * the unit is unknown.
+ * <p>
+ * The header is followed by any number of records, each of which consists of:
+ * <p>
+ * - the difference between the record timestamp and the previous record's
+ * timestamp (or 0, for the first record), as a zig-zag encoded variable-length
+ * integer (7 bits per byte, least-significant group first, high bit set on
+ * all but the last byte)<br>
+ * - the value, in field order: each Float field as a raw IEEE 754 float
+ * (int), each Long field as a long, and each Boolean field as a byte (0 or
+ * 1).
+ * <p>
+ * A journal ends at the end of the stream; an incomplete final record (e.g.,
+ * if the writer was interrupted) is ignored.
+ */
+final class HistoryJournalFormat {
+	static final int MAGIC = 0x5346324A; /* "SF2J" */
+	static final int VERSION = 3;
+	static final int MAX_VARLONG_SIZE = 10;
+
+	static final int FLOAT_FIELD = 0;
+	static final int LONG_FIELD = 1;
+	static final int BOOLEAN_FIELD = 2;
+
+	private HistoryJournalFormat() {
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		out.writeByte((int) zigzag);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long zigzag = 0;
+		for (int shift = 0; shift < MAX_VARLONG_SIZE * 7; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigzag |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		throw new EOFException("Malformed journal timestamp");
+	}
+}
@@ -0,0 +1,294 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldCodec.FieldType;
+
+/**
+ * The HistoryJournalReader class reads a binary history journal written by a
+ * HistoryJournalWriter, one record at a time. Since the journal header
+ * describes each field by name and unit, journals may be read (e.g., by
+ * offline tools) without knowledge of the Java class of the values; the
+ * fields of the current record are available individually, and may
+ * optionally be loaded into a value of the class written (via its
+ * IFieldCodec).
+ * <p>
+ * This class is not threadsafe.
+ */
+public class HistoryJournalReader implements Closeable {
+	DataInputStream in;
+	String value_name;
+	Timestamp.TimestampResolution resolution;
+	String[] field_names;
+	String[] field_units;
+	int[] field_types;
+	/* Index of each field within fields.floats or fields.longs. */
+	int[] field_slots;
+	FieldRecord fields;
+	long timestamp;
+
+	/**
+	 * Constructs a HistoryJournalReader, and reads the journal header.
+	 * 
+	 * @param in
+	 *            - the stream the journal is read from; it is buffered
+	 *            internally.
+	 * @throws IOException
+	 *             if the header cannot be read, or is not a supported journal
+	 *             header.
+	 */
+	public HistoryJournalReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		if (this.in.readInt() != HistoryJournalFormat.MAGIC) {
+			throw new IOException("Not a history journal.");
+		}
+		int version = this.in.readUnsignedShort();
+		if (version != HistoryJournalFormat.VERSION) {
+			throw new IOException("Unsupported history journal version " + version + ".");
+		}
+		value_name = this.in.readUTF();
+		int resolution_ordinal = this.in.readUnsignedByte();
+		if (resolution_ordinal >= Timestamp.TimestampResolution.values().length) {
+			throw new IOException("Unsupported history journal timestamp resolution " + resolution_ordinal + ".");
+		}
+		resolution = Timestamp.TimestampResolution.values()[resolution_ordinal];
+		int field_count = this.in.readUnsignedShort();
+		field_names = new String[field_count];
+		field_units = new String[field_count];
+		field_types = new int[field_count];
+		field_slots = new int[field_count];
+		int float_count = 0;
+		int long_count = 0;
+		for (int i = 0; i < field_count; i++) {
+			field_names[i] = this.in.readUTF();
+			field_units[i] = this.in.readUTF();
+			field_types[i] = this.in.readUnsignedByte();
+			switch (field_types[i]) {
+			case HistoryJournalFormat.FLOAT_FIELD:
+				field_slots[i] = float_count++;
+				break;
+			case HistoryJournalFormat.LONG_FIELD:
+			case HistoryJournalFormat.BOOLEAN_FIELD:
+				field_slots[i] = long_count++;
+				break;
+			default:
+				throw new IOException("Unsupported history journal field type " + field_types[i] + ".");
+			}
+		}
+		fields = new FieldRecord(new float[float_count], new long[long_count]);
+	}
+
+	public String getValueName() {
+		return value_name;
+	}
+
+	/**
+	 * Returns the resolution of the record timestamps.
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return resolution;
+	}
+
+	public int getFieldCount() {
+		return field_types.length;
+	}
+
+	public String getFieldName(int index) {
+		return field_names[index];
+	}
+
+	/**
+	 * Returns the abbreviation of the unit of the field at the provided index,
+	 * or an empty string if the unit is unknown.
+	 */
+	public String getFieldUnit(int index) {
+		return field_units[index];
+	}
+
+	public FieldType getFieldType(int index) {
+		switch (field_types[index]) {
+		case HistoryJournalFormat.FLOAT_FIELD:
+			return FieldType.Float;
+		case HistoryJournalFormat.LONG_FIELD:
+			return FieldType.Long;
+		default:
+			return FieldType.Boolean;
+		}
+	}
+
+	/**
+	 * Advances to the next record in the journal.
+	 * 
+	 * @return true if a record was read, false if the end of the journal was
+	 *         reached (an incomplete final record is ignored).
+	 * @throws IOException
+	 *             if the journal could not be read.
+	 */
+	public boolean next() throws IOException {
+		try {
+			long next_timestamp = timestamp + HistoryJournalFormat.readVarLong(in);
+			for (int i = 0; i < field_types.length; i++) {
+				switch (field_types[i]) {
+				case HistoryJournalFormat.FLOAT_FIELD:
+					fields.floats[field_slots[i]] = Float.intBitsToFloat(in.readInt());
+					break;
+				case HistoryJournalFormat.LONG_FIELD:
+					fields.longs[field_slots[i]] = in.readLong();
+					break;
+				default:
+					fields.longs[field_slots[i]] = in.readUnsignedByte();
+					break;
+				}
+			}
+			timestamp = next_timestamp;
+			return true;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the current record.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the value of the field at the provided index within the current
+	 * record, as a float; Boolean fields are returned as 0 or 1.
+	 */
+	public float getField(int index) {
+		return (field_types[index] == HistoryJournalFormat.FLOAT_FIELD) ? fields.floats[field_slots[index]]
+				: fields.longs[field_slots[index]];
+	}
+
+	/**
+	 * Returns the value of the Long or Boolean (0 or 1) field at the provided
+	 * index within the current record; Float fields are truncated.
+	 */
+	public long getLongField(int index) {
+		return (field_types[index] == HistoryJournalFormat.FLOAT_FIELD) ? (long) fields.floats[field_slots[index]]
+				: fields.longs[field_slots[index]];
+	}
+
+	/**
+	 * Initializes the provided value, which must be of the class written,
+	 * from the fields of the current record.
+	 * 
+	 * @param out
+	 *            - the value to initialize.
+	 */
+	public void load(IFieldCodec out) {
+		fields.load(out);
+	}
+
+	/**
+	 * Writes a CSV header, followed by one CSV row for each remaining record.
+	 * The output matches that of the CSV writers for the same history.
+	 * 
+	 * @return the number of rows written.
+	 */
+	public long writeCSV(PrintWriter out) throws IOException {
+		StringBuilder line = new StringBuilder();
+		ThreadsafeInterpolatingTimeHistory.formatTimestampHeader(line, resolution);
+		for (String field_name : field_names) {
+			line.append(',').append(field_name);
+		}
+		out.println(line);
+		long row_count = 0;
+		while (next()) {
+			line.setLength(0);
+			line.append(timestamp);
+			for (int i = 0; i < field_types.length; i++) {
+				line.append(',');
+				switch (field_types[i]) {
+				case HistoryJournalFormat.FLOAT_FIELD:
+					line.append(fields.floats[field_slots[i]]);
+					break;
+				case HistoryJournalFormat.LONG_FIELD:
+					line.append(fields.longs[field_slots[i]]);
+					break;
+				default:
+					line.append(fields.longs[field_slots[i]] != 0);
+					break;
+				}
+			}
+			out.println(line);
+			row_count++;
+		}
+		return row_count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Converts the journal at the provided path to a CSV file.
+	 * 
+	 * @param journal_file_path
+	 *            - path of the journal to convert.
+	 * @param csv_file_path
+	 *            - path of the CSV file to create.
+	 * @return true if the conversion succeeded.
+	 */
+	public static boolean convertToCSV(String journal_file_path, String csv_file_path) {
+		try (HistoryJournalReader reader = new HistoryJournalReader(new FileInputStream(journal_file_path));
+				PrintWriter out = new PrintWriter(csv_file_path)) {
+			reader.writeCSV(out);
+			return !out.checkError();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a journal to a CSV file from the command line.
+	 * <p>
+	 * Usage: HistoryJournalReader journal_file_path csv_file_path
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.out.println("Usage: HistoryJournalReader journal_file_path csv_file_path");
+			return;
+		}
+		if (!convertToCSV(args[0], args[1])) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The HistoryJournalWriter class writes timestamped values to a compact,
+ * self-describing binary journal (see HistoryJournalFormat). Compared to CSV,
+ * each record stores a delta-encoded timestamp and the raw fields of the
+ * value (see IFieldCodec), which is both smaller (e.g., ~18 bytes rather than ~60 for a
+ * Quaternion) and cheaper to produce, and which preserves full float
+ * precision.
+ * <p>
+ * The journal header describes each field by name and unit, so the journal
+ * may be read (and converted to CSV) by HistoryJournalReader without knowledge
+ * of the value's Java class.
+ * <p>
+ * This class is not threadsafe.
+ */
+public class HistoryJournalWriter implements Closeable {
+	DataOutputStream out;
+	int[] field_types;
+	FieldRecord fields;
+	long last_timestamp;
+	long record_count;
+
+	/**
+	 * Constructs a HistoryJournalWriter, and writes the journal header.
+	 * 
+	 * @param out
+	 *            - the stream the journal is written to; it is buffered
+	 *            internally.
+	 * @param value_name
+	 *            - the name of the values written.
+	 * @param resolution
+	 *            - the resolution of the timestamps written.
+	 * @param default_value
+	 *            - a value of the class written, which describes the names
+	 *            and types of the fields.
+	 * @param units
+	 *            - the units of each field, in field order (may be null).
+	 * @throws IOException
+	 *             if the header cannot be written.
+	 */
+	public HistoryJournalWriter(OutputStream out, String value_name, Timestamp.TimestampResolution resolution,
+			IFieldCodec default_value, IUnit[] units) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.fields = new FieldRecord(default_value);
+		int field_count = default_value.getFieldCount();
+		field_types = new int[field_count];
+		this.out.writeInt(HistoryJournalFormat.MAGIC);
+		this.out.writeShort(HistoryJournalFormat.VERSION);
+		this.out.writeUTF(value_name);
+		this.out.writeByte(resolution.ordinal());
+		this.out.writeShort(field_count);
+		for (int i = 0; i < field_count; i++) {
+			switch (default_value.getFieldType(i)) {
+			case Float:
+				field_types[i] = HistoryJournalFormat.FLOAT_FIELD;
+				break;
+			case Long:
+				field_types[i] = HistoryJournalFormat.LONG_FIELD;
+				break;
+			default:
+				field_types[i] = HistoryJournalFormat.BOOLEAN_FIELD;
+				break;
+			}
+			/* The same naming as the CSV header. */
+			this.out.writeUTF((field_count == 1) ? value_name : value_name + "." + default_value.getFieldName(i));
+			this.out.writeUTF(((units != null) && (i < units.length) && (units[i] != null))
+					? units[i].getAbbreviation() : "");
+			this.out.writeByte(field_types[i]);
+		}
+	}
+
+	/**
+	 * Appends one record to the journal.
+	 * 
+	 * @param timestamp
+	 *            - the value's timestamp.
+	 * @param value
+	 *            - the value to write.
+	 * @throws IOException
+	 *             if the record cannot be written.
+	 */
+	public void append(long timestamp, IFieldCodec value) throws IOException {
+		fields.store(value);
+		HistoryJournalFormat.writeVarLong(out, timestamp - last_timestamp);
+		int float_index = 0;
+		int long_index = 0;
+		for (int field_type : field_types) {
+			switch (field_type) {
+			case HistoryJournalFormat.FLOAT_FIELD:
+				out.writeInt(Float.floatToRawIntBits(fields.floats[float_index++]));
+				break;
+			case HistoryJournalFormat.LONG_FIELD:
+				out.writeLong(fields.longs[long_index++]);
+				break;
+			default:
+				out.writeByte((int) fields.longs[long_index++]);
+				break;
+			}
+		}
+		last_timestamp = timestamp;
+		record_count++;
+	}
+
+	/**
+	 * Returns the number of records written.
+	 */
+	public long getRecordCount() {
+		return record_count;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
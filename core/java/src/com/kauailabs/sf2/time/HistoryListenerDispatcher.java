@@ -0,0 +1,225 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kauailabs.sf2.quantity.ICopy;
+
+/**
+ * The HistoryListenerDispatcher class delivers the objects added to a
+ * ThreadsafeInterpolatingTimeHistory to one ITimeHistoryListener (see
+ * ThreadsafeInterpolatingTimeHistory.addListener()).
+ * <p>
+ * In Inline mode, the listener is invoked by the thread adding the object,
+ * before add() returns but after the object is published and the history's
+ * lock is released; readers never wait upon the listener, but the thread
+ * adding the object (and, in Synchronized mode, other threads adding objects,
+ * since listeners are notified in sequence order) does. Inline listeners
+ * must therefore be brief and must not block.
+ * <p>
+ * In Async mode, a copy of the object is queued in a bounded ring buffer and
+ * the listener is invoked on a dedicated background thread; if the ring
+ * buffer is full the object is not queued, and is instead counted as an
+ * overflow. The thread adding objects therefore never waits upon a slow
+ * Async listener.
+ * <p>
+ * Queueing is allocation-free.
+ * 
+ * @param <T>
+ *            - the Java class of the objects contained in the history.
+ */
+public class HistoryListenerDispatcher<T extends ICopy<T>> {
+	public enum DispatchMode {
+		Inline, /* Invoked by the thread which adds the object; must not block. */
+		Async /* Invoked on a dedicated background thread. */
+	};
+
+	final ITimeHistoryListener<T> listener;
+	final DispatchMode dispatch_mode;
+	/* Ring buffer of queued objects and their sequence numbers; Async only. */
+	final ArrayList<T> queued_values;
+	final long[] queued_sequences;
+	final int queue_capacity;
+	/* Written only by the thread adding objects. */
+	volatile long queued_count;
+	volatile long overflow_count;
+	/* Written only by the dispatching thread. */
+	volatile long delivered_count;
+	volatile long failure_count;
+	volatile boolean waiting;
+	volatile boolean running;
+	Thread dispatch_thread;
+
+	HistoryListenerDispatcher(ITimeHistoryListener<T> listener, T default_obj, DispatchMode mode,
+			int queue_capacity) {
+		if (listener == null) {
+			throw new IllegalArgumentException("The listener must not be null.");
+		}
+		this.listener = listener;
+		this.dispatch_mode = mode;
+		if (mode == DispatchMode.Async) {
+			if (queue_capacity <= 0) {
+				throw new IllegalArgumentException("The queue capacity must be greater than zero.");
+			}
+			this.queue_capacity = queue_capacity;
+			queued_values = new ArrayList<T>(queue_capacity);
+			for (int i = 0; i < queue_capacity; i++) {
+				queued_values.add(default_obj.instantiate_copy());
+			}
+			queued_sequences = new long[queue_capacity];
+			running = true;
+			dispatch_thread = new Thread(new Runnable() {
+				public void run() {
+					processQueue();
+				}
+			}, "SF2 History Listener");
+			dispatch_thread.setDaemon(true);
+			dispatch_thread.start();
+		} else {
+			this.queue_capacity = 0;
+			queued_values = null;
+			queued_sequences = null;
+		}
+	}
+
+	/**
+	 * Delivers (Inline) or queues (Async) the provided object. Invoked by the
+	 * history as each object is committed, by one thread at a time.
+	 */
+	void dispatch(T t, long sequence) {
+		if (dispatch_mode == DispatchMode.Inline) {
+			listener.sampleAdded(t, sequence);
+			delivered_count++;
+			return;
+		}
+		long head = queued_count;
+		if (!running || (head - delivered_count >= queue_capacity)) {
+			overflow_count++;
+			return;
+		}
+		int slot = (int) (head % queue_capacity);
+		queued_values.get(slot).copy(t);
+		queued_sequences[slot] = sequence;
+		/* Publishes the queued object to the dispatching thread. */
+		queued_count = head + 1;
+		if (waiting) {
+			LockSupport.unpark(dispatch_thread);
+		}
+	}
+
+	void processQueue() {
+		for (;;) {
+			long tail = delivered_count;
+			if (tail == queued_count) {
+				if (!running) {
+					return;
+				}
+				/*
+				 * Announce the wait before re-checking the queue, so that a
+				 * concurrent dispatch() either is seen here or sees the wait.
+				 */
+				waiting = true;
+				if ((tail == queued_count) && running) {
+					LockSupport.park(this);
+				}
+				waiting = false;
+				continue;
+			}
+			int slot = (int) (tail % queue_capacity);
+			try {
+				listener.sampleAdded(queued_values.get(slot), queued_sequences[slot]);
+			} catch (RuntimeException e) {
+				failure_count++;
+			}
+			/* Releases the slot to the thread adding objects. */
+			delivered_count = tail + 1;
+		}
+	}
+
+	/**
+	 * Stops dispatching. In Async mode, the objects already queued are
+	 * delivered before the background thread exits; subsequently added
+	 * objects are counted as overflows.
+	 */
+	void shutdown() {
+		if (dispatch_mode == DispatchMode.Async) {
+			running = false;
+			LockSupport.unpark(dispatch_thread);
+		}
+	}
+
+	public ITimeHistoryListener<T> getListener() {
+		return listener;
+	}
+
+	public DispatchMode getDispatchMode() {
+		return dispatch_mode;
+	}
+
+	/**
+	 * Returns the capacity of the ring buffer (Async mode), or 0 (Inline
+	 * mode).
+	 */
+	public int getQueueCapacity() {
+		return queue_capacity;
+	}
+
+	/**
+	 * Returns the number of objects delivered to the listener.
+	 */
+	public long getDeliveredCount() {
+		return delivered_count;
+	}
+
+	/**
+	 * Returns the number of objects queued but not yet delivered (Async
+	 * mode).
+	 */
+	public long getPendingCount() {
+		if (dispatch_mode == DispatchMode.Inline) {
+			return 0;
+		}
+		return queued_count - delivered_count;
+	}
+
+	/**
+	 * Returns the number of objects which were not delivered because the ring
+	 * buffer was full (Async mode), or because the listener was removed.
+	 */
+	public long getOverflowCount() {
+		return overflow_count;
+	}
+
+	/**
+	 * Returns the number of (Async mode) deliveries upon which the listener
+	 * threw a RuntimeException. In Inline mode, such exceptions are instead
+	 * propagated to the thread adding the object.
+	 */
+	public long getFailureCount() {
+		return failure_count;
+	}
+}
@@ -0,0 +1,117 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The HistoryMetrics class accumulates usage metrics of a
+ * ThreadsafeInterpolatingTimeHistory (see
+ * ThreadsafeInterpolatingTimeHistory.enableMetrics()):
+ * <p>
+ * - the number of add() and get() invocations, and of get() results which
+ * were exact, interpolated, or not found because the requested timestamp was
+ * older than the oldest object ("miss old") or newer than the newest object
+ * ("miss new").
+ * <p>
+ * - histograms (in nanoseconds) of the time spent waiting to acquire the
+ * history's lock, and the time the lock was held, by add() and get(). In
+ * LockFreeSingleWriter mode there is no lock; the hold time histogram then
+ * records the duration of each add() and get().
+ * <p>
+ * Recording is allocation-free, and may be performed concurrently by any
+ * number of threads.
+ */
+public class HistoryMetrics {
+	final LongAdder add_count = new LongAdder();
+	final LongAdder get_count = new LongAdder();
+	final LongAdder exact_count = new LongAdder();
+	final LongAdder interpolated_count = new LongAdder();
+	final LongAdder miss_old_count = new LongAdder();
+	final LongAdder miss_new_count = new LongAdder();
+	final LatencyHistogram lock_wait_ns = new LatencyHistogram();
+	final LatencyHistogram lock_hold_ns = new LatencyHistogram();
+
+	void recordGet(boolean found, boolean interpolated, boolean newer_than_newest) {
+		get_count.increment();
+		if (found) {
+			if (interpolated) {
+				interpolated_count.increment();
+			} else {
+				exact_count.increment();
+			}
+		} else if (newer_than_newest) {
+			miss_new_count.increment();
+		} else {
+			miss_old_count.increment();
+		}
+	}
+
+	public long getAddCount() {
+		return add_count.sum();
+	}
+
+	public long getGetCount() {
+		return get_count.sum();
+	}
+
+	public long getExactCount() {
+		return exact_count.sum();
+	}
+
+	public long getInterpolatedCount() {
+		return interpolated_count.sum();
+	}
+
+	public long getMissOldCount() {
+		return miss_old_count.sum();
+	}
+
+	public long getMissNewCount() {
+		return miss_new_count.sum();
+	}
+
+	public LatencyHistogram getLockWaitHistogram() {
+		return lock_wait_ns;
+	}
+
+	public LatencyHistogram getLockHoldHistogram() {
+		return lock_hold_ns;
+	}
+
+	/**
+	 * Discards all accumulated metrics.
+	 */
+	public void reset() {
+		add_count.reset();
+		get_count.reset();
+		exact_count.reset();
+		interpolated_count.reset();
+		miss_old_count.reset();
+		miss_new_count.reset();
+		lock_wait_ns.reset();
+		lock_hold_ns.reset();
+	}
+}
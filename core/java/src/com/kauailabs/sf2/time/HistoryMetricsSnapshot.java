@@ -0,0 +1,176 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.PrintWriter;
+
+import com.kauailabs.sf2.persistence.ICSVFileWriter;
+
+/**
+ * The HistoryMetricsSnapshot class holds the metrics of a
+ * ThreadsafeInterpolatingTimeHistory as of a point in time (see
+ * ThreadsafeInterpolatingTimeHistory.getMetricsSnapshot()), and may be
+ * written as CSV (e.g., via a CSVFileWriter).
+ */
+public class HistoryMetricsSnapshot implements ICSVFileWriter {
+	String name;
+	long add_count;
+	long get_count;
+	long exact_count;
+	long interpolated_count;
+	long miss_old_count;
+	long miss_new_count;
+	long lock_wait_p50_ns;
+	long lock_wait_p99_ns;
+	long lock_wait_max_ns;
+	long lock_hold_p50_ns;
+	long lock_hold_p99_ns;
+	long lock_hold_max_ns;
+	int fill;
+	int capacity;
+	long span_ms;
+
+	HistoryMetricsSnapshot(String name, HistoryMetrics metrics, int fill, int capacity, long span_ms) {
+		this.name = name;
+		this.add_count = metrics.getAddCount();
+		this.get_count = metrics.getGetCount();
+		this.exact_count = metrics.getExactCount();
+		this.interpolated_count = metrics.getInterpolatedCount();
+		this.miss_old_count = metrics.getMissOldCount();
+		this.miss_new_count = metrics.getMissNewCount();
+		this.lock_wait_p50_ns = metrics.lock_wait_ns.getValueAtPercentile(50);
+		this.lock_wait_p99_ns = metrics.lock_wait_ns.getValueAtPercentile(99);
+		this.lock_wait_max_ns = metrics.lock_wait_ns.getMax();
+		this.lock_hold_p50_ns = metrics.lock_hold_ns.getValueAtPercentile(50);
+		this.lock_hold_p99_ns = metrics.lock_hold_ns.getValueAtPercentile(99);
+		this.lock_hold_max_ns = metrics.lock_hold_ns.getMax();
+		this.fill = fill;
+		this.capacity = capacity;
+		this.span_ms = span_ms;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getAddCount() {
+		return add_count;
+	}
+
+	public long getGetCount() {
+		return get_count;
+	}
+
+	public long getExactCount() {
+		return exact_count;
+	}
+
+	public long getInterpolatedCount() {
+		return interpolated_count;
+	}
+
+	public long getMissOldCount() {
+		return miss_old_count;
+	}
+
+	public long getMissNewCount() {
+		return miss_new_count;
+	}
+
+	public long getLockWaitP50Nanoseconds() {
+		return lock_wait_p50_ns;
+	}
+
+	public long getLockWaitP99Nanoseconds() {
+		return lock_wait_p99_ns;
+	}
+
+	public long getLockWaitMaxNanoseconds() {
+		return lock_wait_max_ns;
+	}
+
+	public long getLockHoldP50Nanoseconds() {
+		return lock_hold_p50_ns;
+	}
+
+	public long getLockHoldP99Nanoseconds() {
+		return lock_hold_p99_ns;
+	}
+
+	public long getLockHoldMaxNanoseconds() {
+		return lock_hold_max_ns;
+	}
+
+	/**
+	 * Returns the number of valid objects in the history.
+	 */
+	public int getFill() {
+		return fill;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the time between the oldest and newest objects in the history,
+	 * in milliseconds (regardless of the resolution of the history's
+	 * timestamps).
+	 */
+	public long getSpanMilliseconds() {
+		return span_ms;
+	}
+
+	/**
+	 * Writes the CSV header describing the rows written by writeCSVRow().
+	 */
+	public static void writeCSVHeader(PrintWriter out) {
+		out.println("Name,AddCount,GetCount,ExactCount,InterpolatedCount,MissOldCount,MissNewCount,"
+				+ "LockWaitP50Ns,LockWaitP99Ns,LockWaitMaxNs,LockHoldP50Ns,LockHoldP99Ns,LockHoldMaxNs,"
+				+ "Fill,Capacity,SpanMs");
+	}
+
+	/**
+	 * Writes this snapshot as one CSV row; snapshots taken periodically may be
+	 * appended to the same file.
+	 */
+	public void writeCSVRow(PrintWriter out) {
+		StringBuilder row = new StringBuilder(name);
+		row.append(',').append(add_count).append(',').append(get_count).append(',').append(exact_count)
+				.append(',').append(interpolated_count).append(',').append(miss_old_count).append(',')
+				.append(miss_new_count).append(',').append(lock_wait_p50_ns).append(',').append(lock_wait_p99_ns)
+				.append(',').append(lock_wait_max_ns).append(',').append(lock_hold_p50_ns).append(',')
+				.append(lock_hold_p99_ns).append(',').append(lock_hold_max_ns).append(',').append(fill)
+				.append(',').append(capacity).append(',').append(span_ms);
+		out.println(row);
+	}
+
+	@Override
+	public boolean writeCSV(PrintWriter out) {
+		writeCSVHeader(out);
+		writeCSVRow(out);
+		return true;
+	}
+}
@@ -0,0 +1,67 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+/**
+ * The IQuantityReducer interface is implemented by classes which reduce a
+ * run of consecutive values (e.g., the samples within a decimation interval)
+ * into a single representative value, as used by
+ * TieredInterpolatingTimeHistory.
+ * 
+ * @param <Q>
+ *            - the Java class of the reduced values.
+ */
+public interface IQuantityReducer<Q> {
+
+	/**
+	 * Selects the statistic produced by reducers of scalar-valued
+	 * quantities.
+	 */
+	public enum Statistic {
+		Mean, Minimum, Maximum
+	};
+
+	/**
+	 * Discards all accumulated values.
+	 */
+	public void reset();
+
+	/**
+	 * Accumulates the provided value; the value is not retained.
+	 */
+	public void accumulate(Q value);
+
+	/**
+	 * Writes the reduction of the values accumulated since the last reset into
+	 * the provided object. At least one value must have been accumulated.
+	 */
+	public void getResult(Q out);
+
+	/**
+	 * Returns a new reducer with the same configuration as this reducer, and
+	 * with no accumulated values.
+	 */
+	public IQuantityReducer<Q> instantiate();
+}
@@ -0,0 +1,49 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+/**
+ * The ITimeHistoryListener interface is implemented by objects which are
+ * notified of each object added to a ThreadsafeInterpolatingTimeHistory (see
+ * ThreadsafeInterpolatingTimeHistory.addListener()).
+ * 
+ * @param <T>
+ *            - the Java class of the objects contained in the history.
+ */
+public interface ITimeHistoryListener<T> {
+	/**
+	 * Invoked once per object committed to the history, in the order the
+	 * objects were added. The provided object is owned by the caller, and may
+	 * be reused for subsequent invocations; it must not be retained.
+	 * 
+	 * @param t
+	 *            - the object added
+	 * @param sequence
+	 *            - the sequence number assigned to the object when it was
+	 *            added; sequence numbers increase by one with each add(), so
+	 *            a gap indicates objects which were not delivered.
+	 */
+	public void sampleAdded(T t, long sequence);
+}
@@ -45,6 +45,14 @@ public interface ITimestampedValue {
 	 */
 	public long getTimestamp();
 
+	/**
+	 * Modifies this object's sensor timestamp.
+	 * 
+	 * @param timestamp
+	 *            - sensor timestamp
+	 */
+	public void setTimestamp(long timestamp);
+
 	/**
 	 * Indicates whether this object currently represents a valid
 	 * value/timestamp.
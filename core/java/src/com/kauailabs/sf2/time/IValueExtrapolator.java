@@ -0,0 +1,61 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.ArrayList;
+
+/**
+ * The IValueExtrapolator interface is implemented by classes which predict
+ * the value of a timestamped object at a timestamp later than the most
+ * recent object in a history (see ThreadsafeInterpolatingTimeHistory.predict()).
+ * <p>
+ * Extrapolators may be shared by multiple threads, and so must not modify
+ * shared state within extrapolate().
+ * 
+ * @param <T>
+ *            - the Java class of the timestamped objects.
+ */
+public interface IValueExtrapolator<T> {
+
+	/**
+	 * Returns the number of most recent objects required to extrapolate.
+	 */
+	public int getSampleCount();
+
+	/**
+	 * Extrapolates the value at the provided timestamp.
+	 * 
+	 * @param recent
+	 *            - the getSampleCount() most recent objects, in ascending
+	 *            (strictly increasing) timestamp order.
+	 * @param requested_timestamp
+	 *            - the timestamp at which to extrapolate; later than the
+	 *            timestamp of every provided object.
+	 * @param out
+	 *            - the object to initialize with the extrapolated value; the
+	 *            caller sets its timestamp and flags.
+	 */
+	public void extrapolate(ArrayList<T> recent, long requested_timestamp, T out);
+}
@@ -0,0 +1,199 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Describes the layout of the memory-mapped history file shared between a
+ * MappedInterpolatingTimeHistory (the single writer) and any number of
+ * MappedTimeHistoryReaders, which may reside in other processes. All values
+ * are little-endian.
+ * <p>
+ * Header (HEADER_SIZE bytes):
+ * <p>
+ * - offset 0: magic number (int), MAGIC<br>
+ * - offset 4: format version (int), VERSION<br>
+ * - offset 8: record size in bytes (int)<br>
+ * - offset 12: capacity in records (int)<br>
+ * - offset 16: number of float fields per record (int)<br>
+ * - offset 20: number of long fields per record (int)<br>
+ * - offset 24: next sequence number (long); the number of records ever
+ * added, published after each record is complete<br>
+ * - offset 32: first valid sequence number (long); advanced by reset()
+ * <p>
+ * The record holding sequence number s begins at HEADER_SIZE + (s % capacity)
+ * * record size:
+ * <p>
+ * - offset 0: record lock (long); 0 if never written, (s + 1) * 2 once record
+ * s is complete, and odd while it is being written<br>
+ * - offset 8: timestamp (long)<br>
+ * - offset 16: flags (int); bit 0 is the valid flag, bit 1 the interpolated
+ * flag<br>
+ * - offset 20: the value's Float fields (see IFieldCodec), one float each,
+ * in field order<br>
+ * - then, aligned to 8 bytes: the value's Long and Boolean fields, one long
+ * each, in field order.
+ * <p>
+ * Writer protocol (seqlock): store an odd record lock, store fence, store
+ * the record contents, store fence, store the even record lock for the new
+ * sequence number, store fence, and finally store the next sequence number in
+ * the header.
+ * <p>
+ * Reader protocol: read the next sequence number from the header, load fence,
+ * then for each record read its lock; if it is not the expected (even) value
+ * for the sequence number being read, the record is unavailable. Otherwise
+ * load fence, read the contents, load fence, and re-read the record lock. If
+ * it changed, the contents may be torn and the read must be retried.
+ * <p>
+ * Memory ordering across processes: the Java memory model only describes
+ * threads within one JVM, so the protocol instead relies on the hardware.
+ * Every process mapping the file shares the same physical pages, and
+ * processor caches keep those pages coherent between cores exactly as they
+ * do for memory shared between threads. The fences are processor fence
+ * instructions (sun.misc.Unsafe's storeFence() and loadFence(), the Java 8
+ * equivalents of VarHandle's fences); they also stop the JIT compiler from
+ * moving buffer accesses across them. A store fence orders the writer's
+ * stores as seen by every core, and a load fence orders a reader's loads,
+ * so a reader which observes a record lock also observes every store which
+ * preceded it, whichever process performed them.
+ * <p>
+ * Longs are 8-byte aligned, so on 64-bit platforms each long is read and
+ * written atomically. On 32-bit platforms (e.g., the roboRIO) a long may be
+ * accessed as two halves. A torn record lock cannot match the expected even
+ * value, since the writer's intermediate value is odd, and a torn timestamp
+ * is detected by the seqlock. A torn next sequence number only leads the
+ * reader to records whose locks do not match, which it retries.
+ */
+final class MappedHistoryFormat {
+	static final int MAGIC = 0x53463248; /* "SF2H" */
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 64;
+
+	static final int MAGIC_OFFSET = 0;
+	static final int VERSION_OFFSET = 4;
+	static final int RECORD_SIZE_OFFSET = 8;
+	static final int CAPACITY_OFFSET = 12;
+	static final int FLOAT_FIELD_COUNT_OFFSET = 16;
+	static final int LONG_FIELD_COUNT_OFFSET = 20;
+	static final int NEXT_SEQUENCE_OFFSET = 24;
+	static final int FIRST_VALID_SEQUENCE_OFFSET = 32;
+
+	static final int RECORD_LOCK_OFFSET = 0;
+	static final int RECORD_TIMESTAMP_OFFSET = 8;
+	static final int RECORD_FLAGS_OFFSET = 16;
+	static final int RECORD_FIELDS_OFFSET = 20;
+
+	static final int VALID_FLAG = 0x01;
+	static final int INTERPOLATED_FLAG = 0x02;
+
+	static final MethodHandle LOAD_FENCE;
+	static final MethodHandle STORE_FENCE;
+	static final MethodHandle FULL_FENCE;
+
+	/*
+	 * Unsafe is resolved reflectively since it is not part of the Java 8 API
+	 * the library is compiled against. Handles held in static final fields
+	 * are inlined by the JIT compiler, so each call compiles to the fence
+	 * instruction alone.
+	 */
+	static {
+		try {
+			Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+			Field unsafe_field = unsafe_class.getDeclaredField("theUnsafe");
+			unsafe_field.setAccessible(true);
+			Object unsafe = unsafe_field.get(null);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodType fence_type = MethodType.methodType(void.class);
+			LOAD_FENCE = lookup.findVirtual(unsafe_class, "loadFence", fence_type).bindTo(unsafe);
+			STORE_FENCE = lookup.findVirtual(unsafe_class, "storeFence", fence_type).bindTo(unsafe);
+			FULL_FENCE = lookup.findVirtual(unsafe_class, "fullFence", fence_type).bindTo(unsafe);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private MappedHistoryFormat() {
+	}
+
+	static int getLongFieldsOffset(int float_field_count) {
+		return (RECORD_FIELDS_OFFSET + (float_field_count * 4) + 7) & ~7;
+	}
+
+	static int getRecordSize(int float_field_count, int long_field_count) {
+		return getLongFieldsOffset(float_field_count) + (long_field_count * 8);
+	}
+
+	static long getFileSize(int record_size, int capacity) {
+		return HEADER_SIZE + ((long) record_size * capacity);
+	}
+
+	static int getRecordOffset(long sequence, int record_size, int capacity) {
+		return HEADER_SIZE + ((int) (sequence % capacity) * record_size);
+	}
+
+	/**
+	 * Returns the record lock value of a completed record.
+	 */
+	static long getCompleteLock(long sequence) {
+		return (sequence + 1) << 1;
+	}
+
+	/**
+	 * Orders the loads before this call with the loads and stores after it.
+	 */
+	static void loadFence() {
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch (Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+
+	/**
+	 * Orders the loads and stores before this call with the stores after it.
+	 */
+	static void storeFence() {
+		try {
+			STORE_FENCE.invokeExact();
+		} catch (Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+
+	/**
+	 * Orders the loads and stores before this call with those after it.
+	 */
+	static void fullFence() {
+		try {
+			FULL_FENCE.invokeExact();
+		} catch (Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+}
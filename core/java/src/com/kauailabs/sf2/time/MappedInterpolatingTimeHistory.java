@@ -0,0 +1,209 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The MappedInterpolatingTimeHistory class implements a timestamped,
+ * interpolating history whose ring of records resides in a memory-mapped
+ * file. The file layout and the seqlock protocol used to publish records are
+ * described by MappedHistoryFormat; other processes can map the same file
+ * with a MappedTimeHistoryReader and perform the same interpolated lookups
+ * without any communication with this process.
+ * <p>
+ * Since the records reside in the file, the most recent contents of the
+ * history survive a crash of the JVM, and can be inspected afterwards with a
+ * MappedTimeHistoryReader. Note that constructing a
+ * MappedInterpolatingTimeHistory clears any existing history in the file at
+ * the same path; readers which mapped a previous history in that file must be
+ * reconstructed.
+ * <p>
+ * Lookups, ordering and CSV output are implemented by
+ * RecordInterpolatingTimeHistory; only this object may write to the file.
+ * 
+ * @param <T>
+ *            - the Java class of the contained values.
+ */
+public class MappedInterpolatingTimeHistory<T extends ICopy<T> & IInterpolate<T> & IQuantity & IFieldCodec>
+		extends RecordInterpolatingTimeHistory<T> {
+	int record_size;
+	int long_fields_offset;
+	MappedByteBuffer buffer;
+	String file_path;
+
+	/**
+	 * Constructs a MappedInterpolatingTimeHistory to hold up to a specified
+	 * number of values, within the file at the provided path. The file is
+	 * created if necessary, and any existing history within it is cleared.
+	 * 
+	 * @param default_value
+	 *            - value used to initialize scratch objects; also the source
+	 *            of the CSV column names and of the field layout.
+	 * @param num_samples
+	 *            - the maximum number of values to be contained; must be at
+	 *            least 2.
+	 * @param file_path
+	 *            - the path of the file to map.
+	 * @throws IOException
+	 *             if the file cannot be created or mapped.
+	 */
+	public MappedInterpolatingTimeHistory(T default_value, int num_samples, String file_path,
+			TimestampInfo ts_info, String name, IUnit[] units) throws IOException {
+		super(default_value, num_samples, ts_info, name, units);
+		if (num_samples < 2) {
+			throw new IllegalArgumentException("num_samples must be at least 2.");
+		}
+		this.file_path = file_path;
+		long_fields_offset = MappedHistoryFormat.getLongFieldsOffset(record.floats.length);
+		record_size = MappedHistoryFormat.getRecordSize(record.floats.length, record.longs.length);
+		long file_size = MappedHistoryFormat.getFileSize(record_size, history_size);
+		if (file_size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("num_samples is too large for a single mapping.");
+		}
+		RandomAccessFile file = new RandomAccessFile(file_path, "rw");
+		try {
+			/*
+			 * The file is never truncated, since truncating a file mapped by
+			 * another process would cause accesses from that process to fail.
+			 */
+			if (file.length() < file_size) {
+				file.setLength(file_size);
+			}
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file_size);
+		} finally {
+			file.close();
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		/* Invalidate the header, then clear any existing records. */
+		buffer.putInt(MappedHistoryFormat.MAGIC_OFFSET, 0);
+		MappedHistoryFormat.fullFence();
+		for (int i = 0; i < history_size; i++) {
+			buffer.putLong(getRecordOffset(i) + MappedHistoryFormat.RECORD_LOCK_OFFSET, 0);
+		}
+		buffer.putInt(MappedHistoryFormat.RECORD_SIZE_OFFSET, record_size);
+		buffer.putInt(MappedHistoryFormat.CAPACITY_OFFSET, history_size);
+		buffer.putInt(MappedHistoryFormat.FLOAT_FIELD_COUNT_OFFSET, record.floats.length);
+		buffer.putInt(MappedHistoryFormat.LONG_FIELD_COUNT_OFFSET, record.longs.length);
+		buffer.putLong(MappedHistoryFormat.NEXT_SEQUENCE_OFFSET, 0);
+		buffer.putLong(MappedHistoryFormat.FIRST_VALID_SEQUENCE_OFFSET, 0);
+		buffer.putInt(MappedHistoryFormat.VERSION_OFFSET, MappedHistoryFormat.VERSION);
+		MappedHistoryFormat.storeFence();
+		/* Written last, so that readers never accept a partial header. */
+		buffer.putInt(MappedHistoryFormat.MAGIC_OFFSET, MappedHistoryFormat.MAGIC);
+	}
+
+	/**
+	 * Returns the path of the memory-mapped file.
+	 */
+	public String getFilePath() {
+		return file_path;
+	}
+
+	/**
+	 * Clears all contents of the MappedInterpolatingTimeHistory.
+	 */
+	@Override
+	public void reset() {
+		synchronized (this) {
+			super.reset();
+			buffer.putLong(MappedHistoryFormat.FIRST_VALID_SEQUENCE_OFFSET, first_valid_sequence);
+		}
+	}
+
+	int getRecordOffset(long sequence) {
+		return MappedHistoryFormat.getRecordOffset(sequence, record_size, history_size);
+	}
+
+	/*
+	 * Since this object is the only writer, it reads records without the
+	 * seqlock validation which MappedTimeHistoryReaders perform.
+	 */
+
+	@Override
+	long getTimestamp(long sequence) {
+		return buffer.getLong(getRecordOffset(sequence) + MappedHistoryFormat.RECORD_TIMESTAMP_OFFSET);
+	}
+
+	@Override
+	int getFlags(long sequence) {
+		return buffer.getInt(getRecordOffset(sequence) + MappedHistoryFormat.RECORD_FLAGS_OFFSET);
+	}
+
+	@Override
+	void getFields(long sequence, FieldRecord fields) {
+		int offset = getRecordOffset(sequence);
+		for (int f = 0; f < fields.floats.length; f++) {
+			fields.floats[f] = buffer.getFloat(offset + MappedHistoryFormat.RECORD_FIELDS_OFFSET + (f * 4));
+		}
+		for (int f = 0; f < fields.longs.length; f++) {
+			fields.longs[f] = buffer.getLong(offset + long_fields_offset + (f * 8));
+		}
+	}
+
+	/**
+	 * Stores the record following the writer protocol described by
+	 * MappedHistoryFormat, then publishes it to readers.
+	 */
+	@Override
+	void putRecord(long sequence, long timestamp, int flags, FieldRecord fields) {
+		int offset = getRecordOffset(sequence);
+		long lock = MappedHistoryFormat.getCompleteLock(sequence);
+		buffer.putLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET, lock | 1);
+		MappedHistoryFormat.storeFence();
+		buffer.putLong(offset + MappedHistoryFormat.RECORD_TIMESTAMP_OFFSET, timestamp);
+		buffer.putInt(offset + MappedHistoryFormat.RECORD_FLAGS_OFFSET, flags);
+		for (int f = 0; f < fields.floats.length; f++) {
+			buffer.putFloat(offset + MappedHistoryFormat.RECORD_FIELDS_OFFSET + (f * 4), fields.floats[f]);
+		}
+		for (int f = 0; f < fields.longs.length; f++) {
+			buffer.putLong(offset + long_fields_offset + (f * 8), fields.longs[f]);
+		}
+		MappedHistoryFormat.storeFence();
+		buffer.putLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET, lock);
+		MappedHistoryFormat.storeFence();
+		buffer.putLong(MappedHistoryFormat.NEXT_SEQUENCE_OFFSET, sequence + 1);
+	}
+
+	/**
+	 * Requests that the operating system write the contents of the history
+	 * to the underlying storage device. This is only required for the
+	 * contents to survive a crash of the operating system; the contents
+	 * survive a crash of the JVM regardless.
+	 */
+	public void force() {
+		buffer.force();
+	}
+}
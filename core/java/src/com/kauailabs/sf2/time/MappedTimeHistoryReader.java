@@ -0,0 +1,300 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IQuantity;
+
+/**
+ * The MappedTimeHistoryReader class provides read-only, lock-free access to a
+ * history file written by a MappedInterpolatingTimeHistory, which may be
+ * written by another process (e.g., a vision pipeline can look up the robot's
+ * historical orientation without a network round trip). Because the file
+ * outlives the writing process, it may also be opened after a crash for
+ * post-mortem analysis.
+ * <p>
+ * Lookups follow the reader protocol described by MappedHistoryFormat: each
+ * record read is validated against its record lock, and the lookup is
+ * retried if the writer modified a record while it was being read. The
+ * writer is never blocked.
+ * <p>
+ * The reader must be constructed with a value of the same class as the
+ * writer's, so that its fields (see IFieldCodec) match the records. Methods synchronize on the reader, so that its scratch objects may
+ * be reused; use one reader per thread to avoid contention.
+ * 
+ * @param <T>
+ *            - the Java class of the contained values.
+ */
+public class MappedTimeHistoryReader<T extends ICopy<T> & IInterpolate<T> & IQuantity & IFieldCodec> {
+	ByteBuffer buffer;
+	int record_size;
+	int long_fields_offset;
+	int history_size;
+	FieldRecord fields;
+	TimestampedValue<T> interpolate_from;
+	TimestampedValue<T> interpolate_to;
+
+	static final int LOOKUP_NOT_FOUND = 0;
+	static final int LOOKUP_FOUND = 1;
+	static final int LOOKUP_RETRY = 2;
+	static final long INVALID_TIMESTAMP = Long.MIN_VALUE;
+
+	/**
+	 * Maps the history file at the provided path (read-only).
+	 * 
+	 * @param file_path
+	 *            - the file written by a MappedInterpolatingTimeHistory.
+	 * @param default_value
+	 *            - value used to initialize scratch objects; also describes
+	 *            the fields of each record.
+	 * @throws IOException
+	 *             if the file cannot be mapped.
+	 * @throws IllegalArgumentException
+	 *             if the file is not a history file, or its records do not
+	 *             match the fields of the provided value.
+	 */
+	public MappedTimeHistoryReader(String file_path, T default_value) throws IOException {
+		this(map(file_path), default_value);
+	}
+
+	MappedTimeHistoryReader(ByteBuffer buffer, T default_value) {
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		fields = new FieldRecord(default_value);
+		if ((this.buffer.capacity() < MappedHistoryFormat.HEADER_SIZE)
+				|| (this.buffer.getInt(MappedHistoryFormat.MAGIC_OFFSET) != MappedHistoryFormat.MAGIC)
+				|| (this.buffer.getInt(MappedHistoryFormat.VERSION_OFFSET) != MappedHistoryFormat.VERSION)) {
+			throw new IllegalArgumentException("The buffer does not contain a supported history.");
+		}
+		record_size = this.buffer.getInt(MappedHistoryFormat.RECORD_SIZE_OFFSET);
+		history_size = this.buffer.getInt(MappedHistoryFormat.CAPACITY_OFFSET);
+		int float_field_count = this.buffer.getInt(MappedHistoryFormat.FLOAT_FIELD_COUNT_OFFSET);
+		int long_field_count = this.buffer.getInt(MappedHistoryFormat.LONG_FIELD_COUNT_OFFSET);
+		if ((float_field_count != fields.floats.length) || (long_field_count != fields.longs.length)
+				|| (record_size != MappedHistoryFormat.getRecordSize(float_field_count, long_field_count))
+				|| (history_size <= 0) || (this.buffer.capacity() < MappedHistoryFormat.getFileSize(record_size,
+						history_size))) {
+			throw new IllegalArgumentException("The history's records do not match the provided value's fields.");
+		}
+		long_fields_offset = MappedHistoryFormat.getLongFieldsOffset(float_field_count);
+		interpolate_from = new TimestampedValue<T>(default_value.instantiate_copy());
+		interpolate_to = new TimestampedValue<T>(default_value.instantiate_copy());
+	}
+
+	static ByteBuffer map(String file_path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(file_path, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of values the history can contain.
+	 */
+	public int getCapacity() {
+		return history_size;
+	}
+
+	/**
+	 * Returns the current count of values which may be looked up.
+	 */
+	public int getValidSampleCount() {
+		long head = buffer.getLong(MappedHistoryFormat.NEXT_SEQUENCE_OFFSET);
+		long count = head - getOldestSequence(head);
+		return (count > 0) ? (int) count : 0;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest record which may be read,
+	 * given the next sequence number. The oldest record in the file is
+	 * excluded, since the writer may currently be overwriting it.
+	 */
+	long getOldestSequence(long head) {
+		long oldest = head - history_size + 1;
+		long first_valid = buffer.getLong(MappedHistoryFormat.FIRST_VALID_SEQUENCE_OFFSET);
+		return (oldest > first_valid) ? oldest : first_valid;
+	}
+
+	/**
+	 * Returns the timestamp of the record with the provided sequence number,
+	 * or INVALID_TIMESTAMP if the record was being modified or no longer holds
+	 * that sequence number.
+	 */
+	long readTimestamp(long sequence) {
+		int offset = MappedHistoryFormat.getRecordOffset(sequence, record_size, history_size);
+		long lock = buffer.getLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET);
+		if (lock != MappedHistoryFormat.getCompleteLock(sequence)) {
+			return INVALID_TIMESTAMP;
+		}
+		MappedHistoryFormat.loadFence();
+		long timestamp = buffer.getLong(offset + MappedHistoryFormat.RECORD_TIMESTAMP_OFFSET);
+		MappedHistoryFormat.loadFence();
+		if (buffer.getLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET) != lock) {
+			return INVALID_TIMESTAMP;
+		}
+		return timestamp;
+	}
+
+	/**
+	 * Reads the record with the provided sequence number. False is returned
+	 * (and out is not modified) if the record was being modified or no longer
+	 * holds that sequence number.
+	 */
+	boolean readRecord(long sequence, TimestampedValue<T> out) {
+		int offset = MappedHistoryFormat.getRecordOffset(sequence, record_size, history_size);
+		long lock = buffer.getLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET);
+		if (lock != MappedHistoryFormat.getCompleteLock(sequence)) {
+			return false;
+		}
+		MappedHistoryFormat.loadFence();
+		long timestamp = buffer.getLong(offset + MappedHistoryFormat.RECORD_TIMESTAMP_OFFSET);
+		int flags = buffer.getInt(offset + MappedHistoryFormat.RECORD_FLAGS_OFFSET);
+		for (int f = 0; f < fields.floats.length; f++) {
+			fields.floats[f] = buffer.getFloat(offset + MappedHistoryFormat.RECORD_FIELDS_OFFSET + (f * 4));
+		}
+		for (int f = 0; f < fields.longs.length; f++) {
+			fields.longs[f] = buffer.getLong(offset + long_fields_offset + (f * 8));
+		}
+		MappedHistoryFormat.loadFence();
+		if (buffer.getLong(offset + MappedHistoryFormat.RECORD_LOCK_OFFSET) != lock) {
+			return false;
+		}
+		fields.load(out.getValue());
+		out.setTimestamp(timestamp);
+		out.setValid((flags & MappedHistoryFormat.VALID_FLAG) != 0);
+		out.setInterpolated((flags & MappedHistoryFormat.INTERPOLATED_FLAG) != 0);
+		return true;
+	}
+
+	/**
+	 * Retrieves the value in the history which matches the provided timestamp.
+	 * If an exact match is not found, the value is interpolated based upon the
+	 * nearest values preceding and following the requested timestamp.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timestamp for which to return a value
+	 * @param out
+	 *            - receives the (actual or interpolated) value
+	 * @return true if a value could be located or interpolated; false
+	 *         otherwise.
+	 */
+	public boolean get(long requested_timestamp, TimestampedValue<T> out) {
+		synchronized (this) {
+			int result;
+			do {
+				result = lookup(requested_timestamp, out);
+			} while (result == LOOKUP_RETRY);
+			return (result == LOOKUP_FOUND);
+		}
+	}
+
+	/**
+	 * Performs a single lookup attempt, via a binary search of the records in
+	 * ascending timestamp order.
+	 * 
+	 * @return LOOKUP_FOUND, LOOKUP_NOT_FOUND, or LOOKUP_RETRY if a concurrent
+	 *         modification was detected.
+	 */
+	int lookup(long requested_timestamp, TimestampedValue<T> out) {
+		long head = buffer.getLong(MappedHistoryFormat.NEXT_SEQUENCE_OFFSET);
+		MappedHistoryFormat.loadFence();
+		long oldest = getOldestSequence(head);
+		if (oldest >= head) {
+			return LOOKUP_NOT_FOUND;
+		}
+		/* Find the first (oldest) record whose timestamp is >= requested. */
+		long low = oldest;
+		long high = head;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			long timestamp = readTimestamp(mid);
+			if (timestamp == INVALID_TIMESTAMP) {
+				return LOOKUP_RETRY;
+			}
+			if (timestamp < requested_timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low >= head) {
+			return LOOKUP_NOT_FOUND;
+		}
+		if (!readRecord(low, interpolate_to)) {
+			return LOOKUP_RETRY;
+		}
+		long following_timestamp = interpolate_to.getTimestamp();
+		if (following_timestamp == requested_timestamp) {
+			out.copy(interpolate_to);
+			out.setInterpolated(false);
+			return LOOKUP_FOUND;
+		}
+		if (low == oldest) {
+			return LOOKUP_NOT_FOUND;
+		}
+		if (!readRecord(low - 1, interpolate_from)) {
+			return LOOKUP_RETRY;
+		}
+		long preceding_timestamp = interpolate_from.getTimestamp();
+		double requested_timestamp_ratio = ((double) (requested_timestamp - preceding_timestamp))
+				/ (following_timestamp - preceding_timestamp);
+		interpolate_from.getValue().interpolate(interpolate_to.getValue(), requested_timestamp_ratio,
+				out.getValue());
+		out.setTimestamp(requested_timestamp);
+		out.setValid(true);
+		out.setInterpolated(true);
+		return LOOKUP_FOUND;
+	}
+
+	/**
+	 * Retrieves the most recently-added value in the history.
+	 * 
+	 * @return true if a valid value exists; false otherwise.
+	 */
+	public boolean getMostRecent(TimestampedValue<T> out) {
+		synchronized (this) {
+			for (;;) {
+				long head = buffer.getLong(MappedHistoryFormat.NEXT_SEQUENCE_OFFSET);
+				MappedHistoryFormat.loadFence();
+				if (getOldestSequence(head) >= head) {
+					return false;
+				}
+				if (readRecord(head - 1, out)) {
+					return out.getValid();
+				}
+			}
+		}
+	}
+}
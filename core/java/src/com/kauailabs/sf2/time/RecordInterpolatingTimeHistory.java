@@ -0,0 +1,329 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.persistence.CSVBufferWriter;
+import com.kauailabs.sf2.persistence.ICSVFileWriter;
+import com.kauailabs.sf2.persistence.ICSVLogSource;
+import com.kauailabs.sf2.persistence.IFileWriter;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The RecordInterpolatingTimeHistory class implements a timestamped,
+ * interpolating history whose values are flattened (via their IFieldCodec)
+ * into fixed-size records of primitive fields, rather than being stored as
+ * one object per sample. The ring of records, the sequence numbering, the
+ * interpolated lookups and the CSV output are implemented here; subclasses
+ * provide only the storage of each record's timestamp, flags and fields.
+ * Float fields are stored as floats, and Long and Boolean fields as longs
+ * (see FieldRecord).
+ * <p>
+ * Objects must be added in ascending timestamp order; objects older than the
+ * most recently-added object are discarded, and counted (see
+ * getOutOfOrderDiscardCount()). All methods synchronize on the history's
+ * monitor.
+ * 
+ * @param <T>
+ *            - the Java class of the contained values.
+ */
+public abstract class RecordInterpolatingTimeHistory<T extends ICopy<T> & IInterpolate<T> & IQuantity & IFieldCodec>
+		implements IFileWriter, ICSVFileWriter, ICSVLogSource {
+	int history_size;
+	/* Sequence number which will be assigned to the next object added. */
+	long next_sequence;
+	/* Sequence number of the oldest object added since the last reset. */
+	long first_valid_sequence;
+	long out_of_order_discard_count;
+	FieldRecord record;
+	T default_value;
+	T interpolate_from;
+	T interpolate_to;
+	TimestampInfo ts_info;
+	String value_name;
+	IUnit[] value_units;
+
+	static final int VALID_FLAG = 0x01;
+	static final int INTERPOLATED_FLAG = 0x02;
+
+	RecordInterpolatingTimeHistory(T default_value, int num_samples, TimestampInfo ts_info, String name,
+			IUnit[] units) {
+		if (num_samples <= 0) {
+			throw new IllegalArgumentException("num_samples must be greater than zero.");
+		}
+		history_size = num_samples;
+		record = new FieldRecord(default_value);
+		this.default_value = default_value.instantiate_copy();
+		interpolate_from = default_value.instantiate_copy();
+		interpolate_to = default_value.instantiate_copy();
+		next_sequence = 0;
+		first_valid_sequence = 0;
+		out_of_order_discard_count = 0;
+		this.ts_info = ts_info;
+		this.value_name = name;
+		this.value_units = units;
+	}
+
+	/**
+	 * Returns the timestamp of the record holding the provided sequence
+	 * number. Must be invoked while holding the lock.
+	 */
+	abstract long getTimestamp(long sequence);
+
+	/**
+	 * Returns the flags (VALID_FLAG, INTERPOLATED_FLAG) of the record holding
+	 * the provided sequence number. Must be invoked while holding the lock.
+	 */
+	abstract int getFlags(long sequence);
+
+	/**
+	 * Reads the float and long fields of the record holding the provided
+	 * sequence number into the provided field record. Must be invoked while
+	 * holding the lock.
+	 */
+	abstract void getFields(long sequence, FieldRecord fields);
+
+	/**
+	 * Stores the record for the provided sequence number, overwriting the
+	 * record of the sequence number one capacity older. Must be invoked while
+	 * holding the lock.
+	 */
+	abstract void putRecord(long sequence, long timestamp, int flags, FieldRecord fields);
+
+	/**
+	 * Clears all contents of the history.
+	 */
+	public void reset() {
+		synchronized (this) {
+			first_valid_sequence = next_sequence;
+		}
+	}
+
+	/**
+	 * Returns the current count of valid values in this history.
+	 */
+	public int getValidSampleCount() {
+		synchronized (this) {
+			long count = next_sequence - first_valid_sequence;
+			return (int) ((count > history_size) ? history_size : count);
+		}
+	}
+
+	/**
+	 * Returns the number of values which were discarded because their
+	 * timestamp was older than the most recently-added value.
+	 */
+	public long getOutOfOrderDiscardCount() {
+		return out_of_order_discard_count;
+	}
+
+	/**
+	 * Returns the maximum number of values this history can contain.
+	 */
+	public int getCapacity() {
+		return history_size;
+	}
+
+	/**
+	 * Returns the resolution of the timestamps of the contained values (see
+	 * TimestampInfo.getHistoryResolution()).
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return TimestampInfo.getHistoryResolution(ts_info);
+	}
+
+	long getOldestSequence() {
+		long oldest = next_sequence - history_size;
+		return (oldest > first_valid_sequence) ? oldest : first_valid_sequence;
+	}
+
+	/**
+	 * Adds the provided value to the history.
+	 * 
+	 * @param t
+	 *            - the value to add
+	 */
+	public void add(TimestampedValue<T> t) {
+		synchronized (this) {
+			long timestamp = t.getTimestamp();
+			if ((next_sequence > first_valid_sequence) && (timestamp < getTimestamp(next_sequence - 1))) {
+				out_of_order_discard_count++;
+				return;
+			}
+			int flags = (t.getValid() ? VALID_FLAG : 0) | (t.getInterpolated() ? INTERPOLATED_FLAG : 0);
+			record.store(t.getValue());
+			putRecord(next_sequence, timestamp, flags, record);
+			next_sequence++;
+		}
+	}
+
+	/**
+	 * Initializes the output value from the record holding the provided
+	 * sequence number. Must be invoked while holding the lock.
+	 */
+	void load(long sequence, T out) {
+		getFields(sequence, record);
+		record.load(out);
+	}
+
+	/**
+	 * Initializes the output object from the record holding the provided
+	 * sequence number. Must be invoked while holding the lock.
+	 */
+	void load(long sequence, TimestampedValue<T> out) {
+		load(sequence, out.getValue());
+		int flags = getFlags(sequence);
+		out.setTimestamp(getTimestamp(sequence));
+		out.setValid((flags & VALID_FLAG) != 0);
+		out.setInterpolated((flags & INTERPOLATED_FLAG) != 0);
+	}
+
+	/**
+	 * Retrieves the value in the history which matches the provided timestamp.
+	 * If an exact match is not found, the value is interpolated based upon the
+	 * nearest values preceding and following the requested timestamp.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timestamp for which to return a value
+	 * @param out
+	 *            - receives the (actual or interpolated) value
+	 * @return true if a value could be located or interpolated; false
+	 *         otherwise.
+	 */
+	public boolean get(long requested_timestamp, TimestampedValue<T> out) {
+		synchronized (this) {
+			long oldest = getOldestSequence();
+			long head = next_sequence;
+			/* Find the first (oldest) entry whose timestamp is >= requested. */
+			long low = oldest;
+			long high = head;
+			while (low < high) {
+				long mid = (low + high) >>> 1;
+				if (getTimestamp(mid) < requested_timestamp) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			if (low >= head) {
+				return false;
+			}
+			long following_timestamp = getTimestamp(low);
+			if (following_timestamp == requested_timestamp) {
+				load(low, out);
+				out.setInterpolated(false);
+				return true;
+			}
+			if (low == oldest) {
+				return false;
+			}
+			long preceding_timestamp = getTimestamp(low - 1);
+			load(low - 1, interpolate_from);
+			load(low, interpolate_to);
+			double requested_timestamp_ratio = ((double) (requested_timestamp - preceding_timestamp))
+					/ (following_timestamp - preceding_timestamp);
+			interpolate_from.interpolate(interpolate_to, requested_timestamp_ratio, out.getValue());
+			out.setTimestamp(requested_timestamp);
+			out.setValid(true);
+			out.setInterpolated(true);
+			return true;
+		}
+	}
+
+	/**
+	 * Retrieves the most recently-added value in the history.
+	 * 
+	 * @return true if a valid value exists; false otherwise.
+	 */
+	public boolean getMostRecent(TimestampedValue<T> out) {
+		synchronized (this) {
+			if (next_sequence <= first_valid_sequence) {
+				return false;
+			}
+			load(next_sequence - 1, out);
+			return out.getValid();
+		}
+	}
+
+	@Override
+	public boolean writeCSV(PrintWriter out) {
+		/* Write Header */
+		ThreadsafeInterpolatingTimeHistory.CSVRowFormatter formatter = new ThreadsafeInterpolatingTimeHistory.CSVRowFormatter();
+		ThreadsafeInterpolatingTimeHistory.formatCSVHeader(formatter.line, getTimestampResolution(), value_name,
+				default_value);
+		out.println(formatter.line);
+
+		synchronized (this) {
+			for (long seq = getOldestSequence(); seq < next_sequence; seq++) {
+				load(seq, interpolate_from);
+				formatter.format(getTimestamp(seq), interpolate_from);
+				out.println(formatter.line);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void writeCSVHeader(CSVBufferWriter out) throws IOException {
+		ThreadsafeInterpolatingTimeHistory.writeCSVHeader(out, getTimestampResolution(), value_name,
+				default_value);
+	}
+
+	@Override
+	public long getOldestCSVRowSequence() {
+		synchronized (this) {
+			return getOldestSequence();
+		}
+	}
+
+	@Override
+	public long writeCSVRows(CSVBufferWriter out, long from_sequence) throws IOException {
+		synchronized (this) {
+			for (long seq = Math.max(from_sequence, getOldestSequence()); seq < next_sequence; seq++) {
+				load(seq, interpolate_from);
+				out.append(getTimestamp(seq));
+				out.appendFields(interpolate_from);
+				out.endRow();
+			}
+			return next_sequence;
+		}
+	}
+
+	@Override
+	public boolean writeToDirectory(String directory) {
+		return CSVBufferWriter.writeToDirectory(directory, value_name, this);
+	}
+
+	@Override
+	public boolean writeToFile(String file_path) {
+		return CSVBufferWriter.writeToFile(file_path, this);
+	}
+}
@@ -26,15 +26,26 @@ package com.kauailabs.sf2.time;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.StampedLock;
 
 import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.persistence.AsyncFileWriter;
+import com.kauailabs.sf2.persistence.CSVBufferWriter;
 import com.kauailabs.sf2.persistence.CSVFileWriter;
+import com.kauailabs.sf2.persistence.CSVLogWriter;
 import com.kauailabs.sf2.persistence.ICSVFileWriter;
+import com.kauailabs.sf2.persistence.ICSVLogSource;
 import com.kauailabs.sf2.persistence.IFileWriter;
 import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
 import com.kauailabs.sf2.quantity.IQuantity;
 import com.kauailabs.sf2.units.Unit.IUnit;
 
@@ -52,201 +63,1888 @@ import com.kauailabs.sf2.units.Unit.IUnit;
  * <p>
  * The implementation of this class is such that the contained objects are
  * statically allocated to avoid memory allocation when objects are added.
- * 
+ * <p>
+ * By default, all access is serialized on the history's monitor. When
+ * constructed with ConcurrencyMode.LockFreeSingleWriter, the history instead
+ * supports a single writer thread and any number of reader threads without
+ * locking: each slot carries a sequence counter (seqlock) which the writer
+ * advances before and after modifying it, and readers retry any read which
+ * overlapped a modification.
+ * <p>
+ * A history may either hold a fixed number of objects, or be configured with
+ * a retention duration, in which case its capacity follows the update rate
+ * measured from the timestamps of the objects added. The slots are allocated
+ * in chunks, so that the capacity can grow or shrink one chunk at a time
+ * without reallocating or copying the existing slots.
+ *
  * @author Scott
  */
 
-public class ThreadsafeInterpolatingTimeHistory<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>> implements IFileWriter, ICSVFileWriter {
-	ArrayList<T> history;
-	int history_size;
-	int curr_index;
-	int num_valid_samples;
+public class ThreadsafeInterpolatingTimeHistory<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>> implements IFileWriter, ICSVFileWriter, ICSVLogSource {
+	/* Current mapping of sequence numbers onto slots. */
+	volatile Ring<T> ring;
+	/* Sequence number which will be assigned to the next object added. */
+	volatile long next_sequence;
+	/* Sequence number of the oldest object added since the last reset. */
+	volatile long first_valid_sequence;
+	/* Retention duration (in timestamp units); 0 if the capacity is fixed. */
+	volatile long retention_duration;
+	int max_capacity;
+	boolean lock_free;
+	ConcurrencyMode concurrency_mode;
 	T default_obj;
 	TimestampInfo ts_info;
 	String value_name;
 	IUnit[] value_units;
-	CSVFileWriter file_writer;
+	volatile SearchMode search_mode;
+	/*
+	 * Sequence number of the most recent object added with a timestamp
+	 * earlier than that of its predecessor; INVALID_SEQUENCE if none.
+	 */
+	volatile long out_of_order_sequence;
+	/* Late objects are inserted in order within this many objects; 0 if disabled. */
+	volatile int reorder_window;
+	volatile long reordered_count;
+	volatile long late_drop_count;
+	/*
+	 * Objects with sequence numbers below this are never moved by
+	 * insertLate(); views, log writers, journals and listeners only consume
+	 * objects below it. Equal to next_sequence unless a reorder window is
+	 * configured, and never decreases.
+	 */
+	volatile long stable_sequence;
+	/* Write lock stamps of the slots shifted by insertLate(); writer only. */
+	long[] reorder_stamps;
+	/* Scratch objects used when interpolating; one pair per reader thread. */
+	ThreadLocal<ArrayList<T>> interpolation_scratch;
+	/* Compressed archive of the objects added; null if not enabled. */
+	volatile CompressedHistoryArchive<T> archive;
+	/* Used by predict(); null if prediction is not enabled. */
+	volatile IValueExtrapolator<T> extrapolator;
+	volatile long max_prediction_horizon;
+	/* Copies of the most recent objects used by predict(); one set per reader thread. */
+	ThreadLocal<ArrayList<T>> prediction_scratch;
+	/* Accumulated by add() and get(); null if metrics are not enabled. */
+	volatile HistoryMetrics metrics;
+	/* Notified of each object added (copy on write); null if there are none. */
+	volatile ArrayList<HistoryListenerDispatcher<T>> listeners;
+	/*
+	 * In Synchronized mode, listeners are notified after the lock is
+	 * released, in sequence order: each add() notifies once the listeners
+	 * have been notified of the previous object dispatched. The most recent
+	 * object to be dispatched is recorded while holding the lock, and the
+	 * most recent object whose dispatch completed while holding
+	 * dispatch_lock.
+	 */
+	long last_dispatch_sequence = INVALID_SEQUENCE;
+	long completed_dispatch_sequence = INVALID_SEQUENCE;
+	final Object dispatch_lock = new Object();
+	/* Objects which become stable are copied here to be dispatched. */
+	T dispatch_scratch;
+
+	static final int LOOKUP_NOT_FOUND = 0;
+	static final int LOOKUP_FOUND = 1;
+	static final int LOOKUP_RETRY = 2;
+	static final long INVALID_TIMESTAMP = Long.MIN_VALUE;
+	static final long INVALID_SEQUENCE = -1;
+	/* Returned by reserveDispatch() if the object is not to be dispatched. */
+	static final long NO_DISPATCH = Long.MIN_VALUE;
+
+	/**
+	 * The number of slots allocated at a time by histories configured with a
+	 * retention duration.
+	 */
+	public static final int RETENTION_CHUNK_SIZE = 64;
+
+	/**
+	 * A contiguous run of slots. Each slot records the sequence number of the
+	 * object it currently holds; in LockFreeSingleWriter mode each slot also
+	 * has a sequence counter.
+	 */
+	static final class Chunk<T extends ICopy<T>> {
+		final ArrayList<T> values;
+		final long[] sequences;
+		final StampedLock[] locks;
+
+		Chunk(T default_obj, int size, boolean lock_free) {
+			values = new ArrayList<T>(size);
+			sequences = new long[size];
+			for (int i = 0; i < size; i++) {
+				values.add(default_obj.instantiate_copy());
+				sequences[i] = INVALID_SEQUENCE;
+			}
+			if (lock_free) {
+				locks = new StampedLock[size];
+				for (int i = 0; i < size; i++) {
+					locks[i] = new StampedLock();
+				}
+			} else {
+				locks = null;
+			}
+		}
+	}
+
+	/**
+	 * The (immutable) mapping of sequence numbers onto the slots within a list
+	 * of equally-sized chunks. Changing the capacity replaces the Ring; the
+	 * chunks themselves are shared between the old and new Ring, so objects
+	 * remain in place.
+	 */
+	static final class Ring<T extends ICopy<T>> {
+		final ArrayList<Chunk<T>> chunks;
+		final int chunk_size;
+		final int capacity;
+		/* Sequence number mapped to the first slot (modulo the capacity). */
+		final long origin;
+		/* Sequence number of the oldest object stored within the chunks. */
+		final long min_sequence;
+
+		Ring(ArrayList<Chunk<T>> chunks, int chunk_size, long origin, long min_sequence) {
+			this.chunks = chunks;
+			this.chunk_size = chunk_size;
+			this.capacity = chunks.size() * chunk_size;
+			this.origin = origin;
+			this.min_sequence = min_sequence;
+		}
+
+		int getIndex(long sequence) {
+			long offset = (sequence - origin) % capacity;
+			return (int) ((offset < 0) ? offset + capacity : offset);
+		}
+
+		Chunk<T> getChunk(int index) {
+			return chunks.get(index / chunk_size);
+		}
+
+		/**
+		 * Returns a Ring with the provided chunk inserted at the provided
+		 * (chunk-aligned) slot index, which must be the index of the slot the
+		 * next object (with the provided sequence number) will be added to.
+		 * The new chunk receives the next objects added; no object is evicted
+		 * until it has been filled.
+		 */
+		Ring<T> insertChunk(int index, Chunk<T> chunk, long head) {
+			ArrayList<Chunk<T>> new_chunks = new ArrayList<Chunk<T>>(chunks);
+			new_chunks.add(index / chunk_size, chunk);
+			long oldest = head - capacity;
+			return new Ring<T>(new_chunks, chunk_size, head - index, Math.max(min_sequence, oldest));
+		}
+
+		/**
+		 * Returns a Ring without the chunk at the provided (chunk-aligned) slot
+		 * index, which must be the index of the slot the next object will be
+		 * added to; the chunk holds the oldest objects, which are evicted.
+		 */
+		Ring<T> removeChunk(int index, long head) {
+			ArrayList<Chunk<T>> new_chunks = new ArrayList<Chunk<T>>(chunks);
+			new_chunks.remove(index / chunk_size);
+			long oldest = head - (capacity - chunk_size);
+			return new Ring<T>(new_chunks, chunk_size, head - index, Math.max(min_sequence, oldest));
+		}
+	}
+
+	/**
+	 * Selects how concurrent access to a ThreadsafeInterpolatingTimeHistory is
+	 * coordinated.
+	 * <p>
+	 * Synchronized: all methods synchronize on the history's monitor; any
+	 * number of threads may add and read objects.
+	 * <p>
+	 * LockFreeSingleWriter: add() must only ever be invoked from one thread
+	 * (e.g., the sensor callback thread). That thread never blocks; readers
+	 * use per-slot sequence counters to detect and retry torn reads. reset()
+	 * may be invoked from any thread, but objects added concurrently with it
+	 * may or may not be retained.
+	 */
+	public enum ConcurrencyMode {
+		Synchronized, LockFreeSingleWriter
+	};
+
+	/**
+	 * Constructs a ThreadsafeInterpolatingTimeHihstory to hold up to a
+	 * specified number of objects of the specified class.
+	 * 
+	 * @param _class
+	 *            - the Java class of the objects to be contained.
+	 * @param num_samples
+	 *            - the maximum number of objects to be contained.
+	 */
+
+	public ThreadsafeInterpolatingTimeHistory(T default_obj, int num_samples, TimestampInfo ts_info, String name,
+			IUnit[] units) {
+		this(default_obj, num_samples, ts_info, name, units, ConcurrencyMode.Synchronized);
+	}
+
+	/**
+	 * Constructs a ThreadsafeInterpolatingTimeHihstory to hold up to a
+	 * specified number of objects of the specified class, using the specified
+	 * concurrency mode.
+	 * 
+	 * @param num_samples
+	 *            - the maximum number of objects to be contained.
+	 * @param mode
+	 *            - how concurrent writers and readers are coordinated.
+	 */
+	public ThreadsafeInterpolatingTimeHistory(T default_obj, int num_samples, TimestampInfo ts_info, String name,
+			IUnit[] units, ConcurrencyMode mode) {
+		this(default_obj, num_samples, num_samples, 0, ts_info, name, units, mode);
+	}
+
+	/**
+	 * Constructs a ThreadsafeInterpolatingTimeHistory which retains the
+	 * objects added within a specified duration. The capacity of the history
+	 * begins at RETENTION_CHUNK_SIZE objects and follows the update rate
+	 * measured from the timestamps of the objects added: whenever the history
+	 * is full but spans less than the retention duration, another chunk is
+	 * added, and whenever it spans the retention duration even without its
+	 * oldest two chunks, the oldest chunk is released. Chunks are only added
+	 * or removed by the thread invoking add(), at chunk boundaries.
+	 *
+	 * @param retention_duration
+	 *            - the duration of history to retain, in the same units as the
+	 *            timestamps of the contained objects; must be greater than
+	 *            zero.
+	 * @param max_num_samples
+	 *            - the upper bound on the number of objects to be contained,
+	 *            regardless of the measured update rate.
+	 * @param mode
+	 *            - how concurrent writers and readers are coordinated.
+	 */
+	public ThreadsafeInterpolatingTimeHistory(T default_obj, long retention_duration, int max_num_samples,
+			TimestampInfo ts_info, String name, IUnit[] units, ConcurrencyMode mode) {
+		this(default_obj, Math.min(RETENTION_CHUNK_SIZE, max_num_samples), max_num_samples, retention_duration,
+				ts_info, name, units, mode);
+		if (retention_duration <= 0) {
+			throw new IllegalArgumentException("retention_duration must be greater than zero.");
+		}
+	}
+
+	ThreadsafeInterpolatingTimeHistory(T default_obj, int chunk_size, int max_num_samples, long retention_duration,
+			TimestampInfo ts_info, String name, IUnit[] units, ConcurrencyMode mode) {
+		if (chunk_size <= 0) {
+			throw new IllegalArgumentException("The number of samples must be greater than zero.");
+		}
+		this.default_obj = default_obj;
+		concurrency_mode = mode;
+		lock_free = (mode == ConcurrencyMode.LockFreeSingleWriter);
+		ArrayList<Chunk<T>> chunks = new ArrayList<Chunk<T>>();
+		chunks.add(new Chunk<T>(default_obj, chunk_size, lock_free));
+		ring = new Ring<T>(chunks, chunk_size, 0, 0);
+		max_capacity = max_num_samples;
+		this.retention_duration = retention_duration;
+		interpolation_scratch = new ThreadLocal<ArrayList<T>>();
+		prediction_scratch = new ThreadLocal<ArrayList<T>>();
+		next_sequence = 0;
+		first_valid_sequence = 0;
+		search_mode = SearchMode.BinarySearch;
+		out_of_order_sequence = INVALID_SEQUENCE;
+		this.ts_info = ts_info;
+		this.value_name = name;
+		this.value_units = units;
+	}
+
+	/**
+	 * Returns the concurrency mode this history was constructed with.
+	 */
+	public ConcurrencyMode getConcurrencyMode() {
+		return concurrency_mode;
+	}
+
+	/**
+	 * Returns the number of objects this history can currently contain.
+	 */
+	public int getCapacity() {
+		return ring.capacity;
+	}
+
+	/**
+	 * Returns the resolution of the timestamps of the contained objects (see
+	 * TimestampInfo.getHistoryResolution()).
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return TimestampInfo.getHistoryResolution(ts_info);
+	}
+
+	/**
+	 * Returns the retention duration, in timestamp units; 0 is returned if the
+	 * capacity of this history is fixed.
+	 */
+	public long getRetentionDuration() {
+		return retention_duration;
+	}
+
+	/**
+	 * Modifies the retention duration of a history constructed with a
+	 * retention duration. The capacity is adjusted (one chunk at a time) as
+	 * subsequent objects are added.
+	 *
+	 * @param duration
+	 *            - the duration of history to retain, in timestamp units; must
+	 *            be greater than zero.
+	 */
+	public void setRetentionDuration(long duration) {
+		if (retention_duration == 0) {
+			throw new IllegalStateException("The capacity of this history is fixed.");
+		}
+		if (duration <= 0) {
+			throw new IllegalArgumentException("duration must be greater than zero.");
+		}
+		retention_duration = duration;
+	}
+
+	/**
+	 * Clears all contents of the ThreadsafeInterpolatingTimeHistory by marking
+	 * all contained objects as invalid.
+	 * <p>
+	 * The contained objects themselves are not modified; rather, the objects
+	 * added before the reset are excluded from all subsequent accesses.
+	 */
+	public void reset() {
+		if (lock_free) {
+			first_valid_sequence = next_sequence;
+			return;
+		}
+		synchronized (this) {
+			first_valid_sequence = next_sequence;
+		}
+	}
+
+	/**
+	 * Returns the current count of valid objects in this
+	 * ThreadsafeInterpolatingTimeHistory.
+	 * 
+	 * @return
+	 */
+	public int getValidSampleCount() {
+		return getValidSampleCount(next_sequence);
+	}
+
+	/**
+	 * Returns the count of valid objects, given a sequence number at which the
+	 * next object will be added.
+	 */
+	int getValidSampleCount(long head_sequence) {
+		Ring<T> r = ring;
+		long oldest = Math.max(head_sequence - r.capacity, Math.max(r.min_sequence, first_valid_sequence));
+		long count = head_sequence - oldest;
+		return (count > 0) ? (int) count : 0;
+	}
+
+	/**
+	 * Returns the sequence number of the oldest object which may be safely
+	 * accessed, given a sequence number at which the next object will be
+	 * added. In LockFreeSingleWriter mode, the oldest slot is excluded since
+	 * the writer may currently be overwriting it.
+	 */
+	long getOldestSequence(long head_sequence) {
+		Ring<T> r = ring;
+		long oldest = head_sequence - r.capacity;
+		if (lock_free) {
+			oldest++;
+		}
+		return Math.max(oldest, Math.max(r.min_sequence, first_valid_sequence));
+	}
+
+	/**
+	 * Returns true if the objects which may be accessed, given a sequence
+	 * number at which the next object will be added, are in ascending
+	 * timestamp order. This is the case once the most recent out of order
+	 * object is the oldest accessible object (or is no longer accessible),
+	 * regardless of how the capacity has changed since it was added.
+	 * <p>
+	 * The head must be read before invoking this method; since the writer
+	 * records an out of order object before publishing it, the result then
+	 * covers every object up to that head.
+	 */
+	boolean isInOrder(long head_sequence) {
+		return out_of_order_sequence <= getOldestSequence(head_sequence);
+	}
+
+	/**
+	 * Returns the object within the history holding the object with the
+	 * provided sequence number.
+	 */
+	T getSlot(Ring<T> r, long sequence) {
+		int index = r.getIndex(sequence);
+		return r.getChunk(index).values.get(index % r.chunk_size);
+	}
+
+	/**
+	 * Adds the provided object to the ThreadsafeInterpolatingTimeHistory, and
+	 * then dispatches the objects which became stable as a result to the
+	 * listeners (see addListener()). Listeners are dispatched to after the
+	 * object is published, and (in Synchronized mode) after the lock is
+	 * released, so that readers never wait upon a listener.
+	 * <p>
+	 * In LockFreeSingleWriter mode, this method must only be invoked by a
+	 * single thread.
+	 * 
+	 * @param t
+	 *            - the object to add
+	 */
+	public void add(T t) {
+		HistoryMetrics m = metrics;
+		if (m != null) {
+			addMeasured(t, m);
+			return;
+		}
+		if (lock_free) {
+			long from = stable_sequence;
+			long sequence = addToSlot(t);
+			dispatchRange(t, sequence, from, stable_sequence);
+			archiveEvicted();
+			return;
+		}
+		long from;
+		long sequence;
+		long previous;
+		long to;
+		synchronized (this) {
+			from = stable_sequence;
+			sequence = addToSlot(t);
+			to = stable_sequence;
+			previous = reserveDispatch(from, to);
+		}
+		dispatchInOrder(t, sequence, from, to, previous);
+		archiveEvicted();
+	}
+
+	void addMeasured(T t, HistoryMetrics m) {
+		m.add_count.increment();
+		if (lock_free) {
+			long from = stable_sequence;
+			long start = System.nanoTime();
+			long sequence = addToSlot(t);
+			m.lock_hold_ns.record(System.nanoTime() - start);
+			dispatchRange(t, sequence, from, stable_sequence);
+			archiveEvicted();
+			return;
+		}
+		long from;
+		long sequence;
+		long previous;
+		long to;
+		long requested = System.nanoTime();
+		synchronized (this) {
+			long acquired = System.nanoTime();
+			from = stable_sequence;
+			sequence = addToSlot(t);
+			to = stable_sequence;
+			previous = reserveDispatch(from, to);
+			m.lock_hold_ns.record(System.nanoTime() - acquired);
+			m.lock_wait_ns.record(acquired - requested);
+		}
+		dispatchInOrder(t, sequence, from, to, previous);
+		archiveEvicted();
+	}
+
+	/**
+	 * Copies the provided object into the next slot, and then publishes it by
+	 * advancing the next sequence number. In LockFreeSingleWriter mode the
+	 * slot's sequence counter is held odd (write-locked) while it is being
+	 * modified, so that concurrent readers can detect the modification.
+	 * 
+	 * @return the sequence number of the slot the object was stored in, or
+	 *         INVALID_SEQUENCE if it was dropped.
+	 */
+	long addToSlot(T t) {
+		long sequence = next_sequence;
+		Ring<T> r = ring;
+		int index = r.getIndex(sequence);
+		if ((retention_duration != 0) && ((index % r.chunk_size) == 0)) {
+			r = resize(r, sequence, index);
+			index = r.getIndex(sequence);
+		}
+		/*
+		 * Track whether the timestamps in the history are in ascending order;
+		 * if not, lookups fall back to a linear scan until the out of order
+		 * entry is no longer preceded by an accessible entry (see
+		 * isInOrder()). If a reorder window is configured, late entries are
+		 * instead inserted in order, among the entries which are not yet
+		 * stable.
+		 */
+		long oldest = Math.max(first_valid_sequence, r.min_sequence);
+		boolean late = (sequence > oldest) && (t.getTimestamp() < getSlot(r, sequence - 1).getTimestamp());
+		int window = Math.min(reorder_window, r.capacity - 1);
+		if (late && (window <= 0)) {
+			out_of_order_sequence = sequence;
+		}
+		long position = sequence;
+		if (late && (window > 0)) {
+			/* Oldest object retained once this object is added. */
+			long retained = Math.max(oldest, sequence + 1 - r.capacity);
+			position = insertLate(t, r, sequence, retained, Math.max(retained, stable_sequence));
+			if (position == INVALID_SEQUENCE) {
+				late_drop_count++;
+				return INVALID_SEQUENCE;
+			}
+		} else {
+			Chunk<T> chunk = r.getChunk(index);
+			int slot = index % r.chunk_size;
+			T existing = chunk.values.get(slot);
+			if (lock_free) {
+				StampedLock slot_lock = chunk.locks[slot];
+				long stamp = slot_lock.writeLock();
+				existing.copy(t);
+				chunk.sequences[slot] = sequence;
+				slot_lock.unlockWrite(stamp);
+			} else {
+				existing.copy(t);
+				chunk.sequences[slot] = sequence;
+			}
+			next_sequence = sequence + 1;
+		}
+		/*
+		 * The window most recent objects may still be moved by a late
+		 * object; once an object falls behind them it is stable. Shrinking
+		 * the window never moves the watermark backwards.
+		 */
+		long stable = sequence + 1 - Math.max(window, 0);
+		if (stable > stable_sequence) {
+			stable_sequence = stable;
+		}
+		return position;
+	}
+
+	/**
+	 * Encodes into the archive (if enabled) each object which is within one
+	 * segment of being evicted, so that the objects the archive has not yet
+	 * sealed are still retained by the history. Invoked after an object is
+	 * added, and (in Synchronized mode) after the lock is released, so that
+	 * compression never delays readers; concurrent writers take turns via the
+	 * archive's lock, and each encodes whatever the others have not.
+	 */
+	void archiveEvicted() {
+		CompressedHistoryArchive<T> a = archive;
+		if (a == null) {
+			return;
+		}
+		synchronized (a) {
+			long limit = Math.min(stable_sequence, next_sequence - ring.capacity + a.getSegmentSize());
+			for (; a.next_sequence < limit; a.next_sequence++) {
+				if (copyIfRetained(a.next_sequence, a.feed_scratch)) {
+					a.add(a.feed_scratch);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inserts an object whose timestamp is earlier than that of the most
+	 * recent object in timestamp order, by shifting the more recent objects
+	 * forward by one slot. Only objects at or after the provided limit (which
+	 * is never before the stable sequence number) may be shifted; if the
+	 * object belongs before the limit, it is dropped. In LockFreeSingleWriter
+	 * mode, all shifted slots are write-locked for the duration of the shift,
+	 * so that readers retry rather than observe a partially shifted history.
+	 * 
+	 * @param oldest
+	 *            - sequence number of the oldest object retained once the
+	 *            object is added.
+	 * @param limit
+	 *            - sequence number of the oldest object which may be shifted.
+	 * @return the sequence number the object was inserted at, or
+	 *         INVALID_SEQUENCE if it was dropped.
+	 */
+	long insertLate(T t, Ring<T> r, long sequence, long oldest, long limit) {
+		long timestamp = t.getTimestamp();
+		long position = sequence;
+		while ((position > limit) && (getSlot(r, position - 1).getTimestamp() > timestamp)) {
+			position--;
+		}
+		if ((position == limit) && (limit > oldest) && (getSlot(r, limit - 1).getTimestamp() > timestamp)) {
+			return INVALID_SEQUENCE;
+		}
+		/*
+		 * Counted before any slot is locked, so that a reader which observes
+		 * the shift also observes the count (see visitRange() and copyTo()).
+		 */
+		reordered_count++;
+		int shift_count = (int) (sequence - position);
+		if (lock_free) {
+			if ((reorder_stamps == null) || (reorder_stamps.length <= shift_count)) {
+				reorder_stamps = new long[Math.max(shift_count, reorder_window) + 1];
+			}
+			for (int i = 0; i <= shift_count; i++) {
+				int index = r.getIndex(position + i);
+				reorder_stamps[i] = r.getChunk(index).locks[index % r.chunk_size].writeLock();
+			}
+		}
+		for (long seq = sequence; seq > position; seq--) {
+			getSlot(r, seq).copy(getSlot(r, seq - 1));
+		}
+		getSlot(r, position).copy(t);
+		int index = r.getIndex(sequence);
+		r.getChunk(index).sequences[index % r.chunk_size] = sequence;
+		if (lock_free) {
+			for (int i = shift_count; i >= 0; i--) {
+				int slot_index = r.getIndex(position + i);
+				r.getChunk(slot_index).locks[slot_index % r.chunk_size].unlockWrite(reorder_stamps[i]);
+			}
+		}
+		next_sequence = sequence + 1;
+		return position;
+	}
+
+	/**
+	 * Records that the objects with sequence numbers in the range [from, to),
+	 * which became stable, are to be dispatched to the listeners. Must be
+	 * invoked while holding the lock.
+	 * 
+	 * @return the end of the previous range to be dispatched, which must be
+	 *         dispatched first (see dispatchInOrder()); or NO_DISPATCH if
+	 *         there is nothing to dispatch.
+	 */
+	long reserveDispatch(long from, long to) {
+		if ((from >= to) || (listeners == null)) {
+			return NO_DISPATCH;
+		}
+		long previous = last_dispatch_sequence;
+		last_dispatch_sequence = to;
+		return previous;
+	}
+
+	/**
+	 * Dispatches the objects which became stable to each listener, once the
+	 * listeners have been notified of the previous range reserved by
+	 * reserveDispatch(); in Synchronized mode this occurs after the lock is
+	 * released, so concurrent add() invocations still notify the listeners
+	 * in sequence order.
+	 */
+	void dispatchInOrder(T t, long sequence, long from, long to, long previous) {
+		if (previous == NO_DISPATCH) {
+			return;
+		}
+		synchronized (dispatch_lock) {
+			boolean interrupted = false;
+			while (completed_dispatch_sequence != previous) {
+				try {
+					dispatch_lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			try {
+				dispatchRange(t, sequence, from, to);
+			} finally {
+				completed_dispatch_sequence = to;
+				dispatch_lock.notifyAll();
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dispatches the objects with sequence numbers in the range [from, to) to
+	 * each listener, by one thread at a time. If the range consists only of
+	 * the object just added, it is dispatched directly; otherwise each object
+	 * is copied from the history, and any which were overwritten in the
+	 * meantime are skipped.
+	 * 
+	 * @param sequence
+	 *            - the sequence number the provided object was stored at.
+	 */
+	void dispatchRange(T t, long sequence, long from, long to) {
+		ArrayList<HistoryListenerDispatcher<T>> l = listeners;
+		if ((l == null) || (from >= to)) {
+			return;
+		}
+		if ((from == sequence) && (to == sequence + 1)) {
+			dispatchToListeners(l, t, sequence);
+			return;
+		}
+		if (dispatch_scratch == null) {
+			dispatch_scratch = default_obj.instantiate_copy();
+		}
+		for (long seq = from; seq < to; seq++) {
+			if (copyIfRetained(seq, dispatch_scratch)) {
+				dispatchToListeners(l, dispatch_scratch, seq);
+			}
+		}
+	}
+
+	void dispatchToListeners(ArrayList<HistoryListenerDispatcher<T>> l, T t, long sequence) {
+		for (int i = 0; i < l.size(); i++) {
+			l.get(i).dispatch(t, sequence);
+		}
+	}
+
+	/**
+	 * Enables in-order insertion of objects which are added late (i.e., with
+	 * a timestamp earlier than the most recent object), e.g., when multiple
+	 * sources feed one history or a delayed sensor is replayed. A late object
+	 * is inserted in timestamp order if it belongs among the most recent
+	 * window objects; otherwise it is dropped (see getLateDropCount()). The
+	 * history therefore remains in timestamp order, and lookups continue to
+	 * use the binary search.
+	 * <p>
+	 * Inserting a late object shifts the more recent objects forward, so the
+	 * most recent window objects are not yet stable. Views, log writers,
+	 * journals and listeners only see objects once they are stable, i.e.
+	 * once window more objects have been added; each object is then seen
+	 * exactly once, at a sequence number it keeps, in ascending timestamp
+	 * order. get(), getCurrent() and the other lookups see every object as
+	 * soon as it is added. Shrinking the window takes effect without moving
+	 * any stable object.
+	 * <p>
+	 * Without a reorder window (the default), late objects are appended, and
+	 * lookups fall back to a linear scan until they have been overwritten.
+	 * 
+	 * @param window
+	 *            - the maximum number of more recent objects a late object may
+	 *            be inserted before; 0 disables reordering.
+	 */
+	public void setReorderWindow(int window) {
+		reorder_window = Math.max(0, window);
+	}
+
+	public int getReorderWindow() {
+		return reorder_window;
+	}
+
+	/**
+	 * Returns the number of late objects which were inserted in timestamp
+	 * order.
+	 */
+	public long getReorderedCount() {
+		return reordered_count;
+	}
+
+	/**
+	 * Returns the number of late objects which were dropped because they
+	 * belonged before the reorder window.
+	 */
+	public long getLateDropCount() {
+		return late_drop_count;
+	}
+
+	/**
+	 * Adjusts the capacity of a history configured with a retention duration
+	 * by at most one chunk, given the (chunk-aligned) index of the slot the
+	 * next object will be added to. The span of the history is measured from
+	 * the timestamps of the contained objects, and so tracks the actual
+	 * update rate. Only invoked by the writer.
+	 *
+	 * @return the Ring to which the next object should be added.
+	 */
+	Ring<T> resize(Ring<T> r, long head, int index) {
+		long oldest = Math.max(first_valid_sequence, r.min_sequence);
+		if (head - oldest < r.capacity) {
+			/* Not yet full; no object is about to be evicted. */
+			return r;
+		}
+		long newest_timestamp = getSlot(r, head - 1).getTimestamp();
+		long retention = retention_duration;
+		Ring<T> resized = r;
+		if ((newest_timestamp - getSlot(r, oldest).getTimestamp()) < retention) {
+			if ((r.capacity + r.chunk_size) <= max_capacity) {
+				resized = r.insertChunk(index, new Chunk<T>(default_obj, r.chunk_size, lock_free), head);
+			}
+		} else if (r.chunks.size() > 1) {
+			/* Retain at least one chunk beyond the retention duration. */
+			long probe = oldest + 2L * r.chunk_size;
+			if ((probe < head) && ((newest_timestamp - getSlot(r, probe).getTimestamp()) >= retention)) {
+				resized = r.removeChunk(index, head);
+			}
+		}
+		if (resized != r) {
+			ring = resized;
+		}
+		return resized;
+	}
+
+	/**
+	 * Selects the algorithm used by get() to locate the entries bracketing a
+	 * requested timestamp.
+	 * <p>
+	 * BinarySearch performs an O(log n) bracketing search over the ring, and
+	 * requires that the contained timestamps are monotonically increasing in
+	 * insertion order. LinearScan walks the ring backwards from the most
+	 * recent entry, and works regardless of timestamp ordering.
+	 */
+	public enum SearchMode {
+		BinarySearch, LinearScan
+	};
+
+	/**
+	 * Modifies the algorithm used to lookup objects by timestamp. The default
+	 * is SearchMode.BinarySearch.
+	 * <p>
+	 * Note that even when BinarySearch is selected, the LinearScan is used
+	 * automatically while the history contains objects which were added out of
+	 * timestamp order.
+	 * 
+	 * @param mode
+	 *            - the search algorithm to use.
+	 */
+	public void setSearchMode(SearchMode mode) {
+		synchronized (this) {
+			search_mode = mode;
+		}
+	}
+
+	/**
+	 * Returns the currently-configured lookup algorithm.
+	 */
+	public SearchMode getSearchMode() {
+		return search_mode;
+	}
+
+	/**
+	 * Retrieves the object in the ThreadsafeInterpolatingTimeHistory which
+	 * matches the provided timestamp. If an exact match is not found, a new
+	 * object will be created using interpolated values, based upon the nearest
+	 * objects preceding and following the requested timestamp.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timeatamp for which to return an object
+	 * @return - returns the object (either actual or interpolated) matching the
+	 *         requested timestamp. If no object could be located or
+	 *         interpolated, null is returned.
+	 */
+	public boolean get(long requested_timestamp, T out) {
+		HistoryMetrics m = metrics;
+		if (m != null) {
+			return getMeasured(null, requested_timestamp, out, m);
+		}
+		if (!lock_free) {
+			synchronized (this) {
+				if (lookup(requested_timestamp, out) == LOOKUP_FOUND) {
+					return true;
+				}
+			}
+			return getArchived(requested_timestamp, out);
+		}
+		int result;
+		do {
+			result = lookup(requested_timestamp, out);
+		} while (result == LOOKUP_RETRY);
+		return (result == LOOKUP_FOUND) || getArchived(requested_timestamp, out);
+	}
+
+	/**
+	 * Implements get() (if the cursor is null) and TimeHistoryCursor.get()
+	 * while metrics are enabled.
+	 */
+	boolean getMeasured(TimeHistoryCursor<T> cursor, long requested_timestamp, T out, HistoryMetrics m) {
+		int result;
+		if (!lock_free) {
+			long requested = System.nanoTime();
+			synchronized (this) {
+				long acquired = System.nanoTime();
+				result = (cursor != null) ? lookupFrom(cursor, requested_timestamp, out)
+						: lookup(requested_timestamp, out);
+				m.lock_hold_ns.record(System.nanoTime() - acquired);
+				m.lock_wait_ns.record(acquired - requested);
+			}
+		} else {
+			long start = System.nanoTime();
+			do {
+				result = (cursor != null) ? lookupFrom(cursor, requested_timestamp, out)
+						: lookup(requested_timestamp, out);
+			} while (result == LOOKUP_RETRY);
+			m.lock_hold_ns.record(System.nanoTime() - start);
+		}
+		boolean found = (result == LOOKUP_FOUND) || getArchived(requested_timestamp, out);
+		m.recordGet(found, found && out.getInterpolated(), !found && isNewerThanNewest(requested_timestamp));
+		return found;
+	}
+
+	/**
+	 * Returns true if the provided timestamp is newer than that of the most
+	 * recent object, or if the history is empty.
+	 */
+	boolean isNewerThanNewest(long timestamp) {
+		long head = next_sequence;
+		if (getValidSampleCount(head) == 0) {
+			return true;
+		}
+		long newest_timestamp = getTimestampAt(head - 1);
+		return (newest_timestamp != INVALID_TIMESTAMP) && (timestamp > newest_timestamp);
+	}
+
+	/**
+	 * Enables accumulation of metrics describing the usage of this history
+	 * by add() and get() (including by predict() and by cursors); see
+	 * HistoryMetrics. The
+	 * metrics add a small amount of overhead to each add() and get(), and are
+	 * therefore disabled by default.
+	 * 
+	 * @return the metrics, which are reset if they were already enabled.
+	 */
+	public HistoryMetrics enableMetrics() {
+		HistoryMetrics m = metrics;
+		if (m == null) {
+			m = new HistoryMetrics();
+			metrics = m;
+		} else {
+			m.reset();
+		}
+		return m;
+	}
+
+	/**
+	 * Disables accumulation of metrics.
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+
+	/**
+	 * Returns the metrics enabled by enableMetrics(), or null if not enabled.
+	 */
+	public HistoryMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns a snapshot of the current metrics, together with the current
+	 * fill and time span of this history, or null if metrics are not enabled.
+	 * The snapshot may be written to a CSV file using a CSVFileWriter, or see
+	 * writeMetricsToDirectory().
+	 */
+	public HistoryMetricsSnapshot getMetricsSnapshot() {
+		HistoryMetrics m = metrics;
+		if (m == null) {
+			return null;
+		}
+		int fill;
+		long span;
+		if (lock_free) {
+			do {
+				long head = next_sequence;
+				fill = getValidSampleCount(head);
+				span = getTimestampSpan(head);
+			} while (span < 0);
+		} else {
+			synchronized (this) {
+				long head = next_sequence;
+				fill = getValidSampleCount(head);
+				span = getTimestampSpan(head);
+			}
+		}
+		return new HistoryMetricsSnapshot(value_name, m, fill, getCapacity(),
+				Timestamp.convert(span, getTimestampResolution(), Timestamp.TimestampResolution.Millisecond));
+	}
+
+	/**
+	 * Returns the time between the oldest and newest objects, given a sequence
+	 * number at which the next object will be added, or -1 if a concurrent
+	 * add() invalidated either object.
+	 */
+	long getTimestampSpan(long head_sequence) {
+		long oldest = getOldestSequence(head_sequence);
+		if (oldest >= head_sequence) {
+			return 0;
+		}
+		long oldest_timestamp = getTimestampAt(oldest);
+		long newest_timestamp = getTimestampAt(head_sequence - 1);
+		if ((oldest_timestamp == INVALID_TIMESTAMP) || (newest_timestamp == INVALID_TIMESTAMP)) {
+			return -1;
+		}
+		return Math.max(0, newest_timestamp - oldest_timestamp);
+	}
+
+	/**
+	 * Writes a snapshot of the current metrics to a new "[name]MetricsHistoryN.csv"
+	 * file within the provided directory.
+	 * 
+	 * @return false if metrics are not enabled, or the file could not be
+	 *         written.
+	 */
+	public boolean writeMetricsToDirectory(String directory) {
+		HistoryMetricsSnapshot snapshot = getMetricsSnapshot();
+		if (snapshot == null) {
+			return false;
+		}
+		return new CSVFileWriter(value_name + "Metrics", snapshot).writeToDirectory(directory);
+	}
+
+	/**
+	 * Looks up the requested timestamp in the archive (if enabled), for
+	 * timestamps no longer retained by the history itself.
+	 */
+	boolean getArchived(long requested_timestamp, T out) {
+		CompressedHistoryArchive<T> a = archive;
+		return (a != null) && a.get(requested_timestamp, out);
+	}
+
+	/**
+	 * Enables a compressed archive of the objects subsequently added to this
+	 * history, which are encoded as they near eviction (see
+	 * CompressedHistoryArchive). Once enabled, get() also retrieves (or interpolates) objects
+	 * which have been evicted from the history, as long as they are still
+	 * retained by the archive. The contained quantity must implement
+	 * IFieldCodec, with only Float fields.
+	 * 
+	 * @param segment_size
+	 *            - the number of objects in each compressed segment; this is
+	 *            limited to the minimum capacity of this history, so that no
+	 *            object is absent from both the history and the archive.
+	 * @param max_size_bytes
+	 *            - the maximum (approximate) amount of memory occupied by the
+	 *            archive.
+	 * @return the archive.
+	 */
+	public CompressedHistoryArchive<T> enableArchive(int segment_size, long max_size_bytes) {
+		/* The capacity never falls below one chunk. */
+		CompressedHistoryArchive<T> a = new CompressedHistoryArchive<T>(default_obj,
+				Math.min(segment_size, ring.chunk_size), max_size_bytes);
+		synchronized (this) {
+			a.next_sequence = next_sequence;
+			archive = a;
+		}
+		return a;
+	}
+
+	/**
+	 * Returns the archive enabled by enableArchive(), or null if not enabled.
+	 */
+	public CompressedHistoryArchive<T> getArchive() {
+		return archive;
+	}
+
+	/**
+	 * Adds a listener which is notified of each object subsequently added to
+	 * the history, together with its sequence number, on the thread adding
+	 * the object (see HistoryListenerDispatcher.DispatchMode.Inline). The
+	 * listener is notified after the history's lock is released, so readers
+	 * never wait upon it; however it delays add() for as long as it runs,
+	 * and so must be brief and must not block. Listeners which may block
+	 * (e.g., loggers or telemetry) should instead be added in Async mode.
+	 * 
+	 * @return the HistoryListenerDispatcher, which provides the delivery
+	 *         counts.
+	 */
+	public HistoryListenerDispatcher<T> addListener(ITimeHistoryListener<T> listener) {
+		return addListener(listener, HistoryListenerDispatcher.DispatchMode.Inline, 0);
+	}
+
+	/**
+	 * Adds a listener which is notified of each object subsequently added to
+	 * the history, together with its sequence number.
+	 * 
+	 * @param listener
+	 *            - the listener to notify
+	 * @param mode
+	 *            - Inline, to notify the listener on the thread adding the
+	 *            object, before add() returns (but after the history's lock
+	 *            is released); or Async, to queue a copy of the object for
+	 *            notification on a dedicated background thread. A full queue
+	 *            never delays add(); the object is instead counted as an
+	 *            overflow.
+	 * @param queue_capacity
+	 *            - the number of objects the (Async) queue can contain;
+	 *            ignored in Inline mode.
+	 * @return the HistoryListenerDispatcher, which provides the delivery and
+	 *         overflow counts.
+	 */
+	public HistoryListenerDispatcher<T> addListener(ITimeHistoryListener<T> listener,
+			HistoryListenerDispatcher.DispatchMode mode, int queue_capacity) {
+		HistoryListenerDispatcher<T> dispatcher = new HistoryListenerDispatcher<T>(listener, default_obj, mode,
+				queue_capacity);
+		synchronized (this) {
+			ArrayList<HistoryListenerDispatcher<T>> l = (listeners != null)
+					? new ArrayList<HistoryListenerDispatcher<T>>(listeners)
+					: new ArrayList<HistoryListenerDispatcher<T>>();
+			l.add(dispatcher);
+			listeners = l;
+		}
+		return dispatcher;
+	}
+
+	/**
+	 * Removes a listener previously added by addListener(). An Async
+	 * listener is still notified of the objects already queued for it.
+	 * 
+	 * @return true if the listener was removed; false if it was not found.
+	 */
+	public boolean removeListener(ITimeHistoryListener<T> listener) {
+		HistoryListenerDispatcher<T> removed = null;
+		synchronized (this) {
+			ArrayList<HistoryListenerDispatcher<T>> l = listeners;
+			if (l == null) {
+				return false;
+			}
+			ArrayList<HistoryListenerDispatcher<T>> remaining = new ArrayList<HistoryListenerDispatcher<T>>();
+			for (HistoryListenerDispatcher<T> dispatcher : l) {
+				if ((removed == null) && (dispatcher.getListener() == listener)) {
+					removed = dispatcher;
+				} else {
+					remaining.add(dispatcher);
+				}
+			}
+			if (removed == null) {
+				return false;
+			}
+			listeners = remaining.isEmpty() ? null : remaining;
+		}
+		removed.shutdown();
+		return true;
+	}
+
+	/**
+	 * Enables prediction (see predict()) using the provided extrapolator.
+	 * 
+	 * @param extrapolator
+	 *            - the extrapolator used to predict values beyond the most
+	 *            recent object (e.g., a ConstantVelocityExtrapolator); null
+	 *            disables prediction.
+	 * @param max_horizon
+	 *            - the maximum amount of time (in timestamp units) beyond the
+	 *            most recent object for which a value may be predicted.
+	 */
+	public void setExtrapolator(IValueExtrapolator<T> extrapolator, long max_horizon) {
+		this.max_prediction_horizon = max_horizon;
+		this.extrapolator = extrapolator;
+	}
+
+	/**
+	 * Returns the maximum amount of time (in timestamp units) beyond the most
+	 * recent object for which predict() will extrapolate.
+	 */
+	public long getMaxPredictionHorizon() {
+		return max_prediction_horizon;
+	}
+
+	/**
+	 * Retrieves the object matching the provided timestamp as get() does;
+	 * additionally, if the timestamp is later than the most recent object
+	 * (e.g., the current time, when the sensor data has some latency) by no
+	 * more than the maximum prediction horizon, the value at that timestamp is
+	 * extrapolated from the most recent objects using the configured
+	 * extrapolator. Extrapolated objects are marked as interpolated.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timestamp for which to return an object.
+	 * @param out
+	 *            - the object to initialize.
+	 * @return true if an object was found, interpolated or extrapolated.
+	 */
+	public boolean predict(long requested_timestamp, T out) {
+		if (get(requested_timestamp, out)) {
+			return true;
+		}
+		IValueExtrapolator<T> e = extrapolator;
+		if (e == null) {
+			return false;
+		}
+		int count = e.getSampleCount();
+		ArrayList<T> recent = getPredictionScratch(count);
+		if (!copyMostRecent(recent, count)) {
+			return false;
+		}
+		long horizon = requested_timestamp - recent.get(count - 1).getTimestamp();
+		if ((horizon <= 0) || (horizon > max_prediction_horizon)) {
+			return false;
+		}
+		e.extrapolate(recent, requested_timestamp, out);
+		out.setTimestamp(requested_timestamp);
+		out.setValid(true);
+		out.setInterpolated(true);
+		return true;
+	}
+
+	/**
+	 * Copies the provided number of most recent objects (in ascending order)
+	 * into the provided list.
+	 * 
+	 * @return false if fewer objects are present, or their timestamps are not
+	 *         strictly increasing.
+	 */
+	boolean copyMostRecent(ArrayList<T> recent, int count) {
+		if (!lock_free) {
+			synchronized (this) {
+				return copyMostRecentAttempt(recent, count) == LOOKUP_FOUND;
+			}
+		}
+		int result;
+		do {
+			result = copyMostRecentAttempt(recent, count);
+		} while (result == LOOKUP_RETRY);
+		return (result == LOOKUP_FOUND);
+	}
+
+	int copyMostRecentAttempt(ArrayList<T> recent, int count) {
+		long shift_count = reordered_count;
+		long head = next_sequence;
+		long first = head - count;
+		if (first < getOldestSequence(head)) {
+			return LOOKUP_NOT_FOUND;
+		}
+		for (int i = 0; i < count; i++) {
+			T t = recent.get(i);
+			if (!copyAt(first + i, t)) {
+				return LOOKUP_RETRY;
+			}
+			if (!t.getValid() || ((i > 0) && (t.getTimestamp() <= recent.get(i - 1).getTimestamp()))) {
+				/* A late object may have been inserted while copying. */
+				return (reordered_count != shift_count) ? LOOKUP_RETRY : LOOKUP_NOT_FOUND;
+			}
+		}
+		return LOOKUP_FOUND;
+	}
+
+	ArrayList<T> getPredictionScratch(int count) {
+		ArrayList<T> scratch = prediction_scratch.get();
+		if (scratch == null) {
+			scratch = new ArrayList<T>(count);
+			prediction_scratch.set(scratch);
+		}
+		while (scratch.size() < count) {
+			scratch.add(default_obj.instantiate_copy());
+		}
+		return scratch;
+	}
+
+	/**
+	 * Creates a cursor which accelerates lookups of nearby timestamps (see
+	 * TimeHistoryCursor). Each reader thread should use its own cursor.
+	 */
+	public TimeHistoryCursor<T> createCursor() {
+		return new TimeHistoryCursor<T>(this);
+	}
+
+	/**
+	 * Implements TimeHistoryCursor.get(); identical to get(), except that the
+	 * search begins at the cursor's remembered position.
+	 */
+	boolean getUsingCursor(TimeHistoryCursor<T> cursor, long requested_timestamp, T out) {
+		HistoryMetrics m = metrics;
+		if (m != null) {
+			return getMeasured(cursor, requested_timestamp, out, m);
+		}
+		if (!lock_free) {
+			synchronized (this) {
+				if (lookupFrom(cursor, requested_timestamp, out) == LOOKUP_FOUND) {
+					return true;
+				}
+			}
+			return getArchived(requested_timestamp, out);
+		}
+		int result;
+		do {
+			result = lookupFrom(cursor, requested_timestamp, out);
+		} while (result == LOOKUP_RETRY);
+		return (result == LOOKUP_FOUND) || getArchived(requested_timestamp, out);
+	}
+
+	/**
+	 * Performs a single lookup attempt, beginning the search at the cursor's
+	 * remembered position; falls back to lookup() if the binary search is not
+	 * applicable. In Synchronized mode, must be invoked while holding the
+	 * lock.
+	 */
+	int lookupFrom(TimeHistoryCursor<T> cursor, long requested_timestamp, T out) {
+		long head = next_sequence;
+		if ((search_mode != SearchMode.BinarySearch) || !isInOrder(head)) {
+			return lookup(requested_timestamp, out);
+		}
+		long oldest = getOldestSequence(head);
+		long following = searchFollowingNear(oldest, head, requested_timestamp, cursor.following_sequence);
+		if (following == INVALID_SEQUENCE) {
+			return LOOKUP_RETRY;
+		}
+		cursor.following_sequence = following;
+		return resolve(requested_timestamp, following, oldest, head, out);
+	}
+
+	/**
+	 * Returns the same result as searchFollowing(), but first steps (at most
+	 * TimeHistoryCursor.MAX_LOCAL_STEPS entries) from the provided hint, which
+	 * is the result of a previous search.
+	 */
+	long searchFollowingNear(long oldest, long head, long requested_timestamp, long hint) {
+		if ((hint < oldest) || (hint > head)) {
+			/* No hint, or the hinted entry has since been overwritten. */
+			return searchFollowing(oldest, head, requested_timestamp);
+		}
+		long seq = hint;
+		for (int step = 0; step <= TimeHistoryCursor.MAX_LOCAL_STEPS; step++) {
+			if (seq < head) {
+				long timestamp = getTimestampAt(seq);
+				if (timestamp == INVALID_TIMESTAMP) {
+					return INVALID_SEQUENCE;
+				}
+				if (timestamp < requested_timestamp) {
+					seq++;
+					continue;
+				}
+			}
+			if (seq > oldest) {
+				long preceding_timestamp = getTimestampAt(seq - 1);
+				if (preceding_timestamp == INVALID_TIMESTAMP) {
+					return INVALID_SEQUENCE;
+				}
+				if (preceding_timestamp >= requested_timestamp) {
+					seq--;
+					continue;
+				}
+			}
+			return seq;
+		}
+		return searchFollowing(oldest, head, requested_timestamp);
+	}
+
+	/**
+	 * Performs a single lookup attempt using the configured search mode. In
+	 * Synchronized mode, must be invoked while holding the lock.
+	 * 
+	 * @return LOOKUP_FOUND, LOOKUP_NOT_FOUND, or LOOKUP_RETRY if a concurrent
+	 *         modification was detected (LockFreeSingleWriter mode only).
+	 */
+	int lookup(long requested_timestamp, T out) {
+		if (search_mode == SearchMode.BinarySearch) {
+			return getUsingBinarySearch(requested_timestamp, out);
+		} else {
+			return getUsingLinearScan(requested_timestamp, out);
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the object with the provided sequence number.
+	 * In LockFreeSingleWriter mode, INVALID_TIMESTAMP is returned if the slot
+	 * was being modified or no longer holds that object.
+	 */
+	long getTimestampAt(long sequence) {
+		Ring<T> r = ring;
+		int index = r.getIndex(sequence);
+		Chunk<T> chunk = r.getChunk(index);
+		int slot = index % r.chunk_size;
+		if (!lock_free) {
+			return chunk.values.get(slot).getTimestamp();
+		}
+		StampedLock slot_lock = chunk.locks[slot];
+		long stamp = slot_lock.tryOptimisticRead();
+		long timestamp = chunk.values.get(slot).getTimestamp();
+		long slot_seq = chunk.sequences[slot];
+		if ((stamp == 0) || !slot_lock.validate(stamp) || (slot_seq != sequence)) {
+			return INVALID_TIMESTAMP;
+		}
+		return timestamp;
+	}
+
+	/**
+	 * Copies the object with the provided sequence number. In
+	 * LockFreeSingleWriter mode, false is returned (and the contents of out
+	 * are undefined) if the slot was being modified or no longer holds that
+	 * object.
+	 */
+	boolean copyAt(long sequence, T out) {
+		Ring<T> r = ring;
+		int index = r.getIndex(sequence);
+		Chunk<T> chunk = r.getChunk(index);
+		int slot = index % r.chunk_size;
+		if (!lock_free) {
+			out.copy(chunk.values.get(slot));
+			return true;
+		}
+		StampedLock slot_lock = chunk.locks[slot];
+		long stamp = slot_lock.tryOptimisticRead();
+		if (stamp == 0) {
+			return false;
+		}
+		out.copy(chunk.values.get(slot));
+		long slot_seq = chunk.sequences[slot];
+		return slot_lock.validate(stamp) && (slot_seq == sequence);
+	}
+
+	/**
+	 * Locates the bracketing objects via a binary search of the ring, which is
+	 * treated as a list of objects in ascending timestamp order, beginning
+	 * with the oldest. Falls back to the linear scan if the history is not in
+	 * timestamp order.
+	 */
+	int getUsingBinarySearch(long requested_timestamp, T out) {
+		long head = next_sequence;
+		if (!isInOrder(head)) {
+			return getUsingLinearScan(requested_timestamp, out);
+		}
+		long oldest = getOldestSequence(head);
+		long following = searchFollowing(oldest, head, requested_timestamp);
+		if (following == INVALID_SEQUENCE) {
+			return LOOKUP_RETRY;
+		}
+		return resolve(requested_timestamp, following, oldest, head, out);
+	}
+
+	/**
+	 * Returns the sequence number of the first (oldest) entry in the range
+	 * [low, head) whose timestamp is >= the requested timestamp; head is
+	 * returned if there is no such entry. INVALID_SEQUENCE is returned if a
+	 * concurrent modification was detected.
+	 */
+	long searchFollowing(long low, long head, long requested_timestamp) {
+		long high = head;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			long timestamp = getTimestampAt(mid);
+			if (timestamp == INVALID_TIMESTAMP) {
+				return INVALID_SEQUENCE;
+			}
+			if (timestamp < requested_timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Fills in the output object, given the sequence number of the first
+	 * entry whose timestamp is >= the requested timestamp.
+	 */
+	int resolve(long requested_timestamp, long following, long oldest, long head, T out) {
+		if (oldest >= head) {
+			return LOOKUP_NOT_FOUND;
+		}
+		if (following >= head) {
+			/* Requested timestamp is more recent than the newest entry. */
+			return validateAbsent(head - 1);
+		}
+		if (following == oldest) {
+			long timestamp = getTimestampAt(following);
+			if (timestamp == INVALID_TIMESTAMP) {
+				return LOOKUP_RETRY;
+			}
+			if (timestamp != requested_timestamp) {
+				/* Requested timestamp is older than the oldest entry. */
+				return LOOKUP_NOT_FOUND;
+			}
+		}
+		return copyOrInterpolate(requested_timestamp, following, out);
+	}
+
+	/**
+	 * Locates the bracketing objects by walking backwards from the most recent
+	 * entry. This does not depend upon timestamp ordering, and is used when
+	 * the history may not be monotonic.
+	 */
+	int getUsingLinearScan(long requested_timestamp, T out) {
+		long head = next_sequence;
+		return scan(requested_timestamp, getOldestSequence(head), head, isInOrder(head), out);
+	}
 
 	/**
-	 * Constructs a ThreadsafeInterpolatingTimeHihstory to hold up to a
-	 * specified number of objects of the specified class.
+	 * Locates the bracketing objects by walking backwards through the entries
+	 * with sequence numbers in the range [low, high).
 	 * 
-	 * @param _class
-	 *            - the Java class of the objects to be contained.
-	 * @param num_samples
-	 *            - the maximum number of objects to be contained.
+	 * @param in_order
+	 *            - true if the entries are known to be in ascending timestamp
+	 *            order, in which case the walk ends once both bracketing
+	 *            objects are found.
+	 */
+	int scan(long requested_timestamp, long low, long high, boolean in_order, T out) {
+		long nearest_preceding_timestamp_delta = Long.MIN_VALUE;
+		long nearest_preceding_seq = -1;
+		long nearest_following_timestamp_delta = Long.MAX_VALUE;
+		long nearest_following_seq = -1;
+		for (long seq = high - 1; seq >= low; seq--) {
+			long timestamp = getTimestampAt(seq);
+			if (timestamp == INVALID_TIMESTAMP) {
+				return LOOKUP_RETRY;
+			}
+			long delta = timestamp - requested_timestamp;
+			if (delta < 0) {
+				if (delta > nearest_preceding_timestamp_delta) {
+					nearest_preceding_timestamp_delta = delta;
+					nearest_preceding_seq = seq;
+					/*
+					 * To optimize, break out once both nearest preceding and
+					 * following entries are found. This optimization relies on
+					 * entries being in descending timestamp order, beginning
+					 * with the current entry.
+					 */
+					if ((nearest_following_seq != -1) && in_order)
+						break;
+				}
+			} else if (delta > 0) {
+				if (delta < nearest_following_timestamp_delta) {
+					nearest_following_timestamp_delta = delta;
+					nearest_following_seq = seq;
+				}
+			} else { /* entry_timestamp == requested_timestamp */
+				return copyAt(seq, out) ? LOOKUP_FOUND : LOOKUP_RETRY;
+			}
+		}
+		if ((nearest_preceding_seq == -1) || (nearest_following_seq == -1)) {
+			return LOOKUP_NOT_FOUND;
+		}
+		return interpolate(requested_timestamp, nearest_preceding_seq, nearest_following_seq, out);
+	}
+
+	/**
+	 * Confirms that a negative lookup result was not caused by a concurrent
+	 * modification of the entry with the provided sequence number.
 	 */
+	int validateAbsent(long sequence) {
+		if (!lock_free) {
+			return LOOKUP_NOT_FOUND;
+		}
+		return (getTimestampAt(sequence) == INVALID_TIMESTAMP) ? LOOKUP_RETRY : LOOKUP_NOT_FOUND;
+	}
 
-	public ThreadsafeInterpolatingTimeHistory(T default_obj, int num_samples, TimestampInfo ts_info, String name,
-			IUnit[] units) {
-		history_size = num_samples;
-		history = new ArrayList<T>(num_samples);
+	/**
+	 * Fills in the output object either from an exact match (if the entry
+	 * with the provided sequence number matches the requested timestamp), or
+	 * by interpolating between it and the preceding entry.
+	 */
+	int copyOrInterpolate(long requested_timestamp, long following_seq, T out) {
+		if (!copyAt(following_seq, out)) {
+			return LOOKUP_RETRY;
+		}
+		if (out.getTimestamp() == requested_timestamp) {
+			out.setInterpolated(false);
+			return LOOKUP_FOUND;
+		}
+		return interpolate(requested_timestamp, following_seq - 1, following_seq, out);
+	}
 
-		this.default_obj = default_obj;
+	/**
+	 * Interpolates an intermediate value between the two entries with the
+	 * provided sequence numbers. Both entries are first copied so that the
+	 * interpolation never references an object within the volatile
+	 * (threadsafe) history.
+	 */
+	int interpolate(long requested_timestamp, long preceding_seq, long following_seq, T out) {
+		ArrayList<T> scratch = getInterpolationScratch();
+		T preceding = scratch.get(0);
+		T following = scratch.get(1);
+		if (!copyAt(preceding_seq, preceding) || !copyAt(following_seq, following)) {
+			return LOOKUP_RETRY;
+		}
+		if ((preceding.getTimestamp() >= requested_timestamp) || (following.getTimestamp() <= requested_timestamp)) {
+			/* Bracket was located using entries modified during the search. */
+			return (lock_free) ? LOOKUP_RETRY : LOOKUP_NOT_FOUND;
+		}
+		double timestamp_delta = following.getTimestamp() - preceding.getTimestamp();
+		double requested_timestamp_offset = requested_timestamp - preceding.getTimestamp();
+		double requested_timestamp_ratio = requested_timestamp_offset / timestamp_delta;
+
+		preceding.interpolate(following, requested_timestamp_ratio, out);
+		out.setTimestamp(requested_timestamp);
+		out.setInterpolated(true);
+		return LOOKUP_FOUND;
+	}
+
+	ArrayList<T> getInterpolationScratch() {
+		ArrayList<T> scratch = interpolation_scratch.get();
+		if (scratch == null) {
+			scratch = new ArrayList<T>(2);
+			scratch.add(default_obj.instantiate_copy());
+			scratch.add(default_obj.instantiate_copy());
+			interpolation_scratch.set(scratch);
+		}
+		return scratch;
+	}
 
-		for (int i = 0; i < history_size; i++) {
-			T new_t = default_obj.instantiate_copy();
-			if (new_t != null) {
-				history.add(i, new_t);
+	/**
+	 * Retrieves (or interpolates) the objects matching each of the provided
+	 * timestamps. This is equivalent to invoking get() once per timestamp, but
+	 * the requests are resolved in ascending timestamp order with a single
+	 * forward walk through the history, while holding the lock once.
+	 * <p>
+	 * The requested timestamps need not be sorted, however sorted requests
+	 * avoid an additional sorting step.
+	 * 
+	 * @param requested_timestamps
+	 *            - the timestamps for which to return objects
+	 * @param out
+	 *            - receives the objects; out[i] corresponds to
+	 *            requested_timestamps[i]. Objects which could not be located
+	 *            or interpolated are marked invalid.
+	 * @return the number of objects which were located or interpolated.
+	 */
+	public int get(long[] requested_timestamps, T[] out) {
+		if (out.length < requested_timestamps.length) {
+			throw new IllegalArgumentException("The out array must be at least as large as requested_timestamps.");
+		}
+		int[] order = getAscendingOrder(requested_timestamps);
+		if (!lock_free) {
+			synchronized (this) {
+				return getBatch(requested_timestamps, order, out);
 			}
 		}
-		curr_index = 0;
-		num_valid_samples = 0;
-		this.ts_info = ts_info;
-		this.value_name = name;
-		file_writer = new CSVFileWriter(value_name, this);
+		return getBatch(requested_timestamps, order, out);
 	}
 
 	/**
-	 * Clears all contents of the ThreadsafeInterpolatingTimeHistory by marking
-	 * all contained objects as invalid.
+	 * Returns the indices of the provided timestamps in ascending timestamp
+	 * order, or null if the timestamps are already in ascending order.
 	 */
-	public void reset() {
-		synchronized (this) {
-			for (int i = 0; i < history_size; i++) {
-				T t = history.get(i);
-				t.setValid(false);
+	static int[] getAscendingOrder(long[] timestamps) {
+		int i = 1;
+		while ((i < timestamps.length) && (timestamps[i - 1] <= timestamps[i])) {
+			i++;
+		}
+		if (i >= timestamps.length) {
+			return null;
+		}
+		/* Insertion sort; batches are typically small and nearly sorted. */
+		int[] order = new int[timestamps.length];
+		for (i = 0; i < order.length; i++) {
+			int index = i;
+			int j = i;
+			while ((j > 0) && (timestamps[order[j - 1]] > timestamps[index])) {
+				order[j] = order[j - 1];
+				j--;
 			}
-			curr_index = 0;
-			num_valid_samples = 0;
+			order[j] = index;
 		}
+		return order;
 	}
 
 	/**
-	 * Returns the current count of valid objects in this
-	 * ThreadsafeInterpolatingTimeHistory.
-	 * 
-	 * @return
+	 * Resolves a batch of requests, visited in the order provided. In
+	 * Synchronized mode, must be invoked while holding the lock.
 	 */
-	public int getValidSampleCount() {
-		return num_valid_samples;
+	int getBatch(long[] requested_timestamps, int[] order, T[] out) {
+		int num_found = 0;
+		long head = next_sequence;
+		boolean merge_walk = (search_mode == SearchMode.BinarySearch) && isInOrder(head);
+		long oldest = getOldestSequence(head);
+		long following = oldest;
+		for (int i = 0; i < requested_timestamps.length;) {
+			int k = (order != null) ? order[i] : i;
+			long requested_timestamp = requested_timestamps[k];
+			int result;
+			if (merge_walk) {
+				following = advanceFollowing(following, head, requested_timestamp);
+				result = (following == INVALID_SEQUENCE) ? LOOKUP_RETRY
+						: resolve(requested_timestamp, following, oldest, head, out[k]);
+			} else {
+				result = lookup(requested_timestamp, out[k]);
+			}
+			if (result == LOOKUP_RETRY) {
+				/* Concurrently modified; restart this request from the head. */
+				head = next_sequence;
+				merge_walk = (search_mode == SearchMode.BinarySearch) && isInOrder(head);
+				oldest = getOldestSequence(head);
+				following = oldest;
+				continue;
+			}
+			if (result == LOOKUP_FOUND) {
+				num_found++;
+			} else {
+				out[k].setValid(false);
+			}
+			i++;
+		}
+		return num_found;
 	}
 
 	/**
-	 * Adds the provided object to the ThreadsafeInterpolatingTimeHistory.
-	 * 
-	 * @param t
-	 *            - the object to add
+	 * Advances from the provided sequence number to the first entry whose
+	 * timestamp is >= the requested timestamp. Small advances are walked
+	 * linearly; larger advances gallop and then binary search, so that a
+	 * sparse batch does not degrade into a walk over the entire history.
 	 */
-	public void add(T t) {
-		synchronized (this) {
-			T existing = history.get(curr_index);
-			existing.copy(t);
-			curr_index++;
-			if (curr_index >= history_size) {
-				curr_index = 0;
+	long advanceFollowing(long from, long head, long requested_timestamp) {
+		long step = 1;
+		long low = from;
+		while (low < head) {
+			long probe = low + step - 1;
+			if (probe >= head) {
+				probe = head - 1;
+			}
+			long timestamp = getTimestampAt(probe);
+			if (timestamp == INVALID_TIMESTAMP) {
+				return INVALID_SEQUENCE;
 			}
-			if (num_valid_samples < history_size) {
-				num_valid_samples++;
+			if (timestamp >= requested_timestamp) {
+				return searchFollowing(low, probe + 1, requested_timestamp);
 			}
+			low = probe + 1;
+			step <<= 1;
 		}
+		return head;
 	}
 
 	/**
-	 * Retrieves the object in the ThreadsafeInterpolatingTimeHistory which
-	 * matches the provided timestamp. If an exact match is not found, a new
-	 * object will be created using interpolated values, based upon the nearest
-	 * objects preceding and following the requested timestamp.
+	 * Resamples the history onto a uniform time grid, beginning at the start
+	 * timestamp and advancing by the period until the end timestamp
+	 * (inclusive). Each grid point is resolved as by get(), using a single
+	 * forward walk through the history; grid points which cannot be located
+	 * or interpolated are skipped.
+	 * <p>
+	 * The same object is provided to the visitor for each grid point, and so
+	 * must not be retained by it. In Synchronized mode the visitor is invoked
+	 * while holding the history's lock, and should return quickly.
 	 * 
-	 * @param requested_timestamp
-	 *            - the timeatamp for which to return an object
-	 * @return - returns the object (either actual or interpolated) matching the
-	 *         requested timestamp. If no object could be located or
-	 *         interpolated, null is returned.
+	 * @param start_timestamp
+	 *            - the first grid timestamp
+	 * @param end_timestamp
+	 *            - the last grid timestamp
+	 * @param period
+	 *            - the grid spacing; must be greater than zero.
+	 * @param visitor
+	 *            - invoked once per resolved grid point; returning false stops
+	 *            the resampling.
+	 * @return the number of grid points provided to the visitor.
 	 */
-	public boolean get(long requested_timestamp, T out) {
-		boolean success = false;
-		T match = null;
-		long nearest_preceding_timestamp = Long.MIN_VALUE;
-		long nearest_preceding_timestamp_delta = Long.MIN_VALUE;
-		T nearest_preceding_obj = null;
-		long nearest_following_timestamp_delta = Long.MAX_VALUE;
-		T nearest_following_obj = null;
-		boolean copy_object = true;
-		synchronized (this) {
-			int entry_index = curr_index;
-			for (int i = 0; i < num_valid_samples; i++) {
-				T obj = history.get(entry_index);
-				long entry_timestamp = obj.getTimestamp();
-				long delta = entry_timestamp - requested_timestamp;
-				if (delta < 0) {
-					if (delta > nearest_preceding_timestamp_delta) {
-						nearest_preceding_timestamp_delta = delta;
-						nearest_preceding_timestamp = entry_timestamp;
-						nearest_preceding_obj = obj;
-						/*
-						 * To optimize, break out once both nearest preceding
-						 * and following entries are found. This optimization
-						 * relies on entries being in descending timestamp
-						 * order, beginning with the current entry.
-						 */
-						if (nearest_following_obj != null)
-							break;
-					}
-				} else if (delta > 0) {
-					if (delta < nearest_following_timestamp_delta) {
-						nearest_following_timestamp_delta = delta;
-						nearest_following_obj = obj;
-					}
-				} else { /* entry_timestamp == requested_timestamp */
-					match = obj;
+	public int resample(long start_timestamp, long end_timestamp, long period, ITimestampedValueVisitor<T> visitor) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("period must be greater than zero.");
+		}
+		T out = default_obj.instantiate_copy();
+		if (!lock_free) {
+			synchronized (this) {
+				return resampleGrid(start_timestamp, end_timestamp, period, visitor, out);
+			}
+		}
+		return resampleGrid(start_timestamp, end_timestamp, period, visitor, out);
+	}
+
+	int resampleGrid(long start_timestamp, long end_timestamp, long period, ITimestampedValueVisitor<T> visitor,
+			T out) {
+		int num_visited = 0;
+		long head = next_sequence;
+		boolean merge_walk = (search_mode == SearchMode.BinarySearch) && isInOrder(head);
+		long oldest = getOldestSequence(head);
+		long following = oldest;
+		for (long requested_timestamp = start_timestamp; requested_timestamp <= end_timestamp;) {
+			int result;
+			if (merge_walk) {
+				following = advanceFollowing(following, head, requested_timestamp);
+				result = (following == INVALID_SEQUENCE) ? LOOKUP_RETRY
+						: resolve(requested_timestamp, following, oldest, head, out);
+			} else {
+				result = lookup(requested_timestamp, out);
+			}
+			if (result == LOOKUP_RETRY) {
+				head = next_sequence;
+				merge_walk = (search_mode == SearchMode.BinarySearch) && isInOrder(head);
+				oldest = getOldestSequence(head);
+				following = oldest;
+				continue;
+			}
+			if (result == LOOKUP_FOUND) {
+				num_visited++;
+				if (!visitor.visit(out)) {
 					break;
 				}
-				entry_index--;
-				if (entry_index < 0) {
-					entry_index = history_size - 1;
-				}
+			} else if ((following >= head) && merge_walk) {
+				/* Remaining grid points are all newer than the newest entry. */
+				break;
+			}
+			requested_timestamp += period;
+		}
+		return num_visited;
+	}
+
+	/**
+	 * Visits each object in the history whose timestamp falls within the
+	 * provided range (inclusive), in ascending timestamp order. The start of
+	 * the range is located via search, so the cost is proportional to the
+	 * number of objects within the range rather than the size of the history.
+	 * <p>
+	 * In Synchronized mode, the objects provided to the visitor are the
+	 * objects within the history (no copy is made); the lock is held for the
+	 * duration of the visit, so the visitor sees a consistent view of the
+	 * history, must not modify or retain the objects, and should return
+	 * quickly.
+	 * <p>
+	 * In LockFreeSingleWriter mode, each object is copied into a single
+	 * reusable object which is provided to the visitor; every object visited
+	 * is consistent (never torn). Objects added after the visit begins are
+	 * not visited, and objects overwritten by the writer before they could be
+	 * visited are skipped.
+	 * 
+	 * @param start_timestamp
+	 *            - the oldest timestamp to visit
+	 * @param end_timestamp
+	 *            - the newest timestamp to visit
+	 * @param visitor
+	 *            - invoked once per object within the range; returning false
+	 *            stops the visit.
+	 * @return the number of objects provided to the visitor.
+	 */
+	public int forEachInRange(long start_timestamp, long end_timestamp, ITimestampedValueVisitor<T> visitor) {
+		if (!lock_free) {
+			synchronized (this) {
+				return visitRange(start_timestamp, end_timestamp, visitor, null);
 			}
+		}
+		return visitRange(start_timestamp, end_timestamp, visitor, default_obj.instantiate_copy());
+	}
 
+	/**
+	 * Visits the objects within the provided range. If a flyweight is
+	 * provided, each object is copied into it (LockFreeSingleWriter mode);
+	 * otherwise the contained objects are visited directly, and this must be
+	 * invoked while holding the lock.
+	 */
+	int visitRange(long start_timestamp, long end_timestamp, ITimestampedValueVisitor<T> visitor, T flyweight) {
+		boolean in_order;
+		long head;
+		long seq;
+		do {
 			/*
-			 * If a match was not found, and the requested timestamp falls
-			 * within two entries in the history, interpolate an intermediate
-			 * value.
+			 * Re-read the head on each attempt; once the writer has wrapped
+			 * past a stale head, its oldest entry is never readable again.
 			 */
-			if ((match == null) && (nearest_preceding_obj != null) && (nearest_following_obj != null)) {
-				double timestamp_delta = nearest_following_timestamp_delta - nearest_preceding_timestamp_delta;
-				double requested_timestamp_offset = requested_timestamp - nearest_preceding_timestamp;
-				double requested_timestamp_ratio = requested_timestamp_offset / timestamp_delta;
-
-				nearest_preceding_obj.interpolate(nearest_following_obj, requested_timestamp_ratio, out);
-				out.setInterpolated(true);
-				copy_object = false;
-				success = true;
+			head = next_sequence;
+			in_order = isInOrder(head);
+			long oldest = getOldestSequence(head);
+			/* If out of order, every entry must be considered. */
+			seq = in_order ? searchFollowing(oldest, head, start_timestamp) : oldest;
+		} while (seq == INVALID_SEQUENCE);
+		long shift_count = reordered_count;
+		long visited_timestamp = Long.MIN_VALUE;
+		int num_visited = 0;
+		for (; seq < head; seq++) {
+			T t;
+			if (flyweight != null) {
+				if (!copyAt(seq, flyweight)) {
+					/*
+					 * Overwritten before it could be visited, in which case skip
+					 * ahead; or being shifted by a late object, in which case
+					 * retry.
+					 */
+					seq = Math.max(seq, getOldestSequence(next_sequence)) - 1;
+					continue;
+				}
+				t = flyweight;
+				if ((reordered_count != shift_count) && (t.getTimestamp() <= visited_timestamp)) {
+					/* Shifted forward by a late object since it was visited. */
+					continue;
+				}
+			} else {
+				t = getSlot(ring, seq);
 			}
-
-			if ((match != null) && copy_object) {
-				/*
-				 * Make a copy of the object, so that caller does not directly
-				 * reference an object within the volatile (threadsafe) history.
-				 */
-				out.copy(match);
-				out.setInterpolated(false);
-				success = true;
+			long timestamp = t.getTimestamp();
+			if ((timestamp < start_timestamp) || (timestamp > end_timestamp)) {
+				if (in_order && (timestamp > end_timestamp)) {
+					break;
+				}
+				continue;
+			}
+			visited_timestamp = timestamp;
+			num_visited++;
+			if (!visitor.visit(t)) {
+				break;
 			}
 		}
-
-		return success;
+		return num_visited;
 	}
 
 	private class HistoryPointer {			
-		public int next_index;
-		public int num_returned;
+		public long next_sequence;
+		public long end_sequence;
 		HistoryPointer() {
-			next_index = 0;
-			num_returned = 0;
+			next_sequence = 0;
+			end_sequence = 0;
 		}
 	}
 	
 	public Object getFirstPosition() {
 		HistoryPointer position = new HistoryPointer();
-		if (num_valid_samples > 0) {
-			int curr_idx = this.curr_index;
-			curr_idx--;
-			if (curr_idx < 0) {
-				curr_idx = (history_size - 1);
-			}
-			position.next_index = curr_idx;
-		}
+		long head = this.next_sequence;
+		position.next_sequence = getOldestSequence(head);
+		position.end_sequence = head;
 		return position;
 	}
 	
@@ -255,12 +1953,8 @@ public class ThreadsafeInterpolatingTimeHistory<T extends ICopy<T> & ITimestampe
 		if(position != null) {			
 			@SuppressWarnings("unchecked")
 			HistoryPointer pos = (HistoryPointer)position;
-			if(pos.num_returned <= num_valid_samples) {
-				pos.num_returned++;
-				t = history.get(pos.next_index++);		
-				if (pos.next_index >= history_size) {
-					pos.next_index = 0;
-				}
+			if(pos.next_sequence < pos.end_sequence) {
+				t = getSlot(ring, pos.next_sequence++);		
 			} else {
 				t = null;
 			}
@@ -276,135 +1970,393 @@ public class ThreadsafeInterpolatingTimeHistory<T extends ICopy<T> & ITimestampe
 	 *         exist
 	 */
 	public boolean getMostRecent(T out) {
-		T most_recent_t = null;
-		synchronized (this) {
-			if (num_valid_samples > 0) {
-				int curr_idx = this.curr_index;
-				curr_idx--;
-				if (curr_idx < 0) {
-					curr_idx = (history_size - 1);
+		if (lock_free) {
+			for (;;) {
+				long head = next_sequence;
+				if (getValidSampleCount(head) == 0) {
+					return false;
 				}
-				most_recent_t = history.get(curr_idx);
-				if (!most_recent_t.getValid()) {
-					most_recent_t = null;
-				} else {
-					/*
-					 * Make a copy of the object, so that caller does not
-					 * directly reference an object within the volatile
-					 * (threadsafe) history.
-					 */
-					T new_t = default_obj.instantiate_copy();
-					if (new_t != null) {
-						new_t.copy(most_recent_t);
-					}
-					most_recent_t = new_t;
+				if (copyAt(head - 1, out)) {
+					return out.getValid();
 				}
 			}
 		}
-		if (most_recent_t != null) {
+		synchronized (this) {
+			long head = next_sequence;
+			if (getValidSampleCount(head) == 0) {
+				return false;
+			}
+			/*
+			 * Copy into the caller's object while holding the lock, so that
+			 * the caller does not directly reference an object within the
+			 * volatile (threadsafe) history.
+			 */
+			T most_recent_t = getSlot(ring, head - 1);
+			if (!most_recent_t.getValid()) {
+				return false;
+			}
 			out.copy(most_recent_t);
 			return true;
-		} else {
-			return false;
 		}
 	}
 
 	@Override
 	public boolean writeCSV(PrintWriter out) {
 		boolean success = true;
-		// Write header
-		int oldest_index;
-		int num_to_write;
-		if (num_valid_samples > 0) {
-			if (num_valid_samples == history_size) {
-				oldest_index = curr_index + 1;
-				if (oldest_index >= history_size) {
-					oldest_index = 0;
-				}
-				num_to_write = num_valid_samples;
-			} else { /* List is not completely filled */
-				oldest_index = 0;
-				num_to_write = curr_index + 1;
-			}
-			T first_entry = history.get(oldest_index);
-			ArrayList<String> quantity_names = new ArrayList<String>();
-			IQuantity quantity = first_entry.getQuantity();
-			boolean is_quantity_container = quantity.getContainedQuantityNames(quantity_names);
-			/* Write Header */
-			String header = "Timestamp";
-			if (is_quantity_container) {
-				for (String quantity_name : quantity_names) {
-					header += "," + value_name + "." + quantity_name;
-				}
+		long head = next_sequence;
+		long oldest_sequence = getOldestSequence(head);
+		if (oldest_sequence < head) {
+			writeCSVHeader(out);
+			CSVRowFormatter formatter = new CSVRowFormatter();
+			for (long seq = oldest_sequence; seq < head; seq++) {
+				writeCSVRow(out, getSlot(ring, seq), formatter);
+			}
+		}
+		return success;
+	}
+
+	public void writeCSVHeader(PrintWriter out) {
+		StringBuilder header = new StringBuilder();
+		formatCSVHeader(header, getTimestampResolution(), value_name, default_obj.getQuantity());
+		out.println(header);
+	}
+
+	/**
+	 * Formats the CSV header describing the provided quantity: the timestamp
+	 * column, labelled with the unit of the provided resolution, followed by
+	 * the names of the quantity's fields (see IFieldCodec), each prefixed with
+	 * the value name, or just the value name for a single field.
+	 */
+	static void formatCSVHeader(StringBuilder header, Timestamp.TimestampResolution resolution, String value_name,
+			IQuantity quantity) {
+		formatTimestampHeader(header, resolution);
+		if (quantity instanceof IFieldCodec) {
+			IFieldCodec codec = (IFieldCodec) quantity;
+			if (codec.getFieldCount() == 1) {
+				header.append(',').append(value_name);
 			} else {
-				header += "," + value_name;
-			}
-			out.println(header);
-
-			for (int i = 0; i < num_to_write; i++) {
-				StringBuilder value_string = new StringBuilder();
-				T entry_to_write = history.get(oldest_index++);
-				quantity = entry_to_write.getQuantity();
-				value_string.append(Long.toString(entry_to_write.getTimestamp()));
-				value_string.append(',');
-				if (is_quantity_container) {
-					ArrayList<IQuantity> contained_quantities = new ArrayList<IQuantity>();
-					quantity.getContainedQuantities(contained_quantities);
-					int index = 0;
-					for (IQuantity contained_quantity : contained_quantities) {
-						StringBuilder printable_string = new StringBuilder();
-						if (index++ != 0) {
-							value_string.append(',');
-						}
-						contained_quantity.getPrintableString(printable_string);
-						value_string.append(printable_string);
-					}
-				} else {
-					quantity.getPrintableString(value_string);
-				}
-				out.println(value_string.toString());
-				if (oldest_index >= history_size) {
-					oldest_index = 0;
+				for (int f = 0; f < codec.getFieldCount(); f++) {
+					header.append(',').append(value_name).append('.').append(codec.getFieldName(f));
 				}
-				if (oldest_index == curr_index) {
-					break;
+			}
+			return;
+		}
+		ArrayList<String> quantity_names = new ArrayList<String>();
+		if (quantity.getContainedQuantityNames(quantity_names)) {
+			for (String quantity_name : quantity_names) {
+				header.append(',').append(value_name).append('.').append(quantity_name);
+			}
+		} else {
+			header.append(',').append(value_name);
+		}
+	}
+
+	/**
+	 * Formats the header of the timestamp column, e.g. "Timestamp (ms)".
+	 */
+	static void formatTimestampHeader(StringBuilder header, Timestamp.TimestampResolution resolution) {
+		header.append("Timestamp (").append(Timestamp.getAbbreviation(resolution)).append(')');
+	}
+
+	/**
+	 * Formats CSV rows into a reusable string builder. Quantities which
+	 * implement IFieldCodec write their fields directly; others are formatted
+	 * via IQuantity.getContainedQuantities().
+	 */
+	static class CSVRowFormatter implements IFieldSink {
+		final StringBuilder line = new StringBuilder();
+		final ArrayList<IQuantity> contained_quantities = new ArrayList<IQuantity>();
+
+		void format(long timestamp, IQuantity quantity) {
+			line.setLength(0);
+			line.append(timestamp);
+			if (quantity instanceof IFieldCodec) {
+				((IFieldCodec) quantity).writeFields(this);
+				return;
+			}
+			line.append(',');
+			contained_quantities.clear();
+			if (quantity.getContainedQuantities(contained_quantities)) {
+				int index = 0;
+				for (IQuantity contained_quantity : contained_quantities) {
+					if (index++ != 0) {
+						line.append(',');
+					}
+					contained_quantity.getPrintableString(line);
 				}
+			} else {
+				quantity.getPrintableString(line);
 			}
 		}
-		return success;
+
+		@Override
+		public void putFloat(float value) {
+			line.append(',').append(value);
+		}
+
+		@Override
+		public void putLong(long value) {
+			line.append(',').append(value);
+		}
+
+		@Override
+		public void putBoolean(boolean value) {
+			line.append(',').append(value);
+		}
 	}
-	
+
+	/**
+	 * Writes the provided object as one CSV row, using the provided (reusable)
+	 * formatter.
+	 */
+	void writeCSVRow(PrintWriter out, T entry_to_write, CSVRowFormatter formatter) {
+		formatter.format(entry_to_write.getTimestamp(), entry_to_write.getQuantity());
+		out.println(formatter.line);
+	}
+
+	@Override
+	public void writeCSVHeader(CSVBufferWriter out) throws IOException {
+		writeCSVHeader(out, getTimestampResolution(), value_name, default_obj.getQuantity());
+	}
+
+	/**
+	 * Writes the CSV header describing the provided quantity.
+	 */
+	static void writeCSVHeader(CSVBufferWriter out, Timestamp.TimestampResolution resolution, String value_name,
+			IQuantity quantity) throws IOException {
+		StringBuilder header = new StringBuilder();
+		formatCSVHeader(header, resolution, value_name, quantity);
+		out.append(header).endRow();
+	}
+
+	@Override
+	public long getOldestCSVRowSequence() {
+		return getOldestSequence(next_sequence);
+	}
+
+	/**
+	 * Writes one CSV row for each object added since (and including) the
+	 * object with the provided sequence number. Objects which have already
+	 * been overwritten are skipped. Each object is copied before it is
+	 * written, so this may be invoked concurrently with add(). Quantities
+	 * which implement IFieldCodec are written without allocation. Objects
+	 * which are not yet stable (see setReorderWindow()) are written by a
+	 * subsequent invocation.
+	 */
+	@Override
+	public long writeCSVRows(CSVBufferWriter out, long from_sequence) throws IOException {
+		long head = stable_sequence;
+		long seq = Math.max(from_sequence, getOldestSequence(next_sequence));
+		if (seq >= head) {
+			return head;
+		}
+		T entry = getInterpolationScratch().get(0);
+		CSVRowFormatter formatter = (entry.getQuantity() instanceof IFieldCodec) ? null : new CSVRowFormatter();
+		for (; seq < head; seq++) {
+			if (copyIfRetained(seq, entry)) {
+				writeCSVRow(out, entry, formatter);
+			}
+		}
+		return head;
+	}
+
+	/**
+	 * Writes the provided object as one CSV row. Quantities which implement
+	 * IFieldCodec are written directly; others are formatted using the
+	 * provided (reusable) formatter.
+	 */
+	void writeCSVRow(CSVBufferWriter out, T entry_to_write, CSVRowFormatter formatter) throws IOException {
+		if (formatter == null) {
+			out.append(entry_to_write.getTimestamp());
+			out.appendFields((IFieldCodec) entry_to_write.getQuantity());
+			out.endRow();
+		} else {
+			formatter.format(entry_to_write.getTimestamp(), entry_to_write.getQuantity());
+			out.append(formatter.line).endRow();
+		}
+	}
+
+	/**
+	 * Creates a HistoryJournalWriter which writes to the provided stream, and
+	 * whose header describes the objects in this history. The contained
+	 * quantity must implement IFieldCodec.
+	 * 
+	 * @param out
+	 *            - the stream the journal is written to.
+	 * @throws IOException
+	 *             if the journal header cannot be written.
+	 */
+	public HistoryJournalWriter createJournalWriter(OutputStream out) throws IOException {
+		if (!(default_obj.getQuantity() instanceof IFieldCodec)) {
+			throw new IllegalArgumentException("The contained quantity must implement IFieldCodec.");
+		}
+		return new HistoryJournalWriter(out, value_name, getTimestampResolution(),
+				(IFieldCodec) default_obj.getQuantity(), value_units);
+	}
+
+	/**
+	 * Appends one journal record for each object added since (and including)
+	 * the object with the provided sequence number. As with writeCSVRows(),
+	 * objects which have already been overwritten are skipped, objects which
+	 * are not yet stable are written by a subsequent invocation, and this may
+	 * be invoked concurrently with add().
+	 * 
+	 * @return the sequence number to provide to the next invocation.
+	 * @throws IOException
+	 *             if a record cannot be written.
+	 */
+	public long writeJournalRecords(HistoryJournalWriter writer, long from_sequence) throws IOException {
+		return writeJournalRecords(writer, from_sequence, stable_sequence);
+	}
+
+	long writeJournalRecords(HistoryJournalWriter writer, long from_sequence, long head) throws IOException {
+		long seq = Math.max(from_sequence, getOldestSequence(head));
+		if (seq >= head) {
+			return head;
+		}
+		T entry = default_obj.instantiate_copy();
+		for (; seq < head; seq++) {
+			if (copyIfRetained(seq, entry)) {
+				writer.append(entry.getTimestamp(), (IFieldCodec) entry.getQuantity());
+			}
+		}
+		return head;
+	}
+
+	/**
+	 * Writes the contents of this history to a binary journal file (see
+	 * HistoryJournalWriter), which may be converted to CSV using
+	 * HistoryJournalReader.
+	 * 
+	 * @param file_path
+	 *            - path of the journal file to create.
+	 * @return true if the journal was written successfully.
+	 */
+	public boolean writeJournal(String file_path) {
+		try (HistoryJournalWriter writer = createJournalWriter(new FileOutputStream(file_path))) {
+			writeJournalRecords(writer, 0, next_sequence);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a reusable view of the contents of this history. Refreshing a
+	 * view requires no allocation or copying, and so is preferable to
+	 * create_snapshot() when the contents are visited periodically.
+	 */
+	public TimeHistoryView<T> createView() {
+		return new TimeHistoryView<T>(this);
+	}
+
+	/**
+	 * Copies the object with the provided sequence number, if it has not
+	 * since been overwritten.
+	 * 
+	 * @return false if the object is no longer retained.
+	 */
+	boolean copyIfRetained(long sequence, T out) {
+		if (lock_free) {
+			return (sequence >= getOldestSequence(next_sequence)) && copyAt(sequence, out);
+		}
+		synchronized (this) {
+			if (sequence < getOldestSequence(next_sequence)) {
+				return false;
+			}
+			return copyAt(sequence, out);
+		}
+	}
+
 	public ThreadsafeInterpolatingTimeHistory<T> create_snapshot() {
 		ThreadsafeInterpolatingTimeHistory<T> snapshot = 
-			new ThreadsafeInterpolatingTimeHistory(
+			new ThreadsafeInterpolatingTimeHistory<T>(
 					this.default_obj,
-					this.history_size,
+					this.ring.capacity,
 					this.ts_info,
 					this.value_name,
 					this.value_units);
 		
+		if (lock_free) {
+			copyTo(snapshot);
+			return snapshot;
+		}
 		synchronized (this) {			
-			/* Replicate data items */
-			snapshot.curr_index = this.curr_index;
-			snapshot.num_valid_samples = this.num_valid_samples;
-		
-			for ( int i = 0; i < this.history.size(); i++) {
-				T src = this.history.get(i);
-				T dest = snapshot.history.get(i);
-				dest.copy(src);
-			}
+			copyTo(snapshot);
 		}
 		
 		return snapshot;
 	}
 
+	/**
+	 * Replicates the valid objects into a (newly-constructed) history of at
+	 * least the same capacity. In Synchronized mode, must be invoked while
+	 * holding the lock.
+	 */
+	void copyTo(ThreadsafeInterpolatingTimeHistory<T> snapshot) {
+		long head;
+		long oldest;
+		long shift_count;
+		do {
+			/* Repeated if a late object was inserted while copying. */
+			shift_count = reordered_count;
+			head = this.next_sequence;
+			oldest = getOldestSequence(head);
+			Ring<T> snapshot_ring = snapshot.ring;
+			for (long seq = oldest; seq < head; seq++) {
+				int index = snapshot_ring.getIndex(seq);
+				Chunk<T> chunk = snapshot_ring.getChunk(index);
+				int slot = index % snapshot_ring.chunk_size;
+				if (!copyAt(seq, chunk.values.get(slot))) {
+					/* Overwritten by the writer; drop it and everything older. */
+					oldest = seq + 1;
+				}
+				chunk.sequences[slot] = seq;
+			}
+		} while (lock_free && (reordered_count != shift_count));
+		snapshot.next_sequence = head;
+		snapshot.first_valid_sequence = oldest;
+		snapshot.stable_sequence = head;
+		snapshot.out_of_order_sequence = this.out_of_order_sequence;
+	}
+
+	/**
+	 * Creates a log writer which appends the contents of this history to a
+	 * single CSV file; each flush of the log writer only writes the objects
+	 * added since the previous flush. To avoid gaps in the log, the log
+	 * writer must be flushed before the history is overwritten.
+	 */
+	public CSVLogWriter createLogWriter() {
+		return new CSVLogWriter(value_name, this);
+	}
+
 	@Override
 	public boolean writeToDirectory(String directory) {
-		return file_writer.writeToDirectory(directory);
+		return CSVBufferWriter.writeToDirectory(directory, value_name, this);
+	}
+
+	/**
+	 * Copies the objects currently contained in this history (see
+	 * create_snapshot()) and submits the copy to the provided
+	 * AsyncFileWriter, which writes it to a new file within the provided
+	 * directory on its background thread. The cost to the calling thread is
+	 * bounded by the capacity of the history, and every object contained
+	 * when this method is invoked is written, however many objects are
+	 * subsequently added before the background thread reaches the request.
+	 * 
+	 * @param async_writer
+	 *            - the writer used to perform the write.
+	 * @param directory
+	 *            - the directory in which the new file is created.
+	 * @return a Future which completes with the result of the write.
+	 */
+	public Future<Boolean> writeToDirectoryAsync(AsyncFileWriter async_writer, String directory) {
+		return async_writer.writeToDirectory(create_snapshot(), directory);
 	}
 
 	@Override
 	public boolean writeToFile(String file_path) {
-		return file_writer.writeToFile(file_path);
+		return CSVBufferWriter.writeToFile(file_path, this);
 	}
 }
@@ -0,0 +1,220 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.interpolation.IInterpolate;
+import com.kauailabs.sf2.quantity.ICopy;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * The TieredInterpolatingTimeHistory class retains recent values at full
+ * resolution, and progressively older values at progressively coarser
+ * resolution, trading resolution of old data for memory.
+ * <p>
+ * The history consists of a sequence of tiers, each of which is a
+ * ThreadsafeInterpolatingTimeHistory. Every value added is stored in the
+ * first (full resolution) tier; each subsequent tier receives one value for
+ * every N values received by the previous tier (where N is that tier's
+ * decimation factor), produced by reducing those N values with an
+ * IQuantityReducer (e.g., QuaternionAverager, or a mean/minimum/maximum
+ * reducer) and timestamping the result at the mean of their timestamps.
+ * <p>
+ * For example, a 200Hz sensor with tiers of 1000, 600 and 720 samples and
+ * decimation factors of 10 and 10 retains the last 5 seconds at 200Hz, the
+ * last 30 seconds at 20Hz and the last 6 minutes at 2Hz.
+ * <p>
+ * Lookups (get()) are satisfied by the finest-resolution tier which spans the
+ * requested timestamp. add() may be invoked from multiple threads, and may be
+ * invoked concurrently with lookups.
+ * 
+ * @param <Q>
+ *            - the Java class of the contained values.
+ */
+public class TieredInterpolatingTimeHistory<Q extends ICopy<Q> & IInterpolate<Q> & IQuantity> {
+	ArrayList<ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>>> tiers;
+	int[] decimation_factors;
+	/* One reducer per decimated tier, accumulating the values of the previous tier. */
+	ArrayList<IQuantityReducer<Q>> reducers;
+	int[] accumulated_counts;
+	long[] first_timestamps;
+	long[] timestamp_offset_sums;
+	TimestampedValue<Q> reduced_value;
+
+	/**
+	 * Constructs a TieredInterpolatingTimeHistory.
+	 * 
+	 * @param default_value
+	 *            - a value of the contained class.
+	 * @param reducer
+	 *            - the reducer used to produce each decimated value; one copy
+	 *            (via instantiate()) is used for each decimated tier.
+	 * @param tier_num_samples
+	 *            - the capacity of each tier, beginning with the full
+	 *            resolution tier.
+	 * @param decimation_factors
+	 *            - for each tier after the first, the number of values in the
+	 *            previous tier reduced into each of its values; each tier
+	 *            must have a capacity of at least twice the following tier's
+	 *            decimation factor, so that the tiers overlap in time.
+	 * @param ts_info
+	 *            - the timestamp info of the contained values.
+	 * @param name
+	 *            - the name of the contained values; the names of the
+	 *            decimated tiers are suffixed with their total decimation
+	 *            factor (e.g., "Quaternion_x100").
+	 * @param units
+	 *            - the units of the contained values.
+	 */
+	public TieredInterpolatingTimeHistory(Q default_value, IQuantityReducer<Q> reducer, int[] tier_num_samples,
+			int[] decimation_factors, TimestampInfo ts_info, String name, IUnit[] units) {
+		if ((tier_num_samples.length < 1) || (decimation_factors.length != tier_num_samples.length - 1)) {
+			throw new IllegalArgumentException("One decimation factor is required for each tier after the first.");
+		}
+		for (int i = 0; i < decimation_factors.length; i++) {
+			if ((decimation_factors[i] < 2) || (tier_num_samples[i] < 2 * decimation_factors[i])) {
+				throw new IllegalArgumentException("Decimation factors must be at least 2, and each tier must "
+						+ "hold at least twice the following tier's decimation factor.");
+			}
+		}
+		TimestampedValue<Q> default_obj = new TimestampedValue<Q>(default_value);
+		this.tiers = new ArrayList<ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>>>(tier_num_samples.length);
+		this.reducers = new ArrayList<IQuantityReducer<Q>>(decimation_factors.length);
+		this.decimation_factors = decimation_factors.clone();
+		int total_decimation = 1;
+		for (int i = 0; i < tier_num_samples.length; i++) {
+			String tier_name = name;
+			if (i > 0) {
+				total_decimation *= decimation_factors[i - 1];
+				tier_name = name + "_x" + total_decimation;
+				IQuantityReducer<Q> tier_reducer = reducer.instantiate();
+				tier_reducer.reset();
+				reducers.add(tier_reducer);
+			}
+			tiers.add(new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>>(default_obj, tier_num_samples[i],
+					ts_info, tier_name, units));
+		}
+		this.accumulated_counts = new int[decimation_factors.length];
+		this.first_timestamps = new long[decimation_factors.length];
+		this.timestamp_offset_sums = new long[decimation_factors.length];
+		this.reduced_value = new TimestampedValue<Q>(default_value);
+	}
+
+	/**
+	 * Returns the number of tiers.
+	 */
+	public int getTierCount() {
+		return tiers.size();
+	}
+
+	/**
+	 * Returns the tier at the provided index (0 is the full resolution tier).
+	 */
+	public ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>> getTier(int index) {
+		return tiers.get(index);
+	}
+
+	/**
+	 * Returns the total decimation factor of the tier at the provided index,
+	 * relative to the full resolution tier.
+	 */
+	public int getTotalDecimationFactor(int index) {
+		int total_decimation = 1;
+		for (int i = 0; i < index; i++) {
+			total_decimation *= decimation_factors[i];
+		}
+		return total_decimation;
+	}
+
+	/**
+	 * Adds the provided value to the full resolution tier, and to the
+	 * reduction of each decimated tier.
+	 */
+	public synchronized void add(TimestampedValue<Q> value) {
+		tiers.get(0).add(value);
+		TimestampedValue<Q> tier_value = value;
+		for (int i = 0; i < reducers.size(); i++) {
+			IQuantityReducer<Q> reducer = reducers.get(i);
+			reducer.accumulate(tier_value.getValue());
+			int count = accumulated_counts[i];
+			if (count == 0) {
+				first_timestamps[i] = tier_value.getTimestamp();
+				timestamp_offset_sums[i] = 0;
+			} else {
+				timestamp_offset_sums[i] += tier_value.getTimestamp() - first_timestamps[i];
+			}
+			count++;
+			if (count < decimation_factors[i]) {
+				accumulated_counts[i] = count;
+				return;
+			}
+			reducer.getResult(reduced_value.getValue());
+			reduced_value.setTimestamp(first_timestamps[i] + ((timestamp_offset_sums[i] + (count / 2)) / count));
+			reduced_value.setValid(true);
+			reduced_value.setInterpolated(false);
+			reducer.reset();
+			accumulated_counts[i] = 0;
+			tiers.get(i + 1).add(reduced_value);
+			tier_value = reduced_value;
+		}
+	}
+
+	/**
+	 * Retrieves (or interpolates) the value at the provided timestamp from the
+	 * finest-resolution tier which spans it.
+	 * 
+	 * @return true if any tier spans the requested timestamp.
+	 */
+	public boolean get(long requested_timestamp, TimestampedValue<Q> out) {
+		for (ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>> tier : tiers) {
+			if (tier.get(requested_timestamp, out)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieves the most recent full resolution value.
+	 */
+	public boolean getMostRecent(TimestampedValue<Q> out) {
+		return tiers.get(0).getMostRecent(out);
+	}
+
+	/**
+	 * Clears all tiers, and discards any partially-reduced values.
+	 */
+	public synchronized void reset() {
+		for (ThreadsafeInterpolatingTimeHistory<TimestampedValue<Q>> tier : tiers) {
+			tier.reset();
+		}
+		for (int i = 0; i < reducers.size(); i++) {
+			reducers.get(i).reset();
+			accumulated_counts[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.quantity.ICopy;
+
+/**
+ * The TimeHistoryCursor class accelerates repeated timestamp lookups in a
+ * ThreadsafeInterpolatingTimeHistory which exhibit temporal locality, e.g., a
+ * consumer which periodically looks up the object from a fixed interval ago,
+ * so that each requested timestamp is slightly later than the previous one.
+ * <p>
+ * The cursor remembers the sequence number of the entry which followed the
+ * previously requested timestamp, and first searches a few entries on either
+ * side of it; only if the requested timestamp is not nearby is a full binary
+ * search performed. Since entries are identified by sequence number (and
+ * each access is validated against the writer), a remembered entry which has
+ * since been overwritten is detected, and simply causes a full search.
+ * <p>
+ * Results are identical to those of ThreadsafeInterpolatingTimeHistory.get().
+ * A cursor may only be used by one thread at a time; create one cursor per
+ * reader.
+ * 
+ * @param <T>
+ *            - the Java class of the objects contained in the history.
+ */
+public class TimeHistoryCursor<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>> {
+	ThreadsafeInterpolatingTimeHistory<T> history;
+	/* Sequence number of the entry following the previous request. */
+	long following_sequence;
+
+	/**
+	 * The maximum number of entries the cursor steps over before resorting to
+	 * a full search.
+	 */
+	public static final int MAX_LOCAL_STEPS = 8;
+
+	TimeHistoryCursor(ThreadsafeInterpolatingTimeHistory<T> history) {
+		this.history = history;
+		this.following_sequence = ThreadsafeInterpolatingTimeHistory.INVALID_SEQUENCE;
+	}
+
+	/**
+	 * Retrieves (or interpolates) the object matching the provided timestamp,
+	 * as ThreadsafeInterpolatingTimeHistory.get() does; the lookup is also
+	 * counted in the history's metrics, if enabled.
+	 * 
+	 * @param requested_timestamp
+	 *            - the timestamp for which to return an object.
+	 * @param out
+	 *            - the object to initialize.
+	 * @return true if an object was found or interpolated.
+	 */
+	public boolean get(long requested_timestamp, T out) {
+		return history.getUsingCursor(this, requested_timestamp, out);
+	}
+
+	/**
+	 * Discards the remembered position, so that the next lookup performs a
+	 * full search.
+	 */
+	public void reset() {
+		following_sequence = ThreadsafeInterpolatingTimeHistory.INVALID_SEQUENCE;
+	}
+}
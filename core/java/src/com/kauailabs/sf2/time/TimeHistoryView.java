@@ -0,0 +1,179 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import com.kauailabs.sf2.interpolation.IValueInterpolator;
+import com.kauailabs.sf2.quantity.ICopy;
+
+/**
+ * The TimeHistoryView class provides a reusable, read-only view of the
+ * contents of a ThreadsafeInterpolatingTimeHistory, as of the time it was
+ * last refreshed. Unlike ThreadsafeInterpolatingTimeHistory.create_snapshot(),
+ * no objects are copied or allocated when the view is refreshed; instead the
+ * view records the range of sequence numbers (the "epoch") contained in the
+ * history, and objects are copied out one at a time as they are visited.
+ * If the history has a reorder window, the view only contains the objects
+ * which are stable (see
+ * ThreadsafeInterpolatingTimeHistory.setReorderWindow()), so that the objects
+ * visited are always in ascending timestamp order.
+ * <p>
+ * Since the writer continues to add objects, the oldest objects in the view
+ * may be overwritten before they are visited. Such objects are skipped: the
+ * view continues from the oldest object still retained, and the number of
+ * objects skipped is available via getSkippedCount(). The view is therefore
+ * always visited in bounded time, even when the history is full and the
+ * writer evicts an object upon every add. Only a reset() of the history
+ * invalidates the view (see isValid()). Every object provided by next() is
+ * consistent, in both concurrency modes.
+ * <p>
+ * A view may only be used by one thread at a time.
+ * 
+ * @param <T>
+ *            - the Java class of the objects contained in the history.
+ */
+public class TimeHistoryView<T extends ICopy<T> & ITimestampedValue & IValueInterpolator<T>> {
+	ThreadsafeInterpolatingTimeHistory<T> history;
+	long start_sequence;
+	long end_sequence;
+	long next_sequence;
+	long first_valid_sequence;
+	long skipped_count;
+	boolean valid;
+
+	/**
+	 * Constructs an (empty) view of the provided history; refresh() must be
+	 * invoked before the view is visited.
+	 */
+	public TimeHistoryView(ThreadsafeInterpolatingTimeHistory<T> history) {
+		this.history = history;
+		start_sequence = 0;
+		end_sequence = 0;
+		next_sequence = 0;
+		first_valid_sequence = history.first_valid_sequence;
+		valid = true;
+	}
+
+	/**
+	 * Captures the objects currently contained in the history, and positions
+	 * the view at the oldest of them.
+	 * 
+	 * @return the number of objects in the view.
+	 */
+	public int refresh() {
+		first_valid_sequence = history.first_valid_sequence;
+		long stable = history.stable_sequence;
+		start_sequence = history.getOldestSequence(history.next_sequence);
+		end_sequence = stable;
+		if (start_sequence > end_sequence) {
+			start_sequence = end_sequence;
+		}
+		rewind();
+		return size();
+	}
+
+	/**
+	 * Captures the objects added to the history since the view was last
+	 * refreshed (or advanced), and positions the view at the oldest of them.
+	 * Objects which have already been overwritten are skipped.
+	 * 
+	 * @return the number of objects in the view.
+	 */
+	public int advance() {
+		first_valid_sequence = history.first_valid_sequence;
+		long stable = history.stable_sequence;
+		start_sequence = Math.max(end_sequence, history.getOldestSequence(history.next_sequence));
+		end_sequence = stable;
+		if (start_sequence > end_sequence) {
+			start_sequence = end_sequence;
+		}
+		rewind();
+		return size();
+	}
+
+	/**
+	 * Returns the number of objects in the view.
+	 */
+	public int size() {
+		return (int) (end_sequence - start_sequence);
+	}
+
+	/**
+	 * Positions the view at its oldest object, so that it may be visited
+	 * again.
+	 */
+	public void rewind() {
+		next_sequence = start_sequence;
+		skipped_count = 0;
+		valid = true;
+	}
+
+	/**
+	 * Copies the next object in the view (in the order added) into the
+	 * provided object. Objects which have been overwritten since the view was
+	 * refreshed are skipped (see getSkippedCount()).
+	 * 
+	 * @return true if an object was copied; false if all objects have been
+	 *         visited, or if the history has been reset (see isValid()).
+	 */
+	public boolean next(T out) {
+		while (valid && (next_sequence < end_sequence)) {
+			if (history.copyIfRetained(next_sequence, out)) {
+				next_sequence++;
+				return true;
+			}
+			if (history.first_valid_sequence != first_valid_sequence) {
+				valid = false;
+				return false;
+			}
+			long oldest = history.getOldestSequence(history.next_sequence);
+			if (oldest > next_sequence) {
+				/* Overwritten; continue from the oldest object retained. */
+				long resume = Math.min(oldest, end_sequence);
+				skipped_count += resume - next_sequence;
+				next_sequence = resume;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of objects in the view which were skipped, because
+	 * they were overwritten before being visited, since the view was last
+	 * refreshed, advanced or rewound. Skipped objects always precede the
+	 * objects subsequently provided by next(), so that the objects visited
+	 * after the most recent skip are contiguous.
+	 */
+	public long getSkippedCount() {
+		return skipped_count;
+	}
+
+	/**
+	 * Returns false if the history has been reset since the view was
+	 * refreshed (or advanced), in which case the view should be refreshed.
+	 */
+	public boolean isValid() {
+		return valid && (history.first_valid_sequence == first_valid_sequence);
+	}
+}
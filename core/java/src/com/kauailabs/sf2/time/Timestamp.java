@@ -26,9 +26,12 @@ package com.kauailabs.sf2.time;
 
 import java.util.ArrayList;
 
+import com.kauailabs.sf2.quantity.IFieldCodec;
+import com.kauailabs.sf2.quantity.IFieldSink;
+import com.kauailabs.sf2.quantity.IFieldSource;
 import com.kauailabs.sf2.quantity.IQuantity;
 
-public class Timestamp implements IQuantity {
+public class Timestamp implements IQuantity, IFieldCodec {
 
 	public enum TimestampResolution {
 		Second, Millisecond, Microsecond, Nanosecond
@@ -80,6 +83,90 @@ public class Timestamp implements IQuantity {
 	public static final long MICROSECONDS_PER_MILLISECOND = 1000;
 	public static final long NANOSECONDS_PER_MILLISECOND = NANOSECONDS_PER_MICROSECOND * 1000;
 
+	/* Ticks per second at each resolution, indexed by ordinal. */
+	static final long[] TICKS_PER_SECOND = { 1, MILLISECONDS_PER_SECOND, MICROSECONDS_PER_SECOND,
+			NANOSECONDS_PER_SECOND };
+
+	/**
+	 * Converts a timestamp value from one resolution to another. Conversion
+	 * to a coarser resolution truncates, as getMilliseconds() does.
+	 */
+	public static long convert(long timestamp, TimestampResolution from, TimestampResolution to) {
+		long from_ticks = TICKS_PER_SECOND[from.ordinal()];
+		long to_ticks = TICKS_PER_SECOND[to.ordinal()];
+		if (to_ticks > from_ticks) {
+			return timestamp * (to_ticks / from_ticks);
+		}
+		return timestamp / (from_ticks / to_ticks);
+	}
+
+	/**
+	 * Converts each of the provided timestamp values from one resolution to
+	 * another. If the resolutions are the same, the provided array is
+	 * returned; otherwise a new array is returned.
+	 */
+	public static long[] convert(long[] timestamps, TimestampResolution from, TimestampResolution to) {
+		if (from == to) {
+			return timestamps;
+		}
+		long[] converted = new long[timestamps.length];
+		for (int i = 0; i < timestamps.length; i++) {
+			converted[i] = convert(timestamps[i], from, to);
+		}
+		return converted;
+	}
+
+	/**
+	 * Converts the timestamp of the provided object from one resolution to
+	 * another, e.g. so that an object retrieved from a history whose
+	 * timestamps are in microseconds carries a timestamp in milliseconds.
+	 */
+	public static void convert(ITimestampedValue value, TimestampResolution from, TimestampResolution to) {
+		if (from != to) {
+			value.setTimestamp(convert(value.getTimestamp(), from, to));
+		}
+	}
+
+	/**
+	 * Converts the timestamp of each of the provided valid objects from one
+	 * resolution to another.
+	 */
+	public static void convert(ITimestampedValue[] values, TimestampResolution from, TimestampResolution to) {
+		if (from == to) {
+			return;
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].getValid()) {
+				convert(values[i], from, to);
+			}
+		}
+	}
+
+	/* Unit abbreviation at each resolution, indexed by ordinal. */
+	static final String[] RESOLUTION_ABBREVIATIONS = { "s", "ms", "us", "ns" };
+
+	/**
+	 * Returns the abbreviation of the unit of timestamps at the provided
+	 * resolution (e.g., "ms").
+	 */
+	public static String getAbbreviation(TimestampResolution resolution) {
+		return RESOLUTION_ABBREVIATIONS[resolution.ordinal()];
+	}
+
+	/**
+	 * Returns the finer of the two provided resolutions.
+	 */
+	public static TimestampResolution getFinerResolution(TimestampResolution a, TimestampResolution b) {
+		return (a.ordinal() >= b.ordinal()) ? a : b;
+	}
+
+	/**
+	 * Returns this timestamp's value at the provided resolution.
+	 */
+	public long getTimestamp(TimestampResolution resolution) {
+		return convert(timestamp, this.resolution, resolution);
+	}
+
 	public long getNanoseconds() {
 		switch (resolution) {
 		case Second:
@@ -169,4 +256,29 @@ public class Timestamp implements IQuantity {
 	public boolean getContainedQuantityNames(ArrayList<String> quantity_names) {
 		return false;
 	}
+
+	@Override
+	public int getFieldCount() {
+		return 1;
+	}
+
+	@Override
+	public String getFieldName(int index) {
+		return "Timestamp";
+	}
+
+	@Override
+	public FieldType getFieldType(int index) {
+		return FieldType.Long;
+	}
+
+	@Override
+	public void writeFields(IFieldSink sink) {
+		sink.putLong(timestamp);
+	}
+
+	@Override
+	public void readFields(IFieldSource source) {
+		timestamp = source.getLong();
+	}
 }
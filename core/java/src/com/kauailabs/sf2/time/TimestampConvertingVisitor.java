@@ -0,0 +1,53 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+/**
+ * The TimestampConvertingVisitor class converts the timestamp of each visited
+ * object from one resolution to another before providing it to another
+ * visitor; e.g., so that the millisecond resampling methods of a history
+ * whose timestamps are in microseconds visit objects with millisecond
+ * timestamps.
+ * 
+ * @param <T>
+ *            - the Java class of the visited objects.
+ */
+public class TimestampConvertingVisitor<T extends ITimestampedValue> implements ITimestampedValueVisitor<T> {
+	ITimestampedValueVisitor<T> visitor;
+	Timestamp.TimestampResolution from;
+	Timestamp.TimestampResolution to;
+
+	public TimestampConvertingVisitor(ITimestampedValueVisitor<T> visitor, Timestamp.TimestampResolution from,
+			Timestamp.TimestampResolution to) {
+		this.visitor = visitor;
+		this.from = from;
+		this.to = to;
+	}
+
+	public boolean visit(T t) {
+		Timestamp.convert(t, from, to);
+		return visitor.visit(t);
+	}
+}
@@ -86,4 +86,25 @@ public class TimestampInfo {
 	public Timestamp getDefaultTimestamp() {
 		return default_timestamp;
 	}
+
+	/**
+	 * Returns the resolution of this sensor's timestamps (that of the default
+	 * timestamp), or Millisecond if unknown.
+	 */
+	public Timestamp.TimestampResolution getTimestampResolution() {
+		return (default_timestamp != null) ? default_timestamp.getResolution()
+				: Timestamp.TimestampResolution.Millisecond;
+	}
+
+	/**
+	 * Returns the resolution in which a history of samples from a sensor with
+	 * the specified TimestampInfo is keyed: that of the sensor's timestamps,
+	 * but no coarser than milliseconds, so that millisecond timestamps convert
+	 * exactly.
+	 */
+	public static Timestamp.TimestampResolution getHistoryResolution(TimestampInfo ts_info) {
+		return Timestamp.getFinerResolution(
+				(ts_info != null) ? ts_info.getTimestampResolution() : Timestamp.TimestampResolution.Millisecond,
+				Timestamp.TimestampResolution.Millisecond);
+	}
 }
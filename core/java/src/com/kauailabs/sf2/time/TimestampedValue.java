@@ -169,9 +169,9 @@ public class TimestampedValue<T extends ICopy<T> & IInterpolate<T> & IQuantity>
 	public void interpolate(TimestampedValue<T> to, double time_ratio, TimestampedValue<T> out) {
 		TimestampedValue<T> from = this;
 		this.value.interpolate(to.value, time_ratio, out.getValue());
-		float delta_t = to.getTimestamp() - from.getTimestamp();
-		delta_t *= time_ratio;
-		out.setTimestamp((long) delta_t);
+		/* Offset from the "from" timestamp, so high-resolution timestamps are not truncated. */
+		double delta_t = to.getTimestamp() - from.getTimestamp();
+		out.setTimestamp(from.getTimestamp() + Math.round(delta_t * time_ratio));
 	}
 
 	/**
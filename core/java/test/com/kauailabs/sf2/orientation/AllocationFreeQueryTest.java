@@ -0,0 +1,124 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.orientation;
+
+import static com.kauailabs.sf2.test.AllocationCounter.assertAllocationFree;
+
+import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.test.AllocationCounter;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+/**
+ * Verifies that the query paths made allocation-free do not allocate on the
+ * heap, as measured by ThreadMXBean.getThreadAllocatedBytes(). The tests are
+ * run with escape analysis disabled, so that allocations which are only
+ * elided by the JIT compiler are still detected.
+ */
+public class AllocationFreeQueryTest {
+	static final int FILL = 1000;
+
+	/* Results are accumulated here, so that the queries are not eliminated. */
+	double sink;
+
+	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(ConcurrencyMode mode) {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), FILL, null, "Quaternion", Quaternion.getUnits(),
+				mode);
+		TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+		for (long n = 0; n < FILL; n++) {
+			SyntheticQuaternionSensor.getSample(n, sample.getValue());
+			sample.setTimestamp(SyntheticQuaternionSensor.getSampleTimestamp(n));
+			sample.setValid(true);
+			history.add(sample);
+		}
+		return history;
+	}
+
+	void checkHistoryQueries(ConcurrencyMode mode) {
+		final ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(mode);
+		final TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+		assertAllocationFree("getMostRecent (" + mode + ")", new AllocationCounter.Operation() {
+			public void run(int i) {
+				history.getMostRecent(out);
+				sink += out.getValue().getW();
+			}
+		});
+		final long newest_timestamp = SyntheticQuaternionSensor.getSampleTimestamp(FILL - 1);
+		assertAllocationFree("get (" + mode + ")", new AllocationCounter.Operation() {
+			public void run(int i) {
+				/* Includes interpolated lookups. */
+				history.get(newest_timestamp - (i & 1023), out);
+				sink += out.getValue().getW();
+			}
+		});
+	}
+
+	public void testHistoryQueriesSynchronized() {
+		checkHistoryQueries(ConcurrencyMode.Synchronized);
+	}
+
+	public void testHistoryQueriesLockFree() {
+		checkHistoryQueries(ConcurrencyMode.LockFreeSingleWriter);
+	}
+
+	public void testQuaternionAngles() {
+		final Quaternion q = new Quaternion();
+		SyntheticQuaternionSensor.getSample(1234, q);
+		assertAllocationFree("Quaternion angles", new AllocationCounter.Operation() {
+			public void run(int i) {
+				sink += q.calculateYawRadians() + q.calculatePitchRadians() + q.calculateRollRadians();
+			}
+		});
+	}
+
+	public void testOrientationHistoryQueries() {
+		SyntheticQuaternionSensor sensor = new SyntheticQuaternionSensor();
+		final OrientationHistory history = new OrientationHistory(sensor, FILL);
+		for (long n = 0; n < FILL; n++) {
+			sensor.publish(n);
+		}
+		final long newest_timestamp = SyntheticQuaternionSensor.getSampleTimestamp(FILL - 1);
+		assertAllocationFree("get{Yaw,Pitch,Roll}DegreesAtTime", new AllocationCounter.Operation() {
+			public void run(int i) {
+				long timestamp = newest_timestamp - (i & 1023);
+				sink += history.getYawDegreesAtTime(timestamp) + history.getPitchDegreesAtTime(timestamp)
+						+ history.getRollDegreesAtTime(timestamp);
+			}
+		});
+		String[] dimension_names = { "Yaw", "Pitch", "Roll" };
+		final Matrix orientation_matrix = new Matrix("Orientation", 3, dimension_names);
+		final Matrix angular_velocity_matrix = new Matrix("AngularVelocity", 3, dimension_names);
+		assertAllocationFree("calculate_covariance", new AllocationCounter.Operation() {
+			public void run(int i) {
+				if ((i & 1023) == 0) {
+					history.calculate_covariance(orientation_matrix, angular_velocity_matrix);
+				}
+			}
+		});
+	}
+}
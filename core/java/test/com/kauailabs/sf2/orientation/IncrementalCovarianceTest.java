@@ -0,0 +1,103 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.orientation;
+
+import static com.kauailabs.sf2.test.AllocationCounter.assertAllocationFree;
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.test.AllocationCounter;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+
+/**
+ * Verifies that the incrementally-maintained orientation covariances match
+ * those recalculated from the entire history, and that maintaining them does
+ * not allocate when quaternions are published.
+ */
+public class IncrementalCovarianceTest {
+	static final int CAPACITY = 100;
+
+	SyntheticQuaternionSensor sensor = new SyntheticQuaternionSensor();
+	OrientationHistory incremental = new OrientationHistory(sensor, CAPACITY);
+	OrientationHistory recalculated = new OrientationHistory(sensor, CAPACITY);
+	Matrix expected_orientation = new Matrix("Orientation", 3, null);
+	Matrix expected_angular_velocity = new Matrix("AngularVelocity", 3, null);
+	Matrix orientation = new Matrix("Orientation", 3, null);
+	Matrix angular_velocity = new Matrix("AngularVelocity", 3, null);
+	long next_sample;
+
+	void publish(int count) {
+		for (int i = 0; i < count; i++) {
+			sensor.publish(next_sample++);
+		}
+	}
+
+	void assertMatches(String name) {
+		assertTrue(name + " recalculated", recalculated.calculate_covariance(expected_orientation,
+				expected_angular_velocity));
+		assertTrue(name + " incremental", incremental.calculate_covariance(orientation, angular_velocity));
+		for (int x = 0; x < 3; x++) {
+			for (int y = 0; y < 3; y++) {
+				double orientation_tolerance = 1e-3 * Math.abs(expected_orientation.get_matrix()[x][y]) + 1e-9;
+				assertEquals(name + " orientation[" + x + "][" + y + "]", expected_orientation.get_matrix()[x][y],
+						orientation.get_matrix()[x][y], orientation_tolerance);
+				double angular_velocity_tolerance = 1e-3 * Math.abs(expected_angular_velocity.get_matrix()[x][y])
+						+ 1e-9;
+				assertEquals(name + " angular_velocity[" + x + "][" + y + "]",
+						expected_angular_velocity.get_matrix()[x][y], angular_velocity.get_matrix()[x][y],
+						angular_velocity_tolerance);
+			}
+		}
+	}
+
+	public void testMatchesRecalculation() {
+		/* Enabled once the history already holds quaternions. */
+		publish(CAPACITY / 2);
+		incremental.enableIncrementalCovariance();
+		assertMatches("seeded");
+		publish(10);
+		assertMatches("partially filled");
+		publish(CAPACITY * 3);
+		assertMatches("wrapped");
+		incremental.reset(null);
+		recalculated.reset(null);
+		assertFalse("reset", incremental.calculate_covariance(orientation, angular_velocity));
+		publish(5);
+		assertMatches("after reset");
+	}
+
+	public void testPublishAllocationFree() {
+		sensor.unsubscribe(recalculated);
+		incremental.enableIncrementalCovariance();
+		publish(CAPACITY * 2);
+		assertAllocationFree("publish (incremental covariance)", new AllocationCounter.Operation() {
+			public void run(int i) {
+				sensor.publish(next_sample++);
+			}
+		});
+	}
+}
@@ -0,0 +1,143 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.persistence;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.kauailabs.sf2.quantity.Scalar;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+public class AsyncFileWriterTest {
+	CountDownLatch release = new CountDownLatch(1);
+	CountDownLatch started = new CountDownLatch(1);
+
+	/* Occupies the background thread until released. */
+	IFileWriter blocking_writer = new IFileWriter() {
+		public boolean writeToDirectory(String directory) {
+			return writeToFile(directory);
+		}
+
+		public boolean writeToFile(String file_path) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				return false;
+			}
+			return true;
+		}
+	};
+
+	static FutureTask<Boolean> createRequest() {
+		return new FutureTask<Boolean>(new Callable<Boolean>() {
+			public Boolean call() {
+				return true;
+			}
+		});
+	}
+
+	public void testShutdownRequestIsNeverDropped() throws Exception {
+		AsyncFileWriter async_writer = new AsyncFileWriter(2, AsyncFileWriter.OverflowPolicy.DropOldest);
+		Future<Boolean> blocked = async_writer.writeToFile(blocking_writer, "unused");
+		started.await();
+		FutureTask<Boolean> queued = createRequest();
+		async_writer.enqueue(queued);
+		async_writer.shutdown();
+		assertTrue("rejected after shutdown", async_writer.writeToFile(blocking_writer, "unused").isCancelled());
+
+		/* Requests which raced with shutdown(), on a full queue. */
+		FutureTask<Boolean> late = createRequest();
+		async_writer.enqueue(late);
+		assertTrue("queued request dropped", queued.isCancelled());
+		assertTrue("late request cancelled", late.isCancelled());
+		FutureTask<Boolean> after_shutdown = createRequest();
+		async_writer.queue.offer(after_shutdown);
+		FutureTask<Boolean> overflow = createRequest();
+		async_writer.enqueue(overflow);
+		assertTrue("overflow cancelled", overflow.isCancelled());
+		assertTrue("shutdown request retained", async_writer.queue.contains(AsyncFileWriter.SHUTDOWN_REQUEST));
+		assertEquals("dropped", 1, async_writer.getDroppedCount());
+
+		release.countDown();
+		async_writer.writer_thread.join(10000);
+		assertFalse("stopped", async_writer.writer_thread.isAlive());
+		assertTrue("in-progress request completed", blocked.get());
+		assertTrue("request queued after shutdown cancelled", after_shutdown.isCancelled());
+		assertEquals("queue drained", 0, async_writer.queue.size());
+	}
+
+	public void testHistoryWriteCopiesContents() throws Exception {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>>(
+				new TimestampedValue<Scalar>(new Scalar()), 100, null, "Scalar", null);
+		TimestampedValue<Scalar> sample = new TimestampedValue<Scalar>(new Scalar());
+		AsyncFileWriter async_writer = new AsyncFileWriter(4, AsyncFileWriter.OverflowPolicy.Block);
+		async_writer.writeToFile(blocking_writer, "unused");
+		started.await();
+		File directory = Files.createTempDirectory("sf2test").toFile();
+		Future<Boolean> written = null;
+		/* Overwrites the entire history before the request is written. */
+		for (int n = 1; n <= 250; n++) {
+			if (n == 6) {
+				written = history.writeToDirectoryAsync(async_writer, directory.getPath());
+			}
+			sample.getValue().set(n);
+			sample.setTimestamp(n * 10);
+			sample.setValid(true);
+			history.add(sample);
+		}
+		assertFalse("not yet written", written.isDone());
+		release.countDown();
+		assertTrue("written", written.get());
+		async_writer.shutdown();
+
+		File[] files = directory.listFiles();
+		assertEquals("files", 1, files.length);
+		BufferedReader reader = new BufferedReader(new FileReader(files[0]));
+		try {
+			assertTrue("header", reader.readLine().startsWith("Timestamp"));
+			/* Exactly the objects contained when the write was requested. */
+			for (int n = 1; n <= 5; n++) {
+				assertEquals("row " + n, (n * 10) + "," + (float) n, reader.readLine());
+			}
+			assertEquals("end", null, reader.readLine());
+		} finally {
+			reader.close();
+			files[0].delete();
+			directory.delete();
+		}
+	}
+}
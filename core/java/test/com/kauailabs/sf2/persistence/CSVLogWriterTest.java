@@ -0,0 +1,116 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.persistence;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+public class CSVLogWriterTest {
+	static final int CAPACITY = 8;
+
+	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+			new TimestampedValue<Quaternion>(new Quaternion()), CAPACITY, null, "Quaternion", Quaternion.getUnits());
+	TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+	long next_timestamp = 10;
+
+	void add(int count) {
+		for (int i = 0; i < count; i++) {
+			sample.setTimestamp(next_timestamp);
+			sample.setValid(true);
+			history.add(sample);
+			next_timestamp += 10;
+		}
+	}
+
+	static ArrayList<Long> readLogTimestamps(File file) throws IOException {
+		ArrayList<Long> timestamps = new ArrayList<Long>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			reader.readLine(); /* Header */
+			String line;
+			while ((line = reader.readLine()) != null) {
+				timestamps.add(Long.parseLong(line.substring(0, line.indexOf(','))));
+			}
+		} finally {
+			reader.close();
+		}
+		return timestamps;
+	}
+
+	static File createLogFile() throws IOException {
+		File log_file = File.createTempFile("sf2test", ".csv");
+		log_file.deleteOnExit();
+		return log_file;
+	}
+
+	public void testRowsOverwrittenBeforeFlushAreCounted() throws IOException {
+		File log_file = createLogFile();
+		CSVLogWriter log_writer = history.createLogWriter();
+		assertTrue("opened", log_writer.open(log_file.getPath()));
+		add(5);
+		assertTrue("flushed", log_writer.flush());
+		assertEquals("written", 5, log_writer.getWrittenRowCount());
+		assertEquals("dropped", 0, log_writer.getDroppedRowCount());
+
+		/* Overwrites 12 rows which were never flushed. */
+		add(20);
+		assertTrue("closed", log_writer.close());
+		assertEquals("written", 5 + CAPACITY, log_writer.getWrittenRowCount());
+		assertEquals("dropped", 20 - CAPACITY, log_writer.getDroppedRowCount());
+
+		ArrayList<Long> logged = readLogTimestamps(log_file);
+		assertEquals("rows", 5 + CAPACITY, logged.size());
+		for (int i = 1; i < logged.size(); i++) {
+			assertTrue("ascending, without duplicates", logged.get(i) > logged.get(i - 1));
+		}
+		assertEquals("gap", 10 * (1 + 20 - CAPACITY), logged.get(5) - logged.get(4));
+	}
+
+	public void testRowsDiscardedBeforeOpenAreNotCounted() throws IOException {
+		add(3 * CAPACITY);
+		CSVLogWriter log_writer = history.createLogWriter();
+		assertTrue("opened", log_writer.open(createLogFile().getPath()));
+		assertTrue("flushed", log_writer.flush());
+		assertEquals("written", CAPACITY, log_writer.getWrittenRowCount());
+		assertEquals("dropped", 0, log_writer.getDroppedRowCount());
+
+		/* Reopening resets the counts. */
+		add(CAPACITY + 1);
+		assertTrue("reopened", log_writer.open(createLogFile().getPath()));
+		assertTrue("closed", log_writer.close());
+		assertEquals("written", CAPACITY, log_writer.getWrittenRowCount());
+		assertEquals("dropped", 0, log_writer.getDroppedRowCount());
+	}
+}
@@ -0,0 +1,81 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.pose.drivetrain;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.pose.Pose;
+import com.kauailabs.sf2.quantity.Scalar;
+import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampedValue;
+
+/**
+ * Verifies the forward kinematics of a (three wheel) omniwheel drivetrain.
+ */
+public class Kinematics_OmniwheelTest {
+
+	static Kinematics_Omniwheel createKinematics() {
+		DriveTrainParameters drive_params = new DriveTrainParameters();
+		drive_params.setNumDriveWheels(3);
+		drive_params.setNumSteerWheels(0);
+		return new Kinematics_Omniwheel(drive_params, 0);
+	}
+
+	static List<TimestampedValue<Scalar>> createWheelValues(float... values) {
+		List<TimestampedValue<Scalar>> list = new ArrayList<TimestampedValue<Scalar>>();
+		for (float value : values) {
+			list.add(new TimestampedValue<Scalar>(new Scalar(value), 0));
+		}
+		return list;
+	}
+
+	/**
+	 * Previously, every step() read a fourth wheel, and so threw an
+	 * ArrayIndexOutOfBoundsException.
+	 */
+	public void testStepUsesEachWheelOnce() {
+		Kinematics_Omniwheel kinematics = createKinematics();
+		TimestampedValue<Pose> pose_last = new TimestampedValue<Pose>(new Pose(new Quaternion()), 0);
+		TimestampedValue<Pose> pose_curr = new TimestampedValue<Pose>(new Pose(new Quaternion()), 0);
+		TimestampedValue<Quaternion> quat_curr = new TimestampedValue<Quaternion>(new Quaternion(), 10);
+		assertTrue("stepped",
+				kinematics.step(new Timestamp(10, Timestamp.TimestampResolution.Millisecond), pose_last, quat_curr,
+						createWheelValues(0.5f, 0.5f, 0.5f), null, createWheelValues(1, 1, 1), pose_curr));
+	}
+
+	public void testEqualWheelVelocitiesRotate() {
+		Kinematics_Omniwheel kinematics = createKinematics();
+		float[] body_velocity = new float[3];
+		kinematics.omniwheelForwardKinematics(new float[] { 2, 2, 2 }, body_velocity);
+		assertEquals("x", 0, body_velocity[0], 1e-5);
+		assertEquals("y", 0, body_velocity[1], 1e-5);
+		assertEquals("rotation", 6, body_velocity[2], 1e-5);
+	}
+}
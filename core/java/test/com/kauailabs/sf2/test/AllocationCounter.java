@@ -0,0 +1,86 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by the current thread while running an
+ * operation repeatedly, using ThreadMXBean.getThreadAllocatedBytes().
+ */
+public class AllocationCounter {
+	public static final int WARMUP_OPERATIONS = 20000;
+	public static final int MEASURED_OPERATIONS = 100000;
+
+	public interface Operation {
+		void run(int i);
+	}
+
+	/**
+	 * Returns true if allocation measurement is supported by this JVM.
+	 */
+	public static boolean isSupported() {
+		ThreadMXBean thread_bean = ManagementFactory.getThreadMXBean();
+		return (thread_bean instanceof com.sun.management.ThreadMXBean)
+				&& ((com.sun.management.ThreadMXBean) thread_bean).isThreadAllocatedMemorySupported();
+	}
+
+	static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs the operation WARMUP_OPERATIONS times (so that it is compiled and
+	 * any lazily-created state exists), then returns the number of bytes
+	 * allocated while running it MEASURED_OPERATIONS more times.
+	 */
+	public static long measure(Operation operation) {
+		for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+			operation.run(i);
+		}
+		/* The first calls may allocate within the management code itself. */
+		getAllocatedBytes();
+		long start = getAllocatedBytes();
+		for (int i = 0; i < MEASURED_OPERATIONS; i++) {
+			operation.run(i);
+		}
+		return getAllocatedBytes() - start;
+	}
+
+	/**
+	 * Fails unless the operation allocates less than one byte per
+	 * invocation; that is, nothing beyond measurement noise.
+	 */
+	public static void assertAllocationFree(String name, Operation operation) {
+		if (!isSupported()) {
+			return;
+		}
+		long allocated = measure(operation);
+		Assert.assertTrue(name + " allocated " + allocated + " bytes in " + MEASURED_OPERATIONS + " invocations",
+				allocated < MEASURED_OPERATIONS);
+	}
+}
@@ -0,0 +1,166 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.test;
+
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.IQuantity;
+import com.kauailabs.sf2.sensor.IProcessorInfo;
+import com.kauailabs.sf2.sensor.ISensorDataSource;
+import com.kauailabs.sf2.sensor.ISensorDataSubscriber;
+import com.kauailabs.sf2.sensor.ISensorInfo;
+import com.kauailabs.sf2.sensor.SensorDataSourceInfo;
+import com.kauailabs.sf2.time.Timestamp;
+import com.kauailabs.sf2.time.TimestampInfo;
+import com.kauailabs.sf2.units.Unit;
+import com.kauailabs.sf2.units.Unit.IUnit;
+
+/**
+ * A sensor (of millisecond resolution, unless otherwise specified) which
+ * publishes a slowly rotating quaternion to its subscribers whenever
+ * publish() is invoked.
+ */
+public class SyntheticQuaternionSensor implements ISensorInfo, ISensorDataSource {
+	public static final long SAMPLE_PERIOD_MS = 10;
+
+	ArrayList<ISensorDataSubscriber> subscribers;
+	ArrayList<SensorDataSourceInfo> sensor_data_source_infos;
+	IQuantity[] quantities;
+	TimestampInfo ts_info;
+	Timestamp system_timestamp;
+	Timestamp.TimestampResolution resolution;
+
+	public SyntheticQuaternionSensor() {
+		this(Timestamp.TimestampResolution.Millisecond);
+	}
+
+	/**
+	 * Constructs a sensor whose timestamps are at the provided resolution.
+	 */
+	public SyntheticQuaternionSensor(Timestamp.TimestampResolution resolution) {
+		this.resolution = resolution;
+		subscribers = new ArrayList<ISensorDataSubscriber>();
+		Timestamp ts = new Timestamp(0, resolution);
+		double resolution_seconds = 1.0 / Timestamp.convert(1, Timestamp.TimestampResolution.Second, resolution);
+		ts_info = new TimestampInfo(TimestampInfo.Scope.Sensor, TimestampInfo.Basis.SinceLastReboot,
+				resolution_seconds, resolution_seconds, 0, 0, ts);
+		sensor_data_source_infos = new ArrayList<SensorDataSourceInfo>();
+		sensor_data_source_infos.add(
+				new SensorDataSourceInfo("Timestamp", ts, new IUnit[] { new Unit().new Time().new Milliseconds() }));
+		sensor_data_source_infos.add(new SensorDataSourceInfo("Quaternion", new Quaternion(), Quaternion.getUnits()));
+		quantities = new IQuantity[] { new Timestamp(0, resolution), new Quaternion() };
+		system_timestamp = new Timestamp(0, Timestamp.TimestampResolution.Millisecond);
+	}
+
+	/**
+	 * Returns the orientation published as the n-th sample.
+	 */
+	public static void getSample(long n, Quaternion q) {
+		double yaw = (n % 10000) * 0.001;
+		double pitch = Math.sin(n * 0.01) * 0.05;
+		q.set((float) Math.cos(yaw / 2), (float) (Math.sin(pitch / 2) * Math.cos(yaw / 2)), 0,
+				(float) Math.sin(yaw / 2));
+	}
+
+	/**
+	 * Returns the timestamp (in milliseconds) of the n-th sample.
+	 */
+	public static long getSampleTimestamp(long n) {
+		return n * SAMPLE_PERIOD_MS;
+	}
+
+	/**
+	 * Publishes the n-th sample to all subscribers.
+	 */
+	public void publish(long n) {
+		getSample(n, (Quaternion) quantities[1]);
+		((Timestamp) quantities[0]).setTimestamp(
+				Timestamp.convert(getSampleTimestamp(n), Timestamp.TimestampResolution.Millisecond, resolution));
+		system_timestamp.setTimestamp(getSampleTimestamp(n));
+		for (int i = 0; i < subscribers.size(); i++) {
+			subscribers.get(i).publish(quantities, system_timestamp);
+		}
+	}
+
+	@Override
+	public boolean subscribe(ISensorDataSubscriber subscriber) {
+		if (subscribers.contains(subscriber)) {
+			return false;
+		}
+		subscribers.add(subscriber);
+		return true;
+	}
+
+	@Override
+	public boolean unsubscribe(ISensorDataSubscriber subscriber) {
+		return subscribers.remove(subscriber);
+	}
+
+	@Override
+	public boolean getCurrent(IQuantity[] quantities, Timestamp curr_ts) {
+		return false;
+	}
+
+	@Override
+	public boolean reset(int quantity_index) {
+		return false;
+	}
+
+	@Override
+	public void getSensorDataSourceInfos(ArrayList<SensorDataSourceInfo> out) {
+		out.addAll(sensor_data_source_infos);
+	}
+
+	@Override
+	public String getMake() {
+		return "Kauai Labs";
+	}
+
+	@Override
+	public String getModel() {
+		return "Synthetic Quaternion Sensor";
+	}
+
+	@Override
+	public String getName() {
+		return "SyntheticQuaternionSensor";
+	}
+
+	@Override
+	public ISensorDataSource getSensorDataSource() {
+		return this;
+	}
+
+	@Override
+	public TimestampInfo getSensorTimestampInfo() {
+		return ts_info;
+	}
+
+	@Override
+	public IProcessorInfo getHostProcessorInfo() {
+		return null;
+	}
+}
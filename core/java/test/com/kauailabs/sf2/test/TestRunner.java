@@ -0,0 +1,111 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.test;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Runs the tests within a directory of compiled test classes: each public,
+ * non-static, parameterless method whose name begins with "test", within each
+ * class whose name ends with "Test", is invoked on a new instance of the
+ * class. A test fails if it throws. The exit status is non-zero if any test
+ * fails.
+ * <p>
+ * Usage: TestRunner test_classes_directory [class_name_filter]
+ */
+public class TestRunner {
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("Usage: TestRunner test_classes_directory [class_name_filter]");
+			System.exit(2);
+		}
+		String filter = (args.length > 1) ? args[1] : "";
+		ArrayList<String> class_names = new ArrayList<String>();
+		File root = new File(args[0]);
+		findTestClasses(root, root, class_names);
+		Collections.sort(class_names);
+		int run_count = 0;
+		int failure_count = 0;
+		for (String class_name : class_names) {
+			if (!class_name.contains(filter)) {
+				continue;
+			}
+			Class<?> test_class;
+			try {
+				test_class = Class.forName(class_name);
+			} catch (ClassNotFoundException e) {
+				System.out.println("FAIL " + class_name + ": " + e);
+				failure_count++;
+				continue;
+			}
+			ArrayList<Method> tests = new ArrayList<Method>();
+			for (Method method : test_class.getMethods()) {
+				if (method.getName().startsWith("test") && (method.getParameterTypes().length == 0)
+						&& !Modifier.isStatic(method.getModifiers())) {
+					tests.add(method);
+				}
+			}
+			Collections.sort(tests, (a, b) -> a.getName().compareTo(b.getName()));
+			for (Method test : tests) {
+				String test_name = test_class.getSimpleName() + "." + test.getName();
+				run_count++;
+				long start = System.nanoTime();
+				try {
+					test.invoke(test_class.newInstance());
+					System.out.println("PASS " + test_name + " (" + ((System.nanoTime() - start) / 1000000) + " ms)");
+				} catch (InvocationTargetException e) {
+					failure_count++;
+					System.out.println("FAIL " + test_name);
+					e.getCause().printStackTrace(System.out);
+				} catch (ReflectiveOperationException e) {
+					failure_count++;
+					System.out.println("FAIL " + test_name + ": " + e);
+				}
+			}
+		}
+		System.out.println("Tests run: " + run_count + ", Failures: " + failure_count);
+		System.exit((failure_count == 0) ? 0 : 1);
+	}
+
+	static void findTestClasses(File root, File dir, ArrayList<String> class_names) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				findTestClasses(root, file, class_names);
+			} else if (file.getName().endsWith("Test.class")) {
+				String relative_path = root.toURI().relativize(file.toURI()).getPath();
+				class_names.add(relative_path.substring(0, relative_path.length() - ".class".length()).replace('/', '.'));
+			}
+		}
+	}
+}
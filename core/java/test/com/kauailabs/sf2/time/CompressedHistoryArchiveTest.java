@@ -0,0 +1,142 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+import static com.kauailabs.sf2.test.Assert.fail;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.Count;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+
+/**
+ * Verifies that a history with a compressed archive returns the objects it
+ * has evicted, as long as the archive retains them.
+ */
+public class CompressedHistoryArchiveTest {
+	static final int CAPACITY = 64;
+	static final int SEGMENT_SIZE = 16;
+	static final int NUM_SAMPLES = 1000;
+
+	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(CAPACITY);
+	/* Retains every sample added, for comparison. */
+	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> reference = createHistory(NUM_SAMPLES);
+	TimestampedValue<Quaternion> expected = new TimestampedValue<Quaternion>(new Quaternion());
+	TimestampedValue<Quaternion> actual = new TimestampedValue<Quaternion>(new Quaternion());
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(int capacity) {
+		return new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), capacity, null, "Quaternion",
+				Quaternion.getUnits());
+	}
+
+	void add(int count) {
+		add(0, count);
+	}
+
+	void add(long first, int count) {
+		TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+		for (long n = first; n < first + count; n++) {
+			SyntheticQuaternionSensor.getSample(n, sample.getValue());
+			sample.setTimestamp(SyntheticQuaternionSensor.getSampleTimestamp(n));
+			sample.setValid(true);
+			history.add(sample);
+			reference.add(sample);
+		}
+	}
+
+	public void testEvictedLookups() {
+		CompressedHistoryArchive<TimestampedValue<Quaternion>> archive = history.enableArchive(SEGMENT_SIZE,
+				Long.MAX_VALUE);
+		add(NUM_SAMPLES);
+		/* Samples are archived once within one segment of eviction. */
+		int num_archived = NUM_SAMPLES - CAPACITY + SEGMENT_SIZE;
+		assertEquals("segments", (num_archived - 1) / (SEGMENT_SIZE - 1), archive.getSegmentCount());
+		assertEquals("oldest", 0, archive.getOldestTimestamp());
+		/* Every timestamp, up to the newest; both exact and interpolated. */
+		long newest = SyntheticQuaternionSensor.getSampleTimestamp(NUM_SAMPLES - 1);
+		for (long timestamp = 0; timestamp <= newest; timestamp += 3) {
+			assertTrue("reference " + timestamp, reference.get(timestamp, expected));
+			assertTrue("archived " + timestamp, history.get(timestamp, actual));
+			assertEquals("interpolated " + timestamp, expected.getInterpolated(), actual.getInterpolated());
+			assertEquals("w " + timestamp, expected.getValue().getW(), actual.getValue().getW(), 1e-6);
+			assertEquals("z " + timestamp, expected.getValue().getZ(), actual.getValue().getZ(), 1e-6);
+		}
+		/* Compression is lossless. */
+		assertTrue("exact", archive.get(SyntheticQuaternionSensor.getSampleTimestamp(100), actual));
+		assertTrue("exact reference", reference.get(SyntheticQuaternionSensor.getSampleTimestamp(100), expected));
+		assertEquals("exact bits", Float.floatToRawIntBits(expected.getValue().getX()),
+				Float.floatToRawIntBits(actual.getValue().getX()));
+		assertTrue("compressed", archive.getSizeInBytes() < (NUM_SAMPLES * 5L * 8));
+	}
+
+	public void testArchivedOnlyNearEviction() {
+		CompressedHistoryArchive<TimestampedValue<Quaternion>> archive = history.enableArchive(SEGMENT_SIZE,
+				Long.MAX_VALUE);
+		add(CAPACITY - SEGMENT_SIZE);
+		assertEquals("nothing encoded while retained", 0, archive.encoder.getCount());
+		add(CAPACITY - SEGMENT_SIZE, SEGMENT_SIZE);
+		assertEquals("one segment", 1, archive.getSegmentCount());
+		assertEquals("newest sealed", SyntheticQuaternionSensor.getSampleTimestamp(SEGMENT_SIZE - 1),
+				archive.getNewestTimestamp());
+		/* The oldest samples remain retained by the history until sealed. */
+		assertEquals("oldest retained", 0, history.getOldestSequence(history.next_sequence));
+	}
+
+	public void testMaxSizeDiscardsOldest() {
+		CompressedHistoryArchive<TimestampedValue<Quaternion>> archive = history.enableArchive(SEGMENT_SIZE, 2048);
+		add(NUM_SAMPLES);
+		assertTrue("size", archive.getSizeInBytes() <= 2048);
+		assertTrue("oldest discarded", archive.getOldestTimestamp() > 0);
+		assertFalse("discarded lookup", history.get(0, actual));
+		long oldest = archive.getOldestTimestamp();
+		assertTrue("oldest retained", history.get(oldest, actual));
+		assertEquals("oldest timestamp", oldest, actual.getTimestamp());
+	}
+
+	public void testOutOfOrderNotArchived() {
+		CompressedHistoryArchive<TimestampedValue<Quaternion>> archive = history.enableArchive(SEGMENT_SIZE,
+				Long.MAX_VALUE);
+		add(10);
+		TimestampedValue<Quaternion> late = new TimestampedValue<Quaternion>(new Quaternion());
+		late.setTimestamp(5);
+		late.setValid(true);
+		history.add(late);
+		assertEquals("not yet archived", 0, archive.getDroppedCount());
+		add(10, CAPACITY);
+		assertEquals("dropped", 1, archive.getDroppedCount());
+	}
+
+	public void testRequiresFloatFields() {
+		try {
+			new CompressedHistoryArchive<TimestampedValue<Count>>(new TimestampedValue<Count>(new Count()),
+					SEGMENT_SIZE, Long.MAX_VALUE);
+			fail("Count has a Long field");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
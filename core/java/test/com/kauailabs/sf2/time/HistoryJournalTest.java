@@ -0,0 +1,159 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.Boolean;
+import com.kauailabs.sf2.quantity.Count;
+import com.kauailabs.sf2.quantity.IFieldCodec.FieldType;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+
+/**
+ * Verifies that histories written to a binary journal are read back exactly,
+ * and that the journal converts to the same CSV as the history.
+ */
+public class HistoryJournalTest {
+	static final int CAPACITY = 64;
+
+	ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+			new TimestampedValue<Quaternion>(new Quaternion()), CAPACITY, null, "Quaternion", Quaternion.getUnits());
+
+	void add(long first, long count) {
+		TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+		for (long n = first; n < first + count; n++) {
+			SyntheticQuaternionSensor.getSample(n, sample.getValue());
+			/* Irregular periods, so that timestamp deltas vary in length. */
+			sample.setTimestamp(SyntheticQuaternionSensor.getSampleTimestamp(n) + ((n * n) % 7));
+			sample.setValid(true);
+			history.add(sample);
+		}
+	}
+
+	byte[] writeJournal(long from_sequence) throws IOException {
+		ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		HistoryJournalWriter writer = history.createJournalWriter(journal);
+		history.writeJournalRecords(writer, from_sequence);
+		writer.close();
+		return journal.toByteArray();
+	}
+
+	public void testRoundTrip() throws IOException {
+		/* Wraps the history, so that only the newest CAPACITY are journalled. */
+		add(0, CAPACITY + 10);
+		HistoryJournalReader reader = new HistoryJournalReader(new ByteArrayInputStream(writeJournal(0)));
+		assertEquals("value name", "Quaternion", reader.getValueName());
+		assertEquals("field count", 4, reader.getFieldCount());
+		assertEquals("field name", "Quaternion.W", reader.getFieldName(0));
+		assertEquals("field type", FieldType.Float, reader.getFieldType(0));
+		TimestampedValue<Quaternion> expected = new TimestampedValue<Quaternion>(new Quaternion());
+		Quaternion actual = new Quaternion();
+		long count = 0;
+		while (reader.next()) {
+			long n = 10 + count++;
+			assertTrue("retained " + n, history.get(reader.getTimestamp(), expected));
+			assertFalse("exact " + n, expected.getInterpolated());
+			reader.load(actual);
+			assertEquals("w " + n, Float.floatToRawIntBits(expected.getValue().getW()),
+					Float.floatToRawIntBits(actual.getW()));
+			assertEquals("z " + n, Float.floatToRawIntBits(expected.getValue().getZ()),
+					Float.floatToRawIntBits(reader.getField(3)));
+		}
+		assertEquals("records", CAPACITY, count);
+	}
+
+	public void testCSVMatchesHistory() throws IOException {
+		add(0, 20);
+		StringWriter expected = new StringWriter();
+		PrintWriter out = new PrintWriter(expected);
+		history.writeCSV(out);
+		out.flush();
+		StringWriter actual = new StringWriter();
+		out = new PrintWriter(actual);
+		HistoryJournalReader reader = new HistoryJournalReader(new ByteArrayInputStream(writeJournal(0)));
+		assertEquals("rows", 20, reader.writeCSV(out));
+		out.flush();
+		assertEquals("csv", expected.toString(), actual.toString());
+	}
+
+	public void testIncompleteFinalRecordIgnored() throws IOException {
+		add(0, 10);
+		byte[] journal = writeJournal(5);
+		HistoryJournalReader reader = new HistoryJournalReader(
+				new ByteArrayInputStream(Arrays.copyOf(journal, journal.length - 1)));
+		long count = 0;
+		while (reader.next()) {
+			count++;
+		}
+		assertEquals("records", 4, count);
+	}
+
+	public void testLongAndBooleanFields() throws IOException {
+		ByteArrayOutputStream count_journal = new ByteArrayOutputStream();
+		HistoryJournalWriter writer = new HistoryJournalWriter(count_journal, "Count",
+				Timestamp.TimestampResolution.Millisecond, new Count(), null);
+		long large = (1L << 53) + 1;
+		writer.append(-5, new Count(large));
+		writer.append(1000, new Count(-large));
+		writer.close();
+		HistoryJournalReader reader = new HistoryJournalReader(new ByteArrayInputStream(count_journal.toByteArray()));
+		assertEquals("long type", FieldType.Long, reader.getFieldType(0));
+		assertTrue("first", reader.next());
+		assertEquals("first timestamp", -5, reader.getTimestamp());
+		assertEquals("first value", large, reader.getLongField(0));
+		assertTrue("second", reader.next());
+		Count count = new Count();
+		reader.load(count);
+		assertEquals("second timestamp", 1000, reader.getTimestamp());
+		assertEquals("second value", -large, count.get());
+		assertFalse("end", reader.next());
+
+		ByteArrayOutputStream boolean_journal = new ByteArrayOutputStream();
+		writer = new HistoryJournalWriter(boolean_journal, "Flag", Timestamp.TimestampResolution.Millisecond,
+				new Boolean(), null);
+		writer.append(1, new Boolean(true));
+		writer.append(2, new Boolean(false));
+		writer.close();
+		reader = new HistoryJournalReader(new ByteArrayInputStream(boolean_journal.toByteArray()));
+		assertEquals("boolean type", FieldType.Boolean, reader.getFieldType(0));
+		Boolean flag = new Boolean();
+		assertTrue("true record", reader.next());
+		reader.load(flag);
+		assertTrue("true value", flag.get());
+		assertTrue("false record", reader.next());
+		reader.load(flag);
+		assertFalse("false value", flag.get());
+	}
+}
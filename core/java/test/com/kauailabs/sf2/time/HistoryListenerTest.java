@@ -0,0 +1,334 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.time.HistoryListenerDispatcher.DispatchMode;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+
+public class HistoryListenerTest {
+	static final long SAMPLE_PERIOD = 10;
+	static final long DELIVERY_TIMEOUT_MS = 5000;
+
+	TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(int num_samples,
+			ConcurrencyMode mode) {
+		return new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), num_samples, null, "Quaternion",
+				Quaternion.getUnits(), mode);
+	}
+
+	void add(ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history, long n) {
+		sample.getValue().set(n, 0, 0, 0);
+		sample.setTimestamp(n * SAMPLE_PERIOD);
+		sample.setValid(true);
+		history.add(sample);
+	}
+
+	/**
+	 * Records the sequence number, timestamp, value and invoking thread of
+	 * each notification; optionally blocks each notification until released.
+	 */
+	static class RecordingListener implements ITimeHistoryListener<TimestampedValue<Quaternion>> {
+		final ArrayList<Long> sequences = new ArrayList<Long>();
+		final ArrayList<Long> timestamps = new ArrayList<Long>();
+		final ArrayList<Float> values = new ArrayList<Float>();
+		final ArrayList<Thread> threads = new ArrayList<Thread>();
+		final CountDownLatch release;
+
+		RecordingListener(CountDownLatch release) {
+			this.release = release;
+		}
+
+		RecordingListener() {
+			this(null);
+		}
+
+		public void sampleAdded(TimestampedValue<Quaternion> t, long sequence) {
+			if (release != null) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			synchronized (this) {
+				sequences.add(sequence);
+				timestamps.add(t.getTimestamp());
+				values.add(t.getValue().getW());
+				threads.add(Thread.currentThread());
+			}
+		}
+	}
+
+	static void awaitDelivered(HistoryListenerDispatcher<?> dispatcher, long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT_MS;
+		while ((dispatcher.getDeliveredCount() < count) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(1);
+		}
+		assertEquals("delivered", count, dispatcher.getDeliveredCount());
+	}
+
+	static void assertDeliveredInOrder(RecordingListener listener, long first, long count) {
+		synchronized (listener) {
+			assertEquals("notifications", count, listener.sequences.size());
+			for (int i = 0; i < count; i++) {
+				long n = first + i;
+				assertEquals("sequence", n, listener.sequences.get(i).longValue());
+				assertEquals("timestamp", (n + 1) * SAMPLE_PERIOD, listener.timestamps.get(i).longValue());
+				assertEquals("value", n + 1, listener.values.get(i).doubleValue(), 0);
+			}
+		}
+	}
+
+	public void testInlineDeliversOnAddingThread() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			RecordingListener listener = new RecordingListener();
+			HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher = history.addListener(listener);
+			assertTrue("inline", dispatcher.getDispatchMode() == DispatchMode.Inline);
+			assertEquals("no queue", 0, dispatcher.getQueueCapacity());
+			for (long n = 1; n <= 40; n++) {
+				add(history, n);
+				/* Delivered before add() returns. */
+				assertEquals("delivered by add()", n, listener.sequences.size());
+			}
+			assertDeliveredInOrder(listener, 0, 40);
+			for (Thread t : listener.threads) {
+				assertTrue("adding thread", t == Thread.currentThread());
+			}
+			assertEquals("delivered", 40, dispatcher.getDeliveredCount());
+			assertEquals("pending", 0, dispatcher.getPendingCount());
+			assertEquals("overflow", 0, dispatcher.getOverflowCount());
+
+			assertTrue("removed", history.removeListener(listener));
+			assertFalse("already removed", history.removeListener(listener));
+			add(history, 41);
+			assertEquals("not notified once removed", 40, listener.sequences.size());
+		}
+	}
+
+	public void testAsyncDeliversInOrderOnBackgroundThread() throws InterruptedException {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			RecordingListener listener = new RecordingListener();
+			HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher = history.addListener(listener,
+					DispatchMode.Async, 1000);
+			assertEquals("queue capacity", 1000, dispatcher.getQueueCapacity());
+			/* More objects than the history retains; each is copied when queued. */
+			for (long n = 1; n <= 500; n++) {
+				add(history, n);
+			}
+			awaitDelivered(dispatcher, 500);
+			assertDeliveredInOrder(listener, 0, 500);
+			synchronized (listener) {
+				for (Thread t : listener.threads) {
+					assertFalse("background thread", t == Thread.currentThread());
+				}
+			}
+			assertEquals("pending", 0, dispatcher.getPendingCount());
+			assertEquals("overflow", 0, dispatcher.getOverflowCount());
+			assertEquals("failures", 0, dispatcher.getFailureCount());
+			assertTrue("removed", history.removeListener(listener));
+		}
+	}
+
+	public void testAsyncOverflowDoesNotBlockAdd() throws InterruptedException {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16,
+				ConcurrencyMode.LockFreeSingleWriter);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(release);
+		int capacity = 4;
+		HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher = history.addListener(listener,
+				DispatchMode.Async, capacity);
+		/*
+		 * The listener blocks on the first object, which holds its slot until
+		 * the listener returns; the remaining objects beyond the capacity are
+		 * counted as overflows rather than waited upon.
+		 */
+		for (long n = 1; n <= 10; n++) {
+			add(history, n);
+		}
+		assertEquals("overflow", 10 - capacity, dispatcher.getOverflowCount());
+		assertEquals("pending", capacity, dispatcher.getPendingCount());
+		assertEquals("none delivered while blocked", 0, dispatcher.getDeliveredCount());
+
+		release.countDown();
+		awaitDelivered(dispatcher, capacity);
+		assertDeliveredInOrder(listener, 0, capacity);
+		assertEquals("pending", 0, dispatcher.getPendingCount());
+
+		/* Slots released by the listener are reused, and the gap is visible. */
+		add(history, 11);
+		awaitDelivered(dispatcher, capacity + 1);
+		synchronized (listener) {
+			assertEquals("sequence after gap", 10, listener.sequences.get(capacity).longValue());
+		}
+		assertTrue("removed", history.removeListener(listener));
+	}
+
+	public void testAsyncListenerFailureCounted() throws InterruptedException {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16,
+				ConcurrencyMode.Synchronized);
+		final RecordingListener recorder = new RecordingListener();
+		ITimeHistoryListener<TimestampedValue<Quaternion>> listener = new ITimeHistoryListener<TimestampedValue<Quaternion>>() {
+			public void sampleAdded(TimestampedValue<Quaternion> t, long sequence) {
+				if ((sequence % 2) == 1) {
+					throw new IllegalStateException("odd");
+				}
+				recorder.sampleAdded(t, sequence);
+			}
+		};
+		HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher = history.addListener(listener,
+				DispatchMode.Async, 32);
+		for (long n = 1; n <= 20; n++) {
+			add(history, n);
+		}
+		awaitDelivered(dispatcher, 20);
+		assertEquals("failures", 10, dispatcher.getFailureCount());
+		synchronized (recorder) {
+			assertEquals("delivered after failures", 10, recorder.sequences.size());
+			for (int i = 0; i < 10; i++) {
+				assertEquals("sequence", 2 * i, recorder.sequences.get(i).longValue());
+			}
+		}
+		assertTrue("removed", history.removeListener(listener));
+	}
+
+	public void testAsyncRemoveDeliversQueuedObjects() throws InterruptedException {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16,
+				ConcurrencyMode.LockFreeSingleWriter);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingListener listener = new RecordingListener(release);
+		HistoryListenerDispatcher<TimestampedValue<Quaternion>> dispatcher = history.addListener(listener,
+				DispatchMode.Async, 16);
+		for (long n = 1; n <= 8; n++) {
+			add(history, n);
+		}
+		assertTrue("removed", history.removeListener(listener));
+		add(history, 9);
+		release.countDown();
+		awaitDelivered(dispatcher, 8);
+		dispatcher.dispatch_thread.join(TimeUnit.SECONDS.toMillis(5));
+		assertFalse("background thread exited", dispatcher.dispatch_thread.isAlive());
+		assertDeliveredInOrder(listener, 0, 8);
+		assertEquals("pending", 0, dispatcher.getPendingCount());
+	}
+
+	public void testBlockedInlineListenerDoesNotBlockReaders() throws InterruptedException {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			final ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			add(history, 1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch entered = new CountDownLatch(1);
+			ITimeHistoryListener<TimestampedValue<Quaternion>> listener = new ITimeHistoryListener<TimestampedValue<Quaternion>>() {
+				public void sampleAdded(TimestampedValue<Quaternion> t, long sequence) {
+					entered.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+			history.addListener(listener);
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					TimestampedValue<Quaternion> s = new TimestampedValue<Quaternion>(new Quaternion());
+					s.getValue().set(2, 0, 0, 0);
+					s.setTimestamp(2 * SAMPLE_PERIOD);
+					s.setValid(true);
+					history.add(s);
+				}
+			}, "Writer");
+			writer.setDaemon(true);
+			writer.start();
+			try {
+				assertTrue("listener invoked", entered.await(DELIVERY_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+				/* The object is published before the listener is notified. */
+				final AtomicBoolean read = new AtomicBoolean();
+				Thread reader = new Thread(new Runnable() {
+					public void run() {
+						TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+						read.set(history.getMostRecent(out) && (out.getTimestamp() == 2 * SAMPLE_PERIOD)
+								&& history.get(SAMPLE_PERIOD, out));
+					}
+				}, "Reader");
+				reader.setDaemon(true);
+				reader.start();
+				reader.join(DELIVERY_TIMEOUT_MS);
+				assertFalse("reader not blocked by the listener", reader.isAlive());
+				assertTrue("published object read", read.get());
+			} finally {
+				release.countDown();
+				writer.join(DELIVERY_TIMEOUT_MS);
+			}
+			assertFalse("add() returned", writer.isAlive());
+		}
+	}
+
+	public void testConcurrentWritersNotifyInSequenceOrder() throws InterruptedException {
+		final ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(64,
+				ConcurrencyMode.Synchronized);
+		RecordingListener listener = new RecordingListener();
+		history.addListener(listener);
+		final int writers = 4;
+		final int adds = 2000;
+		Thread[] threads = new Thread[writers];
+		for (int w = 0; w < writers; w++) {
+			threads[w] = new Thread(new Runnable() {
+				public void run() {
+					TimestampedValue<Quaternion> s = new TimestampedValue<Quaternion>(new Quaternion());
+					for (long n = 1; n <= adds; n++) {
+						s.getValue().set(n, 0, 0, 0);
+						s.setTimestamp(n * SAMPLE_PERIOD);
+						s.setValid(true);
+						history.add(s);
+					}
+				}
+			}, "Writer" + w);
+			threads[w].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		synchronized (listener) {
+			assertEquals("notifications", writers * adds, listener.sequences.size());
+			for (int i = 0; i < listener.sequences.size(); i++) {
+				assertEquals("sequence order", i, listener.sequences.get(i).longValue());
+			}
+		}
+	}
+}
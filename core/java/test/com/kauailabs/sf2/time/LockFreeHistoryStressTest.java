@@ -0,0 +1,310 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+import static com.kauailabs.sf2.test.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+
+/**
+ * Multi-threaded stress test of the LockFreeSingleWriter (seqlock) mode: one
+ * writer adds samples as fast as possible to a small history, so that the
+ * slots being read are constantly overwritten, while several readers use
+ * every read path. Each sample's quaternion components are all derived from
+ * its timestamp, so a torn read (an object assembled from more than one
+ * sample) is detected. The same test is applied to a memory-mapped history
+ * file, read through MappedTimeHistoryReaders.
+ */
+public class LockFreeHistoryStressTest {
+	static final int CAPACITY = 64;
+	static final int NUM_READERS = 3;
+	static final long DURATION_MS = 1500;
+	static final long SAMPLE_PERIOD = 10;
+	static final long JOIN_TIMEOUT_MS = 5000;
+
+	static void setSample(TimestampedValue<Quaternion> sample, long n) {
+		float v = (float) (n % 1000000);
+		sample.getValue().set(v, v, v, v);
+		sample.setTimestamp(n * SAMPLE_PERIOD);
+		sample.setValid(true);
+	}
+
+	/**
+	 * Throws if the provided (non-interpolated) object is not exactly a sample
+	 * written by the writer.
+	 */
+	static void checkSample(String path, TimestampedValue<Quaternion> t) {
+		Quaternion q = t.getValue();
+		float expected = (float) ((t.getTimestamp() / SAMPLE_PERIOD) % 1000000);
+		if ((t.getTimestamp() % SAMPLE_PERIOD) != 0 || q.getW() != expected || q.getX() != expected
+				|| q.getY() != expected || q.getZ() != expected) {
+			fail("Torn read via " + path + ": timestamp " + t.getTimestamp() + ", quaternion " + q.getW() + ","
+					+ q.getX() + "," + q.getY() + "," + q.getZ());
+		}
+	}
+
+	/**
+	 * Throws if the provided interpolated object is not consistent with the
+	 * two samples bracketing the requested timestamp.
+	 */
+	static void checkInterpolated(String path, long requested_timestamp, TimestampedValue<Quaternion> t) {
+		if (t.getTimestamp() != requested_timestamp) {
+			fail(path + " returned timestamp " + t.getTimestamp() + " for " + requested_timestamp);
+		}
+		if (!t.getInterpolated()) {
+			checkSample(path, t);
+			return;
+		}
+		Quaternion q = t.getValue();
+		/* Both bracketing samples have equal components, and so must the result. */
+		float tolerance = Math.abs(q.getW()) * 1e-5f + 1e-5f;
+		if ((Math.abs(q.getW() - q.getX()) > tolerance) || (Math.abs(q.getW() - q.getY()) > tolerance)
+				|| (Math.abs(q.getW() - q.getZ()) > tolerance)) {
+			fail("Torn interpolation via " + path + ": " + q.getW() + "," + q.getX() + "," + q.getY() + ","
+					+ q.getZ());
+		}
+	}
+
+	public void testFixedCapacity() throws InterruptedException {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), CAPACITY, null, "Quaternion",
+				Quaternion.getUnits(), ConcurrencyMode.LockFreeSingleWriter);
+		stress(history);
+	}
+
+	public void testRetentionDuration() throws InterruptedException {
+		/* Chunks are added and released while the readers are active. */
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), 8, 64, 40 * SAMPLE_PERIOD, null, "Quaternion",
+				Quaternion.getUnits(), ConcurrencyMode.LockFreeSingleWriter);
+		stress(history);
+	}
+
+	public void testMappedFile() throws InterruptedException, IOException {
+		File file = File.createTempFile("sf2stress", ".hist");
+		file.deleteOnExit();
+		final MappedInterpolatingTimeHistory<Quaternion> history = new MappedInterpolatingTimeHistory<Quaternion>(
+				new Quaternion(), CAPACITY, file.getPath(), null, "Quaternion", Quaternion.getUnits());
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong written = new AtomicLong();
+		final AtomicLong read_count = new AtomicLong();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+				long n = 1;
+				while (running.get()) {
+					setSample(sample, n);
+					history.add(sample);
+					written.set(n++);
+				}
+			}
+		}, "Writer");
+
+		ArrayList<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < NUM_READERS; r++) {
+			final long seed = r;
+			/* Each reader maps the file itself, as another process would. */
+			final MappedTimeHistoryReader<Quaternion> reader = new MappedTimeHistoryReader<Quaternion>(
+					file.getPath(), new Quaternion());
+			readers.add(new Thread(new Runnable() {
+				public void run() {
+					try {
+						readMapped(reader, written, running, read_count, new Random(seed));
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+						running.set(false);
+					}
+				}
+			}, "Reader" + r));
+		}
+		run(writer, readers, running);
+		if (failure.get() != null) {
+			throw new AssertionError("Reader failed", failure.get());
+		}
+		assertTrue("The writer made progress", written.get() > 10 * CAPACITY);
+		assertTrue("The readers made progress", read_count.get() > 1000);
+	}
+
+	static void readMapped(MappedTimeHistoryReader<Quaternion> reader, AtomicLong written, AtomicBoolean running,
+			AtomicLong read_count, Random random) {
+		TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+		long reads = 0;
+		while (running.get()) {
+			long newest = written.get();
+			/* Concentrate upon the oldest samples, which are being overwritten. */
+			long n = Math.max(1, newest - CAPACITY + random.nextInt(CAPACITY / 4 + 1));
+			long timestamp = n * SAMPLE_PERIOD;
+
+			if (reader.get(timestamp, out)) {
+				checkSample("mapped get", out);
+				assertEquals("mapped get timestamp", timestamp, out.getTimestamp());
+			}
+			long between = timestamp + 1 + random.nextInt((int) SAMPLE_PERIOD - 1);
+			if (reader.get(between, out)) {
+				checkInterpolated("mapped get (interpolated)", between, out);
+			}
+			if (reader.getMostRecent(out)) {
+				checkSample("mapped getMostRecent", out);
+			}
+			reads += 3;
+		}
+		read_count.addAndGet(reads);
+	}
+
+	static void run(Thread writer, ArrayList<Thread> readers, AtomicBoolean running) throws InterruptedException {
+		writer.setDaemon(true);
+		writer.start();
+		for (Thread reader : readers) {
+			reader.setDaemon(true);
+			reader.start();
+		}
+		long end = System.currentTimeMillis() + DURATION_MS;
+		while (running.get() && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		running.set(false);
+		writer.join(JOIN_TIMEOUT_MS);
+		for (Thread reader : readers) {
+			/* A reader that never returns indicates a livelocked retry loop. */
+			reader.join(JOIN_TIMEOUT_MS);
+			assertTrue(reader.getName() + " terminated", !reader.isAlive());
+		}
+	}
+
+	void stress(final ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history)
+			throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong written = new AtomicLong();
+		final AtomicLong read_count = new AtomicLong();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+				long n = 1;
+				while (running.get()) {
+					setSample(sample, n);
+					history.add(sample);
+					written.set(n++);
+				}
+			}
+		}, "Writer");
+
+		ArrayList<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < NUM_READERS; r++) {
+			final long seed = r;
+			readers.add(new Thread(new Runnable() {
+				public void run() {
+					try {
+						read(history, written, running, read_count, new Random(seed));
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+						running.set(false);
+					}
+				}
+			}, "Reader" + r));
+		}
+
+		run(writer, readers, running);
+		if (failure.get() != null) {
+			throw new AssertionError("Reader failed", failure.get());
+		}
+		assertTrue("The writer made progress", written.get() > 10 * CAPACITY);
+		assertTrue("The readers made progress", read_count.get() > 1000);
+	}
+
+	static void read(ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history, AtomicLong written,
+			AtomicBoolean running, AtomicLong read_count, Random random) {
+		TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+		@SuppressWarnings("unchecked")
+		TimestampedValue<Quaternion>[] batch_out = new TimestampedValue[8];
+		for (int i = 0; i < batch_out.length; i++) {
+			batch_out[i] = new TimestampedValue<Quaternion>(new Quaternion());
+		}
+		long[] batch_timestamps = new long[batch_out.length];
+		TimeHistoryCursor<TimestampedValue<Quaternion>> cursor = history.createCursor();
+		TimeHistoryView<TimestampedValue<Quaternion>> view = history.createView();
+		final int[] visited = new int[1];
+		ITimestampedValueVisitor<TimestampedValue<Quaternion>> visitor = new ITimestampedValueVisitor<TimestampedValue<Quaternion>>() {
+			public boolean visit(TimestampedValue<Quaternion> t) {
+				checkSample("forEachInRange", t);
+				visited[0]++;
+				return true;
+			}
+		};
+		long reads = 0;
+		while (running.get()) {
+			long newest = written.get();
+			/* Concentrate upon the oldest samples, which are being overwritten. */
+			long n = Math.max(1, newest - CAPACITY + random.nextInt(CAPACITY / 4 + 1));
+			long timestamp = n * SAMPLE_PERIOD;
+
+			if (history.get(timestamp, out)) {
+				checkSample("get", out);
+				assertEquals("get timestamp", timestamp, out.getTimestamp());
+			}
+			long between = timestamp + 1 + random.nextInt((int) SAMPLE_PERIOD - 1);
+			if (history.get(between, out)) {
+				checkInterpolated("get (interpolated)", between, out);
+			}
+			if (cursor.get(between, out)) {
+				checkInterpolated("cursor", between, out);
+			}
+			if (history.getMostRecent(out)) {
+				checkSample("getMostRecent", out);
+			}
+			for (int i = 0; i < batch_timestamps.length; i++) {
+				batch_timestamps[i] = (n + i * 2) * SAMPLE_PERIOD;
+			}
+			history.get(batch_timestamps, batch_out);
+			for (int i = 0; i < batch_out.length; i++) {
+				if (batch_out[i].getValid()) {
+					checkSample("batch get", batch_out[i]);
+					assertEquals("batch get timestamp", batch_timestamps[i], batch_out[i].getTimestamp());
+				}
+			}
+			history.forEachInRange(timestamp, timestamp + 16 * SAMPLE_PERIOD, visitor);
+			view.refresh();
+			while (view.next(out)) {
+				checkSample("view", out);
+			}
+			reads += 6;
+		}
+		read_count.addAndGet(reads);
+	}
+}
@@ -0,0 +1,157 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.quantity.Count;
+import com.kauailabs.sf2.quantity.Scalar;
+
+public class RecordInterpolatingTimeHistoryTest {
+	static final int CAPACITY = 8;
+	static final long SAMPLE_PERIOD = 10;
+
+	TimestampedValue<Scalar> sample = new TimestampedValue<Scalar>(new Scalar());
+	TimestampedValue<Scalar> out = new TimestampedValue<Scalar>(new Scalar());
+
+	static ArrayList<RecordInterpolatingTimeHistory<Scalar>> createHistories() throws IOException {
+		ArrayList<RecordInterpolatingTimeHistory<Scalar>> histories = new ArrayList<RecordInterpolatingTimeHistory<Scalar>>();
+		histories.add(new ColumnarScalarHistory(CAPACITY, null, "Scalar", null));
+		histories.add(new DirectBufferInterpolatingTimeHistory<Scalar>(new Scalar(), CAPACITY, null, "Scalar",
+				null));
+		File mapped_file = File.createTempFile("sf2test", ".hist");
+		mapped_file.deleteOnExit();
+		histories.add(new MappedInterpolatingTimeHistory<Scalar>(new Scalar(), CAPACITY, mapped_file.getPath(),
+				null, "Scalar", null));
+		return histories;
+	}
+
+	void add(RecordInterpolatingTimeHistory<Scalar> history, long n) {
+		sample.getValue().set(n);
+		sample.setTimestamp(n * SAMPLE_PERIOD);
+		sample.setValid(true);
+		history.add(sample);
+	}
+
+	static String writeCSV(RecordInterpolatingTimeHistory<Scalar> history) {
+		StringWriter csv = new StringWriter();
+		PrintWriter out = new PrintWriter(csv);
+		history.writeCSV(out);
+		out.flush();
+		return csv.toString();
+	}
+
+	public void testLookupsAcrossWrap() throws IOException {
+		for (RecordInterpolatingTimeHistory<Scalar> history : createHistories()) {
+			String name = history.getClass().getSimpleName();
+			for (long n = 1; n <= 20; n++) {
+				add(history, n);
+			}
+			assertEquals(name + " count", CAPACITY, history.getValidSampleCount());
+			assertTrue(name + " exact", history.get(15 * SAMPLE_PERIOD, out));
+			assertEquals(name + " exact value", 15.0, out.getValue().get(), 0.0);
+			assertFalse(name + " exact is not interpolated", out.getInterpolated());
+			assertTrue(name + " interpolated", history.get(15 * SAMPLE_PERIOD + (SAMPLE_PERIOD / 2), out));
+			assertEquals(name + " interpolated value", 15.5, out.getValue().get(), 0.0001);
+			assertTrue(name + " interpolated flag", out.getInterpolated());
+			assertFalse(name + " evicted", history.get(12 * SAMPLE_PERIOD + 5, out));
+			assertFalse(name + " after newest", history.get(21 * SAMPLE_PERIOD, out));
+			assertTrue(name + " most recent", history.getMostRecent(out));
+			assertEquals(name + " most recent value", 20.0, out.getValue().get(), 0.0);
+			assertEquals(name + " most recent timestamp", 20 * SAMPLE_PERIOD, out.getTimestamp());
+		}
+	}
+
+	public void testOutOfOrderDiscardAndReset() throws IOException {
+		for (RecordInterpolatingTimeHistory<Scalar> history : createHistories()) {
+			String name = history.getClass().getSimpleName();
+			add(history, 5);
+			add(history, 4);
+			assertEquals(name + " discarded", 1, history.getOutOfOrderDiscardCount());
+			assertEquals(name + " count", 1, history.getValidSampleCount());
+			history.reset();
+			assertEquals(name + " reset count", 0, history.getValidSampleCount());
+			assertFalse(name + " reset most recent", history.getMostRecent(out));
+			add(history, 4);
+			assertEquals(name + " accepted after reset", 1, history.getValidSampleCount());
+			assertEquals(name + " not discarded after reset", 1, history.getOutOfOrderDiscardCount());
+		}
+	}
+
+	public void testCSVMatchesAcrossStorage() throws IOException {
+		String expected = null;
+		for (RecordInterpolatingTimeHistory<Scalar> history : createHistories()) {
+			for (long n = 1; n <= 12; n++) {
+				add(history, n);
+			}
+			String csv = writeCSV(history);
+			assertTrue("header", csv.startsWith("Timestamp (ms),"));
+			assertEquals("rows", CAPACITY + 1, csv.split("\n").length);
+			if (expected == null) {
+				expected = csv;
+			} else {
+				assertEquals(history.getClass().getSimpleName(), expected, csv);
+			}
+		}
+	}
+
+	public void testLongFieldsAcrossStorage() throws IOException {
+		File mapped_file = File.createTempFile("sf2test", ".hist");
+		mapped_file.deleteOnExit();
+		ArrayList<RecordInterpolatingTimeHistory<Count>> histories = new ArrayList<RecordInterpolatingTimeHistory<Count>>();
+		histories.add(new ColumnarInterpolatingTimeHistory<Count>(new Count(), CAPACITY, null, "Count", null));
+		histories.add(new DirectBufferInterpolatingTimeHistory<Count>(new Count(), CAPACITY, null, "Count", null));
+		histories.add(new MappedInterpolatingTimeHistory<Count>(new Count(), CAPACITY, mapped_file.getPath(), null,
+				"Count", null));
+		/* Larger than a float can represent exactly. */
+		long base = (1L << 40) + 1;
+		TimestampedValue<Count> count = new TimestampedValue<Count>(new Count());
+		for (RecordInterpolatingTimeHistory<Count> history : histories) {
+			String name = history.getClass().getSimpleName();
+			for (long n = 1; n <= 12; n++) {
+				count.getValue().set(base + n);
+				count.setTimestamp(n * SAMPLE_PERIOD);
+				count.setValid(true);
+				history.add(count);
+			}
+			assertTrue(name + " exact", history.get(10 * SAMPLE_PERIOD, count));
+			assertEquals(name + " exact value", base + 10, count.getValue().get());
+			assertTrue(name + " most recent", history.getMostRecent(count));
+			assertEquals(name + " most recent value", base + 12, count.getValue().get());
+		}
+		MappedTimeHistoryReader<Count> reader = new MappedTimeHistoryReader<Count>(mapped_file.getPath(),
+				new Count());
+		assertTrue("reader most recent", reader.getMostRecent(count));
+		assertEquals("reader most recent value", base + 12, count.getValue().get());
+	}
+}
@@ -0,0 +1,423 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.persistence.CSVLogWriter;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+
+public class ThreadsafeInterpolatingTimeHistoryTest {
+	static final long SAMPLE_PERIOD = 10;
+
+	TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+	TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(int num_samples,
+			ConcurrencyMode mode) {
+		return new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), num_samples, null, "Quaternion",
+				Quaternion.getUnits(), mode);
+	}
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(int chunk_size,
+			int max_num_samples, long retention_duration, ConcurrencyMode mode) {
+		return new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), chunk_size, max_num_samples, retention_duration,
+				null, "Quaternion", Quaternion.getUnits(), mode);
+	}
+
+	/**
+	 * Adds a sample whose quaternion's w component identifies it.
+	 */
+	void add(ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history, long timestamp, float id) {
+		sample.getValue().set(id, 0, 0, 0);
+		sample.setTimestamp(timestamp);
+		sample.setValid(true);
+		history.add(sample);
+	}
+
+	public void testOutOfOrderTrackedAcrossCapacityGrowth() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(8, 256,
+					100 * SAMPLE_PERIOD, mode);
+			for (long n = 1; n <= 4; n++) {
+				add(history, n * SAMPLE_PERIOD, n);
+			}
+			long late_timestamp = (2 * SAMPLE_PERIOD) + (SAMPLE_PERIOD / 2);
+			add(history, late_timestamp, -1);
+			long late_sequence = history.next_sequence - 1;
+			int initial_capacity = history.getCapacity();
+			long n = 5;
+			/* Add more objects than the capacity when the late object was added. */
+			for (; n <= 5 + (2 * initial_capacity); n++) {
+				add(history, n * SAMPLE_PERIOD, n);
+			}
+			assertTrue("capacity grew", history.getCapacity() > initial_capacity);
+			assertTrue("late object retained", late_sequence > history.getOldestSequence(history.next_sequence));
+			assertFalse("out of order while the late object is retained", history.isInOrder(history.next_sequence));
+			assertTrue("late object found", history.get(late_timestamp, out));
+			assertFalse("late object not interpolated", out.getInterpolated());
+			assertEquals("late object", -1.0, out.getValue().getW(), 0);
+
+			while (late_sequence > history.getOldestSequence(history.next_sequence)) {
+				add(history, n * SAMPLE_PERIOD, n);
+				n++;
+			}
+			assertTrue("in order once the late object is the oldest", history.isInOrder(history.next_sequence));
+			assertTrue("interpolated lookup", history.get((n - 10) * SAMPLE_PERIOD + 1, out));
+			assertEquals("interpolated lookup", n - 10 + 0.1, out.getValue().getW(), 0.01);
+		}
+	}
+
+	public void testCursorLookupsRecordMetrics() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			for (long n = 1; n <= 10; n++) {
+				add(history, n * SAMPLE_PERIOD, n);
+			}
+			HistoryMetrics metrics = history.enableMetrics();
+			TimeHistoryCursor<TimestampedValue<Quaternion>> cursor = history.createCursor();
+			assertTrue("exact", cursor.get(5 * SAMPLE_PERIOD, out));
+			assertTrue("interpolated", cursor.get((5 * SAMPLE_PERIOD) + 1, out));
+			assertFalse("too old", cursor.get(SAMPLE_PERIOD - 1, out));
+			assertFalse("too new", cursor.get((10 * SAMPLE_PERIOD) + 1, out));
+			assertEquals("gets", 4, metrics.getGetCount());
+			assertEquals("exact", 1, metrics.getExactCount());
+			assertEquals("interpolated", 1, metrics.getInterpolatedCount());
+			assertEquals("miss old", 1, metrics.getMissOldCount());
+			assertEquals("miss new", 1, metrics.getMissNewCount());
+			assertEquals("lock hold", 4, metrics.getLockHoldHistogram().getCount());
+			if (mode == ConcurrencyMode.Synchronized) {
+				assertEquals("lock wait", 4, metrics.getLockWaitHistogram().getCount());
+			}
+		}
+	}
+
+	/**
+	 * Records the timestamp provided with each sequence number.
+	 */
+	static class RecordingListener implements ITimeHistoryListener<TimestampedValue<Quaternion>> {
+		ArrayList<Long> sequences = new ArrayList<Long>();
+		ArrayList<Long> timestamps = new ArrayList<Long>();
+
+		public void sampleAdded(TimestampedValue<Quaternion> t, long sequence) {
+			sequences.add(sequence);
+			timestamps.add(t.getTimestamp());
+		}
+	}
+
+	static ArrayList<Long> readLogTimestamps(File file) throws IOException {
+		ArrayList<Long> timestamps = new ArrayList<Long>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			reader.readLine(); /* Header */
+			String line;
+			while ((line = reader.readLine()) != null) {
+				timestamps.add(Long.parseLong(line.substring(0, line.indexOf(','))));
+			}
+		} finally {
+			reader.close();
+		}
+		return timestamps;
+	}
+
+	public void testLateObjectInsertedInOrder() throws IOException {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			history.setReorderWindow(3);
+			RecordingListener listener = new RecordingListener();
+			history.addListener(listener);
+			File log_file = File.createTempFile("sf2test", ".csv");
+			log_file.deleteOnExit();
+			CSVLogWriter log_writer = history.createLogWriter();
+			assertTrue("log opened", log_writer.open(log_file.getPath()));
+			for (long n = 1; n <= 5; n++) {
+				add(history, n * 10, n);
+			}
+			assertTrue("log flushed", log_writer.flush());
+			add(history, 35, 3.5f);
+			for (long n = 6; n <= 9; n++) {
+				add(history, n * 10, n);
+			}
+			assertTrue("log closed", log_writer.close());
+
+			assertEquals("inserted", 1, history.getReorderedCount());
+			assertEquals("dropped", 0, history.getLateDropCount());
+			long[] expected_timestamps = { 10, 20, 30, 35, 40, 50, 60, 70, 80, 90 };
+			for (int i = 0; i < expected_timestamps.length; i++) {
+				assertTrue("copied", history.copyAt(i, out));
+				assertEquals("stored timestamp", expected_timestamps[i], out.getTimestamp());
+			}
+			/* Only the objects which can no longer be moved are consumed. */
+			int num_stable = expected_timestamps.length - 3;
+			assertEquals("stable", num_stable, history.stable_sequence);
+			assertEquals("listener notifications", num_stable, listener.sequences.size());
+			for (int i = 0; i < num_stable; i++) {
+				assertEquals("listener sequence", i, listener.sequences.get(i).longValue());
+				assertEquals("listener timestamp", expected_timestamps[i], listener.timestamps.get(i).longValue());
+			}
+			ArrayList<Long> logged = readLogTimestamps(log_file);
+			assertEquals("log rows", num_stable, logged.size());
+			for (int i = 0; i < num_stable; i++) {
+				assertEquals("log row", expected_timestamps[i], logged.get(i).longValue());
+			}
+			TimeHistoryView<TimestampedValue<Quaternion>> view = history.createView();
+			assertEquals("view size", num_stable, view.refresh());
+			for (int i = 0; i < num_stable; i++) {
+				assertTrue("view", view.next(out));
+				assertEquals("view timestamp", expected_timestamps[i], out.getTimestamp());
+			}
+
+			assertTrue("late object found", history.get(35, out));
+			assertFalse("late object exact", out.getInterpolated());
+			assertEquals("late object", 3.5, out.getValue().getW(), 0);
+			assertTrue("interpolated after late object", history.get(38, out));
+			assertTrue("interpolated after late object", out.getInterpolated());
+			assertTrue("bracketed by late object", (out.getValue().getW() > 3.5) && (out.getValue().getW() < 4));
+			assertTrue("interpolated before late object", history.get(45, out));
+			assertTrue("bracketed by neighbors", (out.getValue().getW() > 4) && (out.getValue().getW() < 5));
+		}
+	}
+
+	public void testLateObjectBeyondWindowDropped() {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16,
+				ConcurrencyMode.Synchronized);
+		history.setReorderWindow(2);
+		for (long n = 1; n <= 10; n++) {
+			add(history, n * 10, n);
+		}
+		add(history, 75, 7.5f);
+		assertEquals("dropped", 1, history.getLateDropCount());
+		assertEquals("not added", 10, history.next_sequence);
+		add(history, 85, 8.5f);
+		assertEquals("inserted", 1, history.getReorderedCount());
+		assertEquals("added", 11, history.next_sequence);
+	}
+
+	/**
+	 * Feeds samples which arrive up to six samples late into a history with a
+	 * reorder window of four, and compares each lookup with a linear search
+	 * of the accepted samples.
+	 */
+	public void testLateSampleLookupsMatchReference() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(64, mode);
+			history.setReorderWindow(4);
+			ReorderReference reference = new ReorderReference(history);
+			Random random = new Random(17);
+			for (int n = 0; n < 3000; n++) {
+				reference.addLate(n, random.nextInt(7));
+				reference.verify(random);
+			}
+			assertTrue("late samples inserted", history.getReorderedCount() > 0);
+			assertTrue("late samples dropped", history.getLateDropCount() > 0);
+		}
+	}
+
+	/**
+	 * Shrinks the reorder window while samples which arrived up to eight
+	 * samples late are still retained; the history, and the views, listeners
+	 * and log writers consuming it, must remain in timestamp order.
+	 */
+	public void testShrinkingReorderWindowKeepsOrder() throws IOException {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(64, mode);
+			history.setReorderWindow(8);
+			ReorderReference reference = new ReorderReference(history);
+			File log_file = File.createTempFile("sf2test", ".csv");
+			log_file.deleteOnExit();
+			CSVLogWriter log_writer = history.createLogWriter();
+			assertTrue("log opened", log_writer.open(log_file.getPath()));
+			TimeHistoryView<TimestampedValue<Quaternion>> view = history.createView();
+			Random random = new Random(23);
+			int n = 0;
+			for (; n < 40; n++) {
+				reference.addLate(n, random.nextInt(9));
+				reference.verify(random);
+			}
+			long inserted = history.getReorderedCount();
+			assertTrue("wide disorder inserted", inserted > 0);
+			history.setReorderWindow(2);
+			for (; n < 400; n++) {
+				reference.addLate(n, random.nextInt(9));
+				reference.verify(random);
+				if ((n % 16) == 0) {
+					assertTrue("log flushed", log_writer.flush());
+					view.advance();
+					long previous = Long.MIN_VALUE;
+					while (view.next(out)) {
+						assertTrue("view in order", out.getTimestamp() > previous);
+						previous = out.getTimestamp();
+					}
+				}
+			}
+			assertTrue("narrow disorder inserted", history.getReorderedCount() > inserted);
+			assertTrue("log closed", log_writer.close());
+			ArrayList<Long> logged = readLogTimestamps(log_file);
+			assertEquals("log rows", history.stable_sequence, logged.size());
+			for (int i = 0; i < logged.size(); i++) {
+				assertEquals("log row", reference.timestamps.get(i).longValue(), logged.get(i).longValue());
+			}
+		}
+	}
+
+	/**
+	 * Tracks the samples accepted by a history with a reorder window, in
+	 * timestamp order, and checks the history (and the objects its listener
+	 * was notified of) against them. Each sample's value is its timestamp.
+	 */
+	class ReorderReference {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history;
+		RecordingListener listener = new RecordingListener();
+		TimeHistoryCursor<TimestampedValue<Quaternion>> cursor;
+		ArrayList<Long> timestamps = new ArrayList<Long>();
+		TimestampedValue<Quaternion> expected = new TimestampedValue<Quaternion>(new Quaternion());
+
+		ReorderReference(ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history) {
+			this.history = history;
+			history.addListener(listener);
+			cursor = history.createCursor();
+		}
+
+		/**
+		 * Adds the nth sample, which arrives the provided number of samples
+		 * late. The low digits are unique among any 100 consecutive samples,
+		 * so no two timestamps are equal.
+		 */
+		void addLate(int n, int lateness) {
+			long timestamp = ((n - lateness) * 100L) + (n % 100);
+			long dropped = history.getLateDropCount();
+			add(history, timestamp, timestamp);
+			if (history.getLateDropCount() == dropped) {
+				int position = timestamps.size();
+				while ((position > 0) && (timestamps.get(position - 1) > timestamp)) {
+					position--;
+				}
+				timestamps.add(position, timestamp);
+			}
+		}
+
+		void verify(Random random) {
+			long head = history.next_sequence;
+			assertEquals("accepted", timestamps.size(), head);
+			long oldest = history.getOldestSequence(head);
+			for (long seq = oldest; seq < head; seq++) {
+				assertTrue("copied", history.copyAt(seq, out));
+				assertEquals("stored timestamp", timestamps.get((int) seq).longValue(), out.getTimestamp());
+			}
+			assertEquals("listener notifications", history.stable_sequence, listener.sequences.size());
+			for (int i = 0; i < listener.sequences.size(); i++) {
+				assertEquals("listener sequence", i, listener.sequences.get(i).longValue());
+				assertEquals("listener timestamp", timestamps.get(i).longValue(),
+						listener.timestamps.get(i).longValue());
+			}
+			long oldest_timestamp = timestamps.get((int) oldest);
+			for (int i = 0; i < 4; i++) {
+				long requested = oldest_timestamp - 200 + random.nextInt(1200 + (int) (64 * 100));
+				boolean found = getReference(timestamps, oldest, head, requested, expected);
+				assertEquals("get(" + requested + ")", found, history.get(requested, out));
+				if (found) {
+					assertEquals("get(" + requested + ") interpolated", expected.getInterpolated(),
+							out.getInterpolated());
+					assertEquals("get(" + requested + ")", expected.getValue().getW(), out.getValue().getW(), 1e-3);
+				}
+				assertEquals("cursor(" + requested + ")", found, cursor.get(requested, out));
+				if (found) {
+					assertEquals("cursor(" + requested + ")", expected.getValue().getW(), out.getValue().getW(),
+							1e-3);
+				}
+			}
+			final long range_start = oldest_timestamp + random.nextInt(3000);
+			final long range_end = range_start + random.nextInt(1000);
+			int expected_count = 0;
+			for (long seq = oldest; seq < head; seq++) {
+				long t = timestamps.get((int) seq);
+				if ((t >= range_start) && (t <= range_end)) {
+					expected_count++;
+				}
+			}
+			final int[] visited = new int[1];
+			final long[] previous = { Long.MIN_VALUE };
+			history.forEachInRange(range_start, range_end,
+					new ITimestampedValueVisitor<TimestampedValue<Quaternion>>() {
+						public boolean visit(TimestampedValue<Quaternion> t) {
+							assertTrue("visited within range",
+									(t.getTimestamp() >= range_start) && (t.getTimestamp() <= range_end));
+							assertTrue("visited in order", t.getTimestamp() > previous[0]);
+							previous[0] = t.getTimestamp();
+							visited[0]++;
+							return true;
+						}
+					});
+			assertEquals("forEachInRange", expected_count, visited[0]);
+		}
+	}
+
+	/**
+	 * Locates (or interpolates) the requested timestamp among the samples
+	 * with sequence numbers in [oldest, head) by examining every one; each
+	 * sample's value is its timestamp.
+	 */
+	static boolean getReference(ArrayList<Long> timestamps, long oldest, long head, long requested,
+			TimestampedValue<Quaternion> out) {
+		long preceding = Long.MIN_VALUE;
+		long following = Long.MAX_VALUE;
+		for (long seq = oldest; seq < head; seq++) {
+			long t = timestamps.get((int) seq);
+			if (t == requested) {
+				out.getValue().set(t, 0, 0, 0);
+				out.setTimestamp(t);
+				out.setInterpolated(false);
+				return true;
+			}
+			if (t < requested) {
+				preceding = Math.max(preceding, t);
+			} else {
+				following = Math.min(following, t);
+			}
+		}
+		if ((preceding == Long.MIN_VALUE) || (following == Long.MAX_VALUE)) {
+			return false;
+		}
+		TimestampedValue<Quaternion> p = new TimestampedValue<Quaternion>(new Quaternion(preceding, 0, 0, 0));
+		p.setTimestamp(preceding);
+		TimestampedValue<Quaternion> f = new TimestampedValue<Quaternion>(new Quaternion(following, 0, 0, 0));
+		f.setTimestamp(following);
+		p.interpolate(f, (double) (requested - preceding) / (following - preceding), out);
+		out.setInterpolated(true);
+		return true;
+	}
+}
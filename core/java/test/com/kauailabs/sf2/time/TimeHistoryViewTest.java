@@ -0,0 +1,172 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kauailabs.sf2.math.Matrix;
+import com.kauailabs.sf2.orientation.OrientationHistory;
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+import com.kauailabs.sf2.time.ThreadsafeInterpolatingTimeHistory.ConcurrencyMode;
+
+public class TimeHistoryViewTest {
+	static final long SAMPLE_PERIOD = 10;
+
+	TimestampedValue<Quaternion> sample = new TimestampedValue<Quaternion>(new Quaternion());
+	TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> createHistory(int num_samples,
+			ConcurrencyMode mode) {
+		return new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>>(
+				new TimestampedValue<Quaternion>(new Quaternion()), num_samples, null, "Quaternion",
+				Quaternion.getUnits(), mode);
+	}
+
+	void add(ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history, long n) {
+		sample.getValue().set(n, 0, 0, 0);
+		sample.setTimestamp(n * SAMPLE_PERIOD);
+		sample.setValid(true);
+		history.add(sample);
+	}
+
+	public void testSkipsOverwrittenObjects() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			for (long n = 1; n <= 40; n++) {
+				add(history, n);
+			}
+			TimeHistoryView<TimestampedValue<Quaternion>> view = history.createView();
+			int size = view.refresh();
+			long first = 41 - size;
+			assertTrue("visited", view.next(out));
+			assertEquals("oldest", first * SAMPLE_PERIOD, out.getTimestamp());
+
+			/* Overwrite the next five objects in the view. */
+			for (long n = 41; n <= 45; n++) {
+				add(history, n);
+			}
+			long resumed = history.getOldestSequence(history.next_sequence) + 1;
+			assertTrue("visited after overwrite", view.next(out));
+			assertEquals("oldest retained", resumed * SAMPLE_PERIOD, out.getTimestamp());
+			assertEquals("skipped", resumed - first - 1, view.getSkippedCount());
+			long count = 2;
+			long expected = resumed + 1;
+			while (view.next(out)) {
+				assertEquals("contiguous", expected * SAMPLE_PERIOD, out.getTimestamp());
+				expected++;
+				count++;
+			}
+			assertEquals("ends at the refreshed head", 41, expected);
+			assertEquals("visited count", size - view.getSkippedCount(), count);
+			assertTrue("still valid", view.isValid());
+
+			/* Every object overwritten: the view is exhausted, not invalid. */
+			view.rewind();
+			for (long n = 46; n <= 80; n++) {
+				add(history, n);
+			}
+			assertFalse("nothing retained", view.next(out));
+			assertEquals("all skipped", size, view.getSkippedCount());
+			assertTrue("still valid", view.isValid());
+		}
+	}
+
+	public void testResetInvalidates() {
+		for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+			ThreadsafeInterpolatingTimeHistory<TimestampedValue<Quaternion>> history = createHistory(16, mode);
+			for (long n = 1; n <= 10; n++) {
+				add(history, n);
+			}
+			TimeHistoryView<TimestampedValue<Quaternion>> view = history.createView();
+			assertEquals("size", 10, view.refresh());
+			assertTrue("visited", view.next(out));
+			history.reset();
+			assertFalse("reset", view.next(out));
+			assertFalse("invalid", view.isValid());
+			add(history, 11);
+			assertEquals("refreshed", 1, view.refresh());
+			assertTrue("valid once refreshed", view.isValid());
+			assertTrue("visited", view.next(out));
+			assertEquals("added after reset", 11 * SAMPLE_PERIOD, out.getTimestamp());
+		}
+	}
+
+	/**
+	 * Calculates the covariance of a full, large history while a writer
+	 * evicts a sample every millisecond; each calculation must complete
+	 * rather than restart whenever a sample is evicted.
+	 */
+	public void testCovarianceCompletesWithConcurrentWriter() throws InterruptedException {
+		final int capacity = 60000;
+		final SyntheticQuaternionSensor sensor = new SyntheticQuaternionSensor();
+		final OrientationHistory orientation_history = new OrientationHistory(sensor, capacity);
+		for (long n = 0; n < capacity; n++) {
+			sensor.publish(n);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(new Runnable() {
+			public void run() {
+				long n = capacity;
+				while (running.get()) {
+					sensor.publish(n++);
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		}, "Writer");
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger calculated = new AtomicInteger();
+		Thread caller = new Thread(new Runnable() {
+			public void run() {
+				Matrix orientation = new Matrix("Orientation", 3, null);
+				Matrix angular_velocity = new Matrix("AngularVelocity", 3, null);
+				for (int i = 0; i < 10; i++) {
+					if (orientation_history.calculate_covariance(orientation, angular_velocity)) {
+						calculated.incrementAndGet();
+					}
+					completed.incrementAndGet();
+				}
+			}
+		}, "Caller");
+		caller.setDaemon(true);
+		writer.start();
+		try {
+			caller.start();
+			caller.join(TimeUnit.SECONDS.toMillis(20));
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+		assertEquals("calculations completed", 10, completed.get());
+		assertEquals("calculations succeeded", 10, calculated.get());
+	}
+}
@@ -0,0 +1,150 @@
+/* ============================================
+SF2 source code is placed under the MIT license
+Copyright (c) 2017 Kauai Labs
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+===============================================
+*/
+
+package com.kauailabs.sf2.time;
+
+import static com.kauailabs.sf2.test.Assert.assertEquals;
+import static com.kauailabs.sf2.test.Assert.assertFalse;
+import static com.kauailabs.sf2.test.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import com.kauailabs.sf2.orientation.OrientationHistory;
+import com.kauailabs.sf2.orientation.Quaternion;
+import com.kauailabs.sf2.quantity.Scalar;
+import com.kauailabs.sf2.test.SyntheticQuaternionSensor;
+
+/**
+ * Verifies that histories keyed in a resolution other than milliseconds
+ * report spans in milliseconds, label the timestamps they write with their
+ * unit, and return millisecond timestamps from their millisecond lookups.
+ */
+public class TimestampUnitsTest {
+	static final long SAMPLE_PERIOD_US = 1000;
+	static final int NUM_SAMPLES = 11;
+
+	static ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>> createMicrosecondHistory() {
+		Timestamp ts = new Timestamp(0, Timestamp.TimestampResolution.Microsecond);
+		TimestampInfo ts_info = new TimestampInfo(TimestampInfo.Scope.Sensor, TimestampInfo.Basis.SinceLastReboot,
+				1.0 / Timestamp.MICROSECONDS_PER_SECOND, 1.0 / Timestamp.MICROSECONDS_PER_SECOND, 0, 0, ts);
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>> history = new ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>>(
+				new TimestampedValue<Scalar>(new Scalar()), NUM_SAMPLES, ts_info, "Scalar", null);
+		TimestampedValue<Scalar> sample = new TimestampedValue<Scalar>(new Scalar());
+		for (int n = 0; n < NUM_SAMPLES; n++) {
+			sample.getValue().set(n);
+			sample.setTimestamp(n * SAMPLE_PERIOD_US);
+			sample.setValid(true);
+			history.add(sample);
+		}
+		return history;
+	}
+
+	public void testMetricsSpanInMilliseconds() {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>> history = createMicrosecondHistory();
+		history.enableMetrics();
+		assertEquals("span", 10, history.getMetricsSnapshot().getSpanMilliseconds());
+	}
+
+	public void testCSVHeaderUnit() {
+		StringWriter csv = new StringWriter();
+		PrintWriter out = new PrintWriter(csv);
+		createMicrosecondHistory().writeCSV(out);
+		out.flush();
+		assertTrue("header", csv.toString().startsWith("Timestamp (us),Scalar"));
+	}
+
+	public void testJournalResolution() throws IOException {
+		ThreadsafeInterpolatingTimeHistory<TimestampedValue<Scalar>> history = createMicrosecondHistory();
+		ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		HistoryJournalWriter writer = history.createJournalWriter(journal);
+		history.writeJournalRecords(writer, 0);
+		writer.close();
+		HistoryJournalReader reader = new HistoryJournalReader(new ByteArrayInputStream(journal.toByteArray()));
+		assertEquals("resolution", Timestamp.TimestampResolution.Microsecond, reader.getTimestampResolution());
+		StringWriter csv = new StringWriter();
+		PrintWriter out = new PrintWriter(csv);
+		reader.writeCSV(out);
+		out.flush();
+		assertTrue("header", csv.toString().startsWith("Timestamp (us),Scalar"));
+	}
+
+	public void testMillisecondLookupsReturnMilliseconds() {
+		SyntheticQuaternionSensor sensor = new SyntheticQuaternionSensor(Timestamp.TimestampResolution.Microsecond);
+		OrientationHistory history = new OrientationHistory(sensor, 100);
+		assertEquals("resolution", Timestamp.TimestampResolution.Microsecond, history.getTimestampResolution());
+		for (long n = 0; n < 50; n++) {
+			sensor.publish(n);
+		}
+		long exact_ms = SyntheticQuaternionSensor.getSampleTimestamp(20);
+		long interpolated_ms = exact_ms + 3;
+		TimestampedValue<Quaternion> out = new TimestampedValue<Quaternion>(new Quaternion());
+
+		assertTrue("exact", history.getQuaternionAtTime(exact_ms, out));
+		assertFalse("exact", out.getInterpolated());
+		assertEquals("exact (ms)", exact_ms, out.getTimestamp());
+		assertTrue("interpolated", history.getQuaternionAtTime(interpolated_ms, out));
+		assertTrue("interpolated", out.getInterpolated());
+		assertEquals("interpolated (ms)", interpolated_ms, out.getTimestamp());
+		assertTrue("predicted", history.predictQuaternionAtTime(interpolated_ms, out));
+		assertEquals("predicted (ms)", interpolated_ms, out.getTimestamp());
+
+		/* The Timestamp lookups return timestamps at the history's resolution. */
+		Timestamp requested = new Timestamp(interpolated_ms * Timestamp.MICROSECONDS_PER_MILLISECOND + 500,
+				Timestamp.TimestampResolution.Microsecond);
+		assertTrue("full resolution", history.getQuaternionAtTime(requested, out));
+		assertEquals("full resolution (us)", requested.getTimestamp(), out.getTimestamp());
+		assertTrue("current", history.getCurrentQuaternion(out));
+		assertEquals("current (us)", SyntheticQuaternionSensor.getSampleTimestamp(49)
+				* Timestamp.MICROSECONDS_PER_MILLISECOND, out.getTimestamp());
+
+		long[] requested_ms = { exact_ms, interpolated_ms, -1000 };
+		@SuppressWarnings("unchecked")
+		TimestampedValue<Quaternion>[] batch_out = new TimestampedValue[requested_ms.length];
+		for (int i = 0; i < batch_out.length; i++) {
+			batch_out[i] = new TimestampedValue<Quaternion>(new Quaternion());
+		}
+		assertEquals("batch found", 2, history.getQuaternionsAtTimes(requested_ms, batch_out));
+		assertEquals("batch exact (ms)", exact_ms, batch_out[0].getTimestamp());
+		assertEquals("batch interpolated (ms)", interpolated_ms, batch_out[1].getTimestamp());
+		assertFalse("batch not found", batch_out[2].getValid());
+
+		final ArrayList<Long> resampled = new ArrayList<Long>();
+		history.resampleQuaternions(exact_ms, exact_ms + 20, 5,
+				new ITimestampedValueVisitor<TimestampedValue<Quaternion>>() {
+					public boolean visit(TimestampedValue<Quaternion> t) {
+						resampled.add(t.getTimestamp());
+						return true;
+					}
+				});
+		assertEquals("resampled", 5, resampled.size());
+		for (int i = 0; i < resampled.size(); i++) {
+			assertEquals("resampled (ms)", exact_ms + i * 5, resampled.get(i).longValue());
+		}
+	}
+}
@@ -16,8 +16,8 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
  * This SF2 Example Robot Application demonstrates using an Orientation Time History,
  * based upon a navX-MXP or navX-Micro sensor.
  * 
- * The number of samples in the history is based upon the currently-configured
- * sensor update rate multiplied by the number of seconds desired in the history.
+ * The number of samples in the history follows the sensor's actual update
+ * rate, so that the history always spans the number of seconds requested.
  *
  * In the operatorControl() method, all current (directly from the navX sensor)
  * as well as historical (from the Orientation Time History) are displayed, as 
@@ -28,17 +28,18 @@ public class Robot extends SampleRobot {
     AHRS ahrs;
     OrientationHistory orientation_history;
     Joystick stick;
-    double last_write_timestamp = 0;
+    boolean logging = false;
+    double last_flush_timestamp = 0;
  
     public Robot() {
     	/* Instantiate the sensor and the history; the history acquires data 
     	 * continuously from the sensor.  Set the depth of the Orientation Time
-    	 * History to 10 seconds, based upon the sensors current update rate.
+    	 * History to 10 seconds; the number of samples retained follows the
+    	 * sensor's actual update rate.
     	 */
         ahrs = new AHRS(SPI.Port.kMXP);
         navXSensor navx_sensor = new navXSensor(ahrs, "Drivetrain Orientation");
-        orientation_history = new OrientationHistory(navx_sensor,
-    		ahrs.getRequestedUpdateRate() * 10);
+        orientation_history = OrientationHistory.forDuration(navx_sensor, 10.0);
         stick = new Joystick(0);
     }
 
@@ -50,12 +51,15 @@ public class Robot extends SampleRobot {
             
             Timer.delay(0.020);		/* wait for one motor update time period (50Hz)     */
 
-            if ( stick.getRawButton(1)) {            	
-            	if ((Timer.getFPGATimestamp() - last_write_timestamp) > 5.0) {
-            		orientation_history.writeToDirectory("/home/lvuser/sf2");
-                    last_write_timestamp = Timer.getFPGATimestamp();
-            	}
-            }            
+            if ( stick.getRawButton(1) && !logging) {
+            	/* Begin logging the history continuously to a single file. */
+            	logging = orientation_history.startLogging("/home/lvuser/sf2");
+            }
+            if ( logging && ((Timer.getFPGATimestamp() - last_flush_timestamp) > 1.0)) {
+            	/* Append only the samples received since the last flush. */
+            	orientation_history.flushLog();
+            	last_flush_timestamp = Timer.getFPGATimestamp();
+            }
             
             /* Acquire Historical Orientation Data */
             long navx_timestamp = ahrs.getLastSensorTimestamp();